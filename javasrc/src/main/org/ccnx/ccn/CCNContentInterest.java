@@ -27,10 +27,13 @@ public class CCNContentInterest {
 	
 	protected ContentObject _content;
 	protected Interest _interest;
+	protected long _queuedTime = 0;
 
 	public CCNContentInterest(ContentObject co, Interest interest) {
 		_content = co;
 		_interest = interest;
+		if (null != interest && 0 != interest.traceId())
+			_queuedTime = System.nanoTime();
 	}
 	
 	public ContentObject getContent() {
@@ -40,4 +43,11 @@ public class CCNContentInterest {
 	public Interest getInterest() {
 		return _interest;
 	}
+
+	/**
+	 * @return System.nanoTime() when this was made, if the interest is traced, otherwise 0
+	 */
+	public long getQueuedTime() {
+		return _queuedTime;
+	}
 }
@@ -18,13 +18,17 @@
 package org.ccnx.ccn;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.config.ConfigurationException;
 import org.ccnx.ccn.impl.CCNNetworkManager;
+import org.ccnx.ccn.impl.ContentCache;
 import org.ccnx.ccn.impl.security.keys.BasicKeyManager;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.impl.support.Tracer;
 import org.ccnx.ccn.protocol.ContentName;
 import org.ccnx.ccn.protocol.ContentObject;
 import org.ccnx.ccn.protocol.Interest;
@@ -311,19 +315,28 @@ public class CCNHandle implements CCNBase {
 	 * @throws IOException
 	 */
 	public ContentObject get(Interest interest, long timeout) throws IOException {		
-		while (true) {
-			synchronized(_openLock) {
-				if( !_isOpen )
-					throw new IOException(formatMessage("Handle is closed"));
-			}
-			try {
-				if (_scope != disableScope) {
-					if (interest.scope() == null) {
-						interest.scope(_scope);
-					}
+		long trace = Tracer.begin(interest);
+		long start = System.nanoTime();
+		try {
+			while (true) {
+				synchronized(_openLock) {
+					if( !_isOpen )
+						throw new IOException(formatMessage("Handle is closed"));
 				}
-				return getNetworkManager().get(interest, timeout);
-			} catch (InterruptedException e) {}
+				ContentObject cached = ContentCache.getCache().get(interest);
+				if (null != cached)
+					return cached;
+				try {
+					if (_scope != disableScope) {
+						if (interest.scope() == null) {
+							interest.scope(_scope);
+						}
+					}
+					return getNetworkManager().get(interest, timeout);
+				} catch (InterruptedException e) {}
+			}
+		} finally {
+			Tracer.span(trace, Tracer.Stage.Get, start, interest.name());
 		}
 	}
 	
@@ -375,6 +388,26 @@ public class CCNHandle implements CCNBase {
 
 		getNetworkManager().setInterestFilter(filter, callbackHandler);
 	}
+
+	/**
+	 * Register a batch of standing interest filters with the same callback. Any prefixes
+	 * which need registering with ccnd are registered together.
+	 * @param filters
+	 * @param callbackHandler
+	 * @throws IOException if the handle is closed or any of the filters couldn't be registered
+	 */
+	public void registerFilters(Collection<ContentName> filters,
+			CCNInterestHandler callbackHandler) throws IOException {
+		if( Log.isLoggable(Level.FINE) )
+			Log.fine(Log.FAC_NETMANAGER, formatMessage("registerFilters " + filters.size() + " filters"));
+
+		synchronized(_openLock) {
+			if( !_isOpen )
+				throw new IOException(formatMessage("Handle is closed"));
+		}
+
+		getNetworkManager().setInterestFilters(filters, callbackHandler, null);
+	}
 	
 	@Deprecated
 	public void registerFilter(ContentName filter,
@@ -459,10 +492,43 @@ public class CCNHandle implements CCNBase {
 				throw new IOException(formatMessage("Handle is closed"));
 		}
 
+		Tracer.begin(interest);
+		if (ContentCache.getCache().expressInterest(interest, handler, this))
+			return;
+
 		// Will add the interest to the listener.
 		getNetworkManager().expressInterest(interest, handler);
 	}
 	
+	/**
+	 * Express a batch of interests for the same handler. Interests which can be answered from
+	 * the cache are, and the rest are registered together and written to the network in as few
+	 * packets as they fit.
+	 * @param interests
+	 * @param handler
+	 */
+	public void expressInterests(
+			Collection<Interest> interests,
+			final CCNContentHandler handler) throws IOException {
+		if( Log.isLoggable(Level.FINE) )
+			Log.fine(Log.FAC_NETMANAGER, formatMessage("expressInterests " + interests.size() + " interests"));
+
+		synchronized(_openLock) {
+			if( !_isOpen )
+				throw new IOException(formatMessage("Handle is closed"));
+		}
+
+		ArrayList<Interest> toSend = new ArrayList<Interest>(interests.size());
+		for (Interest interest : interests) {
+			Tracer.begin(interest);
+			if (!ContentCache.getCache().expressInterest(interest, handler, this))
+				toSend.add(interest);
+		}
+
+		// Will add the interests to the listener.
+		getNetworkManager().expressInterests(toSend, handler);
+	}
+	
 	public void registerInterest(
 			Interest interest,
 			final CCNContentHandler handler) throws IOException {
@@ -533,9 +599,31 @@ public class CCNHandle implements CCNBase {
 			}
 		}
 
+		ContentCache.getCache().cancelInterest(interest, handler);
 		getNetworkManager().cancelInterest(interest, handler);
 	}
 	
+	/**
+	 * Cancel a batch of interests expressed for the same handler.
+	 * @param interests
+	 * @param handler
+	 */
+	public void cancelInterests(Collection<Interest> interests, CCNContentHandler handler) {
+		if( Log.isLoggable(Level.FINE) )
+			Log.fine(Log.FAC_NETMANAGER, formatMessage("cancelInterests " + interests.size() + " interests"));
+
+		synchronized(_openLock) {
+			if( !_isOpen ) {
+				Log.warning(Log.FAC_NETMANAGER, formatMessage("Called cancelInterests on a closed handle"));
+				return;
+			}
+		}
+
+		for (Interest interest : interests)
+			ContentCache.getCache().cancelInterest(interest, handler);
+		getNetworkManager().cancelInterests(interests, handler);
+	}
+	
 	@Deprecated
 	public void cancelInterest(Interest interest, CCNInterestListener listener) {
 		if( Log.isLoggable(Level.FINE) )
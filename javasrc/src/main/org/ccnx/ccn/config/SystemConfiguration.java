@@ -22,9 +22,12 @@ import java.io.FileOutputStream;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.util.HashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -173,6 +176,31 @@ public class SystemConfiguration {
 	protected static final String PIPELINE_SIZE_ENV_VAR = "JAVA_PIPELINE_SIZE";
 	public static int PIPELINE_SIZE = 4;
 
+	/**
+	 * Total interests the repository may have outstanding for all the streams it is
+	 * reading in, shared between them by RepositoryIngestScheduler.
+	 * Default is 256
+	 */
+	protected static final String REPO_INGEST_BUDGET_PROPERTY = "org.ccnx.RepoIngestBudget";
+	protected static final String REPO_INGEST_BUDGET_ENV_VAR = "CCNR_INGEST_BUDGET";
+	public static int REPO_INGEST_BUDGET = 256;
+
+	/**
+	 * How long, in ms, content waiting to be stored by the repository may take to drain
+	 * before the streams it is reading slow down. Default is 200
+	 */
+	protected static final String REPO_INGEST_QUEUE_DELAY_PROPERTY = "org.ccnx.RepoIngestQueueDelay";
+	protected static final String REPO_INGEST_QUEUE_DELAY_ENV_VAR = "CCNR_INGEST_QUEUE_DELAY";
+	public static int REPO_INGEST_QUEUE_DELAY = 200;
+
+	/**
+	 * How many threads the repository uses to decode and index a file it is importing
+	 * or reading at startup. Default is 0, meaning one per available processor
+	 */
+	protected static final String REPO_IMPORT_THREADS_PROPERTY = "org.ccnx.RepoImportThreads";
+	protected static final String REPO_IMPORT_THREADS_ENV_VAR = "CCNR_IMPORT_THREADS";
+	public static int REPO_IMPORT_THREADS = 0;
+
 	/**
 	 * Pipeline segment attempts for pipeline in CCNAbstractInputStream
 	 * Default is 5
@@ -244,6 +272,15 @@ public class SystemConfiguration {
 	public final static long GLV_ATTEMPT_TIMEOUT_DEFAULT = SHORT_TIMEOUT;
 	public static long GLV_ATTEMPT_TIMEOUT = GLV_ATTEMPT_TIMEOUT_DEFAULT;
 
+	/**
+	 * Number of disjoint version ranges getLatestVersion asks for at once. 1 searches
+	 * serially, one responder at a time.
+	 */
+	protected static final String GLV_RANGES_PROPERTY = "org.ccnx.glv.ranges";
+	protected final static String GLV_RANGES_ENV_VAR = "GLV_RANGES";
+	public final static int GLV_RANGES_DEFAULT = 1;
+	public static int GLV_RANGES = GLV_RANGES_DEFAULT;
+
 	/**
 	 * "Short timeout" that can be set
 	 */
@@ -258,6 +295,99 @@ public class SystemConfiguration {
 	protected final static String DUMP_NETMANAGER_STATS_ENV_VAR = "CCNX_DUMP_NETMANAGER_STATS";
 	public static boolean DUMP_NETMANAGER_STATS = false;
 
+	/**
+	 * Should network manager and repository statistics be registered as JMX MBeans
+	 */
+	protected static final String EXPORT_STATS_MBEANS_PROPERTY = "org.ccnx.export.stats.mbeans";
+	protected final static String EXPORT_STATS_MBEANS_ENV_VAR = "CCNX_EXPORT_STATS_MBEANS";
+	public static boolean EXPORT_STATS_MBEANS = true;
+
+	/**
+	 * Maximum number of names returned in one page of a paged name enumeration response
+	 */
+	protected static final String NE_PAGE_SIZE_PROPERTY = "org.ccnx.nameenum.PageSize";
+	protected final static String NE_PAGE_SIZE_ENV_VAR = "CCNX_NE_PAGE_SIZE";
+	public final static int NE_PAGE_SIZE_DEFAULT = 1000;
+	public static int NE_PAGE_SIZE = NE_PAGE_SIZE_DEFAULT;
+
+	/**
+	 * Number of threads in the scheduler shared by all sync slice comparators
+	 */
+	protected static final String SYNC_COMPARATOR_THREADS_PROPERTY = "org.ccnx.sync.ComparatorThreads";
+	protected final static String SYNC_COMPARATOR_THREADS_ENV_VAR = "CCNX_SYNC_COMPARATOR_THREADS";
+	public final static int SYNC_COMPARATOR_THREADS_DEFAULT = 2;
+	public static int SYNC_COMPARATOR_THREADS = SYNC_COMPARATOR_THREADS_DEFAULT;
+
+	/**
+	 * Approximate number of bytes of sync node data held strongly by each slice's node cache
+	 */
+	protected static final String SYNC_NODE_CACHE_BYTES_PROPERTY = "org.ccnx.sync.NodeCacheBytes";
+	protected final static String SYNC_NODE_CACHE_BYTES_ENV_VAR = "CCNX_SYNC_NODE_CACHE_BYTES";
+	public final static long SYNC_NODE_CACHE_BYTES_DEFAULT = 8 * 1024 * 1024;
+	public static long SYNC_NODE_CACHE_BYTES = SYNC_NODE_CACHE_BYTES_DEFAULT;
+
+	/**
+	 * Maximum number of sync node fetches a comparator will have outstanding for prefetching. 0 disables prefetching
+	 */
+	protected static final String SYNC_PREFETCH_WINDOW_PROPERTY = "org.ccnx.sync.PrefetchWindow";
+	protected final static String SYNC_PREFETCH_WINDOW_ENV_VAR = "CCNX_SYNC_PREFETCH_WINDOW";
+	public final static int SYNC_PREFETCH_WINDOW_DEFAULT = 512;
+	public static int SYNC_PREFETCH_WINDOW = SYNC_PREFETCH_WINDOW_DEFAULT;
+
+	/**
+	 * Number of threads used to decode fetched sync nodes
+	 */
+	protected static final String SYNC_DECODE_THREADS_PROPERTY = "org.ccnx.sync.DecodeThreads";
+	protected final static String SYNC_DECODE_THREADS_ENV_VAR = "CCNX_SYNC_DECODE_THREADS";
+	public final static int SYNC_DECODE_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	public static int SYNC_DECODE_THREADS = SYNC_DECODE_THREADS_DEFAULT;
+
+	/**
+	 * Number of threads shared by all QueuedContentHandlers. 0 runs them on _systemThreadpool,
+	 * which starts a thread for every handler with work queued. A handler's items are processed
+	 * in order whichever is used, but with a fixed pool a handler which blocks holds a thread, so
+	 * the pool must be larger than the number of handlers expected to block at once.
+	 */
+	protected static final String HANDLER_THREADS_PROPERTY = "org.ccnx.handler.Threads";
+	protected final static String HANDLER_THREADS_ENV_VAR = "CCNX_HANDLER_THREADS";
+	public final static int HANDLER_THREADS_DEFAULT = 0;
+	public static int HANDLER_THREADS = HANDLER_THREADS_DEFAULT;
+
+	/**
+	 * How long in ms a group access control manager remembers which node holds the ACL in force
+	 * at a node. The ACLs themselves are kept up to date in the background. 0 disables the cache.
+	 */
+	protected static final String ACL_CACHE_LIFETIME_PROPERTY = "org.ccnx.acl.CacheLifetime";
+	protected final static String ACL_CACHE_LIFETIME_ENV_VAR = "CCNX_ACL_CACHE_LIFETIME";
+	public final static long ACL_CACHE_LIFETIME_DEFAULT = 30000;
+	public static long ACL_CACHE_LIFETIME = ACL_CACHE_LIFETIME_DEFAULT;
+
+	/**
+	 * Maximum number of nodes a group access control manager caches effective ACLs and node keys for
+	 */
+	protected static final String ACL_CACHE_SIZE_PROPERTY = "org.ccnx.acl.CacheSize";
+	protected final static String ACL_CACHE_SIZE_ENV_VAR = "CCNX_ACL_CACHE_SIZE";
+	public final static int ACL_CACHE_SIZE_DEFAULT = 1000;
+	public static int ACL_CACHE_SIZE = ACL_CACHE_SIZE_DEFAULT;
+
+	/**
+	 * Maximum number of content bytes kept in the process wide content cache consulted by
+	 * CCNHandle before sending interests. 0 disables the cache.
+	 */
+	protected static final String CONTENT_CACHE_SIZE_PROPERTY = "org.ccnx.ContentCacheSize";
+	protected final static String CONTENT_CACHE_SIZE_ENV_VAR = "CCNX_CONTENT_CACHE_SIZE";
+	public final static long CONTENT_CACHE_SIZE_DEFAULT = 0;
+	public static long CONTENT_CACHE_SIZE = CONTENT_CACHE_SIZE_DEFAULT;
+
+	/**
+	 * Longest time in ms the content cache keeps an object, for objects which don't give
+	 * a shorter freshness
+	 */
+	protected static final String CONTENT_CACHE_LIFETIME_PROPERTY = "org.ccnx.ContentCacheLifetime";
+	protected final static String CONTENT_CACHE_LIFETIME_ENV_VAR = "CCNX_CONTENT_CACHE_LIFETIME";
+	public final static long CONTENT_CACHE_LIFETIME_DEFAULT = 60000;
+	public static long CONTENT_CACHE_LIFETIME = CONTENT_CACHE_LIFETIME_DEFAULT;
+
 
 	/**
 	 * Settable system default timeout.
@@ -317,6 +447,37 @@ public class SystemConfiguration {
 	
 	public static final int SYSTEM_THREAD_LIFE = 10;
 	public static ThreadPoolExecutor _systemThreadpool = (ThreadPoolExecutor)Executors.newCachedThreadPool();
+	protected static Executor _handlerExecutor = null;
+
+	/**
+	 * @return the executor QueuedContentHandlers run on unless they are given their own:
+	 * 	a fixed pool of HANDLER_THREADS daemon threads, or _systemThreadpool if that is 0
+	 */
+	public synchronized static Executor getHandlerExecutor() {
+		if (null == _handlerExecutor) {
+			if (HANDLER_THREADS > 0) {
+				_handlerExecutor = Executors.newFixedThreadPool(HANDLER_THREADS, new ThreadFactory() {
+					private final AtomicInteger _threadCount = new AtomicInteger(1);
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "QueuedContentHandler-" + _threadCount.getAndIncrement());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			} else {
+				_handlerExecutor = _systemThreadpool;
+			}
+		}
+		return _handlerExecutor;
+	}
+
+	/**
+	 * Replace the executor QueuedContentHandlers run on by default. Handlers already
+	 * running finish their current batch on the old one.
+	 */
+	public synchronized static void setHandlerExecutor(Executor executor) {
+		_handlerExecutor = executor;
+	}
 
 	/**
 	 * Obtain the management bean for this runtime if it is available.
@@ -402,6 +563,24 @@ public class SystemConfiguration {
 			throw e;
 		}
 
+		try {
+			REPO_INGEST_BUDGET = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_INGEST_BUDGET_PROPERTY, REPO_INGEST_BUDGET_ENV_VAR, "256"));
+		} catch (NumberFormatException e) {
+			System.err.println("The RepoIngestBudget must be an integer.");
+		}
+
+		try {
+			REPO_INGEST_QUEUE_DELAY = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_INGEST_QUEUE_DELAY_PROPERTY, REPO_INGEST_QUEUE_DELAY_ENV_VAR, "200"));
+		} catch (NumberFormatException e) {
+			System.err.println("The RepoIngestQueueDelay must be an integer.");
+		}
+
+		try {
+			REPO_IMPORT_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(REPO_IMPORT_THREADS_PROPERTY, REPO_IMPORT_THREADS_ENV_VAR, "0"));
+		} catch (NumberFormatException e) {
+			System.err.println("The RepoImportThreads must be an integer.");
+		}
+
 		// Allow override of default pipeline size for CCNAbstractInputStream
 		try {
 			PIPELINE_SEGMENTATTEMPTS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(PIPELINE_ATTEMPTS_PROPERTY, PIPELINE_ATTEMPTS_ENV_VAR, "5"));
@@ -475,6 +654,14 @@ public class SystemConfiguration {
 			throw e;
 		}
 
+		// Allow override of getLatestVersion range count.
+		try {
+			GLV_RANGES = Integer.parseInt(retrievePropertyOrEnvironmentVariable(GLV_RANGES_PROPERTY, GLV_RANGES_ENV_VAR, Integer.toString(GLV_RANGES_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The getlatestversion range count must be an integer.");
+			throw e;
+		}
+
 		// Allow override of settable short timeout.
 		try {
 			SETTABLE_SHORT_TIMEOUT = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SETTABLE_SHORT_TIMEOUT_PROPERTY, SETTABLE_SHORT_TIMEOUT_ENV_VAR, Long.toString(SHORT_TIMEOUT)));
@@ -488,6 +675,9 @@ public class SystemConfiguration {
 		
 		// Dump netmanager statistics if requested
 		DUMP_NETMANAGER_STATS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(DUMP_NETMANAGER_STATS_PROPERTY, DUMP_NETMANAGER_STATS_ENV_VAR, Boolean.toString(DUMP_NETMANAGER_STATS)));
+
+		// Register statistics with JMX unless asked not to
+		EXPORT_STATS_MBEANS = Boolean.parseBoolean(retrievePropertyOrEnvironmentVariable(EXPORT_STATS_MBEANS_PROPERTY, EXPORT_STATS_MBEANS_ENV_VAR, Boolean.toString(EXPORT_STATS_MBEANS)));
 	
 		// Allow override of block size
 		// TODO should we make sure its a reasonable number?
@@ -502,6 +692,70 @@ public class SystemConfiguration {
 		OLD_HEADER_NAMES = Boolean.parseBoolean(
 				retrievePropertyOrEnvironmentVariable(OLD_HEADER_NAMES_PROPERTY, OLD_HEADER_NAMES_ENV_VAR, STRING_TRUE));
 
+		// Allow override of name enumeration page size
+		try {
+			NE_PAGE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(NE_PAGE_SIZE_PROPERTY, NE_PAGE_SIZE_ENV_VAR, Integer.toString(NE_PAGE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The name enumeration page size must be an integer.");
+			throw e;
+		}
+
+		// Allow override of sync comparator scheduler size and node cache budget
+		try {
+			SYNC_COMPARATOR_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SYNC_COMPARATOR_THREADS_PROPERTY, SYNC_COMPARATOR_THREADS_ENV_VAR, Integer.toString(SYNC_COMPARATOR_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The sync comparator thread count must be an integer.");
+			throw e;
+		}
+		try {
+			SYNC_NODE_CACHE_BYTES = Long.parseLong(retrievePropertyOrEnvironmentVariable(SYNC_NODE_CACHE_BYTES_PROPERTY, SYNC_NODE_CACHE_BYTES_ENV_VAR, Long.toString(SYNC_NODE_CACHE_BYTES_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The sync node cache size must be a long integer.");
+			throw e;
+		}
+		try {
+			SYNC_PREFETCH_WINDOW = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SYNC_PREFETCH_WINDOW_PROPERTY, SYNC_PREFETCH_WINDOW_ENV_VAR, Integer.toString(SYNC_PREFETCH_WINDOW_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The sync prefetch window must be an integer.");
+			throw e;
+		}
+		try {
+			SYNC_DECODE_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(SYNC_DECODE_THREADS_PROPERTY, SYNC_DECODE_THREADS_ENV_VAR, Integer.toString(SYNC_DECODE_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The sync decode thread count must be an integer.");
+			throw e;
+		}
+		try {
+			HANDLER_THREADS = Integer.parseInt(retrievePropertyOrEnvironmentVariable(HANDLER_THREADS_PROPERTY, HANDLER_THREADS_ENV_VAR, Integer.toString(HANDLER_THREADS_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The handler thread count must be an integer.");
+			throw e;
+		}
+		try {
+			ACL_CACHE_LIFETIME = Long.parseLong(retrievePropertyOrEnvironmentVariable(ACL_CACHE_LIFETIME_PROPERTY, ACL_CACHE_LIFETIME_ENV_VAR, Long.toString(ACL_CACHE_LIFETIME_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The ACL cache lifetime must be a long integer.");
+			throw e;
+		}
+		try {
+			ACL_CACHE_SIZE = Integer.parseInt(retrievePropertyOrEnvironmentVariable(ACL_CACHE_SIZE_PROPERTY, ACL_CACHE_SIZE_ENV_VAR, Integer.toString(ACL_CACHE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The ACL cache size must be an integer.");
+			throw e;
+		}
+		try {
+			CONTENT_CACHE_SIZE = Long.parseLong(retrievePropertyOrEnvironmentVariable(CONTENT_CACHE_SIZE_PROPERTY, CONTENT_CACHE_SIZE_ENV_VAR, Long.toString(CONTENT_CACHE_SIZE_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The content cache size must be a long integer.");
+			throw e;
+		}
+		try {
+			CONTENT_CACHE_LIFETIME = Long.parseLong(retrievePropertyOrEnvironmentVariable(CONTENT_CACHE_LIFETIME_PROPERTY, CONTENT_CACHE_LIFETIME_ENV_VAR, Long.toString(CONTENT_CACHE_LIFETIME_DEFAULT)));
+		} catch (NumberFormatException e) {
+			System.err.println("The content cache lifetime must be a long integer.");
+			throw e;
+		}
+
 	}
 
 	public static String getLocalHost() {
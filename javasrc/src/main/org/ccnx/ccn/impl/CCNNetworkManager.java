@@ -27,13 +27,20 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
 import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
+import javax.management.ObjectName;
+
 import org.ccnx.ccn.CCNContentHandler;
 import org.ccnx.ccn.CCNInterestHandler;
 import org.ccnx.ccn.ContentVerifier;
@@ -42,9 +49,11 @@ import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
 import org.ccnx.ccn.impl.InterestTable.Entry;
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLEncodable;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.impl.support.Tracer;
 import org.ccnx.ccn.io.content.ContentEncodingException;
 import org.ccnx.ccn.profiles.ccnd.CCNDaemonException;
 import org.ccnx.ccn.profiles.ccnd.PrefixRegistrationManager;
@@ -144,7 +153,8 @@ public class CCNNetworkManager implements Runnable {
 	// allowed at once. To enforce this, before attempting a registration change, users must acquire
 	// _registrationChangeInProgress which locks access to ccnd registration across the entire face.
 	//
-	// _registeredPrefixes must be locked on read/write access of the prefixes
+	// _registeredPrefixes is a concurrent map so it can be read without locking, but it must be locked
+	// to change it or the refcounts of the prefixes in it
 	//
 	// setInterestFilter and cancelInterestFilter which may both potentially change the prefix registration with
 	// ccnd are not symmetrical. When calling setInterestFilter we must have completed any necessary prefix registration
@@ -153,7 +163,7 @@ public class CCNNetworkManager implements Runnable {
 	// ignored.
 	
 	protected PrefixRegistrationManager _prefixMgr = null;
-	protected TreeMap<ContentName, RegisteredPrefix> _registeredPrefixes = new TreeMap<ContentName, RegisteredPrefix>();
+	protected ConcurrentSkipListMap<ContentName, RegisteredPrefix> _registeredPrefixes = new ConcurrentSkipListMap<ContentName, RegisteredPrefix>();
 
 	// Note that we always acquire this semaphore "uninterruptibly". I believe the dangers of trying to allow
 	// this semaphore to be interrupted outweigh any advantage in doing that. Also I have tried as much as possible
@@ -172,9 +182,48 @@ public class CCNNetworkManager implements Runnable {
 	protected long _currentHandler = 0;
 	protected long _lastHandler = -1;
 
-	// Atomic cancel
-	protected InterestRegistration _beingDelivered = null;
-	protected Object _beingDeliveredLock = new Object();
+	// Atomic cancel. Deliveries in progress are kept in stripes by handler, so deliveries and
+	// cancellations for different handlers don't contend for one lock.
+	protected static final int DELIVERY_STRIPES = 32;
+	protected final DeliveryStripe [] _deliveryStripes = new DeliveryStripe[DELIVERY_STRIPES];
+	{
+		for (int i = 0; i < DELIVERY_STRIPES; i++)
+			_deliveryStripes[i] = new DeliveryStripe();
+	}
+
+	/**
+	 * The registrations being delivered to the handlers which map to one stripe.
+	 * Synchronized on itself, and notified when a delivery finishes.
+	 */
+	protected static class DeliveryStripe {
+		protected final ArrayList<InterestRegistration> _delivering = new ArrayList<InterestRegistration>(2);
+
+		/**
+		 * @return true if content is being delivered to the handler on a thread other than this one
+		 */
+		protected boolean deliveringElsewhere(Object handler) {
+			Thread current = Thread.currentThread();
+			for (InterestRegistration reg : _delivering) {
+				if (reg.handler == handler && reg.deliveringThread != current)
+					return true;
+			}
+			return false;
+		}
+
+		protected void remove(InterestRegistration reg) {
+			// By identity - registrations are equal if their handlers are
+			for (int i = _delivering.size() - 1; i >= 0; i--) {
+				if (_delivering.get(i) == reg) {
+					_delivering.remove(i);
+					return;
+				}
+			}
+		}
+	}
+
+	protected DeliveryStripe deliveryStripe(Object handler) {
+		return _deliveryStripes[(System.identityHashCode(handler) & 0x7fffffff) % DELIVERY_STRIPES];
+	}
 
 	/**
 	 * Keep track of prefixes that are actually registered with ccnd (as opposed to Filters used
@@ -247,8 +296,10 @@ public class CCNNetworkManager implements Runnable {
             long ourTime = System.currentTimeMillis();
             long minInterestRefreshTime = PERIOD + ourTime;
 
-			// Re-express interests that need to be re-expressed
+			// Re-express interests that need to be re-expressed. They are written together, so
+			// interests expressed in a batch stay in one batch.
 			try {
+				ArrayList<Interest> refresh = new ArrayList<Interest>();
 				for (Entry<InterestRegistration> entry : _myInterests.values()) {
 					InterestRegistration reg = entry.value();
 					 // allow some slop for scheduling
@@ -257,16 +308,18 @@ public class CCNNetworkManager implements Runnable {
                                     Log.finer(Log.FAC_NETMANAGER, "Refresh interest: {0}", reg.interest);
                             _lastHeartbeat = ourTime;
                             reg.nextRefresh = ourTime + SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT;
-;
-                            try {
-                                write(reg.interest);
-                        } catch (NotYetConnectedException nyce) {
-                                refreshError = true;
-                        }
+                            refresh.add(reg.interest);
                     }
 					if (minInterestRefreshTime > reg.nextRefresh)
 						minInterestRefreshTime = reg.nextRefresh;
 				}
+				if (refresh.size() > 0) {
+					try {
+						write(refresh);
+					} catch (NotYetConnectedException nyce) {
+						refreshError = true;
+					}
+				}
 
 			} catch (ContentEncodingException xmlex) {
                 Log.severe(Log.FAC_NETMANAGER, "PeriodicWriter interest refresh thread failure (Malformed datagram): {0}", xmlex.getMessage());
@@ -438,6 +491,8 @@ public class CCNNetworkManager implements Runnable {
 		public final Interest interest;
 		protected long nextRefresh;		// next time to refresh the interest
 		protected ContentObject content;
+		protected long expressTime = 0;	// System.nanoTime() when expressed, only set if traced
+		protected Thread deliveringThread;	// Guarded by the handler's delivery stripe
 
 		// All internal client interests must have an owner
 		public InterestRegistration(Interest i, Object h) {
@@ -453,15 +508,29 @@ public class CCNNetworkManager implements Runnable {
 		 * Deliver content to a registered handler
 		 */
 		public void deliver(ContentObject co) {
-			synchronized (_beingDeliveredLock) {
-				_beingDelivered = this;
+			DeliveryStripe stripe = null;
+			if (null != this.handler) {
+				stripe = deliveryStripe(this.handler);
+				synchronized (stripe) {
+					deliveringThread = Thread.currentThread();
+					stripe._delivering.add(this);
+				}
 			}
 			try {
 				if (null != this.handler) {
 					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
 						Log.finer(Log.FAC_NETMANAGER, "Content callback (" + co + " data) for: {0}", this.interest.name());
 
-					unregisterInterest(this);
+					// If the registration has already gone it was cancelled after we found it, or
+					// another delivery used it, and the handler mustn't be called.
+					boolean registered = (null != _myInterests.remove(this.interest, this));
+					synchronized (stripe) {
+						if (!registered || cancelled) {
+							if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
+								Log.finer(Log.FAC_NETMANAGER, "Content callback skipped (cancelled) for: {0}", this.interest.name());
+							return;
+						}
+					}
 
 					// Callback the client - we can't hold any locks here!
 					Interest updatedInterest = ((CCNContentHandler)handler).handleContent(co, interest);
@@ -469,7 +538,11 @@ public class CCNNetworkManager implements Runnable {
 					// Possibly we should optimize here for the case where the same interest is returned back
 					// (now we would unregister it, then reregister it) but need to be careful that the timing
 					// behavior is right if we do that
-					if (null != updatedInterest && !cancelled) {
+					boolean expressUpdated;
+					synchronized (stripe) {
+						expressUpdated = (null != updatedInterest && !cancelled);
+					}
+					if (expressUpdated) {
 						if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER) )
 							Log.finer(Log.FAC_NETMANAGER, "Interest callback: updated interest to express: {0}", updatedInterest.name());
 						// if we want to cancel this one before we get any data, we need to remember the
@@ -501,10 +574,13 @@ public class CCNNetworkManager implements Runnable {
 				_stats.increment(StatsEnum.DeliverContentFailed);
 				Log.warning(Log.FAC_NETMANAGER, "failed to deliver data: {0}", ex);
 				Log.warningStackTrace(ex);
-			}
-
-			synchronized (_beingDeliveredLock) {
-				_beingDelivered = null;
+			} finally {
+				if (null != stripe) {
+					synchronized (stripe) {
+						stripe.remove(this);
+						stripe.notifyAll();
+					}
+				}
 			}
 		}
 
@@ -637,6 +713,8 @@ public class CCNNetworkManager implements Runnable {
 
 		_channel = new CCNNetworkChannel(_host, _port, _protocol, _tapStreamIn);
 		_channel.open();
+
+		_statsMBean = CCNStatsMBean.register("CCNNetworkManager", Integer.toString(_managerId), _stats);
 	}
 
 	/**
@@ -664,6 +742,9 @@ public class CCNNetworkManager implements Runnable {
 			}
 		}
 
+		CCNStatsMBean.unregister(_statsMBean);
+		_statsMBean = null;
+
 		// Print the statistics for this network manager
 		if (SystemConfiguration.DUMP_NETMANAGER_STATS)
 			System.out.println(getStats().toString());
@@ -872,6 +953,9 @@ public class CCNNetworkManager implements Runnable {
 
 	private void expressInterest(InterestRegistration reg) throws IOException {
 		_stats.increment(StatsEnum.ExpressInterest);
+		long trace = reg.interest.traceId();
+		if (0 != trace)
+			reg.expressTime = System.nanoTime();
 		try {
 			registerInterest(reg);
 			write(reg.interest);
@@ -879,6 +963,75 @@ public class CCNNetworkManager implements Runnable {
 			unregisterInterest(reg);
 			throw e;
 		}
+		if (0 != trace)
+			Tracer.span(trace, Tracer.Stage.Express, reg.expressTime, reg.interest.name());
+	}
+
+	/**
+	 * Express a batch of interests with the same handler. The interests are registered together,
+	 * written to ccnd packed into as few writes as they fit, and then refreshed together.
+	 *
+	 * @param interests	the interests
+	 * @param handler	handler to callback on receipt of data for any of them
+	 * @throws IOException on incorrect interest
+	 */
+	public void expressInterests(
+			Collection<Interest> interests,
+			Object handler) throws IOException {
+		if (null == handler) {
+			throw new NullPointerException(formatMessage("expressInterests: callbackHandler cannot be null"));
+		}
+		if (interests.isEmpty())
+			return;
+		_stats.increment(StatsEnum.ExpressInterest, interests.size());
+
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE) )
+			Log.fine(Log.FAC_NETMANAGER, formatMessage("expressInterests: {0} interests"), interests.size());
+		ArrayList<Interest> batch = new ArrayList<Interest>(interests);
+		ArrayList<InterestRegistration> regs = new ArrayList<InterestRegistration>(batch.size());
+		long expressTime = System.nanoTime();
+		long nextRefresh = System.currentTimeMillis() + SystemConfiguration.INTEREST_REEXPRESSION_DEFAULT;
+		for (Interest interest : batch) {
+			InterestRegistration reg = new InterestRegistration(interest, handler);
+			reg.nextRefresh = nextRefresh;
+			if (0 != interest.traceId())
+				reg.expressTime = expressTime;
+			regs.add(reg);
+		}
+		setupTimers();
+		_myInterests.add(batch, regs);
+		try {
+			write(batch);
+		} catch (ContentEncodingException e) {
+			_myInterests.remove(batch, regs.get(0));
+			throw e;
+		}
+		for (InterestRegistration reg : regs) {
+			if (0 != reg.expressTime)
+				Tracer.span(reg.interest.traceId(), Tracer.Stage.Express, reg.expressTime, reg.interest.name());
+		}
+	}
+
+	/**
+	 * Cancel a batch of queries expressed with the same handler
+	 *
+	 * @param interests
+	 * @param handler
+	 */
+	public void cancelInterests(Collection<Interest> interests, Object handler) {
+		if (null == handler) {
+			throw new NullPointerException(formatMessage("cancelInterests: handler cannot be null"));
+		}
+		if (interests.isEmpty())
+			return;
+		_stats.increment(StatsEnum.CancelInterest, interests.size());
+
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE) )
+			Log.fine(Log.FAC_NETMANAGER, formatMessage("cancelInterests: {0} interests"), interests.size());
+		InterestRegistration reg = new InterestRegistration(interests.iterator().next(), handler);
+		_myInterests.remove(interests, reg);
+
+		cancelDeliveries(handler);
 	}
 
 	/**
@@ -896,15 +1049,54 @@ public class CCNNetworkManager implements Runnable {
 		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE) )
 			Log.fine(Log.FAC_NETMANAGER, formatMessage("cancelInterest: {0}"), interest.name());
 		// Remove interest from repeated presentation to the network.
-		InterestRegistration reg = unregisterInterest(interest, handler);
+		unregisterInterest(interest, handler);
+		cancelDeliveries(handler);
+	}
 
-		// Make sure potential remnants of cancelled interest are also cancelled
-		synchronized (_beingDeliveredLock) {
-			if (null != _beingDelivered  && _beingDelivered.equals(reg))
-				_beingDelivered.cancelled = true;
+	/**
+	 * Make sure potential remnants of cancelled interests are also cancelled. Registrations for
+	 * the handler found but not yet delivered have gone from _myInterests so won't be delivered,
+	 * and those being delivered now won't express the interest their handler returns.
+	 *
+	 * This doesn't wait for a delivery in progress on another thread, as callers such as
+	 * CCNNetworkObject cancel while holding a lock their handleContent needs. Use
+	 * waitForDeliveries for that.
+	 */
+	private void cancelDeliveries(Object handler) {
+		DeliveryStripe stripe = deliveryStripe(handler);
+		synchronized (stripe) {
+			for (InterestRegistration reg : stripe._delivering) {
+				if (reg.handler == handler)
+					reg.cancelled = true;
+			}
 		}
 	}
 
+	/**
+	 * Wait for content being delivered to a handler on other threads to finish. After cancelling
+	 * all of a handler's interests, this means the handler won't be called again. Deliveries on this
+	 * thread, if we are called from handleContent, are not waited for.
+	 *
+	 * This must not be called holding any lock the handler's handleContent takes, or it
+	 * will wait forever.
+	 * @param handler
+	 */
+	public void waitForDeliveries(Object handler) {
+		DeliveryStripe stripe = deliveryStripe(handler);
+		boolean interrupted = false;
+		synchronized (stripe) {
+			while (stripe.deliveringElsewhere(handler)) {
+				try {
+					stripe.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
 	/**
 	 * Register a standing interest filter with callback to receive any
 	 * matching interests seen. Any interests whose prefix completely matches "filter" will
@@ -992,13 +1184,109 @@ public class CCNNetworkManager implements Runnable {
 	 * @return the list of prefixes as an ArrayList of ContentNames
 	 */
 	public ArrayList<ContentName> getRegisteredPrefixes() {
-		ArrayList<ContentName> prefixes = new ArrayList<ContentName>();
-		synchronized (_registeredPrefixes) {
-			for (ContentName name : _registeredPrefixes.keySet()) {
-				prefixes.add(name);
+		return new ArrayList<ContentName>(_registeredPrefixes.keySet());
+	}
+
+	/**
+	 * Register a batch of standing interest filters with the same handler. Those which match
+	 * no currently registered prefix are registered with ccnd together, with the requests
+	 * pipelined rather than waiting for each registration before starting the next.
+	 *
+	 * @param filters	ContentNames containing prefixes of interests to match
+	 * @param callbackHandler a CCNInterestHandler
+	 * @param registrationFlags to use for the registrations.
+	 * @throws IOException if any of the registrations failed. The filters which couldn't be
+	 * 	registered are removed; the rest stay set.
+	 */
+	public void setInterestFilters(Collection<ContentName> filters, Object callbackHandler,
+			Integer registrationFlags) throws IOException {
+
+		if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINE) )
+			Log.fine(Log.FAC_NETMANAGER, formatMessage("setInterestFilters: {0} filters"), filters.size());
+		if ((null == _keyManager) || (!_keyManager.initialized() || (null == _keyManager.getDefaultKeyID()))) {
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("Cannot set interest filter -- key manager not ready!"));
+			throw new IOException(formatMessage("Cannot set interest filter -- key manager not ready!"));
+		}
+
+		setupTimers();
+		// Sorted, so a filter comes before any of its descendants
+		TreeSet<ContentName> sorted = new TreeSet<ContentName>(filters);
+		HashMap<ContentName, Filter> newOnes = new HashMap<ContentName, Filter>();
+		for (ContentName filter : sorted) {
+			Filter newOne = new Filter(filter, callbackHandler);
+			_myFilters.add(filter, newOne);
+			newOnes.put(filter, newOne);
+		}
+
+		// The filters each new registration covers, including itself
+		LinkedHashMap<ContentName, ArrayList<ContentName>> toRegister = new LinkedHashMap<ContentName, ArrayList<ContentName>>();
+		ArrayList<ContentName> failed = new ArrayList<ContentName>();
+		_registrationChangeInProgress.acquireUninterruptibly();
+		try {
+			synchronized(_registeredPrefixes) {
+				for (ContentName filter : sorted) {
+					RegisteredPrefix prefix = getRegisteredPrefix(filter);
+					if (null != prefix) {
+						prefix._refCount++;
+						continue;
+					}
+					ArrayList<ContentName> covered = null;
+					for (int i = 0; i < filter.count() && null == covered; i++)
+						covered = toRegister.get(filter.cut(i));
+					if (null == covered) {
+						covered = new ArrayList<ContentName>();
+						toRegister.put(filter, covered);
+					}
+					covered.add(filter);
+				}
 			}
+
+			if (!toRegister.isEmpty()) {
+				ArrayList<ContentName> prefixes = new ArrayList<ContentName>(toRegister.keySet());
+				ForwardingEntry[] entries;
+				boolean connected = _channel.isConnected();
+				try {
+					if (null == _prefixMgr) {
+						_prefixMgr = new PrefixRegistrationManager(this);
+					}
+					if (connected) {
+						entries = _prefixMgr.selfRegisterPrefixes(prefixes,
+								null == registrationFlags ? PrefixRegistrationManager.DEFAULT_SELF_REG_FLAGS : registrationFlags);
+					} else {
+						entries = new ForwardingEntry[prefixes.size()];
+					}
+				} catch (CCNDaemonException e) {
+					// The filters under prefixes which were already registered stay set
+					for (ArrayList<ContentName> covered : toRegister.values()) {
+						for (ContentName filter : covered)
+							_myFilters.remove(filter, newOnes.get(filter));
+					}
+					Log.warning(Log.FAC_NETMANAGER, formatMessage("setInterestFilters: unexpected CCNDaemonException: " + e.getMessage()));
+					throw new IOException(e.getMessage());
+				}
+				synchronized (_registeredPrefixes) {
+					for (int i = 0; i < prefixes.size(); i++) {
+						ArrayList<ContentName> covered = toRegister.get(prefixes.get(i));
+						if (connected && null == entries[i]) {
+							failed.addAll(covered);
+							continue;
+						}
+						RegisteredPrefix newPrefix = new RegisteredPrefix(entries[i]);
+						newPrefix._refCount = covered.size();
+						_registeredPrefixes.put(prefixes.get(i), newPrefix);
+					}
+				}
+			}
+		} finally {
+			_registrationChangeInProgress.release();
+		}
+
+		if (!failed.isEmpty()) {
+			for (ContentName filter : failed)
+				_myFilters.remove(filter, newOnes.get(filter));
+			Log.warning(Log.FAC_NETMANAGER, formatMessage("setInterestFilters: could not register {0}"), failed);
+			throw new IOException(formatMessage("Could not register " + failed.size() + " of " + sorted.size() + " filters"));
 		}
-		return prefixes;
 	}
 
 	/**
@@ -1050,9 +1338,7 @@ public class CCNNetworkManager implements Runnable {
 			// Deregister it with ccnd only if the refCount would go to 0
 			RegisteredPrefix prefix = null;
 			boolean doRemove = false;
-			synchronized (_registeredPrefixes) {
-				prefix = getRegisteredPrefix(filter);
-			}
+			prefix = getRegisteredPrefix(filter);
 			if (null != prefix && prefix._refCount <= 1) {
 				// We need to deregister it with ccnd. But first we need to make sure nobody else is messing around
 				// with the ccnd prefix registration.
@@ -1100,27 +1386,25 @@ public class CCNNetworkManager implements Runnable {
 	 * Merge prefixes so we only add a new one when it doesn't have a
 	 * common ancestor already registered.
 	 *
-	 * Must be called with _registeredPrefixes locked
+	 * Must be called with _registeredPrefixes locked if the result is used to change the registrations
 	 *
 	 * We decided that if we are registering a prefix that already has another prefix that
 	 * is an descendant of it registered, we won't bother to now deregister that prefix because
 	 * it would be complicated to do that and doesn't hurt anything.
 	 *
-	 * Notes on efficiency: First of all I'm not sure how important efficiency is in this routine
-	 * because it may not be too common to have many different prefixes registered. Currently we search
-	 * all prefixes until we see one that is past the one we want to register before deciding there are
-	 * none that encapsulate it. There may be a more efficient way to code this that is still correct but
-	 * I haven't come up with it.
+	 * Rather than searching all the registered prefixes, we look up each ancestor of the prefix,
+	 * shortest first, so this costs one lookup per component however many prefixes are registered.
 	 *
 	 * @param prefix
 	 * @return prefix that incorporates or matches this one or null if none found
 	 */
 	protected RegisteredPrefix getRegisteredPrefix(ContentName prefix) {
-		for (ContentName name : _registeredPrefixes.keySet()) {
-			if (name.isPrefixOf(prefix))
-				return _registeredPrefixes.get(name);
-			if (name.compareTo(prefix) > 0)
-				break;
+		if (_registeredPrefixes.isEmpty())
+			return null;
+		for (int i = 0; i <= prefix.count(); i++) {
+			RegisteredPrefix registered = _registeredPrefixes.get(prefix.cut(i));
+			if (null != registered)
+				return registered;
 		}
 		return null;
 	}
@@ -1146,42 +1430,76 @@ public class CCNNetworkManager implements Runnable {
 		writeInner(interest);
 	}
 
+	/**
+	 * Write a batch of interests directly to ccnd, packing as many as fit in a UDP payload
+	 * into each write. ccnd decodes every packet in a datagram or stream read.
+	 *
+	 * @param interests
+	 * @throws ContentEncodingException
+	 */
+	public void write(List<Interest> interests) throws ContentEncodingException {
+		_stats.increment(StatsEnum.WriteInterest, interests.size());
+		try {
+			BinaryXMLBuffer batch = new BinaryXMLBuffer(MAX_PAYLOAD);
+			for (Interest interest : interests) {
+				byte [] bytes = interest.encode();
+				if (batch.size() > 0 && batch.size() + bytes.length > MAX_PAYLOAD) {
+					writeBytes(batch.buffer(), batch.size());
+					batch.reset();
+				}
+				batch.write(bytes);
+			}
+			if (batch.size() > 0)
+				writeBytes(batch.buffer(), batch.size());
+		} catch (IOException io) {
+			writeFailed(io);
+		}
+	}
+
 	// DKS TODO unthrown exception
 	private void writeInner(GenericXMLEncodable packet) throws ContentEncodingException {
 		try {
 			byte[] bytes = packet.encode();
-			ByteBuffer datagram = ByteBuffer.wrap(bytes);
-			synchronized (_channel) {
-				int result = _channel.write(datagram);
-				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
-					Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote datagram (" + datagram.position() + " bytes, result " + result + ")"));
-
-				if( result < bytes.length ) {
-					_stats.increment(StatsEnum.WriteUnderflows);
-					if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
-						Log.info(Log.FAC_NETMANAGER,
-								formatMessage("Wrote datagram {0} bytes to channel, but packet was {1} bytes"),
-								result,
-								bytes.length);
-				}
+			writeBytes(bytes, bytes.length);
+		} catch (IOException io) {
+			writeFailed(io);
+		}
+	}
 
-				if (null != _tapStreamOut) {
-					try {
-						_tapStreamOut.write(bytes);
-					} catch (IOException io) {
-						Log.warning(Log.FAC_NETMANAGER, formatMessage("Unable to write packet to tap stream for debugging"));
-					}
-				}
+	private void writeBytes(byte [] bytes, int length) throws IOException {
+		ByteBuffer datagram = ByteBuffer.wrap(bytes, 0, length);
+		synchronized (_channel) {
+			int result = _channel.write(datagram);
+			if( Log.isLoggable(Log.FAC_NETMANAGER, Level.FINEST) )
+				Log.finest(Log.FAC_NETMANAGER, formatMessage("Wrote datagram (" + datagram.position() + " bytes, result " + result + ")"));
+
+			if( result < length ) {
+				_stats.increment(StatsEnum.WriteUnderflows);
+				if( Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO) )
+					Log.info(Log.FAC_NETMANAGER,
+							formatMessage("Wrote datagram {0} bytes to channel, but packet was {1} bytes"),
+							result,
+							length);
 			}
-		} catch (IOException io) {
-			_stats.increment(StatsEnum.WriteErrors);
 
-			// We do not see errors on send typically even if
-			// agent is gone, so log each but do not track
-			Log.warning(Log.FAC_NETMANAGER, formatMessage("Error sending packet: " + io.toString()));
+			if (null != _tapStreamOut) {
+				try {
+					_tapStreamOut.write(bytes, 0, length);
+				} catch (IOException io) {
+					Log.warning(Log.FAC_NETMANAGER, formatMessage("Unable to write packet to tap stream for debugging"));
+				}
+			}
 		}
 	}
 
+	private void writeFailed(IOException io) {
+		_stats.increment(StatsEnum.WriteErrors);
+
+		// We do not see errors on send typically even if
+		// agent is gone, so log each but do not track
+		Log.warning(Log.FAC_NETMANAGER, formatMessage("Error sending packet: " + io.toString()));
+	}
+
 	/**
 	 * Internal registration of interest to callback for matching data relationship.
 	 *
@@ -1317,12 +1635,29 @@ public class CCNNetworkManager implements Runnable {
 	protected void deliverContent(ContentObject co) {
 		_stats.increment(StatsEnum.DeliverContent);
 
+		boolean wanted = false;
 		for (InterestRegistration ireg : _myInterests.getValues(co)) {
 			_stats.increment(StatsEnum.DeliverContentMatchingInterests);
+			wanted = true;
 			long startTime = System.nanoTime();
+			long trace = ireg.interest.traceId();
+			long previousTrace = 0;
+			if (0 != trace) {
+				if (0 != ireg.expressTime)
+					Tracer.span(trace, Tracer.Stage.Wait, ireg.expressTime, ireg.interest.name());
+				previousTrace = Tracer.setCurrent(trace);
+			}
 			ireg.deliver(co);
 			_stats.addSample(StatsEnum.ContentHandlerTime, System.nanoTime() - startTime);
+			if (0 != trace) {
+				Tracer.setCurrent(previousTrace);
+				Tracer.span(trace, Tracer.Stage.Deliver, startTime, co.name());
+			}
 		}
+
+		// Share what we asked for with other readers in this process
+		if (wanted && null != _keyManager)
+			ContentCache.getCache().offer(co, _keyManager.getDefaultVerifier());
 	}
 
 	/**
@@ -1378,7 +1713,8 @@ public class CCNNetworkManager implements Runnable {
 	 * Reregister all current prefixes with ccnd after ccnd goes down and then comes back up
 	 * Since this is called internally from the network manager run loop, but it needs to make use of
 	 * the network manager to correctly process the reregistration, we run the reregistration in a
-	 * separate thread
+	 * separate thread. The prefixes are all reregistered in one pipelined batch, and the
+	 * registrations stay readable while we wait for ccnd.
 	 *
 	 * @throws IOException
 	 */
@@ -1386,20 +1722,29 @@ public class CCNNetworkManager implements Runnable {
 		new Thread() {
 			@Override
 			public void run() {
-				TreeMap<ContentName, RegisteredPrefix> newPrefixes = new TreeMap<ContentName, RegisteredPrefix>();
 				_registrationChangeInProgress.acquireUninterruptibly();
 				try {
+					ArrayList<ContentName> prefixes = new ArrayList<ContentName>(_registeredPrefixes.keySet());
+					if (prefixes.isEmpty())
+						return;
+					ForwardingEntry[] entries = _prefixMgr.selfRegisterPrefixes(prefixes, PrefixRegistrationManager.DEFAULT_SELF_REG_FLAGS);
 					synchronized (_registeredPrefixes) {
-						for (ContentName prefix : _registeredPrefixes.keySet()) {
-							ForwardingEntry entry = _prefixMgr.selfRegisterPrefix(prefix);
-							RegisteredPrefix newPrefixEntry = new RegisteredPrefix(entry);
-							newPrefixEntry._refCount = _registeredPrefixes.get(prefix)._refCount;
-							newPrefixes.put(prefix, newPrefixEntry);
+						for (int i = 0; i < prefixes.size(); i++) {
+							RegisteredPrefix oldPrefixEntry = _registeredPrefixes.get(prefixes.get(i));
+							if (null == entries[i] || null == oldPrefixEntry) {
+								Log.warning(Log.FAC_NETMANAGER, formatMessage("Could not reregister prefix {0}"), prefixes.get(i));
+								continue;
+							}
+							RegisteredPrefix newPrefixEntry = new RegisteredPrefix(entries[i]);
+							newPrefixEntry._refCount = oldPrefixEntry._refCount;
+							_registeredPrefixes.put(prefixes.get(i), newPrefixEntry);
 						}
-						_registeredPrefixes.clear();
-						_registeredPrefixes.putAll(newPrefixes);
 					}
-				} catch (CCNDaemonException cde) {}
+				} catch (CCNDaemonException cde) {
+					Log.warning(Log.FAC_NETMANAGER, formatMessage("Could not reregister prefixes: " + cde.getMessage()));
+				} finally {
+					_registrationChangeInProgress.release();
+				}
 			}
 		}.start();
 	}
@@ -1408,6 +1753,7 @@ public class CCNNetworkManager implements Runnable {
 	// Statistics
 
 	protected CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.Puts);
+	protected ObjectName _statsMBean = null;
 
 	public CCNStats getStats() {
 		return _stats;
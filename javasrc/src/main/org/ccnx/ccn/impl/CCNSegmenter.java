@@ -20,6 +20,7 @@ package org.ccnx.ccn.impl;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -31,6 +32,7 @@ import java.util.logging.Level;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
 
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.config.ConfigurationException;
@@ -512,6 +514,86 @@ public class CCNSegmenter {
 		return nextSegmentIndex;
 	}
 
+	/**
+	 * As fragmentedPut(ContentName, long, byte[], int, int, int, ...), but for content in a buffer,
+	 * such as a region of a memory-mapped file. Each segment's content is copied straight out
+	 * of the buffer into its ContentObject, so content doesn't have to be read into a byte array
+	 * first. The buffer's position is advanced past the content put.
+	 * @param name name prefix to use for the segments
+	 * @param baseSegmentNumber the segment number to start this batch with
+	 * @param content buffer whose remaining bytes are the content to put
+	 * @param blockWidth the segment size to use
+	 * @param type the type for the content
+	 * @param timestamp the timestamp for the content
+	 * @param freshnessSeconds the number of seconds this content should be considered fresh, or null
+	 * 			to leave unset
+	 * @param finalSegmentIndex the expected segment number of the last segment of this stream,
+	 * 				null to omit, Long(-1) to set as the last segment of this put, whatever
+	 * 				its number turns out to be
+	 * @param locator the key locator to use
+	 * @param publisher the publisher to use
+	 * @param keys the keys to use for encrypting this segment, or null if unencrypted. The
+	 *   specific Key/IV used for this segment will be obtained by calling keys.getSegmentEncryptionCipher().
+	 * @return returns the segment identifier for the next segment to be written, if any.
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 * @throws NoSuchAlgorithmException
+	 * @throws IOException
+	 * @throws InvalidAlgorithmParameterException
+	 */
+	public long fragmentedPut(
+			ContentName name, long baseSegmentNumber,
+			ByteBuffer content, int blockWidth,
+			ContentType type,
+			CCNTime timestamp,
+			Integer freshnessSeconds, Long finalSegmentIndex,
+			KeyLocator locator,
+			PublisherPublicKeyDigest publisher,
+			ContentKeys keys) throws InvalidKeyException,
+			SignatureException, IOException,
+			InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+
+		int length = content.remaining();
+		if (length == 0)
+			return baseSegmentNumber;
+
+		if (null == publisher) {
+			publisher = getFlowControl().getHandle().keyManager().getDefaultKeyID();
+		}
+		Key signingKey = getFlowControl().getHandle().keyManager().getSigningKey(publisher);
+
+		if (null == locator)
+			locator = getFlowControl().getHandle().keyManager().getKeyLocator(publisher);
+
+		ContentName rootName = SegmentationProfile.segmentRoot(name);
+		if (null == type) {
+			type = ContentType.DATA;
+		}
+
+		byte [] finalBlockID = null;
+		if (null != finalSegmentIndex) {
+			if (finalSegmentIndex.longValue() == CCNSegmenter.LAST_SEGMENT) {
+				int blockCount = CCNMerkleTree.blockCount(length, blockWidth);
+				finalBlockID = SegmentationProfile.getSegmentNumberNameComponent(
+						lastSegmentIndex(baseSegmentNumber, (blockCount-1)*blockWidth,
+								blockCount));
+			} else {
+				finalBlockID = SegmentationProfile.getSegmentNumberNameComponent(finalSegmentIndex);
+			}
+		}
+
+		long nextSegmentIndex =
+			buildBlocks(rootName, baseSegmentNumber,
+					new SignedInfo(publisher, timestamp, type, locator, freshnessSeconds, finalBlockID),
+					content, blockWidth, keys, signingKey, null != finalSegmentIndex);
+
+		if (_blocks.size() >= HOLD_COUNT || null != finalSegmentIndex) {
+			outputCurrentBlocks(signingKey);
+		}
+
+		return nextSegmentIndex;
+	}
+
 	public long fragmentedPut(
 			ContentName name, long baseSegmentNumber,
 			byte contentBlocks[][], int blockCount,
@@ -818,6 +900,61 @@ public class CCNSegmenter {
 		return nextSegmentIndex;
 	}
 
+	/**
+	 * Helper method to build ContentObjects for segments out of a buffer.
+	 * @see #buildBlocks(ContentName, long, SignedInfo, byte[], int, int, int, ContentKeys, Key, boolean)
+	 */
+	protected long buildBlocks(ContentName rootName,
+			long baseSegmentNumber, SignedInfo signedInfo,
+			ByteBuffer content, int blockWidth,
+			ContentKeys keys, Key signingKey, boolean finalFlush)
+	throws InvalidKeyException, InvalidAlgorithmParameterException, IOException, SignatureException, NoSuchAlgorithmException {
+
+		long nextSegmentIndex = baseSegmentNumber;
+		int end = content.limit();
+
+		while (content.hasRemaining()) {
+			content.limit(Math.min(end, content.position() + blockWidth));
+			ByteBuffer block = content;
+			if (null != keys) {
+				// Make a separate cipher, so this segmenter can be used by multiple callers at once.
+				Cipher thisCipher = keys.getSegmentEncryptionCipher(rootName, signedInfo.getPublisherKeyID(), nextSegmentIndex);
+				// TODO -- incurs an extra copy
+				block = ByteBuffer.allocate(thisCipher.getOutputSize(content.remaining()));
+				try {
+					thisCipher.doFinal(content, block);
+				} catch (IllegalBlockSizeException e) {
+					Log.warning("Unexpected IllegalBlockSizeException for an algorithm we have already used!");
+					throw new InvalidKeyException("Unexpected IllegalBlockSizeException for an algorithm we have already used!", e);
+				} catch (BadPaddingException e) {
+					Log.warning("Unexpected BadPaddingException for an algorithm we have already used!");
+					throw new InvalidAlgorithmParameterException("Unexpected BadPaddingException for an algorithm we have already used!", e);
+				} catch (ShortBufferException e) {
+					Log.warning("Unexpected ShortBufferException for an algorithm we have already used!");
+					throw new InvalidAlgorithmParameterException("Unexpected ShortBufferException for an algorithm we have already used!", e);
+				}
+				block.flip();
+				// Override content type to mark encryption, as in newBlock.
+				signedInfo.setType(ContentType.ENCR);
+			}
+			ContentObject co =
+				new ContentObject(
+						SegmentationProfile.segmentName(rootName, nextSegmentIndex),
+						signedInfo, block);
+			content.limit(end);
+			_blocks.add(co);
+			if (null == _firstSegment) {
+				_firstSegment = co;
+			}
+			nextSegmentIndex = nextSegmentIndex(nextSegmentIndex,
+					co.contentLength());
+			if (_blocks.size() >= HOLD_COUNT + 1 || finalFlush) {
+				outputCurrentBlocks(signingKey);
+			}
+		}
+		return nextSegmentIndex;
+	}
+
 	/**
 	 * Create a ContentObject, encrypt it if requested, and add it to the list of ContentObjects
 	 * awaiting signing and output to the flow controller. Also creates the segmented name for the CO.
@@ -18,6 +18,7 @@
 package org.ccnx.ccn.impl;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
 
@@ -54,6 +55,13 @@ import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
  * of the Enums.  If you call addSample(item, value), then the item "item" will be
  * tagged as an averaging stat and the toString() method will format it as such.
  * 
+ * Averaging counters also keep a histogram of their samples, so one can get percentiles
+ * such as the median and the 99th percentile as well as the average.  Samples are added
+ * without locking: the sums are kept in a StripedCounter and the histogram in a Histogram,
+ * both of which are defined below and may be used on their own.
+ * 
+ * Stats can be exported over JMX with CCNStatsMBean.
+ * 
  * Might want to add an EWMA type counter too.  I think we'll want to expand the
  * IStatsEnum to make it take a counter type argument.
  */
@@ -120,6 +128,32 @@ public abstract class CCNStats {
 	 */
 	public abstract double[] getAverageAndStdev(String name) throws IllegalArgumentException;
 
+	/**
+	 * Return a percentile of the samples of an averaging counter.  The value returned is
+	 * the largest value which would be counted in the same histogram bucket as the
+	 * sample at that percentile, but no more than the largest sample.
+	 * 
+	 * @param name
+	 * @param percentile between 0 and 100
+	 * @return the value, NaN if there are no samples or this kind of stats has no histograms
+	 * @throws IllegalArgumentException if name unrecognized
+	 */
+	public double getPercentile(String name, double percentile) throws IllegalArgumentException {
+		return Double.NaN;
+	}
+
+	public double getMedian(String name) throws IllegalArgumentException {
+		return getPercentile(name, 50.0);
+	}
+
+	public double get99thPercentile(String name) throws IllegalArgumentException {
+		return getPercentile(name, 99.0);
+	}
+
+	public double get999thPercentile(String name) throws IllegalArgumentException {
+		return getPercentile(name, 99.9);
+	}
+
 	/**
 	 * Return a text description of the units of the counter (e.g. packets, packets per second)
 	 * @param name
@@ -218,6 +252,12 @@ public abstract class CCNStats {
 			return _avgcounters[index].getAverageAndDeviation();
 		}
 
+		@Override
+		public double getPercentile(String name, double percentile) throws IllegalArgumentException {
+			int index = _resolver.getIndex(name);
+			return _avgcounters[index].getPercentile(percentile);
+		}
+
 		@Override
 		public String [] getCounterNames() {
 			return _resolver.getNames();
@@ -303,88 +343,256 @@ public abstract class CCNStats {
 		/**
 		 * This is used to track an averaging counter.
 		 * This is a thread-safe class, so will work like
-		 * the AtomicLong.
+		 * the AtomicLong, and adding a sample doesn't lock.
 		 * 
 		 * Returns the mean (sum/count) and sample standard
 		 * deviation.  The sample standard deviation is:
 		 * 
 		 * 1/(N-1) * Sum(x_i - mean)^2 = N/(N-1) * ( 1/N * sum^2 - mean^2)
+		 * 
+		 * Most counters are never used as averaging counters, so the sums
+		 * and histogram are only allocated when the first sample arrives.
 		 */
 		private static class AveragingCounter {
-			public AveragingCounter() {
-				clear();
+			private static final int COUNT = 0;
+			private static final int SUM = 1;
+			private static final int SUM2 = 2;
+
+			private static class Samples {
+				final StripedCounter _sums = new StripedCounter(3);
+				final Histogram _histogram = new Histogram();
 			}
-			
-			public synchronized void addSample(long sample) {
-				_sum += sample;
-				_sum2+= sample * sample;
-				_count++;
-				_dirty = true;
+
+			private volatile Samples _samples = null;
+
+			public void addSample(long sample) {
+				Samples samples = _samples;
+				if (null == samples)
+					samples = create();
+				samples._sums.add(COUNT, 1);
+				samples._sums.add(SUM, sample);
+				samples._sums.add(SUM2, sample * sample);
+				samples._histogram.record(sample);
 			}
-			
-			public synchronized void clear() {
-				_sum = 0;
-				_sum2= 0;
-				_count=0;
-				_dirty = true;
+
+			private synchronized Samples create() {
+				if (null == _samples)
+					_samples = new Samples();
+				return _samples;
 			}
-			
+
+			/**
+			 * Samples added while this runs may be lost
+			 */
+			public void clear() {
+				Samples samples = _samples;
+				if (null != samples) {
+					samples._sums.clear();
+					samples._histogram.clear();
+				}
+			}
+
 			/**
 			 * returns the [average, stdev] pair.  Both may be NaN if there
 			 * are not enough samples (need 1 for avg, 2 for stdev).
 			 */
-			public synchronized double[] getAverageAndDeviation() {
-				if(_dirty) {
-					calculate();
+			public double[] getAverageAndDeviation() {
+				double[] out = new double[]{Double.NaN, Double.NaN};
+				Samples samples = _samples;
+				if (null == samples)
+					return out;
+				long count = samples._sums.get(COUNT);
+				if( count > 0 ) {
+					out[0] = (double) samples._sums.get(SUM) / count;
+
+					if( count > 1 ) {
+						double inner = (double) samples._sums.get(SUM2) / count - (out[0] * out[0]);
+						double var = (double) count / (count - 1) * inner;
+						out[1] = Math.sqrt(var);
+					}
 				}
-				
-				// return a copy so values inside the array cannot be modified
-				double[] out = new double[2];
-				out[0] = _avg;
-				out[1] = _std;
 				return out;
 			}
 
-			public synchronized long getCount() {
-				return _count;
+			public double getPercentile(double percentile) {
+				Samples samples = _samples;
+				if (null == samples || samples._histogram.getCount() == 0)
+					return Double.NaN;
+				return samples._histogram.getValueAtPercentile(percentile);
 			}
-			
-			public synchronized String toString() {
-				if(_dirty) {
-					calculate();
-				}
-				
-				return _string;
+
+			public long getCount() {
+				Samples samples = _samples;
+				return null == samples ? 0 : samples._sums.get(COUNT);
 			}
-			
-			// ============================
-			private boolean _dirty = false;
-			private long _sum;
-			private long _sum2;
-			private long _count;
-			private double _avg, _std;
-			private String _string;
-			
-			// must be called in a synchronized method
-			private void calculate() {
-				_avg = Double.NaN;
-				_std = Double.NaN;
-				if( _count > 0 ) {
-					_avg = (double) _sum / _count;
-					
-					if( _count > 1 ) {
-						double inner = (double) _sum2 / _count - (_avg * _avg);
-						double var = _count/(_count-1) * inner ;
-						_std = Math.sqrt(var);
-					}
-				}
-				
-				_string = String.format("avg %.3g stdev %.3g", _avg, _std);
-				_dirty = false;
+
+			public String toString() {
+				double [] avgstd = getAverageAndDeviation();
+				return String.format("avg %.3g stdev %.3g p50 %.3g p99 %.3g p999 %.3g", avgstd[0], avgstd[1],
+						getPercentile(50.0), getPercentile(99.0), getPercentile(99.9));
 			}
 		}
 	}
 
+	/**
+	 * A group of counters which many threads can add to at once without locking and without
+	 * all writing to the same memory.  Each thread adds to one of several stripes, chosen by
+	 * its thread id, and reading a counter adds up the stripes.  A stripe holds all the values
+	 * so one thread updating several of them touches a single cache line.
+	 * 
+	 * Reads are not atomic with respect to adds, so values read together while other threads
+	 * are adding may not be consistent with each other.
+	 */
+	public static class StripedCounter {
+		// Spacing of stripes in longs, so no two stripes share a 64 byte cache line
+		protected static final int LINE = 8;
+		protected static final int STRIPES;
+
+		static {
+			int stripes = 1;
+			int processors = Runtime.getRuntime().availableProcessors();
+			while (stripes < processors && stripes < 64)
+				stripes <<= 1;
+			STRIPES = stripes;
+		}
+
+		protected final int _values;
+		protected final int _stride;
+		protected final AtomicLongArray _cells;
+
+		public StripedCounter() {
+			this(1);
+		}
+
+		/**
+		 * @param values the number of separate values to count
+		 */
+		public StripedCounter(int values) {
+			_values = values;
+			_stride = (values + LINE - 1) / LINE * LINE;
+			// One extra line at the start so the first stripe doesn't share with the array header
+			_cells = new AtomicLongArray(LINE + STRIPES * _stride);
+		}
+
+		protected int stripe() {
+			return LINE + (int)(Thread.currentThread().getId() & (STRIPES - 1)) * _stride;
+		}
+
+		public void add(long delta) {
+			add(0, delta);
+		}
+
+		public void add(int value, long delta) {
+			_cells.addAndGet(stripe() + value, delta);
+		}
+
+		public long get() {
+			return get(0);
+		}
+
+		public long get(int value) {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++)
+				sum += _cells.get(LINE + i * _stride + value);
+			return sum;
+		}
+
+		/**
+		 * Adds made at the same time may be lost
+		 */
+		public void clear() {
+			for (int i = 0; i < _cells.length(); i++)
+				_cells.set(i, 0);
+		}
+	}
+
+	/**
+	 * A histogram of non-negative long values with buckets spaced logarithmically, in the style
+	 * of HdrHistogram.  Values below 2^SUB_BUCKET_BITS each have a bucket; above that each power
+	 * of 2 is split into 2^SUB_BUCKET_BITS buckets, so a value is known to within about 3%
+	 * across the whole range.  Recording a value doesn't lock.  Negative values are counted as 0.
+	 */
+	public static class Histogram {
+		public static final int SUB_BUCKET_BITS = 5;
+		protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		protected static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+		protected final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+		protected final StripedCounter _count = new StripedCounter();
+		protected final AtomicLong _max = new AtomicLong(0);
+
+		protected static int bucket(long value) {
+			if (value < SUB_BUCKETS)
+				return value < 0 ? 0 : (int)value;
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int shift = exponent - SUB_BUCKET_BITS;
+			return (shift + 1) * SUB_BUCKETS + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+		}
+
+		/**
+		 * @return the largest value counted in a bucket
+		 */
+		protected static long highestValue(int bucket) {
+			if (bucket < SUB_BUCKETS)
+				return bucket;
+			int shift = bucket / SUB_BUCKETS - 1;
+			long base = SUB_BUCKETS + (bucket % SUB_BUCKETS);
+			return ((base + 1) << shift) - 1;
+		}
+
+		public void record(long value) {
+			_buckets.incrementAndGet(bucket(value));
+			_count.add(1);
+			long max = _max.get();
+			while (value > max && !_max.compareAndSet(max, value))
+				max = _max.get();
+		}
+
+		public long getCount() {
+			return _count.get();
+		}
+
+		public long getMax() {
+			return _max.get();
+		}
+
+		/**
+		 * @param percentile between 0 and 100
+		 * @return the highest value in the same bucket as the sample at that percentile, but
+		 * 	not more than the largest sample.  0 if there are no samples.
+		 */
+		public long getValueAtPercentile(double percentile) {
+			long total = 0;
+			long [] counts = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = _buckets.get(i);
+				total += counts[i];
+			}
+			if (total == 0)
+				return 0;
+			long target = (long)Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total);
+			if (target < 1)
+				target = 1;
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= target)
+					return Math.min(highestValue(i), getMax());
+			}
+			return getMax();
+		}
+
+		/**
+		 * Values recorded at the same time may be lost
+		 */
+		public void clear() {
+			for (int i = 0; i < BUCKETS; i++)
+				_buckets.set(i, 0);
+			_count.clear();
+			_max.set(0);
+		}
+	}
+
 	public static class ExampleClassWithStatistics implements CCNStatistics {
 		public enum MyStats implements IStatsEnum {
 			// =============================================
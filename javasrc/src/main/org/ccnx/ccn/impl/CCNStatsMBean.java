@@ -0,0 +1,179 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.support.Log;
+
+/**
+ * Makes a CCNStats readable over JMX.  Each counter is an attribute with the counter's name.
+ * Averaging counters also have attributes for their average and percentiles, named for example
+ * ContentHandlerTime.avg, ContentHandlerTime.p50, ContentHandlerTime.p99 and
+ * ContentHandlerTime.p999.  These appear once the counter has had a sample.
+ * The counters can be reset with the clearCounters operation.
+ *
+ * Stats are registered with the platform MBean server under the domain org.ccnx.ccn, using
+ * register() and unregister(), unless SystemConfiguration.EXPORT_STATS_MBEANS is false.
+ */
+public class CCNStatsMBean implements DynamicMBean {
+
+	public static final String DOMAIN = "org.ccnx.ccn";
+
+	public static final String AVERAGE_SUFFIX = ".avg";
+	public static final String [] PERCENTILE_SUFFIXES = new String[]{".p50", ".p99", ".p999"};
+	public static final double [] PERCENTILES = new double[]{50.0, 99.0, 99.9};
+
+	protected static final String CLEAR_OPERATION = "clearCounters";
+
+	protected final CCNStats _stats;
+	protected final String _description;
+
+	public CCNStatsMBean(CCNStats stats, String description) {
+		_stats = stats;
+		_description = description;
+	}
+
+	/**
+	 * Register stats with the platform MBean server
+	 * @param type the kind of object the stats are for, for example CCNNetworkManager
+	 * @param instance distinguishes objects of the same type
+	 * @param stats
+	 * @return the name registered, or null if the stats were not registered
+	 */
+	public static ObjectName register(String type, String instance, CCNStats stats) {
+		if (!SystemConfiguration.EXPORT_STATS_MBEANS)
+			return null;
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=" + ObjectName.quote(type) + ",name=" + ObjectName.quote(instance));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(new CCNStatsMBean(stats, type + " " + instance + " statistics"), name);
+			return name;
+		} catch (Exception e) {
+			Log.warning(Log.FAC_NETMANAGER, "Cannot register statistics for {0} {1}: {2}", type, instance, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Remove stats registered with register()
+	 * @param name the value returned by register, may be null
+	 */
+	public static void unregister(ObjectName name) {
+		if (null == name)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (InstanceNotFoundException e) {
+			// Already gone
+		} catch (Exception e) {
+			if (Log.isLoggable(Log.FAC_NETMANAGER, Level.INFO))
+				Log.info(Log.FAC_NETMANAGER, "Cannot unregister statistics {0}: {1}", name, e);
+		}
+	}
+
+	public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+		try {
+			if (attribute.endsWith(AVERAGE_SUFFIX))
+				return _stats.getAverageAndStdev(counter(attribute, AVERAGE_SUFFIX))[0];
+			for (int i = 0; i < PERCENTILE_SUFFIXES.length; i++) {
+				if (attribute.endsWith(PERCENTILE_SUFFIXES[i]))
+					return _stats.getPercentile(counter(attribute, PERCENTILE_SUFFIXES[i]), PERCENTILES[i]);
+			}
+			return _stats.getCounter(attribute);
+		} catch (IllegalArgumentException e) {
+			throw new AttributeNotFoundException(attribute);
+		}
+	}
+
+	protected String counter(String attribute, String suffix) {
+		return attribute.substring(0, attribute.length() - suffix.length());
+	}
+
+	public AttributeList getAttributes(String [] attributes) {
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (Exception e) {
+				// Left out, as the interface asks
+			}
+		}
+		return list;
+	}
+
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Statistics are read only: " + attribute.getName());
+	}
+
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	public Object invoke(String actionName, Object [] params, String [] signature) throws MBeanException, ReflectionException {
+		if (CLEAR_OPERATION.equals(actionName) && (null == params || params.length == 0)) {
+			_stats.clearCounters();
+			return null;
+		}
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	/**
+	 * Averaging counters are only known once they have a sample, so the attributes listed
+	 * can grow over time.
+	 */
+	public MBeanInfo getMBeanInfo() {
+		ArrayList<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (String name : _stats.getCounterNames()) {
+			String units = _stats.getCounterUnits(name);
+			if (_stats.isAveragingCounter(name)) {
+				attributes.add(new MBeanAttributeInfo(name + AVERAGE_SUFFIX, Double.class.getName(),
+						"Average (" + units + ")", true, false, false));
+				for (int i = 0; i < PERCENTILE_SUFFIXES.length; i++)
+					attributes.add(new MBeanAttributeInfo(name + PERCENTILE_SUFFIXES[i], Double.class.getName(),
+							PERCENTILES[i] + " percentile (" + units + ")", true, false, false));
+			} else {
+				attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), units, true, false, false));
+			}
+		}
+		MBeanOperationInfo clear = new MBeanOperationInfo(CLEAR_OPERATION, "Reset all counters to zero",
+				new MBeanParameterInfo[0], void.class.getName(), MBeanOperationInfo.ACTION);
+		return new MBeanInfo(getClass().getName(), _description,
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+				new MBeanOperationInfo[]{clear}, null);
+	}
+}
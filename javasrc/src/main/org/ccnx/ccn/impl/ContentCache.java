@@ -0,0 +1,399 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.ContentVerifier;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+
+/**
+ * A content store inside the JVM shared by every CCNHandle, so that readers of the same content in
+ * one process, or one reader coming back to it, don't each have to go back to ccnd for it.
+ * CCNHandle consults it in get() and expressInterest() before sending an interest, and the network
+ * manager offers it the content it receives in answer to our interests.
+ *
+ * Only content which verifies with the default verifier of the handle that received it is kept.
+ * Verification is done off the network manager's thread, so content becomes available to other
+ * readers shortly after it first arrives. Objects are kept for their freshness, or at most
+ * SystemConfiguration.CONTENT_CACHE_LIFETIME, and the least recently used are dropped to keep the
+ * content within SystemConfiguration.CONTENT_CACHE_SIZE bytes. Interests which don't allow answers
+ * from a content store, or want stale content, are never answered from here.
+ *
+ * Answers to expressInterest are delivered on another thread, as they would be from the network.
+ */
+public class ContentCache implements CCNStatistics {
+
+	// Don't let offered content pile up waiting to be verified if we can't keep up
+	public static final int MAX_PENDING_OFFERS = 1000;
+
+	protected static ContentCache _cache = null;
+
+	protected static class Entry {
+		final ContentObject _content;
+		final long _expires;
+
+		Entry(ContentObject content, long expires) {
+			_content = content;
+			_expires = expires;
+		}
+	}
+
+	protected static class Offer {
+		final ContentObject _content;
+		final ContentVerifier _verifier;
+
+		Offer(ContentObject content, ContentVerifier verifier) {
+			_content = content;
+			_verifier = verifier;
+		}
+	}
+
+	/**
+	 * An answer from the cache waiting to be delivered to a handler
+	 */
+	protected static class Delivery {
+		final ContentObject _content;
+		final Interest _interest;
+		final CCNContentHandler _handler;
+		final CCNHandle _handle;
+		boolean _cancelled = false;
+
+		Delivery(ContentObject content, Interest interest, CCNContentHandler handler, CCNHandle handle) {
+			_content = content;
+			_interest = interest;
+			_handler = handler;
+			_handle = handle;
+		}
+	}
+
+	protected final long _maxBytes;
+	protected final long _maxLifetime;
+
+	// Guarded by this
+	protected long _bytes = 0;
+	protected final TreeMap<ContentName, Entry> _byName = new TreeMap<ContentName, Entry>();
+	protected final LinkedHashMap<ContentName, Entry> _lru = new LinkedHashMap<ContentName, Entry>(16, 0.75f, true);
+	protected final ArrayList<Delivery> _deliveries = new ArrayList<Delivery>();
+
+	protected final AtomicInteger _pendingOffers = new AtomicInteger(0);
+
+	protected final QueuedContentHandler<Offer> _verifier = new QueuedContentHandler<Offer>() {
+		@Override
+		protected void process(Offer offer) {
+			_pendingOffers.decrementAndGet();
+			if (offer._verifier.verify(offer._content))
+				put(offer._content);
+			else
+				_stats.increment(StatsEnum.VerifyFailures);
+		}
+	};
+
+	protected final QueuedContentHandler<Delivery> _deliverer = new QueuedContentHandler<Delivery>() {
+		@Override
+		protected void process(Delivery delivery) {
+			deliver(delivery);
+		}
+	};
+
+	/**
+	 * @return the cache shared by the handles in this process, sized by SystemConfiguration
+	 */
+	public static synchronized ContentCache getCache() {
+		if (null == _cache)
+			_cache = new ContentCache(SystemConfiguration.CONTENT_CACHE_SIZE, SystemConfiguration.CONTENT_CACHE_LIFETIME);
+		return _cache;
+	}
+
+	/**
+	 * @param maxBytes how many bytes of content to keep, 0 or less to keep nothing
+	 * @param maxLifetime longest time in ms to keep anything
+	 */
+	public ContentCache(long maxBytes, long maxLifetime) {
+		_maxBytes = maxBytes;
+		_maxLifetime = maxLifetime;
+	}
+
+	public boolean isEnabled() {
+		return _maxBytes > 0 && _maxLifetime > 0;
+	}
+
+	/**
+	 * Offer content received from the network. It is verified on another thread and kept if it verifies.
+	 * @param co
+	 * @param verifier
+	 */
+	public void offer(ContentObject co, ContentVerifier verifier) {
+		if (!isEnabled() || null == verifier)
+			return;
+		if (_pendingOffers.incrementAndGet() > MAX_PENDING_OFFERS) {
+			_pendingOffers.decrementAndGet();
+			_stats.increment(StatsEnum.OffersDropped);
+			return;
+		}
+		_verifier.add(new Offer(co, verifier));
+	}
+
+	/**
+	 * Keep content which has already been verified
+	 * @param co
+	 */
+	public void put(ContentObject co) {
+		if (!isEnabled())
+			return;
+		long lifetime = _maxLifetime;
+		if (!co.signedInfo().emptyFreshnessSeconds())
+			lifetime = Math.min(lifetime, co.signedInfo().getFreshnessSeconds() * 1000L);
+		if (lifetime <= 0 || co.contentLength() > _maxBytes)
+			return;
+		Entry entry = new Entry(co, System.currentTimeMillis() + lifetime);
+		synchronized (this) {
+			Entry old = _byName.put(co.name(), entry);
+			if (null != old) {
+				_lru.remove(co.name());
+				_bytes -= old._content.contentLength();
+			}
+			_lru.put(co.name(), entry);
+			_bytes += co.contentLength();
+			_stats.increment(StatsEnum.Stored);
+			Iterator<Entry> it = _lru.values().iterator();
+			while (_bytes > _maxBytes && it.hasNext()) {
+				Entry eldest = it.next();
+				it.remove();
+				_byName.remove(eldest._content.name());
+				_bytes -= eldest._content.contentLength();
+				_stats.increment(StatsEnum.Evicted);
+			}
+		}
+	}
+
+	/**
+	 * Find content answering an interest, as a content store would: the leftmost match unless the
+	 * interest asks for the rightmost.
+	 * @param interest
+	 * @return the content or null if we don't have any
+	 */
+	public ContentObject get(Interest interest) {
+		if (!isEnabled())
+			return null;
+		if ((interest.answerOriginKind() & Interest.ANSWER_CONTENT_STORE) == 0
+				|| (interest.answerOriginKind() & Interest.ANSWER_STALE) != 0)
+			return null;
+		ContentName prefix = interest.name();
+		boolean rightmost = null != interest.childSelector() && (interest.childSelector() & Interest.CHILD_SELECTOR_RIGHT) != 0;
+		ContentObject result = null;
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			// An interest naming the digest of what it wants has a name one longer than the content's
+			if (prefix.count() > 0) {
+				Entry entry = _byName.get(prefix.parent());
+				if (null != entry && entry._expires > now && interest.matches(entry._content))
+					result = entry._content;
+			}
+			ContentName resultChild = null;
+			if (null == result) {
+				Iterator<Map.Entry<ContentName, Entry>> it = _byName.tailMap(prefix).entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<ContentName, Entry> e = it.next();
+					ContentName name = e.getKey();
+					if (!prefix.isPrefixOf(name))
+						break;
+					Entry entry = e.getValue();
+					if (entry._expires <= now) {
+						it.remove();
+						_lru.remove(name);
+						_bytes -= entry._content.contentLength();
+						_stats.increment(StatsEnum.Expired);
+						continue;
+					}
+					if (!interest.matches(entry._content))
+						continue;
+					if (!rightmost) {
+						result = entry._content;
+						break;
+					}
+					// The rightmost is the leftmost match under the greatest next component
+					ContentName child = name.cut(prefix.count() + 1);
+					if (null == resultChild || child.compareTo(resultChild) > 0) {
+						resultChild = child;
+						result = entry._content;
+					}
+				}
+			}
+			if (null != result) {
+				_lru.get(result.name());
+				_stats.increment(StatsEnum.Hits);
+				_stats.increment(StatsEnum.BytesSaved, result.contentLength());
+			} else {
+				_stats.increment(StatsEnum.Misses);
+			}
+		}
+		if (null != result && Log.isLoggable(Log.FAC_NETMANAGER, Level.FINER))
+			Log.finer(Log.FAC_NETMANAGER, "ContentCache: {0} answered from the cache by {1}", interest, result.name());
+		return result;
+	}
+
+	/**
+	 * Answer an interest from the cache if we can, delivering the content to the handler on
+	 * another thread. If the handler returns an interest it is expressed using handle.
+	 * @return true if we will deliver an answer, false if the interest must be sent
+	 */
+	public boolean expressInterest(Interest interest, CCNContentHandler handler, CCNHandle handle) {
+		ContentObject co = get(interest);
+		if (null == co)
+			return false;
+		Delivery delivery = new Delivery(co, interest, handler, handle);
+		synchronized (this) {
+			_deliveries.add(delivery);
+		}
+		_deliverer.add(delivery);
+		return true;
+	}
+
+	/**
+	 * Stop an answer from the cache which hasn't been delivered yet
+	 */
+	public void cancelInterest(Interest interest, CCNContentHandler handler) {
+		synchronized (this) {
+			if (_deliveries.isEmpty())
+				return;
+			for (Delivery delivery : _deliveries) {
+				if (delivery._interest == interest && delivery._handler == handler)
+					delivery._cancelled = true;
+			}
+		}
+	}
+
+	protected void deliver(Delivery delivery) {
+		synchronized (this) {
+			_deliveries.remove(delivery);
+			if (delivery._cancelled)
+				return;
+		}
+		try {
+			Interest next = delivery._handler.handleContent(delivery._content, delivery._interest);
+			if (null != next)
+				delivery._handle.expressInterest(next, delivery._handler);
+		} catch (IOException e) {
+			Log.warning(Log.FAC_NETMANAGER, "ContentCache: cannot express interest returned by handler: {0}", e.getMessage());
+		} catch (RuntimeException e) {
+			Log.warning(Log.FAC_NETMANAGER, "ContentCache: content handler failed: {0}", e.getMessage());
+			Log.warningStackTrace(e);
+		}
+	}
+
+	/**
+	 * Forget everything
+	 */
+	public synchronized void clear() {
+		_byName.clear();
+		_lru.clear();
+		_bytes = 0;
+	}
+
+	public synchronized long size() {
+		return _bytes;
+	}
+
+	// Statistics
+	protected CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	public CCNStats getStats() {
+		return _stats;
+	}
+
+	/**
+	 * @return the fraction of lookups answered from the cache
+	 */
+	public double getHitRate() {
+		long hits = _stats.getCounter(StatsEnum.Hits.toString());
+		long lookups = hits + _stats.getCounter(StatsEnum.Misses.toString());
+		return (lookups == 0) ? 0 : (double)hits / lookups;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("count", "Interests answered from the cache"),
+		Misses ("count", "Interests which had to be sent"),
+		BytesSaved ("bytes", "Content bytes answered from the cache"),
+		Stored ("count", "Objects stored"),
+		Evicted ("count", "Objects dropped to make room"),
+		Expired ("count", "Objects dropped because they were too old"),
+		VerifyFailures ("count", "Offered objects which failed to verify"),
+		OffersDropped ("count", "Offered objects dropped because verification was too far behind"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
@@ -193,6 +193,32 @@ public class InterestTable<V> {
 		add(holder);
 	}
 
+	/**
+	 * Add values associated with a batch of interests, taking the table's lock once
+	 *
+	 * @param interests	the interests
+	 * @param values	associated objects, one for each interest in the same order
+	 */
+	public void add(List<Interest> interests, List<V> values) {
+		if (interests.size() != values.size())
+			throw new IllegalArgumentException("InterestTable needs one value for each Interest");
+		ArrayList<Holder<V>> holders = new ArrayList<Holder<V>>(interests.size());
+		for (int i = 0; i < interests.size(); i++) {
+			Interest interest = interests.get(i);
+			if (null == interest) {
+				throw new NullPointerException("InterestTable may not contain null Interest");
+			}
+			if (null == interest.name()) {
+				throw new NullPointerException("InterestTable may not contain Interest with null name");
+			}
+			holders.add(new InterestHolder<V>(interest, values.get(i)));
+		}
+		synchronized (_contents) {
+			for (Holder<V> holder : holders)
+				add(holder);
+		}
+	}
+
 	/**
 	 * Add a value holder - could be interest or content
 	 *
@@ -341,6 +367,26 @@ public class InterestTable<V> {
 		return result;
 	}
 
+	/**
+	 * Remove the first exact match entry for each of a batch of interests, taking the
+	 * table's lock once
+	 *
+	 * @param interests	Interests to match
+	 * @param value		associated value
+	 * @return			the matching entries found
+	 */
+	public List<Entry<V>> remove(Collection<Interest> interests, V value) {
+		ArrayList<Entry<V>> results = new ArrayList<Entry<V>>(interests.size());
+		synchronized (_contents) {
+			for (Interest interest : interests) {
+				Entry<V> result = remove(interest, value);
+				if (null != result)
+					results.add(result);
+			}
+		}
+		return results;
+	}
+
 	/**
 	 * Remove first exact match entry (both interest and value match)
 	 *
@@ -19,48 +19,99 @@ package org.ccnx.ccn.impl;
 
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
 
 /**
  * Asynchronously process data from a ContentHandler in cases in which there may be a
  * processing delay in order to allow the netmanager thread to continue to fetch data.
- * A new processing thread is started only when necessary.
+ * The handler is scheduled on its executor only when it has work queued, and runs on
+ * at most one thread at a time, so items are processed in the order they were added.
+ *
+ * By default handlers share SystemConfiguration.getHandlerExecutor(). To share a bounded pool
+ * fairly, a handler gives up its thread after MAX_BATCH items and is scheduled again.
  */
 public abstract class QueuedContentHandler<E> implements Runnable {
+
+	/**
+	 * The most items processed before giving other handlers on the executor a turn
+	 */
+	public static final int MAX_BATCH = 64;
+
 	protected Queue<E> _queue = new ConcurrentLinkedQueue<E>();
-	protected boolean _isRunning = false;
+	protected final AtomicBoolean _isRunning = new AtomicBoolean(false);
+	protected final Executor _executor;
+	protected volatile long _scheduledTime;
+
+	public QueuedContentHandler() {
+		this(null);
+	}
+
+	/**
+	 * @param executor to process items on, or null to use SystemConfiguration.getHandlerExecutor()
+	 */
+	public QueuedContentHandler(Executor executor) {
+		_executor = executor;
+	}
 
 	/**
 	 * Add a content object to the queue for processing. If we aren't running a processing
-	 * thread right now, start one.
+	 * thread right now, schedule one.
 	 *
 	 * @param ci encapsulated data from a content handler
 	 */
 	public void add(E e) {
 		_queue.add(e);
-		synchronized (this) {
-			if (!_isRunning) {
-				_isRunning = true;
-				SystemConfiguration._systemThreadpool.execute(this);
-			}
-		}
+		_handlerStats.increment(HandlerStatsEnum.Added);
+		_handlerStats.increment(HandlerStatsEnum.QueueDepth);
+		if (_isRunning.compareAndSet(false, true))
+			schedule();
 	}
 
 	/**
 	 * Asynchronously dequeue and process data from a ContentHandler
 	 */
 	public void run() {
-		while (!checkShutdown()) {
-			E e = null;
-			e = _queue.poll();
-			synchronized (this) {
-				if (null == e) {
-					_isRunning = false;
+		_handlerStats.addSample(HandlerStatsEnum.SchedulingDelay, System.nanoTime() - _scheduledTime);
+		for (int processed = 0; processed < MAX_BATCH; processed++) {
+			if (checkShutdown())
+				return;
+			E e = _queue.poll();
+			if (null == e) {
+				_isRunning.set(false);
+				// Something may have been added after the poll but before we stopped running
+				if (_queue.isEmpty() || !_isRunning.compareAndSet(false, true))
 					return;
-				}
+				continue;
 			}
+			_handlerStats.increment(HandlerStatsEnum.QueueDepth, -1);
 			process(e);
+			_handlerStats.increment(HandlerStatsEnum.Processed);
+		}
+		schedule();
+	}
+
+	/**
+	 * @return the number of items waiting to be processed. This counts the queue so
+	 * 	isn't constant time.
+	 */
+	public int queueDepth() {
+		return _queue.size();
+	}
+
+	protected void schedule() {
+		_handlerStats.increment(HandlerStatsEnum.Scheduled);
+		_scheduledTime = System.nanoTime();
+		try {
+			(null == _executor ? SystemConfiguration.getHandlerExecutor() : _executor).execute(this);
+		} catch (RejectedExecutionException ree) {
+			_isRunning.set(false);
+			throw ree;
 		}
 	}
 
@@ -79,4 +130,69 @@ public abstract class QueuedContentHandler<E> implements Runnable {
 	 * @param interest - the Interest
 	 */
 	protected abstract void process(E e);
+
+	// ==============================================================
+	// Statistics, shared by all handlers
+
+	protected static final CCNEnumStats<HandlerStatsEnum> _handlerStats = new CCNEnumStats<HandlerStatsEnum>(HandlerStatsEnum.Added);
+
+	static {
+		CCNStatsMBean.register("QueuedContentHandler", "all", _handlerStats);
+	}
+
+	public static CCNStats getStats() {
+		return _handlerStats;
+	}
+
+	public enum HandlerStatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Added ("items", "The number of items added to handler queues"),
+		Processed ("items", "The number of items processed"),
+		QueueDepth ("items", "The number of items waiting in handler queues"),
+		Scheduled ("calls", "The number of times a handler was scheduled on its executor"),
+		SchedulingDelay ("nanos", "The average time between scheduling a handler and it starting to run"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[HandlerStatsEnum.values().length];
+			for(HandlerStatsEnum stat : HandlerStatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		HandlerStatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return HandlerStatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			HandlerStatsEnum x = HandlerStatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return HandlerStatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return HandlerStatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
 }
@@ -0,0 +1,215 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.ccnx.ccn.impl.support.DataUtils;
+import org.ccnx.ccn.io.content.ContentEncodingException;
+
+/**
+ * A growable, unsynchronized buffer holding ccnb, with the element writers the protocol
+ * objects need to encode themselves directly, without going through an XMLEncoder.
+ * The bytes written are the same as BinaryXMLEncoder would write for the same calls;
+ * only tags from the dictionary (longs) are supported.
+ *
+ * @see GenericXMLEncodable#encodeBinary(BinaryXMLBuffer)
+ */
+public class BinaryXMLBuffer extends OutputStream {
+
+	public static final int DEFAULT_SIZE = 256;
+
+	protected byte [] _buffer;
+	protected int _count = 0;
+
+	public BinaryXMLBuffer() {
+		this(DEFAULT_SIZE);
+	}
+
+	public BinaryXMLBuffer(int size) {
+		_buffer = new byte[Math.max(16, size)];
+	}
+
+	protected void ensure(int more) {
+		int needed = _count + more;
+		if (needed > _buffer.length) {
+			byte [] buffer = new byte[Math.max(needed, _buffer.length << 1)];
+			System.arraycopy(_buffer, 0, buffer, 0, _count);
+			_buffer = buffer;
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		ensure(1);
+		_buffer[_count++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte [] b, int off, int len) {
+		ensure(len);
+		System.arraycopy(b, off, _buffer, _count, len);
+		_count += len;
+	}
+
+	@Override
+	public void write(byte [] b) {
+		write(b, 0, b.length);
+	}
+
+	/**
+	 * @see BinaryXMLCodec#encodeTypeAndVal(int, long, byte[], int)
+	 */
+	public void writeTypeAndVal(int type, long value) {
+		ensure(BinaryXMLCodec.numEncodingBytes(value));
+		_count += BinaryXMLCodec.encodeTypeAndVal(type, value, _buffer, _count);
+	}
+
+	public void writeStartElement(long tag) {
+		writeTypeAndVal(BinaryXMLCodec.XML_DTAG, tag);
+	}
+
+	public void writeEndElement() {
+		write(BinaryXMLCodec.XML_CLOSE);
+	}
+
+	/**
+	 * Like BinaryXMLCodec.encodeBlob, a 0-length blob is elided.
+	 */
+	public void writeBlob(byte [] blob, int offset, int length) {
+		if ((null == blob) || (length == 0))
+			return;
+		writeTypeAndVal(BinaryXMLCodec.XML_BLOB, length);
+		write(blob, offset, length);
+	}
+
+	public void writeElement(long tag, byte [] blob) {
+		writeElement(tag, blob, 0, (null == blob) ? 0 : blob.length);
+	}
+
+	public void writeElement(long tag, byte [] blob, int offset, int length) {
+		writeStartElement(tag);
+		writeBlob(blob, offset, length);
+		writeEndElement();
+	}
+
+	/**
+	 * Read a blob left unread by a decoder straight into the buffer.
+	 */
+	public void writeElement(long tag, LazyBlob blob) throws ContentEncodingException {
+		writeStartElement(tag);
+		int length = blob.length();
+		if (length > 0) {
+			writeTypeAndVal(BinaryXMLCodec.XML_BLOB, length);
+			ensure(length);
+			try {
+				blob.read(_buffer, _count);
+			} catch (IOException e) {
+				throw new ContentEncodingException("Cannot read blob: " + e.getMessage(), e);
+			}
+			_count += length;
+		}
+		writeEndElement();
+	}
+
+	/**
+	 * Like BinaryXMLCodec.encodeUString, a 0-length string is elided.
+	 */
+	public void writeElement(long tag, String utf8Content) {
+		writeStartElement(tag);
+		if ((null != utf8Content) && (utf8Content.length() > 0)) {
+			byte [] bytes = DataUtils.getBytesFromUTF8String(utf8Content);
+			writeTypeAndVal(BinaryXMLCodec.XML_UDATA, bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+		writeEndElement();
+	}
+
+	/**
+	 * Numbers are written as their decimal string, as GenericXMLEncoder does, but without
+	 * making the string.
+	 */
+	public void writeElement(long tag, long value) {
+		if (value < 0) {
+			writeElement(tag, Long.toString(value));
+			return;
+		}
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10)
+			digits++;
+		writeStartElement(tag);
+		writeTypeAndVal(BinaryXMLCodec.XML_UDATA, digits);
+		ensure(digits);
+		for (int i = _count + digits - 1; i >= _count; i--) {
+			_buffer[i] = (byte)('0' + (value % 10));
+			value /= 10;
+		}
+		_count += digits;
+		writeEndElement();
+	}
+
+	/**
+	 * Encode an object into this buffer, directly if its class writes itself with
+	 * encodeBinary, otherwise through a BinaryXMLEncoder.
+	 */
+	public void writeEncodable(XMLEncodable encodable) throws ContentEncodingException {
+		if ((encodable instanceof GenericXMLEncodable) &&
+				GenericXMLEncodable.encodesBinaryDirectly(encodable.getClass())) {
+			((GenericXMLEncodable)encodable).encodeBinary(this);
+		} else {
+			writeWithEncoder(encodable);
+		}
+	}
+
+	public void writeWithEncoder(XMLEncodable encodable) throws ContentEncodingException {
+		BinaryXMLEncoder encoder = new BinaryXMLEncoder();
+		encoder.beginEncoding(this);
+		encodable.encode(encoder);
+	}
+
+	public int size() {
+		return _count;
+	}
+
+	public void reset() {
+		_count = 0;
+	}
+
+	/**
+	 * @return the buffer holding the encoding, valid up to size()
+	 */
+	public byte [] buffer() {
+		return _buffer;
+	}
+
+	public byte [] toByteArray() {
+		byte [] bytes = new byte[_count];
+		System.arraycopy(_buffer, 0, bytes, 0, _count);
+		return bytes;
+	}
+
+	public void writeTo(OutputStream ostream) throws ContentEncodingException {
+		try {
+			ostream.write(_buffer, 0, _count);
+			ostream.flush();
+		} catch (IOException e) {
+			throw new ContentEncodingException(e.getMessage(), e);
+		}
+	}
+}
@@ -153,9 +153,9 @@ public final class BinaryXMLCodec implements XMLCodec {
 	 * @param buf the buffer to encode into
 	 * @param offset the offset into buf at which to start encoding
 	 * @return the number of bytes used to encode.
-	 * @deprecated Use encodeTypeAndVal(final int type, final long value, final OutputStream ostream)
+	 * @see BinaryXMLBuffer#writeTypeAndVal(int, long), which encodes with this.
+	 * 	To encode to a stream use encodeTypeAndVal(final int type, final long value, final OutputStream ostream)
 	 */
-	@Deprecated
 	public static int encodeTypeAndVal(int type, long val, byte [] buf, int offset) {
 		
 		if ((type > XML_UDATA) || (type < 0) || (val < 0)) {
@@ -342,6 +342,89 @@ public final class BinaryXMLCodec implements XMLCodec {
 		return tv;
 	}
 		
+	/**
+	 * Reads past one complete element, without decoding it. Only the type and value
+	 * headers are looked at; tag names, attributes and content are skipped. This is much
+	 * cheaper than decoding, and can be used to find where each of a sequence of
+	 * elements in a stream starts.
+	 * @param istream stream to read from, positioned at the start of an element
+	 * @return the length of the element in bytes, or 0 if the stream was already at its end
+	 * @throws IOException if the stream cannot be read, or does not hold a complete,
+	 * 	well formed element
+	 */
+	public static long skipElement(InputStream istream) throws IOException {
+		long length = 0;
+		int depth = 0;
+		do {
+			int next = istream.read();
+			if (next < 0) {
+				if (0 == length)
+					return 0;
+				throw new IOException("Unexpected end of stream after " + length + " bytes of element");
+			}
+			length++;
+
+			// A leading 0 is an end marker, as in decodeTypeAndVal
+			if (0 == next) {
+				if (0 == depth)
+					throw new IOException("Unexpected element close");
+				depth--;
+				continue;
+			}
+
+			long val = 0;
+			while (0 == (next & XML_TT_NO_MORE)) {
+				if (val > (Long.MAX_VALUE >>> (XML_REG_VAL_BITS + XML_TT_VAL_BITS)))
+					throw new IOException("Type and value too long after " + length + " bytes of element");
+				val = (val << XML_REG_VAL_BITS) | (next & XML_REG_VAL_MASK);
+				next = istream.read();
+				if (next < 0)
+					throw new IOException("Unexpected end of stream after " + length + " bytes of element");
+				length++;
+			}
+			int type = next & XML_TT_MASK;
+			val = (val << XML_TT_VAL_BITS) | ((next >>> XML_TT_BITS) & XML_TT_VAL_MASK);
+
+			if (0 == depth && XML_DTAG != type && XML_TAG != type)
+				throw new IOException("Expected the start of an element, got type " + type);
+			switch (type) {
+			case XML_DTAG:
+				depth++;
+				break;
+			case XML_TAG:
+				length += skipBytes(istream, val + 1);
+				depth++;
+				break;
+			case XML_ATTR:
+				length += skipBytes(istream, val + 1); // its value follows as UDATA
+				break;
+			case XML_DATTR:
+				break;
+			case XML_BLOB:
+			case XML_UDATA:
+				length += skipBytes(istream, val);
+				break;
+			default:
+				throw new IOException("Unexpected type " + type + " after " + length + " bytes of element");
+			}
+		} while (depth > 0);
+		return length;
+	}
+
+	private static long skipBytes(InputStream istream, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			long skipped = istream.skip(remaining);
+			if (skipped <= 0) {
+				if (istream.read() < 0)
+					throw new IOException("Unexpected end of stream skipping " + count + " bytes");
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+		return count;
+	}
+
 	/**
 	 * Helper method, return the number of significant bits of x.
          *
@@ -377,6 +460,38 @@ public final class BinaryXMLCodec implements XMLCodec {
 		return (numbytes);
 	}
 	
+	/**
+	 * Number of bytes in the encoding of a start element for a dictionary tag
+	 * @param tag the dictionary tag
+	 * @return encoded length
+	 */
+	public static int encodedDTagLength(long tag) {
+		return numEncodingBytes(tag);
+	}
+	
+	/**
+	 * Number of bytes in the encoding of a binary blob, including its type and length
+	 * marker. As in encodeBlob, a 0 length blob is elided entirely.
+	 * @param length the number of bytes of binary content
+	 * @return encoded length
+	 */
+	public static int encodedBlobLength(int length) {
+		if (0 == length)
+			return 0;
+		return numEncodingBytes(length) + length;
+	}
+	
+	/**
+	 * Number of bytes in the encoding of a dictionary tagged element containing only binary
+	 * content, i.e. as written by XMLEncoder#writeElement(long, byte[]).
+	 * @param tag the dictionary tag
+	 * @param length the number of bytes of binary content
+	 * @return encoded length
+	 */
+	public static int encodedBinaryElementLength(long tag, int length) {
+		return encodedDTagLength(tag) + encodedBlobLength(length) + 1;
+	}
+	
 	/**
 	 * Decodes a binary blob (encoded binary content) from an InputStream.
 	 * Expects to read a XML_BLOB type marker, and then the data. Has to peek
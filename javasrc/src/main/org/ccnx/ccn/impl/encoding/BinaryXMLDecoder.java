@@ -126,6 +126,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		_elements_type = new byte[_currentElements];
 		_elements_value = new int[_currentElements];
 		_elements_blob = new byte[_currentElements][];
+		_elements_lazy = (null == _lazySource) ? null : new LazyBlob[_currentElements];
 
 		try {
 			setupForDecoding(istream);
@@ -182,7 +183,10 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 			}
 
 			if( type  == BinaryXMLCodec.XML_BLOB || type == BinaryXMLCodec.XML_UDATA ) {
+				if (null != _elements_blob[index])
 					readBlob(istream, _elements_blob[index]);
+				else
+					skipBlob(istream, index);
 			}
 		} while(opentags > 0);
 
@@ -224,6 +228,13 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private byte [] _elements_type;
 	private int [] _elements_value;
 	private byte [][] _elements_blob;
+	private LazyBlob [] _elements_lazy = null;
+
+	// Blobs at least this long are skipped, when there is a source to read them from later
+	private int _lazyThreshold = Integer.MAX_VALUE;
+	private LazyBlob.Source _lazySource = null;
+	// Bytes read since decoding started, to find skipped blobs. Not kept up to date by resync.
+	private long _position = 0;
 
 	// BLOB and UDATA now go in their own buffers, so don't really need the full BLOCKSIZE
 
@@ -238,6 +249,38 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 	private void initialize() {
 		_elementCount = 0;
 		_parsingElement = 0;
+		_position = 0;
+	}
+
+	/**
+	 * Leave blobs of at least threshold bytes unread while decoding. They are read from
+	 * source when asked for with readBinaryElement, or can be had unread with
+	 * readLazyBinaryElement.
+	 * @param threshold the smallest blob to leave unread
+	 * @param source where the blobs can be read later, null to read all blobs while decoding
+	 */
+	public void setLazyBlobs(int threshold, LazyBlob.Source source) {
+		_lazyThreshold = Math.max(1, threshold);
+		_lazySource = source;
+	}
+
+	/**
+	 * Skip over a blob, remembering where it was
+	 */
+	private void skipBlob(final InputStream istream, final int index) throws IOException {
+		int length = _elements_value[index];
+		_elements_lazy[index] = _lazySource.blob(_position, length);
+		long remaining = length;
+		while (remaining > 0) {
+			long skipped = istream.skip(remaining);
+			if (skipped <= 0) {
+				if (istream.read() < 0)
+					throw new IOException("Unexpected EOF");
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+		_position += length;
 	}
 
 	/**
@@ -261,6 +304,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 				throw new IOException(e.getMessage());
 			}
 		} while(read < buffer.length);
+		_position += read;
 
 		// now advance the buffers position
 //		_buffer.position(offset + read);
@@ -280,6 +324,7 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		int next;
 		boolean more = false;
 		while( (next = istream.read()) > -1 ) {
+			_position++;
 
 			// detect the CLOSE marker
 			if( !more && (0 == next) ) {
@@ -314,7 +359,8 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		if( typ == BinaryXMLCodec.XML_BLOB || typ == BinaryXMLCodec.XML_UDATA ) {
 			if (val < 0 || val > CCNNetworkManager.MAX_PAYLOAD)
 				throw new ContentDecodingException("Invalid blob size: " + val);
-			buffer = new byte[(int) val];
+			if (typ != BinaryXMLCodec.XML_BLOB || null == _lazySource || val < _lazyThreshold)
+				buffer = new byte[(int) val];
 		}
 
 //		System.out.println(String.format("Decode tag 0x%02x value 0x%02x pos %d", typ, val, pos));
@@ -348,12 +394,19 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 			byte[][] newBlobs = new byte[_currentElements][];
 			System.arraycopy(_elements_blob, 0, newBlobs, 0, prevElements);
 			_elements_blob = newBlobs;
+			if (null != _elements_lazy) {
+				LazyBlob [] newLazy = new LazyBlob[_currentElements];
+				System.arraycopy(_elements_lazy, 0, newLazy, 0, prevElements);
+				_elements_lazy = newLazy;
+			}
 			_elements_type[index] = typ;
 			if (Log.isLoggable(Log.FAC_ENCODING, Level.INFO))
 				Log.info(Log.FAC_ENCODING, "Reset decode array sizes to {0}", _currentElements);
 		}
 		_elements_value[index] = val;
 		_elements_blob[index]  = buffer;
+		if (null != _elements_lazy)
+			_elements_lazy[index] = null;
 	}
 
 	/**
@@ -395,9 +448,13 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		if (type == BinaryXMLCodec.XML_BLOB) {
 			for (int i = _elementCount; i > _parsingElement; i--) {
 				setElement(i, _elements_type[i - 1], _elements_value[i - 1], _elements_blob[i - 1]);
+				if (null != _elements_lazy)
+					_elements_lazy[i] = _elements_lazy[i - 1];
 			}
 			_elementCount++;
 			_elements_blob[_parsingElement] = new byte[0];
+			if (null != _elements_lazy)
+				_elements_lazy[_parsingElement] = null;
 			_elements_type[_parsingElement] = type;
 			return;
 		}
@@ -472,6 +529,14 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 //				type, elem.position, elem.value, _bytes.length);
 
 		final byte [] buffer = _elements_blob[index];
+		if (null == buffer) {
+			// Left unread, but the caller wants it now
+			try {
+				return _elements_lazy[index].read();
+			} catch (IOException e) {
+				throw new ContentDecodingException("Cannot read blob: " + e.getMessage(), e);
+			}
+		}
 
 		return buffer;
 	}
@@ -495,6 +560,21 @@ public final class BinaryXMLDecoder extends GenericXMLDecoder implements XMLDeco
 		return readBlob();
 	}
 
+	/**
+	 * Advances the parser by 3 elements (start tag, blob, end tag) if the blob was left unread
+	 */
+	@Override
+	public final LazyBlob readLazyBinaryElement(long startTag) throws ContentDecodingException {
+		int blob = _parsingElement + 1;
+		if (null == _elements_lazy || blob >= _elementCount || null == _elements_lazy[blob] ||
+				!peekStartElement(startTag))
+			return null;
+		readStartElement(startTag);
+		advanceParser();
+		readEndElement();
+		return _elements_lazy[blob];
+	}
+
 	public final byte [] readBlob() throws ContentDecodingException {
 		return readBinary(BinaryXMLCodec.XML_BLOB);
 	}
@@ -122,6 +122,13 @@ public abstract class GenericXMLDecoder extends GenericXMLHandler implements XML
 		return readBinaryElement(startTag, null);
 	}
 
+	/**
+	 * Only the binary decoder leaves blobs unread.
+	 */
+	public LazyBlob readLazyBinaryElement(long startTag) throws ContentDecodingException {
+		return null;
+	}
+
 	/**
 	 * Expect a start tag (label), optional attributes, a BLOB, and an end element.
 	 * Force low-level readers to all consume the end element, to get behavior
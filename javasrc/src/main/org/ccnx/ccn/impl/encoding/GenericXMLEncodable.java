@@ -21,6 +21,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentDecodingException;
@@ -55,6 +56,9 @@ public abstract class GenericXMLEncodable implements XMLEncodable {
 	 * first, and then call decode(InputStream) or decode(ByteBuffer).
 	 */
 	protected GenericXMLEncodable() {}
+
+	protected static final ConcurrentHashMap<Class<?>, Boolean> _encodesBinaryDirectly =
+		new ConcurrentHashMap<Class<?>, Boolean>();
 	
  	public void decode(InputStream istream) throws ContentDecodingException {
  		decode(istream, null);
@@ -88,6 +92,12 @@ public abstract class GenericXMLEncodable implements XMLEncodable {
 	}
 
 	public void encode(OutputStream ostream, String codec) throws ContentEncodingException {
+		if (XMLCodecFactory.useDirectBinaryEncoding(codec)) {
+			BinaryXMLBuffer buffer = new BinaryXMLBuffer();
+			buffer.writeEncodable(this);
+			buffer.writeTo(ostream);
+			return;
+		}
 		XMLEncoder encoder = XMLCodecFactory.getEncoder(codec);
 		encoder.beginEncoding(ostream);
 		encode(encoder);
@@ -99,10 +109,52 @@ public abstract class GenericXMLEncodable implements XMLEncodable {
 	}
 	
 	public byte [] encode(String codec) throws ContentEncodingException {
+		if (XMLCodecFactory.useDirectBinaryEncoding(codec)) {
+			BinaryXMLBuffer buffer = new BinaryXMLBuffer();
+			buffer.writeEncodable(this);
+			return buffer.toByteArray();
+		}
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		encode(baos, codec);
 		return baos.toByteArray();
 	}
+	
+	/**
+	 * Write the ccnb encoding of this object to a buffer. This is what encode() uses for the
+	 * binary codec; the default hands the buffer to encode(XMLEncoder) through a BinaryXMLEncoder.
+	 * Classes encoded often write themselves directly instead, and must write the same
+	 * bytes as encode(XMLEncoder). Callers should use BinaryXMLBuffer.writeEncodable, so
+	 * that a subclass which changes encode(XMLEncoder) but not this is still encoded correctly.
+	 */
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		buffer.writeWithEncoder(this);
+	}
+
+	/**
+	 * @return true if the encodeBinary used by a class is at least as specific as its
+	 * 	encode(XMLEncoder), so encodeBinary writes what the class means to write.
+	 */
+	public static boolean encodesBinaryDirectly(Class<?> encodableClass) {
+		Boolean direct = _encodesBinaryDirectly.get(encodableClass);
+		if (null == direct) {
+			try {
+				Class<?> encoder = encodableClass.getMethod("encode", XMLEncoder.class).getDeclaringClass();
+				Class<?> binary = encodableClass.getMethod("encodeBinary", BinaryXMLBuffer.class).getDeclaringClass();
+				direct = encoder.isAssignableFrom(binary);
+			} catch (NoSuchMethodException e) {
+				direct = false;
+			}
+			_encodesBinaryDirectly.put(encodableClass, direct);
+		}
+		return direct;
+	}
+
+	/**
+	 * Default implementation measures by encoding; subclasses can do better.
+	 */
+	public int encodedLength() throws ContentEncodingException {
+		return encode(BinaryXMLCodec.codecName()).length;
+	}
 
 	/**
 	 * Default toString() implementation simply prints the text encoding of the
@@ -0,0 +1,77 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.encoding;
+
+import java.io.IOException;
+
+/**
+ * A blob which was skipped over while decoding, and can be read from where it was
+ * stored when it's needed.
+ *
+ * A BinaryXMLDecoder given a Source with setLazyBlobs() doesn't read blobs over a size
+ * threshold; it asks the Source for a LazyBlob describing where the blob is instead. Callers
+ * get it with XMLDecoder.readLazyBinaryElement(), or the bytes are read for them if they
+ * use readBinaryElement() as usual.
+ */
+public abstract class LazyBlob {
+
+	/**
+	 * Describes where the blobs of a decoding can be read from later
+	 */
+	public interface Source {
+		/**
+		 * @param offset the offset of the blob from where decoding started
+		 * @param length the length of the blob
+		 */
+		public LazyBlob blob(long offset, int length);
+	}
+
+	/**
+	 * Thrown by accessors which can't throw IOException, such as ContentObject.content(),
+	 * when a blob can't be read from where it was stored.
+	 */
+	public static class UnreadableBlobException extends RuntimeException {
+		private static final long serialVersionUID = -3407524658447106412L;
+
+		public UnreadableBlobException(String message, IOException cause) {
+			super(message, cause);
+		}
+	}
+
+	protected final int _length;
+
+	protected LazyBlob(int length) {
+		_length = length;
+	}
+
+	public int length() {
+		return _length;
+	}
+
+	/**
+	 * Read the whole blob into a buffer
+	 * @param buffer must have room for length() bytes from offset
+	 */
+	public abstract void read(byte [] buffer, int offset) throws IOException;
+
+	public byte [] read() throws IOException {
+		byte [] blob = new byte[_length];
+		read(blob, 0);
+		return blob;
+	}
+}
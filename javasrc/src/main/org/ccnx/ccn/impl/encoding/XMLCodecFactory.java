@@ -26,10 +26,22 @@ import org.ccnx.ccn.impl.support.Log;
 /**
  * Factory class that given a string codec name, returns the XMLEncoder and XMLDecoder
  * that handle that codec. Allows new codecs to be registered on the fly for extensibility.
+ *
+ * When the binary codec is asked for and BinaryXMLEncoder is still the encoder registered for
+ * it, objects are encoded straight into a BinaryXMLBuffer instead of through an encoder (see
+ * GenericXMLEncodable#encodeBinary). This produces the same bytes and can be turned off with
+ * setDirectBinaryEncoding(), or the system property org.ccnx.ccn.DirectBinaryEncoding or
+ * environment variable CCNX_DIRECT_BINARY_ENCODING set to false.
  */
 public class XMLCodecFactory {
 
+	public static final String DIRECT_BINARY_ENCODING_PROPERTY = "org.ccnx.ccn.DirectBinaryEncoding";
+	public static final String DIRECT_BINARY_ENCODING_ENV_VAR = "CCNX_DIRECT_BINARY_ENCODING";
+
 	protected static String _defaultCodec = null;
+	protected static volatile boolean _directBinaryEncoding =
+		Boolean.parseBoolean(SystemConfiguration.retrievePropertyOrEnvironmentVariable(
+				DIRECT_BINARY_ENCODING_PROPERTY, DIRECT_BINARY_ENCODING_ENV_VAR, "true"));
 
 	static {
 		// Make sure this happens before any registrations
@@ -146,6 +158,23 @@ public class XMLCodecFactory {
 		return decoder;
 	}
 
+	public static void setDirectBinaryEncoding(boolean direct) {
+		_directBinaryEncoding = direct;
+	}
+
+	/**
+	 * @param codecName the codec asked for, null for the default
+	 * @return true if encoding with this codec can be done with GenericXMLEncodable#encodeBinary
+	 */
+	public static boolean useDirectBinaryEncoding(String codecName) {
+		if (!_directBinaryEncoding)
+			return false;
+		if (null == codecName)
+			codecName = getDefaultCodecName();
+		return BinaryXMLCodec.codecName().equals(codecName) &&
+			(BinaryXMLEncoder.class == _registeredEncoders.get(codecName));
+	}
+
 	public static Class<? extends XMLEncoder> getEncoderClass(String codecName) {
 		if (null == codecName)
 			return getDefaultEncoderClass();
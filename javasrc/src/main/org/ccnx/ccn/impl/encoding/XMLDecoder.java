@@ -214,6 +214,16 @@ public interface XMLDecoder {
 	 * 		decoding the element
 	 */
 	public byte [] readBinaryElement(long startTag) throws ContentDecodingException;
+
+	/**
+	 * Read a binary element whose blob the decoder left unread, because it was set up to leave
+	 * large blobs where they are stored (see LazyBlob).
+	 * @param startTag expected start tag
+	 * @return the unread blob, or null if the next element is not startTag with an unread blob,
+	 * 		in which case nothing is consumed and readBinaryElement should be used
+	 * @throws ContentDecodingException if there is an error decoding the element
+	 */
+	public LazyBlob readLazyBinaryElement(long startTag) throws ContentDecodingException;
 	
 	/**
 	 * Read and parse a number from the stream. 
@@ -180,6 +180,17 @@ public interface XMLEncodable {
 	 */
 	public void encode(XMLEncoder encoder) throws ContentEncodingException;
 	
+	/**
+	 * Return the exact number of bytes this object occupies when written with 
+	 * encode(XMLEncoder) using the binary (ccnb) codec. Callers which only need to know
+	 * how big an object is (for example to decide how to pack objects into a fixed size)
+	 * can use this to avoid encoding the object just to measure it. Subclasses for which 
+	 * this is frequently needed should calculate it directly.
+	 * @return the encoded length in bytes
+	 * @throws ContentEncodingException if the object can't be encoded
+	 */
+	public int encodedLength() throws ContentEncodingException;
+	
 	/** 
 	 * Allow the encoder/decoder to retrieve the top-level element name
 	 * programmatically. This allows subclasses to rename elements without
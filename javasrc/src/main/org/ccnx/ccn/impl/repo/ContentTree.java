@@ -24,10 +24,14 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.logging.Level;
 
+import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.profiles.SegmentationProfile;
@@ -67,13 +71,13 @@ public class ContentTree {
 		// a single child (to save obj overhead).
 		// either oneChild or children should be null
 		TreeNode oneChild;
-		SortedMap<TreeNode, TreeNode> children;
+		NavigableMap<TreeNode, TreeNode> children;
 		// oneContent is special case when there is only 
 		// a single content object here (to save obj overhead).
 		// either oneContent or content should be null
 		ContentRef oneContent;
 		List<ContentRef> content;
-		long timestamp;
+		long timestamp;		// time this node was created or last had a child added
 		boolean interestFlag = false;
 		boolean neSent = false;		// NE response sent since last insert
 		
@@ -175,7 +179,7 @@ public class ContentTree {
 	protected abstract class Search {
 		protected Interest _interest;
 		protected InterestPreScreener _ips;
-		protected SortedMap<TreeNode, TreeNode> _children = null;
+		protected NavigableMap<TreeNode, TreeNode> _children = null;
 		
 		protected Search(Interest interest, InterestPreScreener ips) {
 			_interest = interest;
@@ -217,7 +221,8 @@ public class ContentTree {
 			}
 			if (null != _children) {
 				byte[] interestComp = _interest.name().component(depth);
-				Iterator<TreeNode>it = initIterator(leftSearch, interestComp);
+				Exclude exclude = (depth + 1 == _ips._excludeLevel) ? _ips._exclude : null;
+				Iterator<TreeNode>it = initIterator(leftSearch, interestComp, exclude);
 				while(it.hasNext()) {
 					TreeNode child = it.next();
 					int comp = DataUtils.compare(child.component, interestComp);
@@ -239,9 +244,11 @@ public class ContentTree {
 		 * 
 		 * @param anyOK leftSearch only - if false must go "left by one" at this level
 		 * @param interestComp component to start search with
+		 * @param exclude the interest's exclude filter if the children are at the level it applies to,
+		 * 		otherwise null
 		 * @return the iterator
 		 */
-		protected abstract Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp);
+		protected abstract Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp, Exclude exclude);
 		
 		/**
 		 * 
@@ -260,10 +267,12 @@ public class ContentTree {
 		}
 
 		@Override
-		protected Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp) {
+		protected Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp, Exclude exclude) {
 			TreeNode testNode = new TreeNode();
 			testNode.component = interestComp;
-			SortedMap<TreeNode, TreeNode> map = leftSearch || null == interestComp ? _children : _children.tailMap(testNode);
+			NavigableMap<TreeNode, TreeNode> map = leftSearch || null == interestComp ? _children : _children.tailMap(testNode, true);
+			if (null != exclude)
+				return new ExcludeIterator(map, exclude, false);
 			return map.keySet().iterator();
 		}
 
@@ -286,7 +295,9 @@ public class ContentTree {
 		}
 
 		@Override
-		protected Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp) {
+		protected Iterator<TreeNode> initIterator(boolean leftSearch, byte[] interestComp, Exclude exclude) {
+			if (null != exclude)
+				return new ExcludeIterator(_children, exclude, !leftSearch);
 			if (leftSearch)
 				return _children.keySet().iterator();
 			return new RightIterator(_children);
@@ -310,7 +321,7 @@ public class ContentTree {
 		}
 
 		public boolean hasNext() {
-			return _map.size() > 0;
+			return !_map.isEmpty();
 		}
 
 		public TreeNode next() {
@@ -323,6 +334,60 @@ public class ContentTree {
 		
 	}
 	
+	/**
+	 * Iterate through children at the level an exclude filter applies to, jumping straight past
+	 * any range of them the filter excludes with an Any, rather than stepping through each
+	 * one to reject it. An interest for versions later than a given one finds the first
+	 * candidate in log time however many versions are older.
+	 */
+	protected class ExcludeIterator implements Iterator<TreeNode> {
+		protected NavigableMap<TreeNode, TreeNode> _map;
+		protected Exclude _exclude;
+		protected boolean _reverse;
+		protected TreeNode _next;
+		
+		protected ExcludeIterator(NavigableMap<TreeNode, TreeNode> map, Exclude exclude, boolean reverse) {
+			_map = map;
+			_exclude = exclude;
+			_reverse = reverse;
+			Map.Entry<TreeNode, TreeNode> entry = reverse ? map.lastEntry() : map.firstEntry();
+			_next = skip(null == entry ? null : entry.getKey());
+		}
+		
+		/**
+		 * @return the first node at or past this one (in the direction of the search) which is not
+		 * 		in an excluded range
+		 */
+		protected TreeNode skip(TreeNode node) {
+			while (null != node) {
+				Exclude.Range range = _exclude.excludedRange(node.component);
+				if (null == range)
+					return node;
+				byte [] end = _reverse ? range.low() : range.high();
+				if (null == end)
+					return null;
+				TreeNode testNode = new TreeNode();
+				testNode.component = end;
+				node = _reverse ? _map.lowerKey(testNode) : _map.higherKey(testNode);
+			}
+			return null;
+		}
+
+		public boolean hasNext() {
+			return null != _next;
+		}
+
+		public TreeNode next() {
+			if (null == _next)
+				throw new NoSuchElementException();
+			TreeNode node = _next;
+			_next = skip(_reverse ? _map.lowerKey(node) : _map.higherKey(node));
+			return node;
+		}
+
+		public void remove() {}
+	}
+	
 	protected TreeNode _root;
 	
 	public ContentTree() {
@@ -367,6 +432,7 @@ public class ContentTree {
 					added = true;
 					child = new TreeNode();
 					child.component = component;
+					child.timestamp = ts;
 					if (null == node.oneChild && null == node.children) {
 						// This is first and only child of current node
 						node.oneChild = child;
@@ -630,6 +696,10 @@ public class ContentTree {
 	 * @return the name enumeration response containing the list of matching names
 	 */
 	public final NameEnumerationResponse getNamesWithPrefix(Interest interest, ContentName responseName) {
+		int pagedMarker = NameEnumerationResponse.pagedMarkerIndex(interest.name());
+		if (pagedMarker >= 0)
+			return getNamesPage(interest, responseName, pagedMarker);
+		
 		ArrayList<ContentName> names = new ArrayList<ContentName>();
 		//first chop off NE marker
 		ContentName prefix = interest.name().cut(COMMAND_MARKER_BASIC_ENUMERATION.getBytes());
@@ -699,6 +769,87 @@ public class ContentTree {
 		return null;
 	}
 	
+	/**
+	 * Return one page of the names under a prefix for paged name enumeration.
+	 * 
+	 * Unlike basic enumeration we never hold the parent's lock for more than one page's worth
+	 * of children, and if the request carries a "since" time we only return children which were
+	 * added, or had children added to them, after that time. If there are more children past the 
+	 * end of the page, the response carries the last component we looked at as its continuation point.
+	 * We don't set the interest flag for paged requests; requesters are expected to poll for changes
+	 * using the time of the last response they saw.
+	 * 
+	 * @param interest the paged enumeration interest
+	 * @param responseName our responder id
+	 * @param markerIndex position of the paged enumeration marker within the interest name
+	 * @return the page or null if we have nothing to send
+	 */
+	protected NameEnumerationResponse getNamesPage(Interest interest, ContentName responseName, int markerIndex) {
+		ContentName prefix = interest.name().cut(markerIndex);
+		Long since = NameEnumerationResponse.pagedSince(interest.name());
+		byte [] startAfter = NameEnumerationResponse.pagedStartAfter(interest.name());
+		ContentName pageName = (interest.name().count() > markerIndex + 1) ? interest.name().cut(markerIndex + 2)
+				: new ContentName(interest.name(), startAfter);
+
+		TreeNode parent = lookupNode(prefix, prefix.count());
+		if (null == parent)
+			return null;
+		CCNTime timestamp = new CCNTime(parent.timestamp);
+		if (null != since && timestamp.toBinaryTimeAsLong() <= since) {
+			if (Log.isLoggable(Log.FAC_REPO, Level.FINER))
+				Log.finer(Log.FAC_REPO, "no changes under {0} since {1}", prefix, since);
+			return null;
+		}
+		ContentName potentialCollectionName = new ContentName(pageName, responseName, timestamp,
+				SegmentationProfile.getSegmentNumberNameComponent(SegmentationProfile.baseSegment()));
+		if (!interest.matches(potentialCollectionName, null)) {
+			if (Log.isLoggable(Log.FAC_REPO, Level.FINER))
+				Log.finer(Log.FAC_REPO, "paged enumeration response doesn't match: interest = {0} would be collection name: {1}", interest, potentialCollectionName);
+			return null;
+		}
+		
+		int pageSize = Math.max(1, SystemConfiguration.NE_PAGE_SIZE);
+		int maxScan = pageSize * 8;		// bound the time we spend under the lock filtering for changes
+		ArrayList<ContentName> names = new ArrayList<ContentName>();
+		byte [] continuation = null;
+		synchronized (parent) {
+			Iterator<TreeNode> it = null;
+			if (null != parent.oneChild) {
+				TreeMap<TreeNode, TreeNode> one = new TreeMap<TreeNode, TreeNode>();
+				one.put(parent.oneChild, parent.oneChild);
+				it = one.keySet().iterator();
+			} else if (null != parent.children) {
+				TreeNode startNode = new TreeNode();
+				startNode.component = startAfter;
+				it = parent.children.tailMap(startNode).keySet().iterator();
+			}
+			int scanned = 0;
+			TreeNode last = null;
+			while (null != it && it.hasNext()) {
+				TreeNode ch = it.next();
+				if (DataUtils.compare(ch.component, startAfter) <= 0)
+					continue;
+				if (names.size() >= pageSize || scanned >= maxScan) {
+					continuation = last.component;
+					break;
+				}
+				scanned++;
+				last = ch;
+				if (null == since || new CCNTime(ch.timestamp).toBinaryTimeAsLong() > since)
+					names.add(new ContentName(ch.component));
+			}
+		}
+		if (names.size() == 0 && null == continuation)
+			return null;
+		if (Log.isLoggable(Log.FAC_REPO, Level.FINER)) {
+			Log.finer(Log.FAC_REPO, "sending back {0} names in page {1} for prefix {2}, more: {3}", names.size(), 
+					Component.printURI(startAfter), prefix, (null != continuation));
+		}
+		NameEnumerationResponse ner = new NameEnumerationResponse(pageName, names, timestamp);
+		ner.setContinuation(continuation);
+		return ner;
+	}
+	
 	/**
 	 * Retrieve the data from the store that best matches the given interest
 	 * 
@@ -18,6 +18,8 @@
 package org.ccnx.ccn.impl.repo;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -27,10 +29,16 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidKeyException;
 import java.security.InvalidParameterException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNHandle;
@@ -39,6 +47,9 @@ import org.ccnx.ccn.config.ConfigurationException;
 import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.config.UserConfiguration;
 import org.ccnx.ccn.config.SystemConfiguration.DEBUGGING_FLAGS;
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
+import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
+import org.ccnx.ccn.impl.encoding.LazyBlob;
 import org.ccnx.ccn.impl.repo.PolicyXML.PolicyObject;
 import org.ccnx.ccn.impl.security.keys.BasicKeyManager;
 import org.ccnx.ccn.impl.support.Log;
@@ -67,6 +78,12 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		public final static String SPLIT_COMPONENT = "1";
 		
 		public static final String REPO_IMPORT_DIR = "import";
+		
+		// Progress of bulk imports is kept in this directory under META_DIR, in files with these properties
+		public static final String IMPORT_PROGRESS_DIR = "import";
+		public static final String IMPORT_PROGRESS_FILE = "file";
+		public static final String IMPORT_PROGRESS_LENGTH = "length";
+		public static final String IMPORT_PROGRESS_INDEXED = "indexed";
 
 		private static String DEFAULT_LOCAL_NAME = "Repository";
 		private static String DEFAULT_GLOBAL_NAME = "/parc.com/csl/ccn/Repos";
@@ -110,6 +127,57 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		long offset;
 	}
 
+	/**
+	 * Content at least this long is left in the file by get() until someone asks for it,
+	 * since many gets are only to compare names and signed info.
+	 */
+	public static final int LAZY_CONTENT_THRESHOLD = 4096;
+
+	/**
+	 * How many records an indexing thread decodes at a time, before inserting them into the index
+	 */
+	public static final int INDEX_BATCH = 256;
+
+	/**
+	 * How many batches are indexed between reports, and saves of an import's progress
+	 */
+	public static final int PROGRESS_INTERVAL = 64;
+
+	protected static final int SCAN_BUFFER_SIZE = 65536;
+
+	/**
+	 * Content left in a repo file. The file may have been closed and reopened since the
+	 * object was read, so read it through the RepoFile.
+	 */
+	protected static class RepoFileBlob extends LazyBlob {
+		protected final RepoFile _file;
+		protected final long _position;
+
+		protected RepoFileBlob(RepoFile file, long position, int length) {
+			super(length);
+			_file = file;
+			_position = position;
+		}
+
+		@Override
+		public void read(byte [] buffer, int offset) throws IOException {
+			ByteBuffer bb = ByteBuffer.wrap(buffer, offset, _length);
+			synchronized (_file) {
+				if (null == _file.openFile)
+					_file.openFile = new RandomAccessFile(_file.file, "r");
+				// Positional reads leave the file pointer alone
+				FileChannel channel = _file.openFile.getChannel();
+				long position = _position;
+				while (bb.hasRemaining()) {
+					int read = channel.read(bb, position);
+					if (read < 0)
+						throw new EOFException("Content at " + _position + " runs past the end of " + _file.file);
+					position += read;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Gets content matching the given interest
 	 * 
@@ -163,7 +231,10 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 	/**
 	 * Read the current repository file(s) for this repository and create an index for them.
 	 * WARNING: multiple files are not well tested
-	 * 
+	 *
+	 * A file whose bulk import was interrupted is indexed again as an import, and given back to the
+	 * import directory if it isn't good.
+	 *
 	 * @return the number of files making up the repository
 	 */
 	protected Integer createIndex() {
@@ -171,6 +242,7 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		_index = new ContentTree();
 		assert(null != _repositoryFile);
 		assert(_repositoryFile.isDirectory());
+		HashMap<Integer, ImportProgress> pending = pendingImports();
 		String[] filenames = _repositoryFile.list();
 		for (int i = 0; i < filenames.length; i++) {
 			if (filenames[i].startsWith(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX)) {
@@ -180,104 +252,395 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 					if (index > max) {
 						max = index.intValue();
 					}
+					ImportProgress progress = pending.remove(index);
+					if (null != progress) {
+						resumeImport(filenames[i], index, progress);
+						continue;
+					}
 					try {
-						createIndex(filenames[i], index, false);
+						createIndex(filenames[i], index, false, null);
 					} catch (RepositoryException e) {}	// This can't happen
 				}
 			}
 		}
+		// These never got as far as moving their file into the repository
+		for (ImportProgress progress : pending.values())
+			progress.delete();
 		return new Integer(max);
 	}
-	
+
 	/**
 	 * Create index from specific file. For now we will allow errors during the initial index creation,
 	 * assuming that we want to keep trying if there's an error in the existing index files. If an import
 	 * file has an error though we want to abort. The issue of handling corrupt data in the repo in general
 	 * ought to be revisited.
-	 * 
+	 *
 	 * Because index creation can now be done while the repo is actively doing file searches, care must be
 	 * taken to synchronize events correctly.
-	 * 
+	 *
+	 * The file is indexed in two passes. The first reads through it once, skipping over each record
+	 * to find where they all start, which is cheap. Then the records are split into batches of
+	 * INDEX_BATCH, which are read, decoded and digested on several threads at once (see
+	 * SystemConfiguration.REPO_IMPORT_THREADS), each thread inserting its batch into the index
+	 * when it has decoded it.
+	 *
 	 * @param fileName
 	 * @param index
 	 * @param fromImport - this is an "import" file.
-	 * @throws RepositoryException 
+	 * @param progress - where to record how much of an import has been indexed, or null
+	 * @throws RepositoryException
 	 */
-	private void createIndex(String fileName, Integer index, boolean fromImport) throws RepositoryException {
+	private void createIndex(String fileName, Integer index, boolean fromImport, ImportProgress progress) throws RepositoryException {
+		RepoFile rfile = new RepoFile();
+		rfile.file = new File(_repositoryFile,fileName);
+
+		if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
+			Log.fine(Log.FAC_REPO, "Creating index for {0}", fileName);
+		}
+
+		long [] offsets;
 		try {
-			RepoFile rfile = new RepoFile();
-			rfile.file = new File(_repositoryFile,fileName);
-			rfile.openFile = new RandomAccessFile(rfile.file, "r");
-			InputStream is = new BufferedInputStream(new RandomAccessInputStream(rfile.openFile),8192);
-			
-			if (Log.isLoggable(Log.FAC_REPO, Level.FINE)) {
-				Log.fine(Log.FAC_REPO, "Creating index for {0}", fileName);
+			offsets = findRecords(rfile.file, fromImport);
+		} catch (IOException e) {
+			if (fromImport)
+				throw new RepositoryException("Bad import file " + fileName + ": " + e.getMessage());
+			Log.warning(Log.FAC_REPO, "IOException reading file to create index: " + fileName);
+			return;
+		}
+
+		// Must be done before inserting into the index because once objects are inserted into the
+		// index, a lookup to this file can occur. If the object is inserted, even if all objects
+		// from the file are not yet inserted, a read of the file for the already inserted object
+		// should be OK. By doing it this way, we avoid having to stall all gets while a bulk import
+		// (which could be arbitrarily long) is in progress
+
+		synchronized (_files) {
+			_files.put(index, rfile);
+		}
+
+		// The indexing threads read through their own channels, with positional reads, so they
+		// don't disturb gets of what is already indexed from this file, which seek rfile.openFile.
+		IndexBatches batches = new IndexBatches(rfile, index, offsets, fromImport, progress);
+		int threads = Math.min(importThreads(), batches._batches);
+		if (threads <= 1) {
+			batches.run();
+		} else {
+			Thread [] workers = new Thread[threads];
+			for (int i = 0; i < threads; i++) {
+				workers[i] = new Thread(batches, "LogStructRepoStore-index-" + fileName + "-" + i);
+				workers[i].start();
 			}
-			
-			// Must be done before inserting into the index because once objects are inserted into the
-			// index, a lookup to this file can occur. If the object is inserted, even if all objects
-			// from the file are not yet inserted, a read of the file for the already inserted object
-			// should be OK. By doing it this way, we avoid having to stall all gets while a bulk import
-			// (which could be arbitrarily long) is in progress
-			
-			synchronized (_files) {
-				_files.put(index, rfile);
+			for (Thread worker : workers) {
+				try {
+					worker.join();
+				} catch (InterruptedException e) {
+					batches.fail(new RepositoryException("Interrupted creating index for " + fileName));
+					Thread.currentThread().interrupt();
+				}
 			}
-			
-			// Its true that its "OK" for someone to be reading the nodes as we are creating them
-			// but now we have to be careful to keep our filepointer correct, since it could be modified
-			// by a reader. The seek to a new spot in get is synchronized under the "RepoFile", so we
-			// keep track of where our pointer was also synchronized under the RepoFile so we can restore
-			// it to where it was in the case someone was reading one of our previously created nodes
-			// while the index creation is in progress.
-			long nextOffset = 0;
-			while (true) {
-				FileRef ref = new FileRef();
-				ContentObject tmp = new ContentObject();
-				synchronized (rfile) {
-					ref.id = index.intValue();
-					ref.offset = nextOffset;
-					rfile.openFile.seek(nextOffset);	// In case a get changed this in the meantime
-					if(ref.offset > 0)
-						ref.offset = ref.offset - is.available();
-					try {
-						if (rfile.openFile.getFilePointer()<rfile.openFile.length() || is.available()!=0) {
-							tmp.decode(is);
-							nextOffset = rfile.openFile.getFilePointer();
+		}
+
+		if (null != batches._failure) {
+			if (fromImport)
+				throw batches._failure;
+			Log.warning(Log.FAC_REPO, "Error creating index for {0}: {1}", fileName, batches._failure.getMessage());
+		}
+		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+			Log.info(Log.FAC_REPO, "Indexed {0} objects from {1} on {2} threads", offsets.length - 1, fileName, Math.max(threads, 1));
+		}
+	}
+
+	/**
+	 * @return how many threads to create an index with
+	 */
+	protected static int importThreads() {
+		return (SystemConfiguration.REPO_IMPORT_THREADS > 0) ? SystemConfiguration.REPO_IMPORT_THREADS
+				: Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Find where each of the records in a repository file starts, by skipping over them
+	 * without decoding them.
+	 *
+	 * @param file
+	 * @param strict - if false, a bad or truncated record ends the file, rather than being an error
+	 * @return the offset of each record, followed by the offset of the end of the last one
+	 * @throws IOException if the file can't be read, or if strict and it is badly formed
+	 */
+	protected static long [] findRecords(File file, boolean strict) throws IOException {
+		long length = file.length();
+		long [] offsets = new long[1024];
+		int count = 0;
+		long offset = 0;
+		InputStream is = new BufferedInputStream(new FileInputStream(file), SCAN_BUFFER_SIZE);
+		try {
+			while (offset < length) {
+				long recordLength;
+				try {
+					recordLength = BinaryXMLCodec.skipElement(is);
+				} catch (IOException e) {
+					if (strict)
+						throw new IOException("Bad record at offset " + offset + ": " + e.getMessage());
+					Log.warning(Log.FAC_REPO, "Ignoring {0} from offset {1}: {2}", file.getName(), offset, e.getMessage());
+					break;
+				}
+				if (0 == recordLength)
+					break;
+				if (count + 1 >= offsets.length)
+					offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				offsets[count++] = offset;
+				offset += recordLength;
+			}
+		} finally {
+			is.close();
+		}
+		offsets[count] = offset;
+		return Arrays.copyOf(offsets, count + 1);
+	}
+
+	/**
+	 * Decodes batches of the records of a file and inserts them into the index. Any number
+	 * of threads may run this at once; each takes the next batch not yet taken until there are none.
+	 */
+	protected class IndexBatches implements Runnable {
+		protected final RepoFile _rfile;
+		protected final int _id;
+		protected final long [] _offsets;
+		protected final boolean _fromImport;
+		protected final ImportProgress _progress;
+		protected final int _batches;
+		protected final AtomicInteger _nextBatch = new AtomicInteger(0);
+		protected final AtomicInteger _batchesDone = new AtomicInteger(0);
+		protected final AtomicLong _bytesDone = new AtomicLong(0);
+		protected volatile RepositoryException _failure;
+
+		protected IndexBatches(RepoFile rfile, int id, long [] offsets, boolean fromImport, ImportProgress progress) {
+			_rfile = rfile;
+			_id = id;
+			_offsets = offsets;
+			_fromImport = fromImport;
+			_progress = progress;
+			_batches = (offsets.length - 1 + INDEX_BATCH - 1) / INDEX_BATCH;
+		}
+
+		public void run() {
+			RandomAccessFile raf = null;
+			try {
+				raf = new RandomAccessFile(_rfile.file, "r");
+				FileChannel channel = raf.getChannel();
+				long lastModified = _rfile.file.lastModified();
+				ByteBuffer buffer = null;
+				ContentObject [] decoded = new ContentObject[INDEX_BATCH];
+				int batch;
+				while (null == _failure && (batch = _nextBatch.getAndIncrement()) < _batches) {
+					int first = batch * INDEX_BATCH;
+					int last = Math.min(first + INDEX_BATCH, _offsets.length - 1);
+					long start = _offsets[first];
+					long length = _offsets[last] - start;
+					if (length > Integer.MAX_VALUE)
+						throw new IOException("Records at offset " + start + " are too long");
+					if (null == buffer || buffer.capacity() < length)
+						buffer = ByteBuffer.allocate((int)length);
+					buffer.clear();
+					buffer.limit((int)length);
+					long position = start;
+					while (buffer.hasRemaining()) {
+						int read = channel.read(buffer, position);
+						if (read < 0)
+							throw new EOFException("Records at " + start + " run past the end of " + _rfile.file);
+						position += read;
+					}
+
+					for (int i = first; i < last; i++) {
+						ContentObject co = new ContentObject();
+						try {
+							co.decode(new ByteArrayInputStream(buffer.array(), (int)(_offsets[i] - start), (int)(_offsets[i + 1] - _offsets[i])));
+						} catch (ContentDecodingException e) {
+							if (_fromImport)
+								throw new RepositoryException("Bad content object at offset " + _offsets[i] + ": " + e.getMessage());
+							Log.warning(Log.FAC_REPO, "Skipping content object at offset {0} of {1}: {2}", _offsets[i], _rfile.file.getName(), e.getMessage());
+							co = null;
 						}
-						else{
-							if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
-								Log.info(Log.FAC_REPO, "at the end of the file");
-							}
-							rfile.openFile.close();
-							rfile.openFile = null;
-							break;
+						// The index needs the full name, so compute the digest here while we're in parallel
+						if (null != co)
+							co.digest();
+						decoded[i - first] = co;
+					}
+					for (int i = first; i < last; i++) {
+						if (null != decoded[i - first]) {
+							FileRef ref = new FileRef();
+							ref.id = _id;
+							ref.offset = _offsets[i];
+							_index.insert(decoded[i - first], ref, lastModified, LogStructRepoStore.this, null);
+							decoded[i - first] = null;
 						}
-	
-					} catch (ContentDecodingException e) {
-						// Failed to decode, must be end of this one
-						//added check for end of file above
-						rfile.openFile.close();
-						rfile.openFile = null;
-						if (fromImport)
-							throw new RepositoryException(e.getMessage());
-						Log.logStackTrace(Level.WARNING, e);
-						e.printStackTrace();
-						break;
 					}
+					batchDone(length);
+				}
+			} catch (RepositoryException e) {
+				fail(e);
+			} catch (IOException e) {
+				fail(new RepositoryException("IOException reading " + _rfile.file.getName() + ": " + e.getMessage(), e));
+			} catch (RuntimeException e) {
+				fail(new RepositoryException("Error indexing " + _rfile.file.getName() + ": " + e, e));
+			} finally {
+				if (null != raf) {
+					try {
+						raf.close();
+					} catch (IOException e) {}
+				}
+			}
+		}
+
+		protected synchronized void fail(RepositoryException e) {
+			if (null == _failure)
+				_failure = e;
+		}
+
+		protected void batchDone(long bytes) {
+			long total = _bytesDone.addAndGet(bytes);
+			if (null != _progress)
+				_progress._indexed.addAndGet(bytes);
+			if (0 != _batchesDone.incrementAndGet() % PROGRESS_INTERVAL)
+				return;
+			long length = _offsets[_offsets.length - 1];
+			if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
+				Log.info(Log.FAC_REPO, "Indexed {0} of {1} bytes of {2}", total, length, _rfile.file.getName());
+			}
+			if (null != _progress) {
+				try {
+					_progress.save();
+				} catch (IOException e) {
+					Log.warning(Log.FAC_REPO, "Can't save progress of import of {0}: {1}", _progress._name, e.getMessage());
 				}
-				_index.insert(tmp, ref, rfile.file.lastModified(), this, null);
 			}
-		} catch (NumberFormatException e) {
-			// Not valid file
-			Log.warning(Log.FAC_REPO, "Invalid file name " +fileName);
-		} catch (FileNotFoundException e) {
-			Log.warning(Log.FAC_REPO, "Unable to open file to create index: " + fileName);
-		} catch (IOException e) {
-			Log.warning(Log.FAC_REPO, "IOException reading file to create index: " + fileName);
 		}
 	}
-	
+
+	/**
+	 * Progress of a bulk import, kept in the .meta/import directory under the name of the file
+	 * being imported for as long as the import runs. It records which repository file the import
+	 * file was renamed to, so that if the repository stops part way through the import the
+	 * file can be indexed again, and checked as an import, when it restarts. ccnrepoimport reads
+	 * it to report how far an import has got.
+	 */
+	protected class ImportProgress {
+		protected final String _name;
+		protected int _fileIndex;
+		protected long _length;
+		protected final AtomicLong _indexed = new AtomicLong(0);
+
+		protected ImportProgress(String name, int fileIndex, long length) {
+			_name = name;
+			_fileIndex = fileIndex;
+			_length = length;
+		}
+
+		protected File file() {
+			return new File(importProgressDirectory(), _name);
+		}
+
+		/**
+		 * Write the progress to a temporary file first, so a crash leaves either the old or
+		 * the new progress behind
+		 * @throws IOException
+		 */
+		protected synchronized void save() throws IOException {
+			File dir = importProgressDirectory();
+			dir.mkdirs();
+			Properties properties = new Properties();
+			properties.setProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_FILE, Integer.toString(_fileIndex));
+			properties.setProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_LENGTH, Long.toString(_length));
+			properties.setProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_INDEXED, Long.toString(_indexed.get()));
+			File temp = new File(dir, "." + _name);
+			FileOutputStream fos = new FileOutputStream(temp);
+			try {
+				properties.store(fos, null);
+			} finally {
+				fos.close();
+			}
+			File file = file();
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file))
+					throw new IOException("Can't save import progress to " + file);
+			}
+		}
+
+		protected synchronized void load() throws IOException {
+			Properties properties = new Properties();
+			FileInputStream fis = new FileInputStream(file());
+			try {
+				properties.load(fis);
+			} finally {
+				fis.close();
+			}
+			try {
+				_fileIndex = Integer.parseInt(properties.getProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_FILE));
+				_length = Long.parseLong(properties.getProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_LENGTH));
+			} catch (NumberFormatException e) {
+				throw new IOException("Bad import progress in " + file());
+			}
+		}
+
+		protected void delete() {
+			file().delete();
+		}
+	}
+
+	protected File importProgressDirectory() {
+		return new File(_repositoryMeta, LogStructRepoStoreProfile.IMPORT_PROGRESS_DIR);
+	}
+
+	/**
+	 * @return the imports which were in progress when the repository last stopped, by the index
+	 * 	of the repository file they were renamed to
+	 */
+	protected HashMap<Integer, ImportProgress> pendingImports() {
+		HashMap<Integer, ImportProgress> pending = new HashMap<Integer, ImportProgress>();
+		File dir = importProgressDirectory();
+		String [] names = dir.list();
+		if (null == names)
+			return pending;
+		for (String name : names) {
+			if (name.startsWith(".")) {
+				// Partly saved
+				new File(dir, name).delete();
+				continue;
+			}
+			ImportProgress progress = new ImportProgress(name, 0, 0);
+			try {
+				progress.load();
+				pending.put(progress._fileIndex, progress);
+			} catch (IOException e) {
+				Log.warning(Log.FAC_REPO, "Ignoring unreadable import progress for {0}: {1}", name, e.getMessage());
+				progress.delete();
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Finish an import interrupted when the repository stopped, by indexing its file again
+	 * as an import. If it isn't good, give it back to the import directory as bulkImport would have.
+	 */
+	private void resumeImport(String fileName, Integer index, ImportProgress progress) {
+		Log.warning(Log.FAC_REPO, "Resuming interrupted import of {0} as {1}", progress._name, fileName);
+		try {
+			createIndex(fileName, index, true, progress);
+		} catch (RepositoryException e) {
+			Log.warning(Log.FAC_REPO, "Import of {0} failed, returning it to the import directory: {1}", progress._name, e.getMessage());
+			synchronized (_files) {
+				_files.remove(index);
+			}
+			File importDir = new File(_repositoryRoot, LogStructRepoStoreProfile.REPO_IMPORT_DIR);
+			importDir.mkdirs();
+			new File(_repositoryFile, fileName).renameTo(new File(importDir, progress._name));
+		} finally {
+			progress.delete();
+		}
+	}
+
 	/**
 	 * Initialize the repository
 	 * 
@@ -381,16 +744,18 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 		_currentFileIndex = createIndex();
 		
 		try {
-			if (_currentFileIndex == 0) {
-				_currentFileIndex = 1; // the index of a file we will actually write
-				RepoFile rfile = new RepoFile();
-				rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX+"1");
+			// The last file may have been an import which has been given back, in which case
+			// start a new one rather than reuse its index
+			RepoFile rfile = (_currentFileIndex == 0) ? null : _files.get(new Integer(_currentFileIndex));
+			if (null == rfile) {
+				_currentFileIndex++; // the index of a file we will actually write
+				rfile = new RepoFile();
+				rfile.file = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + _currentFileIndex);
 				rfile.openFile = new RandomAccessFile(rfile.file, "rw");
 				rfile.nextWritePos = 0;
 				_files.put(new Integer(_currentFileIndex), rfile);
 				_activeWriteFile = rfile;
 			} else {
-				RepoFile rfile = _files.get(new Integer(_currentFileIndex));
 				long cursize = rfile.file.length();
 				rfile.openFile = new RandomAccessFile(rfile.file, "rw");
 				rfile.nextWritePos = cursize;
@@ -532,7 +897,17 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 				file.openFile.seek(fref.offset);
 				ContentObject content = new ContentObject();
 				InputStream is = new BufferedInputStream(new RandomAccessInputStream(file.openFile), 8192);
-				content.decode(is);
+				final RepoFile blobFile = file;
+				final long start = fref.offset;
+				BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+				decoder.setLazyBlobs(LAZY_CONTENT_THRESHOLD, new LazyBlob.Source() {
+					public LazyBlob blob(long offset, int length) {
+						return new RepoFileBlob(blobFile, start + offset, length);
+					}
+				});
+				decoder.beginDecoding(is);
+				content.decode(decoder);
+				decoder.endDecoding();
 				return content;
 			}
 		} catch (Exception e) {
@@ -655,36 +1030,68 @@ public class LogStructRepoStore extends RepositoryStoreBase implements Repositor
 				? ((null == _activeWriteFile.openFile) ? null : "running") : null;
 	}
 
-	synchronized public boolean bulkImport(String name) throws RepositoryException {
+	/**
+	 * Import a file of encoded content objects from the import directory. The file is adopted in
+	 * place - renamed to be the next repository file - and then indexed as createIndex describes.
+	 * Several imports can run at once.
+	 *
+	 * @param name the name of the file in the import directory
+	 * @return false if the file is already being imported
+	 * @throws RepositoryException if the file can't be imported, in which case it is put back
+	 */
+	public boolean bulkImport(String name) throws RepositoryException {
 		if (name.contains(UserConfiguration.FILE_SEP))
 			throw new RepositoryException("Bulk import data can not contain pathnames");
 		File file;
 		synchronized (_bulkImportInProgress) {
 			file = new File(_repositoryRoot + UserConfiguration.FILE_SEP + LogStructRepoStoreProfile.REPO_IMPORT_DIR + UserConfiguration.FILE_SEP + name);
-			if (!file.exists()) {		
+			if (!file.exists()) {
 				// Is this due to a reexpressed interest for bulk import already in progress?
 				if (_bulkImportInProgress.containsKey(name))
-						return false;		
+						return false;
 				throw new RepositoryException("File does not exist: " + file);
 			}
-			
+
 			_bulkImportInProgress.put(name, name);
 		}
-		_currentFileIndex++;
-		File repoFile = new File(_repositoryFile, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + _currentFileIndex);
-		if (!file.renameTo(repoFile))
-			throw new RepositoryException("Can not rename file: " + file);
+		ImportProgress progress = null;
 		try {
-			createIndex(LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + _currentFileIndex, _currentFileIndex, true);
-		} catch (RepositoryException re) {
-			// The seemingly logical thing to do would be to verify the data for errors first and then submit it if it
-			// was OK. But that would require 2 passes through the data in the mainline case in which the data is good
-			// so instead we rename the file back if its bad.
-			repoFile.renameTo(file);
-			_bulkImportInProgress.remove(name);
-			throw re;
-		}
-		_bulkImportInProgress.remove(name);
-		return true;
+			int index;
+			synchronized (_files) {
+				index = ++_currentFileIndex;
+			}
+			String fileName = LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + index;
+			File repoFile = new File(_repositoryFile, fileName);
+
+			// Record where the file is going before moving it, so that if we stop part way
+			// through we know to finish the import when we start again
+			progress = new ImportProgress(name, index, file.length());
+			try {
+				progress.save();
+			} catch (IOException e) {
+				throw new RepositoryException("Can not record progress of import of " + name + ": " + e.getMessage());
+			}
+			if (!file.renameTo(repoFile))
+				throw new RepositoryException("Can not rename file: " + file);
+			try {
+				createIndex(fileName, index, true, progress);
+			} catch (RepositoryException re) {
+				// The seemingly logical thing to do would be to verify the data for errors first and then submit it if it
+				// was OK. But that would require 2 passes through the data in the mainline case in which the data is good
+				// so instead we rename the file back if its bad.
+				synchronized (_files) {
+					_files.remove(index);
+				}
+				repoFile.renameTo(file);
+				throw re;
+			}
+			return true;
+		} finally {
+			if (null != progress)
+				progress.delete();
+			synchronized (_bulkImportInProgress) {
+				_bulkImportInProgress.remove(name);
+			}
+		}
 	}
 }
@@ -90,4 +90,26 @@ public class RandomAccessInputStream extends InputStream {
 	public int read(byte[] b, int off, int len) throws IOException {
 		return underlying.read(b, off, len);
 	}
+
+	/**
+	 * Skip by seeking rather than reading, so that the decoder can pass over content
+	 * it doesn't need to read.
+	 *
+	 * @param n number of bytes to skip
+	 *
+	 * @return long number of bytes skipped, which is less than n only at the end of the file
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		if (n <= 0)
+			return 0;
+		long position = underlying.getFilePointer();
+		long skip = Math.min(n, underlying.length() - position);
+		if (skip <= 0)
+			return 0;
+		underlying.seek(position + skip);
+		return skip;
+	}
 }
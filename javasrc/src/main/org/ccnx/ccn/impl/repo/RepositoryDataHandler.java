@@ -102,7 +102,9 @@ public class RepositoryDataHandler implements Runnable {
 					Log.finer(Log.FAC_REPO, "Saving content in: " + co.toString());
 				}
 
+				long start = System.nanoTime();
 				NameEnumerationResponse ner = _server.getRepository().saveContent(co);
+				_server.getIngestScheduler().stored(System.nanoTime() - start, _currentQueueSize);
 				if (!_shutdown) {
 					if (ner!=null && ner.hasNames()) {
 						_server.sendEnumerationResponse(ner);
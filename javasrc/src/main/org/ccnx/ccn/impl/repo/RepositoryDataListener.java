@@ -18,8 +18,11 @@
 package org.ccnx.ccn.impl.repo;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNContentHandler;
@@ -58,6 +61,9 @@ public class RepositoryDataListener implements CCNContentHandler {
 	protected boolean _throttled = false;
 	protected Interest _restartInterest = null;
 
+	protected final RepositoryIngestScheduler.Flow _flow;
+	private final HashMap<Interest, Long> _expressTimes = new HashMap<Interest, Long>();	// Under _interests
+
 	/**
 	 * @param origInterest	interest to be used to identify this listener to filter out subsequent duplicate or overlapping
 	 * 		requests
@@ -69,6 +75,7 @@ public class RepositoryDataListener implements CCNContentHandler {
 		_server = server;
 		_handle = server.getHandle();
 		_timer = System.currentTimeMillis();
+		_flow = server.getIngestScheduler().addFlow();
 		if (Log.isLoggable(Log.FAC_REPO, Level.INFO)) {
 			Log.info(Log.FAC_REPO, "Starting up repository listener on original interest: {0} interest {1}", origInterest, interest);
 		}
@@ -124,6 +131,12 @@ public class RepositoryDataListener implements CCNContentHandler {
     calculateInterests: synchronized (_interests) {
 			long largestSegmentNumberRequested = getLargestSegmentNumber();
 			_interests.remove(interest, null);
+			Long expressed = _expressTimes.remove(interest);
+			if (null != expressed) {
+				long now = System.nanoTime();
+				if (_server.getIngestScheduler().received(_flow, now - expressed, now))
+					_server._stats.increment(RepositoryServer.StatsEnum.HandleContentLateData);
+			}
 
 			// Compute next interests to ask for and ask for them
 			// Note that this should only ask for 1 interest except for the first time through this code when it
@@ -132,7 +145,7 @@ public class RepositoryDataListener implements CCNContentHandler {
 				Log.finest(Log.FAC_REPO, "Largest segment number requested is {0}", largestSegmentNumberRequested);
 			}
 
-			int remainingWindow = _server.getWindowSize() - _interests.size();
+			int remainingWindow = _server.getIngestScheduler().window(_flow) - _interests.size();
 
 			// Make sure we don't go past prospective last block.
 			if (_finalSegmentNumber >= 0 && _finalSegmentNumber < (largestSegmentNumberRequested + remainingWindow)) {
@@ -142,6 +155,7 @@ public class RepositoryDataListener implements CCNContentHandler {
 				// If we're confident about the final block ID, cancel previous extra interests
 				if (isFinalSegment) {
 					cancelHigherInterests(_finalSegmentNumber);
+					_server.getIngestScheduler().setOutstanding(_flow, _interests.size());
                     break calculateInterests; // exit the synchronized block and process the data
 				}
 			}
@@ -154,6 +168,7 @@ public class RepositoryDataListener implements CCNContentHandler {
 
 			if (! _throttled) {
 
+				ArrayList<Interest> newInterests = new ArrayList<Interest>(remainingWindow);
 				for (int i = 1; i <= remainingWindow; i++) {
 					ContentName name = SegmentationProfile.segmentName(co.name(), largestSegmentNumberRequested + i);
 					// DKS - should use better interest generation to only get segments (TBD, in SegmentationProfile)
@@ -163,18 +178,43 @@ public class RepositoryDataListener implements CCNContentHandler {
 						_restartInterest = newInterest;
 						break;
 					}
-					outputInterest(newInterest);
+					newInterests.add(newInterest);
 				}
+				outputInterests(newInterests);
 			}
+			_server.getIngestScheduler().setOutstanding(_flow, _interests.size());
 		}
 		handleData(co);
 		return null;
 	}
 
+	/**
+	 * Express a window's worth of interests together
+	 */
+	public void outputInterests(List<Interest> interests) {
+		if (interests.isEmpty())
+			return;
+		try {
+			_handle.expressInterests(interests, this);
+			long now = System.nanoTime();
+			for (Interest interest : interests) {
+				_interests.add(interest, null);
+				_expressTimes.put(interest, now);
+			}
+			_server._stats.increment(RepositoryServer.StatsEnum.HandleContentExpressInterest, interests.size());
+
+		} catch (IOException e) {
+			_server._stats.increment(RepositoryServer.StatsEnum.HandleContentExpressInterestErrors);
+			Log.logStackTrace(Level.WARNING, e);
+			e.printStackTrace();
+		}
+	}
+
 	public void outputInterest(Interest interest) {
 		try {
 			_handle.expressInterest(interest, this);
 			_interests.add(interest, null);
+			_expressTimes.put(interest, System.nanoTime());
 			_server._stats.increment(RepositoryServer.StatsEnum.HandleContentExpressInterest);
 
 		} catch (IOException e) {
@@ -190,6 +230,7 @@ public class RepositoryDataListener implements CCNContentHandler {
 				if (null != _restartInterest) {
 					Log.warning("Restarting - interest is {0}", _restartInterest);
 					outputInterest(_restartInterest);
+					_server.getIngestScheduler().setOutstanding(_flow, _interests.size());
 					_restartInterest = null;
 				} else
 					Log.warning("Warning - restart with no interest");
@@ -250,6 +291,7 @@ public class RepositoryDataListener implements CCNContentHandler {
 			if (value > _value) {
 				_server._stats.increment(RepositoryServer.StatsEnum.HandleContentCancelInterest);
 				_handle.cancelInterest(entry.interest(), _handler);
+				_expressTimes.remove(entry.interest());
 				it.remove();
 			}
 		}
@@ -285,10 +327,12 @@ public class RepositoryDataListener implements CCNContentHandler {
 	 * Called on listener teardown.
 	 */
 	public void cancelInterests() {
-		for (Entry<Object> entry : _interests.values()) {
-			_server._stats.increment(RepositoryServer.StatsEnum.HandleContentCancelInterest);
-			_handle.cancelInterest(entry.interest(), this);
-		}
+		_server.getIngestScheduler().removeFlow(_flow);
+		ArrayList<Interest> interests = new ArrayList<Interest>();
+		for (Entry<Object> entry : _interests.values())
+			interests.add(entry.interest());
+		_server._stats.increment(RepositoryServer.StatsEnum.HandleContentCancelInterest, interests.size());
+		_handle.cancelInterests(interests, this);
 	}
 
 	/**
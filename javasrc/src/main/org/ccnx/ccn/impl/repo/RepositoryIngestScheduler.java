@@ -0,0 +1,195 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.repo;
+
+import java.util.HashSet;
+
+/**
+ * Shares the interests the repository may have outstanding between the RepositoryDataListeners
+ * reading streams in.
+ *
+ * Each listener has a Flow with a window which grows as its data arrives, like a TCP congestion
+ * window: by one per segment until the first loss, then by one per window. Data which comes
+ * back later than the flow's retransmission timeout was probably only satisfied after its
+ * interest was re-expressed, so it's counted as a loss and halves the window, at most once per
+ * round trip. A flow can use its window up to a fair share of the total budget, plus whatever
+ * of the budget is unused, so a flow which got ahead while alone drains back to its share
+ * as others start.
+ *
+ * All windows are scaled down when the content waiting to be stored would take longer than
+ * the queue delay to drain at the store's current write latency. This slows the writers
+ * gradually well before RepositoryDataHandler has to stop them all at THROTTLE_TOP.
+ */
+public class RepositoryIngestScheduler {
+
+	/**
+	 * Lower bound on the timeout after which data is counted as lost, in ns
+	 */
+	public static final long MIN_RTO = 100000000L;
+
+	public static class Flow {
+		protected double _window;
+		protected double _threshold = Double.MAX_VALUE;
+		protected long _srtt = -1;
+		protected long _rttvar = 0;
+		protected long _lastDecrease = 0;
+		protected boolean _decreased = false;
+		protected int _outstanding = 0;
+
+		protected Flow(int initialWindow) {
+			_window = initialWindow;
+		}
+
+		/**
+		 * @return the congestion window, before the budget and backpressure are applied
+		 */
+		public synchronized int getWindow() {
+			return (int)_window;
+		}
+
+		/**
+		 * @return the smoothed round trip time in ns, or -1 if there are no samples yet
+		 */
+		public synchronized long getRTT() {
+			return _srtt;
+		}
+	}
+
+	protected final int _budget;
+	protected final int _initialWindow;
+	protected final long _queueDelay;
+	protected final HashSet<Flow> _flows = new HashSet<Flow>();
+	protected int _outstanding = 0;
+	protected int _active = 0;
+	protected long _storeLatency = -1;
+	protected double _pressure = 1.0;
+
+	/**
+	 * @param budget total interests all flows may have outstanding
+	 * @param initialWindow the window a flow starts with
+	 * @param queueDelay how long queued content may take to store before windows are scaled down, in ms
+	 */
+	public RepositoryIngestScheduler(int budget, int initialWindow, int queueDelay) {
+		_budget = Math.max(1, budget);
+		_initialWindow = Math.max(1, initialWindow);
+		_queueDelay = queueDelay * 1000000L;
+	}
+
+	public synchronized Flow addFlow() {
+		Flow flow = new Flow(Math.min(_initialWindow, _budget));
+		_flows.add(flow);
+		return flow;
+	}
+
+	public synchronized void removeFlow(Flow flow) {
+		if (_flows.remove(flow)) {
+			_outstanding -= flow._outstanding;
+			if (flow._outstanding > 0)
+				_active--;
+			flow._outstanding = 0;
+		}
+	}
+
+	/**
+	 * @return how many interests the flow may have outstanding now
+	 */
+	public synchronized int window(Flow flow) {
+		int fair = Math.max(1, _budget / Math.max(1, (flow._outstanding > 0) ? _active : _active + 1));
+		int share = fair + Math.max(0, _budget - _outstanding);
+		int window;
+		synchronized (flow) {
+			window = Math.max(1, (int)(flow._window * _pressure));
+		}
+		return Math.min(window, share);
+	}
+
+	/**
+	 * Tell the scheduler how many interests a flow has outstanding, after it expresses
+	 * or cancels some
+	 */
+	public synchronized void setOutstanding(Flow flow, int outstanding) {
+		if (!_flows.contains(flow))
+			return;
+		if (flow._outstanding == 0 && outstanding > 0)
+			_active++;
+		else if (flow._outstanding > 0 && outstanding == 0)
+			_active--;
+		_outstanding += outstanding - flow._outstanding;
+		flow._outstanding = outstanding;
+	}
+
+	/**
+	 * Data for a flow has arrived
+	 * @param rtt time since its interest was first expressed, in ns
+	 * @param now the current System.nanoTime()
+	 * @return true if it was so late that it is counted as lost
+	 */
+	public boolean received(Flow flow, long rtt, long now) {
+		synchronized (flow) {
+			if (flow._srtt < 0) {
+				flow._srtt = rtt;
+				flow._rttvar = rtt / 2;
+				grow(flow);
+				return false;
+			}
+			boolean late = rtt > Math.max(MIN_RTO, flow._srtt + 4 * flow._rttvar);
+			if (!late) {
+				grow(flow);
+			} else if (!flow._decreased || now - flow._lastDecrease > flow._srtt) {
+				flow._threshold = Math.max(1.0, flow._window / 2);
+				flow._window = flow._threshold;
+				flow._lastDecrease = now;
+				flow._decreased = true;
+			}
+			flow._rttvar = (3 * flow._rttvar + Math.abs(flow._srtt - rtt)) / 4;
+			flow._srtt = (7 * flow._srtt + rtt) / 8;
+			return late;
+		}
+	}
+
+	protected void grow(Flow flow) {
+		if (flow._window < flow._threshold)
+			flow._window += 1.0;
+		else
+			flow._window += 1.0 / flow._window;
+		if (flow._window > _budget)
+			flow._window = _budget;
+	}
+
+	/**
+	 * The store has saved an object
+	 * @param latency how long it took, in ns
+	 * @param queued how many objects are still waiting to be stored
+	 */
+	public synchronized void stored(long latency, int queued) {
+		_storeLatency = (_storeLatency < 0) ? latency : (7 * _storeLatency + latency) / 8;
+		long drain = _storeLatency * queued;
+		_pressure = (drain <= _queueDelay) ? 1.0 : (double)_queueDelay / drain;
+	}
+
+	/**
+	 * @return the factor windows are currently scaled by, at most 1
+	 */
+	public synchronized double getPressure() {
+		return _pressure;
+	}
+
+	public synchronized int getOutstanding() {
+		return _outstanding;
+	}
+}
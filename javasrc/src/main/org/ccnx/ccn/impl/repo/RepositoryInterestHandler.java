@@ -286,15 +286,38 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 	}
 
 	/**
-	 * Add to the repository via file based on interest request
+	 * Add to the repository via file based on interest request. Importing a large file can take
+	 * a long time, so don't hog the queue - dispatch these separately.
+	 * @param interest
+	 */
+	private void addBulkDataToRepo(Interest interest) {
+		SystemConfiguration._systemThreadpool.execute(new BulkImportRequest(interest));
+	}
+
+	protected class BulkImportRequest implements Runnable {
+		protected Interest _interest;
+
+		protected BulkImportRequest(Interest interest) {
+			_interest = interest;
+		}
+
+		public void run() {
+			try {
+				bulkImport(_interest);
+			} catch (Exception e) {
+				_server._stats.increment(RepositoryServer.StatsEnum.HandleInterestErrors);
+				Log.logStackTrace(Level.WARNING, e);
+			}
+		}
+	}
+
+	/**
+	 * Import the file named in a bulk import request, and answer the request when done
 	 * @param interest
-	 * @throws IOException
-	 * @throws ContentEncodingException
-	 * @throws RepositoryException
 	 * @throws IOException
 	 * @throws ContentEncodingException
 	 */
-	private void addBulkDataToRepo(Interest interest) throws ContentEncodingException, IOException {
+	private void bulkImport(Interest interest) throws ContentEncodingException, IOException {
 		int i = CommandMarker.COMMAND_MARKER_REPO_ADD_FILE.findMarker(interest.name());
 		if (i >= 0) {
 			String[] args = CommandMarker.getArguments(interest.name().component(i));
@@ -333,7 +356,7 @@ public class RepositoryInterestHandler extends QueuedContentHandler<Interest> im
 		public void run() {
 			NameEnumerationResponse ner = _server.getRepository().getNamesWithPrefix(_interest, _server.getResponseName());
 
-			if (ner!=null && ner.hasNames()) {
+			if (ner!=null && (ner.hasNames() || ner.hasContinuation())) {
 				_server.sendEnumerationResponse(ner);
 				_server._stats.increment(RepositoryServer.StatsEnum.HandleInterestNameEnumResponses);
 				if (Log.isLoggable(Log.FAC_REPO, Level.FINE))
@@ -25,12 +25,15 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.logging.Level;
 
+import javax.management.ObjectName;
+
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.CCNStats;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
 import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
 import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
+import org.ccnx.ccn.impl.CCNStatsMBean;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.CCNWriter;
 import org.ccnx.ccn.io.content.ContentDecodingException;
@@ -82,6 +85,8 @@ public class RepositoryServer implements CCNStatistics {
 	private boolean _pendingNamespaceChange = false;
 	private final Object _pendingNamespaceChangeLock = new Object();
 	private final int _windowSize = SystemConfiguration.PIPELINE_SIZE;
+	private final RepositoryIngestScheduler _ingestScheduler = new RepositoryIngestScheduler(
+			SystemConfiguration.REPO_INGEST_BUDGET, _windowSize, SystemConfiguration.REPO_INGEST_QUEUE_DELAY);
 	private final int _ephemeralFreshness = FRESHNESS;
 	private final RepositoryDataHandler _dataHandler;
 	private ContentName _responseName = null;
@@ -175,6 +180,8 @@ public class RepositoryServer implements CCNStatistics {
 			_dataHandler = new RepositoryDataHandler(this);
 			Thread dataHandlerThread = new Thread(_dataHandler, "RepositoryDataHandler");
 			dataHandlerThread.start();
+
+			_statsMBean = CCNStatsMBean.register("RepositoryServer", String.valueOf(_repo.getLocalName()), _stats);
 	}
 
 	/**
@@ -262,6 +269,9 @@ public class RepositoryServer implements CCNStatistics {
 			}
 		}
 
+		CCNStatsMBean.unregister(_statsMBean);
+		_statsMBean = null;
+
 		_dataHandler.shutdown();
 		_repo.shutDown();
 		_iHandler.shutdown();
@@ -404,10 +414,17 @@ public class RepositoryServer implements CCNStatistics {
 		return _dataHandler;
 	}
 
+	/**
+	 * @return the window each listener starts with
+	 */
 	public int getWindowSize() {
 		return _windowSize;
 	}
 
+	public RepositoryIngestScheduler getIngestScheduler() {
+		return _ingestScheduler;
+	}
+
 	public int getFreshness() {
 		return _ephemeralFreshness;
 	}
@@ -429,7 +446,7 @@ public class RepositoryServer implements CCNStatistics {
 	 * @return void
 	 */
 	public void sendEnumerationResponse(NameEnumerationResponse ner){
-		if(ner!=null && ner.getPrefix()!=null && ner.hasNames()){
+		if(ner!=null && ner.getPrefix()!=null && (ner.hasNames() || ner.hasContinuation())){
 			NameEnumerationResponseMessageObject neResponseObject = null;
 			try{
 				if (Log.isLoggable(Log.FAC_REPO, Level.FINER))
@@ -639,6 +656,7 @@ public class RepositoryServer implements CCNStatistics {
 	// Statistics
 
 	protected CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.HandleInterest);
+	protected ObjectName _statsMBean = null;
 
 	public CCNStats getStats() {
 		return _stats;
@@ -682,6 +700,7 @@ public class RepositoryServer implements CCNStatistics {
 		HandleContentExpressInterest ("interests", "Number of interests expressed in handleContent()"),
 		HandleContentCancelInterest ("interests", "Number of interests cancelled"),
 		HandleContentExpressInterestErrors ("errors", "Number of errors expressing interests in handleContent()"),
+		HandleContentLateData ("objects", "Data arriving too late, counted as lost by the ingest scheduler"),
 ;
 
 
@@ -18,6 +18,7 @@
 package org.ccnx.ccn.impl.security.crypto.util;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
@@ -85,6 +86,15 @@ public class DigestHelper {
 		_md.update(content);
 	}
 
+	/**
+	 * Updates the digest using the remaining bytes of a buffer, which may be direct
+	 * or memory-mapped. The buffer's position is advanced to its limit.
+	 * @param content the buffer.
+	 */
+	public void update(ByteBuffer content) {
+		_md.update(content);
+	}
+
 	/**
 	 * Completes the hash computation by performing final operations such as padding. 
 	 * The digest is reset after this call is made. 
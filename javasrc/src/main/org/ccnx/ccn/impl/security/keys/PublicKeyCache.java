@@ -30,6 +30,7 @@ import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.TrustManager;
 import org.ccnx.ccn.config.UserConfiguration;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.impl.support.Tracer;
 import static org.ccnx.ccn.impl.support.Log.FAC_KEYS;
 import org.ccnx.ccn.io.ErrorStateException;
 import org.ccnx.ccn.io.content.ContentGoneException;
@@ -223,7 +224,14 @@ public class PublicKeyCache {
 				return key;
 			}
 		} else {
-			PublicKeyObject publicKeyObject = getPublicKeyObject(desiredKeyID, locator, timeout, handle);
+			long trace = Tracer.current();
+			long start = System.nanoTime();
+			PublicKeyObject publicKeyObject;
+			try {
+				publicKeyObject = getPublicKeyObject(desiredKeyID, locator, timeout, handle);
+			} finally {
+				Tracer.span(trace, Tracer.Stage.KeyFetch, start, locator.name().name());
+			}
 			if (null == publicKeyObject) {
 				Log.info(FAC_KEYS, "Could not retrieve key {0} from network with locator {1}!", desiredKeyID, locator);
 			} else {
@@ -257,6 +265,8 @@ public class PublicKeyCache {
 		// additional name components.
 		keyInterest.minSuffixComponents(1);
 		keyInterest.maxSuffixComponents(3);
+		// Time the fetch as part of whatever needed the key
+		keyInterest.traceId(Tracer.current());
 
 		ContentObject retrievedContent = null;
 		int iterationCount = 0;
@@ -0,0 +1,207 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Takes log messages from any number of threads and formats and writes them on a background
+ * thread, so a thread logging a message only pays for putting it in a buffer. The buffer is a
+ * bounded ring which threads add to without locking: each slot has a sequence number saying
+ * whether it is free for the next writer or full for the reader.
+ *
+ * If the buffer fills, messages at WARNING and above are written by the calling thread as they
+ * would be without this writer, and less important ones are dropped and counted. The count is
+ * written to the log when the buffer next empties.
+ *
+ * Message parameters are turned into strings on the background thread, so they should not be
+ * changed after they are logged.
+ */
+public class AsyncLogWriter implements Runnable {
+
+	// How long the writer thread sleeps for at most when there's nothing to do
+	protected static final long IDLE_PARK_NANOS = 10 * 1000 * 1000;
+
+	protected static class Entry {
+		final int _facility;
+		final Level _level;
+		final long _millis;
+		final int _threadId;
+		final String _msg;
+		final Object [] _params;
+
+		Entry(int facility, Level level, long millis, int threadId, String msg, Object [] params) {
+			_facility = facility;
+			_level = level;
+			_millis = millis;
+			_threadId = threadId;
+			_msg = msg;
+			_params = params;
+		}
+	}
+
+	protected final int _mask;
+	protected final AtomicReferenceArray<Entry> _slots;
+	protected final AtomicLongArray _sequence;
+	protected final AtomicLong _tail = new AtomicLong(0);
+	protected volatile long _head = 0; // only changed by the writer thread
+	protected volatile long _written = 0; // messages taken from the buffer and written
+	protected final AtomicLong _dropped = new AtomicLong(0);
+
+	protected final Thread _thread;
+	protected volatile boolean _running = true;
+	protected volatile boolean _idle = false;
+
+	/**
+	 * Start a writer thread
+	 * @param size the number of messages to buffer, rounded up to a power of 2
+	 */
+	public AsyncLogWriter(int size) {
+		int capacity = 1;
+		while (capacity < size)
+			capacity <<= 1;
+		_mask = capacity - 1;
+		_slots = new AtomicReferenceArray<Entry>(capacity);
+		_sequence = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++)
+			_sequence.set(i, i);
+		_thread = new Thread(this, "CCNx log writer");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Queue a message for writing
+	 * @return true if the message has been dealt with, false if the caller must write it itself
+	 */
+	public boolean offer(int facility, Level level, long millis, String msg, Object [] params) {
+		Entry entry = new Entry(facility, level, millis, (int)Thread.currentThread().getId(), msg, params);
+		while (true) {
+			long position = _tail.get();
+			int index = (int)(position & _mask);
+			long diff = _sequence.get(index) - position;
+			if (diff == 0) {
+				if (_tail.compareAndSet(position, position + 1)) {
+					_slots.set(index, entry);
+					_sequence.set(index, position + 1);
+					if (_idle)
+						LockSupport.unpark(_thread);
+					return true;
+				}
+			} else if (diff < 0) {
+				// Full
+				if (level.intValue() >= Level.WARNING.intValue())
+					return false;
+				_dropped.incrementAndGet();
+				return true;
+			}
+			// Otherwise someone else got this slot first, try the next
+		}
+	}
+
+	/**
+	 * @return the next message or null if there isn't one. Only called by the writer thread.
+	 */
+	protected Entry poll() {
+		long position = _head;
+		int index = (int)(position & _mask);
+		if (_sequence.get(index) != position + 1)
+			return null;
+		Entry entry = _slots.get(index);
+		_slots.set(index, null);
+		_sequence.set(index, position + _mask + 1);
+		_head = position + 1;
+		return entry;
+	}
+
+	public boolean isEmpty() {
+		return _head == _tail.get();
+	}
+
+	/**
+	 * @return the number of messages dropped because the buffer was full and not yet reported
+	 */
+	public long getDropped() {
+		return _dropped.get();
+	}
+
+	public void run() {
+		while (true) {
+			Entry entry = poll();
+			if (null != entry) {
+				try {
+					Log.publish(entry._facility, entry._level, entry._millis, entry._threadId, entry._msg, entry._params);
+				} catch (RuntimeException e) {
+					System.err.println("Cannot write log message: " + e);
+				}
+				_written = _head;
+				continue;
+			}
+			long dropped = _dropped.getAndSet(0);
+			if (dropped > 0)
+				Log.publish(Log.FAC_DEFAULT, Level.WARNING, System.currentTimeMillis(), (int)_thread.getId(),
+						"{0} log messages dropped, the log buffer was full", new Object[]{dropped});
+			if (!_running)
+				return;
+			_idle = true;
+			if (isEmpty())
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			_idle = false;
+		}
+	}
+
+	/**
+	 * Wait until everything queued so far has been written
+	 * @param timeout longest time to wait in ms
+	 */
+	public void drain(long timeout) {
+		if (Thread.currentThread() == _thread)
+			return;
+		long target = _tail.get();
+		long start = System.currentTimeMillis();
+		while (_written < target && _thread.isAlive() && System.currentTimeMillis() - start < timeout) {
+			LockSupport.unpark(_thread);
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Write what's queued and stop the writer thread
+	 */
+	public void stop() {
+		_running = false;
+		LockSupport.unpark(_thread);
+		if (Thread.currentThread() == _thread)
+			return;
+		try {
+			_thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (!_thread.isAlive()) {
+			// Write anything which arrived as the thread stopped
+			Entry entry;
+			while (null != (entry = poll()))
+				Log.publish(entry._facility, entry._level, entry._millis, entry._threadId, entry._msg, entry._params);
+		}
+	}
+}
@@ -26,11 +26,14 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import org.ccnx.ccn.config.SystemConfiguration;
@@ -45,6 +48,11 @@ import org.ccnx.ccn.config.SystemConfiguration;
  * To send log entries to file, specify the log output directory using either the system property
  * org.ccnx.ccn.LogDir or the environment variable CCN_LOG_DIR.	 To override the default
  * log level for whatever program you are running, set the system property org.ccnx.ccn.LogLevel.
+ *
+ * Setting the system property org.ccnx.ccn.LogAsync or the environment variable CCN_LOG_ASYNC to true
+ * makes logging calls only queue their message, which is formatted and written by a background thread
+ * (see AsyncLogWriter). In that mode the log doesn't say which class and method a message came from,
+ * as finding out is most of the cost of logging a message.
  */
 public class Log {
 
@@ -67,9 +75,25 @@ public class Log {
 	public static final String LOG_DIR_PROPERTY = "org.ccnx.ccn.LogDir";
 	public static final String LOG_DIR_ENV = "CCN_LOG_DIR";
 
+	public static final String LOG_ASYNC_PROPERTY = "org.ccnx.ccn.LogAsync";
+	public static final String LOG_ASYNC_ENV = "CCN_LOG_ASYNC";
+
+	public static final String LOG_BUFFER_SIZE_PROPERTY = "org.ccnx.ccn.LogBufferSize";
+	public static final String LOG_BUFFER_SIZE_ENV = "CCN_LOG_BUFFER_SIZE";
+	public static final int DEFAULT_LOG_BUFFER_SIZE = 8192;
+
 	protected static Logger _systemLogger = null;
 	protected static Logger[] _facilityLoggers = null;
 
+	protected static volatile AsyncLogWriter _asyncWriter = null;
+	protected static boolean _flushOnExit = false;
+	// Longest time flush() waits for queued messages to be written
+	protected static final long FLUSH_TIMEOUT = 5000;
+
+	// Parsed message formats, so we only have to look for the parameters in each once
+	protected static final int MAX_TEMPLATES = 4096;
+	protected static final ConcurrentHashMap<String, MessageTemplate> _templates = new ConcurrentHashMap<String, MessageTemplate>();
+
 	//static int _level;
 	//static boolean useDefaultLevel = true; // reset if an external override of the default level was specified
 
@@ -360,6 +384,12 @@ public class Log {
 
 		// Allow override of default log level.
 		setLogLevels();
+
+		String async = System.getProperty(LOG_ASYNC_PROPERTY);
+		if (null == async)
+			async = System.getenv(LOG_ASYNC_ENV);
+		if (Boolean.parseBoolean(async))
+			setAsync(true);
 	}
 
 	// deprecated
@@ -663,43 +693,149 @@ public class Log {
 			return;
 
 		// Do this at the top of doLog to get timestamp closest to event
+		long now = System.currentTimeMillis();
+
+		AsyncLogWriter writer = _asyncWriter;
+		if (null != writer && writer.offer(facility, l, now, msg, params))
+			return;
+
+		StackTraceElement ste = Thread.currentThread().getStackTrace()[3];
+		_facilityLoggers[facility].logp(l, ste.getClassName().replace('$', '.'), ste.getMethodName(), 
+				format(facility, now, msg, params));
+	}
+
+	/**
+	 * Write a message queued by an AsyncLogWriter
+	 */
+	protected static void publish(int facility, Level l, long millis, int threadId, String msg, Object [] params) {
+		LogRecord record = new LogRecord(l, format(facility, millis, msg, params));
+		record.setMillis(millis);
+		record.setThreadID(threadId);
+		record.setLoggerName(FAC_NAME[facility]);
+		// Setting this stops the record looking for its caller on the stack
+		record.setSourceClassName(FAC_NAME[facility]);
+		_facilityLoggers[facility].log(record);
+	}
+
+	/**
+	 * Some loggers e.g. the XML logger do not substitute parameters correctly
+	 * Therefore we do our own parameter substitution here and do not rely
+	 * on the system logger's ability to do it.
+	 */
+	protected static String format(int facility, long millis, String msg, Object [] params) {
+		if (null != params && params.length > 0 && null != msg) {
+			MessageTemplate template = _templates.get(msg);
+			if (null == template) {
+				template = new MessageTemplate(msg);
+				if (_templates.size() < MAX_TEMPLATES)
+					_templates.put(msg, template);
+			}
+			msg = template.format(params);
+		}
+
 		// Use %.6f to get format same as ccnd, even though we only have
 		// msec precision.
 		if( (facility == FAC_TIMING)  || _timestamp) {
-			long now = System.currentTimeMillis();
-			double d = now / 1000.0;
+			double d = millis / 1000.0;
 			msg = String.format("%.6f %s", d, msg);
 		}
+		return msg;
+	}
 
-		StackTraceElement ste = Thread.currentThread().getStackTrace()[3];
-		Class<?> c;
-		try {
-			c = Class.forName(ste.getClassName());
-		} catch (ClassNotFoundException e) {
-			throw new RuntimeException(e);
+	/**
+	 * A message format split into the text between the parameters and the numbers of the
+	 * parameters. Only the simplest form of MessageFormat, {0}, {1}, ... is supported.
+	 */
+	protected static class MessageTemplate {
+		protected final String [] _text;
+		protected final int [] _params;
+
+		protected MessageTemplate(String msg) {
+			ArrayList<String> text = new ArrayList<String>();
+			ArrayList<Integer> params = new ArrayList<Integer>();
+			int start = 0;
+			int open = msg.indexOf('{');
+			while (open >= 0) {
+				int close = open + 1;
+				while (close < msg.length() && Character.isDigit(msg.charAt(close)))
+					close++;
+				if (close > open + 1 && close < msg.length() && msg.charAt(close) == '}' && close - open < 10) {
+					text.add(msg.substring(start, open));
+					params.add(Integer.parseInt(msg.substring(open + 1, close)));
+					start = close + 1;
+				}
+				open = msg.indexOf('{', close);
+			}
+			text.add(msg.substring(start));
+			_text = text.toArray(new String[text.size()]);
+			_params = new int[params.size()];
+			for (int i = 0; i < _params.length; i++)
+				_params[i] = params.get(i);
 		}
 
-		// Some loggers e.g. the XML logger do not substitute parameters correctly
-		// Therefore we do our own parameter substitution here and do not rely
-		// on the system logger's ability to do it.
-		int i = 0;
-		for(Object o : params) {
-			if (o == null) {
-				o = "(null)";
+		protected String format(Object [] params) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(_text[0]);
+			for (int i = 0; i < _params.length; i++) {
+				int p = _params[i];
+				if (p < params.length) {
+					Object o = params[p];
+					sb.append((null == o) ? "(null)" : o);
+				} else {
+					sb.append('{').append(p).append('}');
+				}
+				sb.append(_text[i + 1]);
 			}
-			int index = msg.indexOf("{" + i++ + "}");
-			if (index >= 0) {
-				StringBuffer sb = new StringBuffer(msg.substring(0, index));
-				sb.append(o);
-				sb.append(msg.substring(index + 3));
-				msg = sb.toString();
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Turn writing log messages on a background thread on or off. When turning it off, or
+	 * on with a new buffer size, anything already queued is written first.
+	 * @param async
+	 * @return whether it was on before
+	 */
+	public static synchronized boolean setAsync(boolean async) {
+		AsyncLogWriter writer = _asyncWriter;
+		if (async && null == writer) {
+			int size = DEFAULT_LOG_BUFFER_SIZE;
+			String sizeString = System.getProperty(LOG_BUFFER_SIZE_PROPERTY);
+			if (null == sizeString)
+				sizeString = System.getenv(LOG_BUFFER_SIZE_ENV);
+			if (null != sizeString) {
+				try {
+					size = Integer.parseInt(sizeString);
+				} catch (NumberFormatException e) {
+					System.err.println("The log buffer size must be an integer.");
+				}
 			}
+			_asyncWriter = new AsyncLogWriter(size);
+			if (!_flushOnExit) {
+				// The writer thread won't keep us running, so make sure it's finished when we exit
+				_flushOnExit = true;
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override
+					public void run() {
+						flush();
+					}
+				});
+			}
+		} else if (!async && null != writer) {
+			_asyncWriter = null;
+			writer.stop();
 		}
+		return null != writer;
+	}
 
-		_facilityLoggers[facility].logp(l, c.getCanonicalName(), ste.getMethodName(), msg);
+	public static boolean isAsync() {
+		return null != _asyncWriter;
 	}
 
 	public static void flush() {
+		AsyncLogWriter writer = _asyncWriter;
+		if (null != writer)
+			writer.drain(FLUSH_TIMEOUT);
 		Handler [] handlers = _facilityLoggers[FAC_DEFAULT].getHandlers();
 		for (int i=0; i < handlers.length; ++i) {
 			handlers[i].flush();
@@ -729,7 +865,7 @@ public class Log {
 	public static void logStackTrace(Level level, Throwable t) {
 		StringWriter sw = new StringWriter();
 		t.printStackTrace(new PrintWriter(sw));
-		_facilityLoggers[FAC_DEFAULT].log(level, sw.toString());
+		logMessage(FAC_DEFAULT, level, sw.toString());
 	}
 
 	public static void logStackTrace(int facility, Level level, Throwable t) {
@@ -738,11 +874,11 @@ public class Log {
 
 		StringWriter sw = new StringWriter();
 		t.printStackTrace(new PrintWriter(sw));
-		_facilityLoggers[facility].log(level, sw.toString());
+		logMessage(facility, level, sw.toString());
 	}
 
 	public static void logException(String message, Exception e) {
-		_facilityLoggers[FAC_DEFAULT].warning(message);
+		logMessage(FAC_DEFAULT, Level.WARNING, message);
 		Log.warningStackTrace(e);
 	}
 
@@ -750,7 +886,18 @@ public class Log {
 		if (!isLoggable(facility, level))
 			return;
 
-		_facilityLoggers[facility].log(level, message);
+		logMessage(facility, level, message);
 		logStackTrace(facility, level, e);
 	}
+
+	/**
+	 * Log a message which needs no formatting, in order with messages queued for the background
+	 * writer if there is one
+	 */
+	protected static void logMessage(int facility, Level level, String msg) {
+		AsyncLogWriter writer = _asyncWriter;
+		if (null != writer && writer.offer(facility, level, System.currentTimeMillis(), msg, null))
+			return;
+		_facilityLoggers[facility].log(level, msg);
+	}
 }
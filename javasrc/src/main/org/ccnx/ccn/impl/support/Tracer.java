@@ -0,0 +1,276 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.impl.support;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.Interest;
+
+/**
+ * Records where the time goes while fetching content, one Interest at a time.
+ *
+ * When tracing is on, each Interest expressed through CCNHandle is given a trace id, and the
+ * library records a span for each stage it goes through: the blocking get, writing the
+ * interest, waiting for data, delivering the data to its handler, waiting for a handler thread,
+ * verifying the content and fetching the key to verify it with. Spans are kept in a ring of
+ * the most recent ones, and also written to a file if one is set. ccntracesummary summarises
+ * such a file.
+ *
+ * Verification and key fetching don't see the Interest, so they are traced against the trace
+ * made current on their thread with setCurrent().
+ *
+ * Tracing is off unless the system property org.ccnx.ccn.Trace or the environment variable
+ * CCN_TRACE is true, a file is given with org.ccnx.ccn.TraceFile or CCN_TRACE_FILE, or
+ * setEnabled() is called. When it's off each stage costs one check of a flag.
+ */
+public class Tracer {
+
+	public static final String TRACE_PROPERTY = "org.ccnx.ccn.Trace";
+	public static final String TRACE_ENV = "CCN_TRACE";
+	public static final String TRACE_FILE_PROPERTY = "org.ccnx.ccn.TraceFile";
+	public static final String TRACE_FILE_ENV = "CCN_TRACE_FILE";
+	public static final String TRACE_BUFFER_SIZE_PROPERTY = "org.ccnx.ccn.TraceBufferSize";
+	public static final String TRACE_BUFFER_SIZE_ENV = "CCN_TRACE_BUFFER_SIZE";
+	public static final int DEFAULT_TRACE_BUFFER_SIZE = 65536;
+
+	public enum Stage {
+		Get,			// CCNHandle.get, from call to return
+		Express,		// Registering and writing an interest
+		Wait,			// From expressing an interest until matching data arrived
+		Deliver,		// Running the handler for the data, or waking the getter
+		HandlerQueue,	// Waiting for a thread to process data handed off by a handler
+		Verify,			// Verifying a content object
+		KeyFetch		// Fetching a key to verify with
+	}
+
+	/**
+	 * A timed stage of a trace
+	 */
+	public static class Span {
+		public final long _trace;
+		public final Stage _stage;
+		public final long _start;		// System.nanoTime()
+		public final long _duration;	// nanoseconds
+		public final long _thread;
+		public final String _name;
+
+		public Span(long trace, Stage stage, long start, long duration, long thread, String name) {
+			_trace = trace;
+			_stage = stage;
+			_start = start;
+			_duration = duration;
+			_thread = thread;
+			_name = name;
+		}
+
+		/**
+		 * The form written to trace files, tab separated
+		 */
+		@Override
+		public String toString() {
+			return _trace + "\t" + _stage + "\t" + _start + "\t" + _duration + "\t" + _thread + "\t" + _name;
+		}
+
+		/**
+		 * Read a line of a trace file
+		 * @throws IllegalArgumentException if the line isn't a span
+		 */
+		public static Span parse(String line) throws IllegalArgumentException {
+			String [] fields = line.split("\t", 6);
+			if (fields.length < 6)
+				throw new IllegalArgumentException("Not a trace span: " + line);
+			return new Span(Long.parseLong(fields[0]), Stage.valueOf(fields[1]), Long.parseLong(fields[2]),
+					Long.parseLong(fields[3]), Long.parseLong(fields[4]), fields[5]);
+		}
+	}
+
+	protected static volatile boolean _enabled = false;
+	protected static final AtomicLong _nextTrace = new AtomicLong(0);
+	protected static final AtomicLong _position = new AtomicLong(0);
+	protected static AtomicReferenceArray<Span> _spans;
+	protected static PrintWriter _file = null;
+	protected static boolean _flushOnExit = false;
+
+	protected static final ThreadLocal<long []> _current = new ThreadLocal<long []>() {
+		@Override
+		protected long [] initialValue() {
+			return new long[1];
+		}
+	};
+
+	static {
+		int size = DEFAULT_TRACE_BUFFER_SIZE;
+		String value = SystemConfiguration.retrievePropertyOrEnvironmentVariable(TRACE_BUFFER_SIZE_PROPERTY, TRACE_BUFFER_SIZE_ENV, null);
+		if (null != value) {
+			try {
+				size = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				Log.warning("The trace buffer size must be an integer, not {0}. Using {1}.", value, DEFAULT_TRACE_BUFFER_SIZE);
+			}
+		}
+		_spans = new AtomicReferenceArray<Span>(Math.max(1, size));
+		String file = SystemConfiguration.retrievePropertyOrEnvironmentVariable(TRACE_FILE_PROPERTY, TRACE_FILE_ENV, null);
+		if (null != file) {
+			try {
+				setFile(file);
+			} catch (IOException e) {
+				Log.warning("Cannot open trace file {0}: {1}", file, e.getMessage());
+			}
+		}
+		if (Boolean.parseBoolean(SystemConfiguration.retrievePropertyOrEnvironmentVariable(TRACE_PROPERTY, TRACE_ENV, null)))
+			_enabled = true;
+	}
+
+	public static boolean isEnabled() {
+		return _enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		_enabled = enabled;
+	}
+
+	/**
+	 * Write spans to a file as well as keeping them in memory, and turn tracing on
+	 * @param fileName the file to append to, or null to stop writing to a file
+	 */
+	public static synchronized void setFile(String fileName) throws IOException {
+		if (null != _file)
+			_file.close();
+		_file = null;
+		if (null == fileName)
+			return;
+		_file = new PrintWriter(new BufferedWriter(new FileWriter(fileName, true), 65536));
+		if (!_flushOnExit) {
+			_flushOnExit = true;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		}
+		_enabled = true;
+	}
+
+	public static synchronized void flush() {
+		if (null != _file)
+			_file.flush();
+	}
+
+	/**
+	 * Give an interest a trace id if tracing is on and it doesn't have one
+	 * @return the interest's trace id, 0 if it isn't being traced
+	 */
+	public static long begin(Interest interest) {
+		if (!_enabled)
+			return 0;
+		long trace = interest.traceId();
+		if (0 == trace) {
+			trace = _nextTrace.incrementAndGet();
+			interest.traceId(trace);
+		}
+		return trace;
+	}
+
+	/**
+	 * @return the trace work on this thread is part of, or 0
+	 */
+	public static long current() {
+		if (!_enabled)
+			return 0;
+		return _current.get()[0];
+	}
+
+	/**
+	 * Make a trace current on this thread
+	 * @return the trace which was current before, to put back when done
+	 */
+	public static long setCurrent(long trace) {
+		long [] current = _current.get();
+		long previous = current[0];
+		current[0] = trace;
+		return previous;
+	}
+
+	/**
+	 * Record a stage which started at start and ended now
+	 * @param trace the trace, nothing is recorded if 0
+	 * @param start the start time from System.nanoTime()
+	 */
+	public static void span(long trace, Stage stage, long start, ContentName name) {
+		if (0 == trace || !_enabled)
+			return;
+		long now = System.nanoTime();
+		record(new Span(trace, stage, start, now - start, Thread.currentThread().getId(),
+						null == name ? "" : name.toString()));
+	}
+
+	protected static void record(Span span) {
+		long position = _position.getAndIncrement();
+		_spans.set((int)(position % _spans.length()), span);
+		if (null != _file) {
+			synchronized (Tracer.class) {
+				if (null != _file)
+					_file.println(span);
+			}
+		}
+	}
+
+	/**
+	 * @return the spans still held in memory, oldest first
+	 */
+	public static ArrayList<Span> getSpans() {
+		ArrayList<Span> spans = new ArrayList<Span>();
+		long end = _position.get();
+		long begin = Math.max(0, end - _spans.length());
+		for (long i = begin; i < end; i++) {
+			Span span = _spans.get((int)(i % _spans.length()));
+			if (null != span)
+				spans.add(span);
+		}
+		return spans;
+	}
+
+	/**
+	 * @return the spans held in memory for one trace, oldest first
+	 */
+	public static ArrayList<Span> getSpans(long trace) {
+		ArrayList<Span> spans = new ArrayList<Span>();
+		for (Span span : getSpans()) {
+			if (span._trace == trace)
+				spans.add(span);
+		}
+		return spans;
+	}
+
+	/**
+	 * Forget the spans held in memory
+	 */
+	public static void clear() {
+		for (int i = 0; i < _spans.length(); i++)
+			_spans.set(i, null);
+	}
+}
@@ -18,11 +18,17 @@
 package org.ccnx.ccn.impl.sync;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNSync;
+import org.ccnx.ccn.impl.encoding.XMLDecoder;
 import org.ccnx.ccn.impl.encoding.XMLEncodable;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentEncodingException;
@@ -45,28 +51,32 @@ public class NodeBuilder {
 		 * more room based on various criteria depending on whether its a node of leaves or of nodes. Objects which have been 
 		 * included in the new node are removed from the input object.
 		 * 
+		 * This is done in a single pass over the objects - we measure each object without encoding it and accumulate
+		 * the node's hash as elements are added.
+		 * 
 		 * @param objects collection of objects for building the node
 		 * @param depth depth of new node
 		 * @param shc the associated hash cache
 		 * @param cache the associated node cache
 		 * @return new SyncTreeEntry referencing the new node
 		 */
+		@SuppressWarnings("unchecked")
 		public SyncTreeEntry createNodeCommon(Collection<X> objects, int depth, SyncHashCache shc, SyncNodeCache cache) {
 			ArrayList<SyncNodeComposite.SyncNodeElement> refs = new ArrayList<SyncNodeComposite.SyncNodeElement>();
+			byte[] hash = SyncNodeComposite.newHashAccumulator();
 			int total = 0;
 			int limit = CCNSync.NODE_SPLIT_TRIGGER - CCNSync.NODE_SPLIT_TRIGGER/8;
 			int minLen = CCNSync.NODE_SPLIT_TRIGGER/2;
 			int maxLen = 0;
 			int prevTotal = 0;
-			int split = 0;
+			boolean isList = objects instanceof List;
 			X tobj = null;
-			for (X ne : objects) {
-				XMLEncodable nextE = (XMLEncodable)ne;
+			Iterator<X> it = objects.iterator();
+			while (it.hasNext()) {
+				X ne = it.next();
 				if (null != tobj) {
-					byte[] lengthTest;
 					try {
-						lengthTest = nextE.encode();
-						int nameLen = lengthTest.length + 8;
+						int nameLen = ((XMLEncodable)ne).encodedLength() + 8;
 						if (nameLen > maxLen) maxLen = nameLen;
 						total += (nameLen + ((maxLen - nameLen) * 2));
 					} catch (ContentEncodingException e) {} // Shouldn't happen because we built the data
@@ -76,20 +86,16 @@ public class NodeBuilder {
 					if (total > limit)
 						break;
 				}
-				tobj = ne;
-				split++;
-			}
-			int i = 0;
-			ArrayList<X> removes = new ArrayList<X>();
-			for (X thisOne : objects) {
-				SyncNodeElement sne = newElement(thisOne);
+				SyncNodeElement sne = newElement(ne);
 				refs.add(sne);
-				removes.add(thisOne);
-				if (++i >= split)
-					break;
+				SyncNodeComposite.accumulateHash(sne, hash);
+				if (!isList)
+					it.remove();
+				tobj = ne;
 			}
-			objects.removeAll(removes);
-			SyncNodeComposite snc = newNode(refs, depth);
+			if (isList)		// Removing from the front of a list one at a time is slow
+				((List<X>)objects).subList(0, refs.size()).clear();
+			SyncNodeComposite snc = newNode(refs, hash, depth);
 			if (null == snc) {
 				Log.warning(Log.FAC_SYNC, "Couldn't build node - shouldn't happen");
 				return null;
@@ -124,10 +130,11 @@ public class NodeBuilder {
 		/**
 		 * Create a new node based on input elements
 		 * @param refs the list of elements
+		 * @param hash hash accumulated from refs
 		 * @param depth depth of new node
 		 * @return
 		 */
-		public abstract SyncNodeComposite newNode(ArrayList<SyncNodeComposite.SyncNodeElement> refs, int depth);
+		public abstract SyncNodeComposite newNode(ArrayList<SyncNodeComposite.SyncNodeElement> refs, byte[] hash, int depth);
 	}
 	
 	/**
@@ -169,8 +176,8 @@ public class NodeBuilder {
 				return new SyncNodeComposite.SyncNodeElement(name);
 			}
 
-			public SyncNodeComposite newNode(ArrayList<SyncNodeElement> refs,int depth) {
-				return new SyncNodeComposite(refs, refs.get(0), refs.get(refs.size() - 1), refs.size(), depth);
+			public SyncNodeComposite newNode(ArrayList<SyncNodeElement> refs, byte[] hash, int depth) {
+				return new SyncNodeComposite(refs, refs.get(0), refs.get(refs.size() - 1), refs.size(), depth, hash);
 			}
 		}.createNodeCommon(names, 1, shc, cache);
 		
@@ -199,7 +206,7 @@ public class NodeBuilder {
 				return new SyncNodeElement(element.getData());
 			}
 
-			public SyncNodeComposite newNode(ArrayList<SyncNodeElement> refs, int depth) {
+			public SyncNodeComposite newNode(ArrayList<SyncNodeElement> refs, byte[] hash, int depth) {
 				SyncNodeElement first = findit(refs, shc, true);
 				if (null == first) {
 					Log.warning(Log.FAC_SYNC, "Can't get hash or node for {0} in newNode - shouldn't happen", 
@@ -212,7 +219,7 @@ public class NodeBuilder {
 							Component.printURI(refs.get(refs.size() - 1).getData()));
 					return null;
 				}
-				return new SyncNodeComposite(refs, first, last, refs.size(), depth);
+				return new SyncNodeComposite(refs, first, last, refs.size(), depth, hash);
 			}
 		}.createNodeCommon(nodes, depth, shc, cache);
 		
@@ -243,6 +250,13 @@ public class NodeBuilder {
 		SyncTreeEntry ste = null;
 		ArrayList<SyncNodeElement> nextElements = new ArrayList<SyncNodeElement>();
 		do {
+			if (nodeElements.size() == 1 && nextElements.size() > 0) {
+				// A node holding only one other node would have the same hash as it so just move that
+				// node up a level
+				nextElements.addAll(nodeElements);
+				nodeElements.clear();
+				break;
+			}
 			ste = newNodeOfNodes(nodeElements, shc, cache, depth);
 			nextElements.add(new SyncNodeElement(ste.getHash()));
 		} while (nodeElements.size() > 0);
@@ -256,25 +270,21 @@ public class NodeBuilder {
 	}
 	
 	/**
-	 * Used to find the "first" or "last" LEAF element within the refs
+	 * Used to find the "first" or "last" LEAF element within the refs. Every node carries its
+	 * own min and max names so we only need to look at the first or last child.
 	 * @param refs
 	 * @param shc
 	 * @param start true if looking for the first element - otherwise look for last
 	 * @return
 	 */
 	private SyncNodeElement findit(ArrayList<SyncNodeElement> refs, SyncHashCache shc, boolean start) {
-		int position = start ? 0 : refs.size() - 1;
-		SyncNodeElement sne = refs.get(position);
-		while (sne.getType() != SyncNodeType.LEAF) {
-			SyncTreeEntry ste = shc.getHash(sne.getData());
-			if (null == ste || null == ste.getNode()) {
-				return null;
-			}
-			if (!start)
-				position = ste.getNode().getRefs().size() - 1;
-			sne = ste.getNode().getElement(position);
-		}
-		return sne;
+		SyncNodeElement sne = refs.get(start ? 0 : refs.size() - 1);
+		if (sne.getType() == SyncNodeType.LEAF)
+			return sne;
+		SyncTreeEntry ste = shc.getHash(sne.getData());
+		if (null == ste || null == ste.getNode())
+			return null;
+		return start ? ste.getNode().getMinName() : ste.getNode().getMaxName();
 	}
 	
 	/**
@@ -300,6 +310,109 @@ public class NodeBuilder {
 		return ourEntry;
 	}
 	
+	/**
+	 * Add names to an existing tree without rebuilding it. Only the leaf nodes the new names fall
+	 * into and the nodes above them are rebuilt, using the same splitting rules as a full build, so
+	 * the cost of an update is proportional to the depth of the tree rather than its size. The
+	 * resulting tree may be split differently than a tree built from scratch from the same names
+	 * but since node hashes are accumulated from the leaves its root hash is the same.
+	 * 
+	 * @param root head of the existing tree
+	 * @param names the names to add in canonical order. Names already in the tree are ignored.
+	 * @param shc hash cache
+	 * @param cache node cache
+	 * @param decoder used to decode nodes we have fetched but not yet decoded. May be null.
+	 * @return entry for the new head or null if we don't have all the nodes we need to do the
+	 * 		update. In this case the caller needs to fall back to some other method of updating.
+	 */
+	public SyncTreeEntry insertNames(SyncTreeEntry root, SortedSet<ContentName> names, SyncHashCache shc, 
+				SyncNodeCache cache, XMLDecoder decoder) {
+		if (names.size() == 0)
+			return root;
+		SyncNodeComposite rootNode = root.isMissing() ? null : root.getNode(decoder);
+		if (null == rootNode)
+			return null;
+		ArrayList<SyncNodeElement> elements = insertNames(root, rootNode, new ArrayList<ContentName>(names), shc, cache, decoder);
+		if (null == elements)
+			return null;
+		if (elements.size() == 1)
+			return shc.addHash(elements.get(0).getData(), cache);
+		return createHeadRecursive(elements, shc, cache, rootNode.getDepth() + 1);
+	}
+	
+	/**
+	 * Add names to the subtree headed by ste
+	 * @param ste entry for the head of the subtree
+	 * @param snc the head node
+	 * @param names names which belong in this subtree in canonical order
+	 * @return elements referencing the node(s) which replace the head or null if a node is unavailable
+	 */
+	private ArrayList<SyncNodeElement> insertNames(SyncTreeEntry ste, SyncNodeComposite snc, List<ContentName> names, 
+				SyncHashCache shc, SyncNodeCache cache, XMLDecoder decoder) {
+		ArrayList<SyncNodeElement> result = new ArrayList<SyncNodeElement>();
+		ArrayList<SyncNodeElement> refs = snc.getRefs();
+		if (refs.get(0).getType() == SyncNodeType.LEAF) {
+			TreeSet<ContentName> merged = new TreeSet<ContentName>(names);
+			for (SyncNodeElement sne : refs)
+				merged.add(sne.getName());
+			if (merged.size() == refs.size()) {		// Nothing new here
+				result.add(new SyncNodeElement(ste.getHash()));
+				return result;
+			}
+			while (merged.size() > 0)
+				result.add(new SyncNodeElement(newLeafNode(merged, shc, cache).getHash()));
+			return result;
+		}
+		
+		// Give each child the names from its min name up to the min name of the next child. Names
+		// before the first child go to the first child and names after the last to the last.
+		ArrayList<SyncNodeElement> newRefs = new ArrayList<SyncNodeElement>();
+		boolean changed = false;
+		SyncTreeEntry child = shc.addHash(refs.get(0).getData(), cache);
+		SyncNodeComposite childNode = child.isMissing() ? null : child.getNode(decoder);
+		int start = 0;
+		for (int i = 0; i < refs.size(); i++) {
+			if (null == childNode)
+				return null;
+			SyncTreeEntry nextChild = null;
+			SyncNodeComposite nextNode = null;
+			int end = names.size();
+			if (i < refs.size() - 1) {
+				nextChild = shc.addHash(refs.get(i + 1).getData(), cache);
+				nextNode = nextChild.isMissing() ? null : nextChild.getNode(decoder);
+				if (null == nextNode)
+					return null;
+				int pos = Collections.binarySearch(names.subList(start, end), nextNode.getMinName().getName());
+				end = start + (pos < 0 ? -(pos + 1) : pos);
+			}
+			if (end == start) {
+				newRefs.add(new SyncNodeElement(child.getHash()));
+			} else {
+				ArrayList<SyncNodeElement> childRefs = insertNames(child, childNode, names.subList(start, end), shc, cache, decoder);
+				if (null == childRefs)
+					return null;
+				if (childRefs.size() != 1 || !Arrays.equals(childRefs.get(0).getData(), child.getHash()))
+					changed = true;
+				newRefs.addAll(childRefs);
+			}
+			start = end;
+			child = nextChild;
+			childNode = nextNode;
+		}
+		if (!changed) {
+			result.add(new SyncNodeElement(ste.getHash()));
+			return result;
+		}
+		while (newRefs.size() > 0) {
+			if (newRefs.size() == 1 && result.size() > 0) {	// See createHeadRecursive
+				result.add(newRefs.remove(0));
+				break;
+			}
+			result.add(new SyncNodeElement(newNodeOfNodes(newRefs, shc, cache, snc.getDepth()).getHash()));
+		}
+		return result;
+	}
+	
 	/**
 	 * Get the first or last leaf element of an arbitrary node given a cache. If we can't trace all the
 	 * way back to the leaf, return null.
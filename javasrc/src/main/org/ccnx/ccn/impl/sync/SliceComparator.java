@@ -19,21 +19,31 @@ package org.ccnx.ccn.impl.sync;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNContentHandler;
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.CCNSyncHandler;
 import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
 import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
@@ -71,13 +81,53 @@ import org.ccnx.ccn.protocol.Interest;
  * glance would seem to need synchronization. However care has been taken to insure that the "run" loop can not be
  * run more than once simultaneously and that all unsynchronized global fields are only referenced from the run
  * routine or by internal methods called only by it so that synchronization is in fact unnecessary.
+ * 
+ * All comparators are run on a single scheduler of SystemConfiguration.SYNC_COMPARATOR_THREADS threads
+ * so that watching many slices or hashes doesn't require a thread per comparator. So a comparator never
+ * blocks on that scheduler waiting for a node: it leaves off comparing and is rescheduled when the node
+ * arrives or its fetch times out.
+ * 
+ * To avoid doing one round trip per tree level when catching up, nodes returned from the network are
+ * decoded on a separate pool and the unknown, uncovered children of each decoded node are requested
+ * immediately, keeping up to SystemConfiguration.SYNC_PREFETCH_WINDOW node fetches outstanding.
  *
  */
-public final class SliceComparator implements Runnable, Comparable<SliceComparator> {
+public final class SliceComparator implements Runnable, Comparable<SliceComparator>, CCNStatistics {
 	public static final int DECODER_SIZE = 756;
 	public static enum SyncCompareState {INIT, PRELOAD, COMPARE, DONE, UPDATE};
 
-	public ScheduledThreadPoolExecutor _executor = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1);
+	protected static final ScheduledThreadPoolExecutor _executor = new ScheduledThreadPoolExecutor(
+			Math.max(1, SystemConfiguration.SYNC_COMPARATOR_THREADS), new ThreadFactory() {
+				private final AtomicInteger _threadCount = new AtomicInteger(1);
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SliceComparator-" + _threadCount.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	
+	/**
+	 * Pool for decoding nodes as they arrive. Decoding is kept off the handler thread but we don't
+	 * want it serialized behind the comparison either.
+	 */
+	protected static final ExecutorService _decodePool = Executors.newFixedThreadPool(
+			Math.max(1, SystemConfiguration.SYNC_DECODE_THREADS), new ThreadFactory() {
+				private final AtomicInteger _threadCount = new AtomicInteger(1);
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SyncNodeDecoder-" + _threadCount.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	
+	private static final ThreadLocal<BinaryXMLDecoder> _poolDecoder = new ThreadLocal<BinaryXMLDecoder>() {
+		protected BinaryXMLDecoder initialValue() {
+			BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+			decoder.setInitialBufferSize(DECODER_SIZE);
+			return decoder;
+		}
+	};
+	
 	public final int COMPARE_INTERVAL = 100; // ms
 	private BinaryXMLDecoder _decoder;
 	
@@ -92,6 +142,22 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	private Semaphore _compareSemaphore = new Semaphore(1);
 	private NodeFetchHandler _nfh = new NodeFetchHandler();
 	
+	// Reschedules the comparison when a node we are waiting for arrives
+	private final Runnable _kicker = new Runnable() {
+		public void run() {
+			kickCompare();
+		}
+	};
+	
+	// The node fetched by someone else we are waiting for, and when we started to wait for it. Only
+	// used by the comparison.
+	private SyncTreeEntry _waitingFor = null;
+	private long _waitStart;
+	
+	// Our tasks on the shared scheduler, so we can cancel them on shutdown
+	private ScheduledFuture<?> _scheduledCompare = null;
+	private ScheduledFuture<?> _scheduledTimeout = null;
+	
 	private ConfigSlice _slice;
 	private ArrayList<CCNSyncHandler> _callbacks = new ArrayList<CCNSyncHandler>();
 	private ArrayList<CCNSyncHandler> _pendingCallbacks = new ArrayList<CCNSyncHandler>();
@@ -106,6 +172,7 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	private Queue<byte[]> _pendingContent = new ConcurrentLinkedQueue<byte[]>();
 	private SyncTreeEntry _currentRoot = null;
 	private SyncTreeEntry _startHash = null;
+	private long _roundStart = 0;
 	private ContentName _startName = null;
 	private boolean _doCallbacks = true;
 	private TreeSet<ContentName> _updateNames = new TreeSet<ContentName>();
@@ -114,6 +181,11 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	private SyncHashCache _shc = new SyncHashCache();
 	private long _timeout = SystemConfiguration.LONG_TIMEOUT;
 	
+	// Prefetches outstanding and when they were requested
+	private ConcurrentHashMap<SyncHashEntry, Long> _prefetching = new ConcurrentHashMap<SyncHashEntry, Long>();
+	private ArrayDeque<PrefetchCursor> _prefetchQueue = new ArrayDeque<PrefetchCursor>();
+	private final int _prefetchWindow = SystemConfiguration.SYNC_PREFETCH_WINDOW;
+	
 	/**
 	 * Start a comparison on a slice which will call back each registered "callback" each time
 	 * a previously unseen name is seen. Note that with the 0 length hash we can only base the "start" of our
@@ -302,13 +374,26 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	public boolean shutdownIfUseless() {
 		synchronized (this) {
 			if (_callbacks.size() == 0) {
-				_shutdown = true;
-				_executor.shutdownNow();
+				shutdown();
 			}
 			return _shutdown;
 		}
 	}
 	
+	/**
+	 * Stop, and take our tasks off the shared scheduler. Must be called with this locked.
+	 */
+	private void shutdown() {
+		_shutdown = true;
+		if (null != _scheduledCompare)
+			_scheduledCompare.cancel(false);
+		if (null != _scheduledTimeout)
+			_scheduledTimeout.cancel(false);
+		_scheduledCompare = null;
+		_scheduledTimeout = null;
+		_executor.purge();
+	}
+	
 	public boolean isShutdown() {
 		synchronized (this) {
 			return _shutdown;
@@ -348,10 +433,12 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	 */
 	public void kickCompare() {
 		synchronized (this) {
+			if (_shutdown)
+				return;
 			if (! _comparing) {
 				_comparing = true;
 				_needToCompare = false;
-				_executor.schedule(this, COMPARE_INTERVAL, TimeUnit.MILLISECONDS);
+				_scheduledCompare = _executor.schedule(this, COMPARE_INTERVAL, TimeUnit.MILLISECONDS);
 			} else
 				_needToCompare = true;
 		}
@@ -399,40 +486,136 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	 */
 	private SyncNodeComposite getOrRequestNode(SyncTreeEntry srt, boolean wait) throws SyncException {
 		SyncNodeComposite node = srt.getNode(_decoder);
-		if (null != node)
+		if (null != node) {
+			if (srt == _waitingFor)
+				_waitingFor = null;
 			return node;
-		Pending lock = _snc.pending(srt.getHash());
-		long ourTime = System.currentTimeMillis();
-		long timeout;
-		synchronized (this) {
-			timeout = _timeout;
 		}
-		long endTime = ourTime + timeout;
-		while (wait && lock.getPending()) {
-			try {
-				synchronized (lock) {
-					lock.wait(timeout);
+		if (wait)
+			return waitForNode(srt);
+		requestNode(srt);
+		return null;
+	}
+	
+	/**
+	 * Request a node if nobody else has. If someone has, arrange to be kicked when it arrives, or
+	 * when we have waited our timeout for it, rather than hold a scheduler thread waiting.
+	 * 
+	 * @param srt
+	 * @return null if node not found but request made or waiting for it
+	 * @throws SyncException on timeout
+	 */
+	private SyncNodeComposite waitForNode(SyncTreeEntry srt) throws SyncException {
+		Pending lock = _snc.pending(srt.getHash());
+		synchronized (lock) {
+			if (lock.getPending()) {
+				long now = System.currentTimeMillis();
+				long timeout;
+				synchronized (this) {
+					timeout = _timeout;
 				}
-			} catch (InterruptedException e) {
-				if (isShutdown())
-					return null;
-			}
-			node = srt.getNode(_decoder);
-			if (null != node)
-				return node;
-			ourTime = System.currentTimeMillis();
-			if (ourTime > endTime) {
-				throw new SyncException("Node fetch timeout for: " + Component.printURI(srt.getHash()));
+				if (srt != _waitingFor) {
+					_waitingFor = srt;
+					_waitStart = now;
+				}
+				long remaining = _waitStart + timeout - now;
+				if (remaining <= 0) {
+					_waitingFor = null;
+					throw new SyncException("Node fetch timeout for: " + Component.printURI(srt.getHash()));
+				}
+				lock.addWaiter(_kicker);
+				synchronized (this) {
+					if (null != _scheduledTimeout)
+						_scheduledTimeout.cancel(false);
+					if (!_shutdown)
+						_scheduledTimeout = _executor.schedule(_kicker, remaining, TimeUnit.MILLISECONDS);
+				}
+				return null;
 			}
 		}
-		
+		_waitingFor = null;
+		requestNode(srt);
+		return null;
+	}
+	
+	/**
+	 * Request a node from the network unless someone has already done so. This doesn't decode
+	 * anything so is safe to call from any thread.
+	 * 
+	 * @param srt
+	 * @return true if we made a request
+	 * @throws SyncException
+	 */
+	private boolean requestNode(SyncTreeEntry srt) throws SyncException {
+		Pending lock = _snc.pending(srt.getHash());
 		synchronized (lock) {
-			if (lock.getPending())	// For non wait case when someone else already requested it
-				return null;
+			if (lock.getPending())	// Someone else already requested it
+				return false;
 			lock.setPending(true);
 		}
+		_stats.increment(StatsEnum.NodesRequested);
 		ProtocolBasedSyncMonitor.requestNode(_slice, srt.getHash(), _handle, _nfh);
-		return null;
+		return true;
+	}
+	
+	/**
+	 * Request children of nodes which we don't yet have and haven't already seen all of, up to the
+	 * prefetch window. Nodes whose children couldn't all be requested because the window was full
+	 * are remembered and continued as earlier prefetches complete. Since nodes are queued in the
+	 * order they arrive, children are requested roughly in the order the comparison will need them.
+	 * 
+	 * @param node newly decoded node or null to just continue prefetching
+	 * @throws SyncException
+	 */
+	private void prefetch(SyncNodeComposite node) throws SyncException {
+		synchronized (_prefetchQueue) {
+			if (null != node && node.getRefs().size() > 0 && node.getRefs().get(0).getType() == SyncNodeType.HASH)
+				_prefetchQueue.add(new PrefetchCursor(node));
+			while (!_prefetchQueue.isEmpty()) {
+				PrefetchCursor pc = _prefetchQueue.peek();
+				ArrayList<SyncNodeElement> refs = pc._node.getRefs();
+				for (; pc._position < refs.size(); pc._position++) {
+					SyncNodeElement sne = refs.get(pc._position);
+					if (sne.getType() != SyncNodeType.HASH)
+						continue;
+					SyncTreeEntry entry = _shc.addHash(sne.getData(), _snc);
+					if (entry.isCovered() || entry.isLocal() || null != entry.getNode())
+						continue;
+					SyncHashEntry she = new SyncHashEntry(entry.getHash());
+					if (_prefetching.containsKey(she))
+						continue;
+					if (!prefetchWindowOpen())
+						return;
+					_prefetching.put(she, System.currentTimeMillis());
+					if (requestNode(entry))
+						_stats.increment(StatsEnum.NodesPrefetched);
+					else
+						_prefetching.remove(she);
+				}
+				_prefetchQueue.poll();
+			}
+		}
+	}
+	
+	/**
+	 * Check for room in the prefetch window. If it's full, prune prefetches which have been outstanding
+	 * for longer than our timeout so that lost requests can't permanently consume the window.
+	 * 
+	 * @return true if another prefetch may be issued
+	 */
+	private boolean prefetchWindowOpen() {
+		if (_prefetching.size() < _prefetchWindow)
+			return true;
+		long timeout;
+		synchronized (this) {
+			timeout = _timeout;
+		}
+		long expired = System.currentTimeMillis() - timeout;
+		for (Map.Entry<SyncHashEntry, Long> entry : _prefetching.entrySet()) {
+			if (entry.getValue() < expired)
+				_prefetching.remove(entry.getKey(), entry.getValue());
+		}
+		return _prefetching.size() < _prefetchWindow;
 	}
 	
 	private void changeState(SyncCompareState state) {
@@ -781,10 +964,34 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	
 	/**
 	 * We keep a running tree of what we already have in "X". Update it here to reflect what we
-	 * got on the last round.
+	 * got on the last round. Normally we can just add the new names to the existing tree, which only
+	 * touches the nodes they fall into. If we don't have all of those nodes we rebuild the part of the
+	 * tree following the first new name instead.
 	 * @throws SyncException 
 	 */
 	protected boolean updateCurrent() throws SyncException {
+		SyncTreeEntry head = getHead(_current);
+		if (null != head) {
+			SyncTreeEntry newHead = _nBuilder.insertNames(head, _updateNames, _shc, _snc, _decoder);
+			if (null != newHead) {
+				newHead.setPos(0);
+				_current.clear();
+				push(newHead, _current);
+				_currentRoot = newHead;
+				if (Log.isLoggable(Log.FAC_SYNC, Level.INFO))
+					Log.info(Log.FAC_SYNC, "Resetting current to updated head: {0}", Component.printURI(newHead.getHash()));
+				return true;
+			}
+		}
+		return rebuildCurrent();
+	}
+	
+	/**
+	 * Update X by walking it alongside the new names and rebuilding everything from the first point
+	 * at which they differ.
+	 * @throws SyncException 
+	 */
+	private boolean rebuildCurrent() throws SyncException {
 		TreeSet<ContentName> neededNames = new TreeSet<ContentName>();
 		Deque<SyncTreeEntry> updateStack = new ArrayDeque<SyncTreeEntry>();
 		boolean newHasNodes = false;
@@ -1034,6 +1241,7 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 							nextRound();
 						changeState(SyncCompareState.PRELOAD);
 						didARound = true;
+						_roundStart = System.currentTimeMillis();
 					}
 						
 					if (getState() == SyncCompareState.INIT) {
@@ -1127,10 +1335,15 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 						}
 						if (doSwitch) {
 							synchronized (this) {
-								_shutdown = true;
+								shutdown();
 							}
 						}
 					}
+					if (_roundStart != 0) {
+						_stats.increment(StatsEnum.CompareRounds);
+						_stats.addSample(StatsEnum.CompareRoundTime, System.currentTimeMillis() - _roundStart);
+						_roundStart = 0;
+					}
 					synchronized (this) {
 						changeState(SyncCompareState.INIT);
 						if (_pendingEntries.size() > 0) {
@@ -1182,13 +1395,53 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 			byte[] hash = name.component(hashComponent + 2);
 			if (Log.isLoggable(Log.FAC_SYNC, Level.FINE))
 				Log.fine(Log.FAC_SYNC, "Saw data from nodefind: hash: {0}", Component.printURI(hash));
+			_stats.increment(StatsEnum.NodesFetched);
 			SyncTreeEntry ste = _shc.addHash(hash, _snc);
 			ste.setRawContent(data.content());
 			_snc.wakeupPending(hash);
-			kickCompare();
+			_decodePool.execute(new NodeDecodeTask(ste));
 			return null;
 		}
 	}
+	
+	/**
+	 * Position within a node whose children we are prefetching
+	 */
+	private static class PrefetchCursor {
+		final SyncNodeComposite _node;
+		int _position = 0;
+		
+		PrefetchCursor(SyncNodeComposite node) {
+			_node = node;
+		}
+	}
+	
+	/**
+	 * Decode a newly arrived node, prefetch its children, then restart the compare
+	 */
+	protected class NodeDecodeTask implements Runnable {
+		private final SyncTreeEntry _ste;
+		
+		public NodeDecodeTask(SyncTreeEntry ste) {
+			_ste = ste;
+		}
+		
+		public void run() {
+			if (isShutdown())
+				return;
+			SyncNodeComposite node = _ste.getNode(_poolDecoder.get());
+			_prefetching.remove(new SyncHashEntry(_ste.getHash()));
+			if (_prefetchWindow > 0) {
+				try {
+					prefetch(node);
+				} catch (SyncException se) {
+					if (Log.isLoggable(Log.FAC_SYNC, Level.INFO))
+						Log.info(Log.FAC_SYNC, "Prefetch failed: {0}", se.getMessage());
+				}
+			}
+			kickCompare();
+		}
+	}
 
 	/**
 	 * To allow use in Concurrent maps which require Comparable
@@ -1196,4 +1449,65 @@ public final class SliceComparator implements Runnable, Comparable<SliceComparat
 	public int compareTo(SliceComparator o) {
 		return _id - o._id;
 	}
+	
+	// ==============================================================
+	// Statistics - these are shared by all comparators
+
+	protected static CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.NodesRequested);
+
+	public CCNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		NodesRequested ("interests", "Node fetch requests sent"),
+		NodesFetched ("objects", "Nodes received in response to node fetch requests"),
+		NodesPrefetched ("interests", "Node fetch requests sent ahead of the comparison"),
+		CompareRounds ("rounds", "Number of completed compare rounds"),
+		CompareRoundTime ("ms", "Time from start of a compare round to completion of its update"),
+;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
 }
@@ -16,26 +16,53 @@
  */
 package org.ccnx.ccn.impl.sync;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
 import org.ccnx.ccn.io.content.SyncNodeComposite;
+import org.ccnx.ccn.io.content.SyncNodeComposite.SyncNodeElement;
+import org.ccnx.ccn.io.content.SyncNodeComposite.SyncNodeType;
 
 /**
- * Nodes can be cached by hash across different comparators. We use WeakReferences to avoid accidentally caching nodes that
- * no longer have any real referents.
+ * Nodes can be cached by hash across different comparators. Recently used nodes are held directly in an LRU
+ * bounded by an (estimated) byte budget so that nodes we are still likely to need are not lost to the garbage
+ * collector and refetched from the network. Nodes which age out of the LRU are demoted to WeakReferences so that
+ * a node which is still held elsewhere (for example a locally built node held by its SyncTreeEntry) can still be
+ * found by hash.
  * 
  * Since we only need to request nodes once per slice, the pending mechanism should be global
  */
-public class SyncNodeCache {
+public class SyncNodeCache implements CCNStatistics {
+	
+	/**
+	 * Rough per object overhead used when estimating the in memory size of a node
+	 */
+	protected static final int NODE_OVERHEAD = 128;
+	protected static final int ELEMENT_OVERHEAD = 48;
+	protected static final int COMPONENT_OVERHEAD = 24;
 	
 	/**
 	 * This mechanism is used to avoid requesting the same node more than once (see below). One of
 	 * these objects is created for each node request and used as a java synchronization object to
 	 * insure that we don't return without having retrieved the node when that is required.
+	 * 
+	 * Rather than block waiting for a node someone else has requested, a comparator can leave a
+	 * waiter which is run when the node arrives. Waiters are run once, on the thread which delivered
+	 * the node, so they should do no more than schedule the work which needs the node.
 	 */
 	public class Pending {
 		volatile boolean _pending = false;
+		ArrayList<Runnable> _waiters = null;
 		
 		public void setPending(boolean value) {
 			_pending = value;
@@ -44,12 +71,76 @@ public class SyncNodeCache {
 		public boolean getPending() {
 			return _pending;
 		}
+		
+		/**
+		 * Must be called with the Pending locked
+		 * @param waiter to run when the node arrives
+		 */
+		public void addWaiter(Runnable waiter) {
+			if (null == _waiters)
+				_waiters = new ArrayList<Runnable>();
+			if (!_waiters.contains(waiter))
+				_waiters.add(waiter);
+		}
+		
+		/**
+		 * Must be called with the Pending locked
+		 * @return the waiters, which are removed, or null if there are none
+		 */
+		protected ArrayList<Runnable> takeWaiters() {
+			ArrayList<Runnable> waiters = _waiters;
+			_waiters = null;
+			return waiters;
+		}
 	}
 	
 	// For holding objects used as locks for each pending hash
 	private HashMap<SyncHashEntry, Pending> _hashesPending = new HashMap<SyncHashEntry, Pending>();
 	
-	protected HashMap<SyncHashEntry, WeakReference<SyncNodeComposite>> _nodes = new HashMap<SyncHashEntry, WeakReference<SyncNodeComposite>>();
+	/**
+	 * Strongly held nodes in access order. The value is the node with its estimated size so we
+	 * don't have to recompute the size when it is evicted.
+	 */
+	protected LinkedHashMap<SyncHashEntry, CachedNode> _nodes = new LinkedHashMap<SyncHashEntry, CachedNode>(16, 0.75f, true);
+	
+	/**
+	 * Nodes evicted from the LRU which may still be referenced elsewhere
+	 */
+	protected HashMap<SyncHashEntry, WeakNode> _weakNodes = new HashMap<SyncHashEntry, WeakNode>();
+	protected ReferenceQueue<SyncNodeComposite> _weakQueue = new ReferenceQueue<SyncNodeComposite>();
+	
+	protected long _maxBytes;
+	protected long _bytes = 0;
+	
+	protected static class CachedNode {
+		final SyncNodeComposite _node;
+		final long _size;
+		
+		CachedNode(SyncNodeComposite node, long size) {
+			_node = node;
+			_size = size;
+		}
+	}
+	
+	protected static class WeakNode extends WeakReference<SyncNodeComposite> {
+		final SyncHashEntry _key;
+		
+		WeakNode(SyncHashEntry key, SyncNodeComposite node, ReferenceQueue<SyncNodeComposite> queue) {
+			super(node, queue);
+			_key = key;
+		}
+	}
+	
+	public SyncNodeCache() {
+		this(SystemConfiguration.SYNC_NODE_CACHE_BYTES);
+	}
+	
+	/**
+	 * @param maxBytes approximate number of bytes of node data to hold strongly
+	 */
+	public SyncNodeCache(long maxBytes) {
+		_maxBytes = maxBytes;
+	}
 
 	/**
 	 * Put a newly decoded node into the cache
@@ -57,10 +148,20 @@ public class SyncNodeCache {
 	 */
 	public void putNode(SyncNodeComposite node) {
 		synchronized (this) {
-			WeakReference<SyncNodeComposite> wr = new WeakReference<SyncNodeComposite>(node);
-			_nodes.put((new SyncHashEntry(node.getHash())), wr);
-			clearPending(node.getHash());
+			SyncHashEntry she = new SyncHashEntry(node.getHash());
+			_weakNodes.remove(she);
+			CachedNode old = _nodes.get(she);
+			if (null == old || old._node != node) {
+				if (null != old)
+					_bytes -= old._size;
+				CachedNode cn = new CachedNode(node, estimateSize(node));
+				_nodes.put(she, cn);
+				_bytes += cn._size;
+				_stats.increment(StatsEnum.Puts);
+				evict();
+			}
 		}
+		clearPending(node.getHash());
 	}
 	
 	/**
@@ -72,13 +173,45 @@ public class SyncNodeCache {
 		if (null == hash)
 			return null;
 		synchronized (this) {
-			WeakReference<SyncNodeComposite> wr = _nodes.get(new SyncHashEntry(hash));
-			if (null == wr)
+			SyncHashEntry she = new SyncHashEntry(hash);
+			CachedNode cn = _nodes.get(she);
+			if (null != cn) {
+				_stats.increment(StatsEnum.Hits);
+				return cn._node;
+			}
+			expungeWeak();
+			WeakNode wn = _weakNodes.get(she);
+			SyncNodeComposite node = (null == wn) ? null : wn.get();
+			if (null == node) {
+				_stats.increment(StatsEnum.Misses);
 				return null;
-			return wr.get();
+			}
+			
+			// Still in use elsewhere - promote it back into the LRU
+			_stats.increment(StatsEnum.Hits);
+			_weakNodes.remove(she);
+			cn = new CachedNode(node, estimateSize(node));
+			_nodes.put(she, cn);
+			_bytes += cn._size;
+			evict();
+			return node;
 		}
 	}
 	
+	/**
+	 * @return estimated number of bytes of node data currently held strongly
+	 */
+	public synchronized long getCachedBytes() {
+		return _bytes;
+	}
+	
+	/**
+	 * @return number of nodes currently held strongly
+	 */
+	public synchronized int getCachedNodeCount() {
+		return _nodes.size();
+	}
+	
 	/**
 	 * Activate the mechanism to avoid multiple requests for the same node and to wait for a
 	 * node in the process of being fetched by another comparator if it is.
@@ -115,10 +248,13 @@ public class SyncNodeCache {
 			lock = _hashesPending.remove(she);
 		}
 		if (null != lock) {
+			ArrayList<Runnable> waiters;
 			synchronized (lock) {
 				lock.setPending(false);
 				lock.notifyAll();
+				waiters = lock.takeWaiters();
 			}
+			runWaiters(waiters);
 		}
 	}
 	
@@ -133,9 +269,138 @@ public class SyncNodeCache {
 			lock = _hashesPending.get(she);
 		}
 		if (null != lock) {
+			ArrayList<Runnable> waiters;
 			synchronized (lock) {
 				lock.notifyAll();
+				waiters = lock.takeWaiters();
 			}
+			runWaiters(waiters);
+		}
+	}
+	
+	private void runWaiters(ArrayList<Runnable> waiters) {
+		if (null != waiters) {
+			for (Runnable waiter : waiters)
+				waiter.run();
+		}
+	}
+	
+	/**
+	 * Evict least recently used nodes until we are within our byte budget. We always keep at
+	 * least the most recently used node. Must be called with the cache locked.
+	 */
+	private void evict() {
+		if (_bytes <= _maxBytes)
+			return;
+		Iterator<Map.Entry<SyncHashEntry, CachedNode>> it = _nodes.entrySet().iterator();
+		while (_bytes > _maxBytes && _nodes.size() > 1 && it.hasNext()) {
+			Map.Entry<SyncHashEntry, CachedNode> entry = it.next();
+			it.remove();
+			_bytes -= entry.getValue()._size;
+			_weakNodes.put(entry.getKey(), new WeakNode(entry.getKey(), entry.getValue()._node, _weakQueue));
+			_stats.increment(StatsEnum.Evictions);
+		}
+		expungeWeak();
+	}
+	
+	/**
+	 * Remove entries for nodes which have been garbage collected. Must be called with the cache locked.
+	 */
+	private void expungeWeak() {
+		WeakNode wn;
+		while (null != (wn = (WeakNode)_weakQueue.poll())) {
+			if (_weakNodes.get(wn._key) == wn)
+				_weakNodes.remove(wn._key);
+		}
+	}
+	
+	/**
+	 * Estimate the in memory size of a node. This doesn't have to be exact - it only needs to
+	 * be proportional enough to make the byte budget meaningful.
+	 * 
+	 * @param node
+	 * @return estimated size in bytes
+	 */
+	public static long estimateSize(SyncNodeComposite node) {
+		long size = NODE_OVERHEAD;
+		for (SyncNodeElement sne : node.getRefs())
+			size += estimateSize(sne);
+		if (null != node.getMinName())
+			size += estimateSize(node.getMinName());
+		if (null != node.getMaxName())
+			size += estimateSize(node.getMaxName());
+		return size;
+	}
+	
+	private static long estimateSize(SyncNodeElement sne) {
+		long size = ELEMENT_OVERHEAD;
+		if (sne.getType() == SyncNodeType.HASH || sne.getType() == SyncNodeType.BINARY) {
+			if (null != sne.getData())
+				size += sne.getData().length;
+		} else if (null != sne.getName()) {
+			for (byte[] component : sne.getName())
+				size += component.length + COMPONENT_OVERHEAD;
+		}
+		return size;
+	}
+	
+	// ==============================================================
+	// Statistics
+
+	protected CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.Hits);
+
+	public CCNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Hits ("nodes", "Node lookups satisfied from the cache"),
+		Misses ("nodes", "Node lookups not satisfied from the cache"),
+		Puts ("nodes", "Nodes added to the cache"),
+		Evictions ("nodes", "Nodes evicted from the LRU to keep within the byte budget"),
+;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
 		}
 	}
 }
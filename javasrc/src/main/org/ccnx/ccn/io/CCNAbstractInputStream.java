@@ -39,6 +39,7 @@ import org.ccnx.ccn.impl.QueuedContentHandler;
 import org.ccnx.ccn.impl.security.crypto.ContentKeys;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.impl.support.Tracer;
 import org.ccnx.ccn.io.content.Link.LinkObject;
 import org.ccnx.ccn.profiles.SegmentationProfile;
 import org.ccnx.ccn.profiles.VersioningProfile;
@@ -128,6 +129,12 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 	 */
 	protected long _timeout = SystemConfiguration.getDefaultTimeout();
 
+	/**
+	 * The length of every segment but the last, see setFixedSegmentLength. -1 to take it from
+	 * the first segment, 0 if they may differ.
+	 */
+	protected long _fixedSegmentLength = -1;
+
 	/**
 	 *  Encryption/decryption handler.
 	 */
@@ -1156,6 +1163,19 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		_timeout = timeout;
 	}
 
+	/**
+	 * Tell the stream how long its segments are, for seek(). By default we assume every segment
+	 * but the last is the length of the first, as CCNOutputStream writes them - it only writes
+	 * a partial block when it is closed. seek() then goes straight to the segment holding a
+	 * position. Content written some other way, which may have short segments part way
+	 * through, should set this to 0 so that seek() reads forward from the start instead.
+	 * @param segmentLength length of each segment but the last, 0 if they may differ, or
+	 * 	-1 (the default) to take it from the first segment
+	 */
+	public void setFixedSegmentLength(long segmentLength) {
+		_fixedSegmentLength = segmentLength;
+	}
+
 	/**
 	 * Add flags to this stream. Adds to existing flags.
 	 */
@@ -2003,7 +2023,8 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 
 	/**
 	 * Seek a stream to a specific byte offset from the start. Tries to avoid retrieving
-	 * extra segments.
+	 * extra segments: unless we have been told the segments may differ in length we go straight
+	 * to the one holding the offset, otherwise we read forward from the first segment.
 	 * @param position
 	 * @throws IOException
 	 */
@@ -2019,6 +2040,9 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 			Log.finer(Log.FAC_IO, "Seeking stream to {0}", position);
 		}
 
+		if (position >= 0 && seekToSegment(position))
+			return;
+
 		// TODO: when first block is read in constructor this check can be removed
 		if ((_currentSegment == null) || (!SegmentationProfile.isFirstSegment(_currentSegment.name()))) {
 			setFirstSegment(getFirstSegment());
@@ -2033,6 +2057,92 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 		}
 	}
 
+	/**
+	 * Try to seek by computing which segment holds a position rather than reading every
+	 * segment before it. This relies on every segment before the one we land on being full,
+	 * which we can't see without reading them, so we take it on trust unless told otherwise
+	 * with setFixedSegmentLength. The segment length is the one we were given, or that of the
+	 * first segment. We go straight to the segment holding the position and restart the
+	 * pipeline there. As a check the segment we land on must be that length too, or the last,
+	 * and if we know which is the last we don't go past it.
+	 *
+	 * Segments numbered by byte count (CCNSegmenter.getByteCountSegmenter) aren't handled,
+	 * as these streams read segments numbered one after another.
+	 *
+	 * If the position is past the end and we don't know which segment is the last, the
+	 * segment we ask for won't arrive and we give up after the stream timeout.
+	 * @param position
+	 * @return true if we are now at position, false if the caller must seek the slow way
+	 * @throws IOException
+	 */
+	protected boolean seekToSegment(long position) throws IOException {
+		long segmentLength = _fixedSegmentLength;
+		if (0 == segmentLength)
+			return false;
+		if (null == _firstSegment)
+			setFirstSegment(getFirstSegment());
+		if (isGone() || !SegmentationProfile.isSegment(_firstSegment.name()) || SegmentationProfile.isLastSegment(_firstSegment))
+			return false;
+		if (segmentLength < 0) {
+			segmentLength = _firstSegment.contentLength();
+			if (segmentLength <= 0)
+				return false;
+		} else if (_firstSegment.contentLength() != segmentLength) {
+			if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+				Log.info(Log.FAC_IO, "seekToSegment: first segment of {0} is not {1} bytes long", _baseName, segmentLength);
+			return false;
+		}
+
+		long firstSegmentNumber = SegmentationProfile.getSegmentNumber(_firstSegment.name());
+		long target = firstSegmentNumber + (position / segmentLength);
+		long offset = position % segmentLength;
+		long lastSegmentNumber = -1;
+		if (!_firstSegment.signedInfo().emptyFinalBlockID()) {
+			lastSegmentNumber = SegmentationProfile.getSegmentNumber(_firstSegment.signedInfo().getFinalBlockID());
+		} else {
+			synchronized (inOrderSegments) {
+				lastSegmentNumber = _lastSegmentNumber;
+			}
+		}
+		if (lastSegmentNumber >= firstSegmentNumber && target > lastSegmentNumber) {
+			// Past the end, go to the end of the last segment
+			target = lastSegmentNumber;
+			offset = segmentLength;
+		}
+		if (Log.isLoggable(Log.FAC_IO, Level.FINE)) {
+			Log.fine(Log.FAC_IO, "seekToSegment: position {0} is at offset {1} of segment {2} with segments of {3} bytes", 
+					position, offset, target, segmentLength);
+		}
+
+		if (target == currentSegmentNumber()) {
+			// Start this segment again; rewinding would take us to any mark rather than the start
+			setCurrentSegment(_currentSegment);
+		} else {
+			ContentObject segment;
+			try {
+				segment = getSegment(target);
+			} catch (IOException e) {
+				if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+					Log.info(Log.FAC_IO, "seekToSegment: cannot get segment {0} of {1}: {2}", target, _baseName, e.getMessage());
+				return false;
+			}
+			if (null == segment)
+				return false;
+			setCurrentSegment(segment);
+		}
+		if (null == _currentSegment)
+			return false;
+		if (!SegmentationProfile.isLastSegment(_currentSegment) && _segmentReadStream.available() != segmentLength) {
+			if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+				Log.info(Log.FAC_IO, "seekToSegment: segment {0} of {1} is not {2} bytes long, segments are not all the same length", 
+						target, _baseName, segmentLength);
+			return false;
+		}
+		_atEOF = false;
+		_segmentReadStream.skip(offset);
+		return true;
+	}
+
 	/**
 	 * @return Returns position in byte offset. For CCNAbstractInputStream, provide an inadequate
 	 *   base implementation that returns the offset into the current segment (not the stream as
@@ -2074,6 +2184,22 @@ public abstract class CCNAbstractInputStream extends InputStream implements CCNC
 
 		@Override
 		protected void process(CCNContentInterest ci) {
+			long trace = ci.getInterest().traceId();
+			if (0 == trace) {
+				processContent(ci);
+				return;
+			}
+			if (0 != ci.getQueuedTime())
+				Tracer.span(trace, Tracer.Stage.HandlerQueue, ci.getQueuedTime(), ci.getContent().name());
+			long previousTrace = Tracer.setCurrent(trace);
+			try {
+				processContent(ci);
+			} finally {
+				Tracer.setCurrent(previousTrace);
+			}
+		}
+
+		protected void processContent(CCNContentInterest ci) {
 
 			long starttime = System.currentTimeMillis();
 			Interest interest = ci.getInterest();
@@ -0,0 +1,311 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.Header.HeaderObject;
+import org.ccnx.ccn.profiles.metadata.MetadataProfile;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+
+/**
+ * Download one version of segmented content into a local file, fetching disjoint ranges of
+ * segments over several pipelines at once. The pipelines share a CCNRandomAccessReader, so
+ * segments are verified as usual, and each writes what it reads straight to its place in a
+ * file sized up front.
+ *
+ * Which segments have been written is kept in a progress file next to the file. If a download
+ * is interrupted, downloading the same version to the same file again fetches only the missing
+ * segments. The progress file is removed once the download completes.
+ *
+ * If the content has a header, every segment but the last is the header's block size, so the
+ * pipelines can start anywhere at once. Without one we must see every segment to know where they
+ * start, so finding the length reads through the content before the pipelines start.
+ *
+ * Like CCNRandomAccessReader this reads content as stored, so encrypted content must be read
+ * with a CCNInputStream.
+ */
+public class CCNFileDownloader {
+
+	public static final int DEFAULT_PIPELINES = 4;
+	public static final String PROGRESS_SUFFIX = ".ccnprogress";
+
+	/**
+	 * How many segments are written between saves of the progress file
+	 */
+	public static final int PROGRESS_INTERVAL = 256;
+
+	protected final CCNHandle _handle;
+	protected final ContentName _name;
+	protected final PublisherPublicKeyDigest _publisher;
+	protected final int _pipelines;
+	protected long _timeout = SystemConfiguration.getDefaultTimeout();
+
+	// Set up by download
+	protected CCNRandomAccessReader _reader;
+	protected long _length;
+	protected int _segmentLength;
+	protected int _segmentCount;
+	protected File _progressFile;
+	protected FileChannel _channel;
+	protected final AtomicLong _bytesFetched = new AtomicLong(0);
+
+	// Guarded by this
+	protected byte [] _written;
+	protected int _writtenCount;
+	protected int _unsaved;
+	protected IOException _failure;
+
+	/**
+	 * @param name the name of the content, or of a particular version of it
+	 * @param publisher the publisher we want or null for any
+	 * @param pipelines how many ranges to fetch at once
+	 * @param handle
+	 */
+	public CCNFileDownloader(ContentName name, PublisherPublicKeyDigest publisher, int pipelines, CCNHandle handle) {
+		_name = name;
+		_publisher = publisher;
+		_pipelines = Math.max(1, pipelines);
+		_handle = handle;
+	}
+
+	/**
+	 * @param timeout how long in ms to wait for each segment
+	 */
+	public void setTimeout(long timeout) {
+		_timeout = timeout;
+	}
+
+	/**
+	 * @return the version being downloaded, once download has started
+	 */
+	public ContentName getBaseName() {
+		return (null == _reader) ? null : _reader.getBaseName();
+	}
+
+	/**
+	 * @return how many bytes were fetched from the network, which is less than the length
+	 * 	of the content if we resumed an earlier download
+	 */
+	public long getBytesFetched() {
+		return _bytesFetched.get();
+	}
+
+	/**
+	 * Download the content into a file, resuming an earlier download of the same version
+	 * if the file has a progress file.
+	 * @param file
+	 * @return the length of the content
+	 * @throws IOException if the content can't be read or the file written. The progress
+	 * 	made is saved so the download can be resumed.
+	 */
+	public long download(File file) throws IOException {
+		_reader = new CCNRandomAccessReader(_name, _publisher,
+				Math.max(CCNRandomAccessReader.DEFAULT_CACHE_SEGMENTS, 2 * _pipelines * SystemConfiguration.PIPELINE_SIZE),
+				SystemConfiguration.PIPELINE_SIZE, _handle);
+		_reader.setTimeout(_timeout);
+		RandomAccessFile raf = null;
+		try {
+			_length = contentLength();
+			_segmentLength = _reader.getFirstSegment().contentLength();
+			_segmentCount = (0 == _segmentLength) ? 0 : (int)((_length + _segmentLength - 1) / _segmentLength);
+			_progressFile = new File(file.getPath() + PROGRESS_SUFFIX);
+			_written = new byte[(_segmentCount + 7) / 8];
+			_writtenCount = 0;
+			if (file.exists() && _progressFile.exists())
+				loadProgress();
+
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(_length);
+			_channel = raf.getChannel();
+			if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+				Log.info(Log.FAC_IO, "CCNFileDownloader: {0} bytes of {1} in {2} segments, {3} already written",
+						_length, _reader.getBaseName(), _segmentCount, _writtenCount);
+
+			Thread [] pipelines = new Thread[_pipelines];
+			int perPipeline = (_segmentCount + _pipelines - 1) / _pipelines;
+			for (int i = 0; i < _pipelines; i++) {
+				final int start = i * perPipeline;
+				final int end = Math.min(_segmentCount, start + perPipeline);
+				pipelines[i] = new Thread("CCNFileDownloader-" + i) {
+					@Override
+					public void run() {
+						fetch(start, end);
+					}
+				};
+				pipelines[i].start();
+			}
+			for (Thread pipeline : pipelines) {
+				try {
+					pipeline.join();
+				} catch (InterruptedException e) {
+					fail(new IOException("Interrupted waiting for download of " + _reader.getBaseName()));
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			synchronized (this) {
+				if (null != _failure) {
+					saveProgress();
+					throw _failure;
+				}
+			}
+			_channel.force(false);
+			_progressFile.delete();
+			return _length;
+		} finally {
+			if (null != raf)
+				raf.close();
+			_reader.close();
+		}
+	}
+
+	/**
+	 * Fetch and write the segments in a range which haven't been written yet
+	 */
+	protected void fetch(int start, int end) {
+		ByteBuffer buffer = ByteBuffer.allocate(_segmentLength);
+		try {
+			for (int segment = start; segment < end; segment++) {
+				synchronized (this) {
+					if (null != _failure)
+						return;
+				}
+				if (isWritten(segment))
+					continue;
+				long position = (long)segment * _segmentLength;
+				buffer.clear();
+				buffer.limit((int)Math.min(_segmentLength, _length - position));
+				while (buffer.hasRemaining()) {
+					if (_reader.read(position + buffer.position(), buffer) < 0)
+						throw new IOException("Content of " + _reader.getBaseName() + " ended before " + _length + " bytes");
+				}
+				buffer.flip();
+				_bytesFetched.addAndGet(buffer.remaining());
+				while (buffer.hasRemaining())
+					_channel.write(buffer, position + buffer.position());
+				written(segment);
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	protected synchronized void fail(IOException e) {
+		if (null == _failure) {
+			Log.warning(Log.FAC_IO, "CCNFileDownloader: download of {0} failed: {1}", _reader.getBaseName(), e.getMessage());
+			_failure = e;
+		}
+	}
+
+	/**
+	 * @return the length of the content from its header, or by reading every segment if it has none
+	 */
+	protected long contentLength() throws IOException {
+		if (_reader.isGone())
+			return 0;
+		HeaderObject header = new HeaderObject(MetadataProfile.headerName(_reader.getBaseName()),
+				_reader.getFirstSegment().signedInfo().getPublisherKeyID(), _handle);
+		if (header.available() && !header.isGone()) {
+			_reader.setFixedSegmentLength(header.blockSize());
+			return header.length();
+		}
+		long length = _reader.length();
+		if (length < 0)
+			throw new IOException("Cannot find the length of " + _reader.getBaseName());
+		return length;
+	}
+
+	protected synchronized boolean isWritten(int segment) {
+		return 0 != (_written[segment >> 3] & (1 << (segment & 7)));
+	}
+
+	protected synchronized void written(int segment) throws IOException {
+		_written[segment >> 3] |= (1 << (segment & 7));
+		_writtenCount++;
+		if (++_unsaved >= PROGRESS_INTERVAL)
+			saveProgress();
+	}
+
+	/**
+	 * Record which segments are on disk. Must be called with the lock held.
+	 */
+	protected void saveProgress() throws IOException {
+		_channel.force(false);
+		File temp = new File(_progressFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+		try {
+			out.writeUTF(_reader.getBaseName().toURIString());
+			out.writeLong(_length);
+			out.writeInt(_segmentLength);
+			out.write(_written);
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(_progressFile)) {
+			_progressFile.delete();
+			if (!temp.renameTo(_progressFile))
+				throw new IOException("Cannot save download progress to " + _progressFile);
+		}
+		_unsaved = 0;
+	}
+
+	/**
+	 * Pick up the segments written by an earlier download of the same version, if that's
+	 * what the progress file describes.
+	 */
+	protected synchronized void loadProgress() throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(_progressFile));
+		try {
+			if (!in.readUTF().equals(_reader.getBaseName().toURIString()) || in.readLong() != _length
+					|| in.readInt() != _segmentLength) {
+				if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+					Log.info(Log.FAC_IO, "CCNFileDownloader: {0} is for a different version, starting again", _progressFile);
+				return;
+			}
+			byte [] written = new byte[_written.length];
+			in.readFully(written);
+			_written = written;
+		} catch (IOException e) {
+			Arrays.fill(_written, (byte)0);
+			Log.warning(Log.FAC_IO, "CCNFileDownloader: cannot read {0}, starting again: {1}", _progressFile, e.getMessage());
+			return;
+		} finally {
+			in.close();
+		}
+		for (int segment = 0; segment < _segmentCount; segment++) {
+			if (isWritten(segment))
+				_writtenCount++;
+		}
+	}
+}
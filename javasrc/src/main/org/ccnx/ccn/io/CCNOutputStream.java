@@ -18,6 +18,8 @@
 package org.ccnx.ccn.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -60,6 +62,11 @@ public class CCNOutputStream extends CCNAbstractOutputStream {
 	 */
 	public static final int BLOCK_BUF_COUNT = 128;	// Must be at least 2
 
+	/**
+	 * How much of a file writeMapped maps at a time. Rounded down to a multiple of the block size.
+	 */
+	public static final int MAP_REGION_SIZE = 64 * 1024 * 1024;
+
 	/**
 	 * elapsed length written
 	 */
@@ -339,6 +346,56 @@ public class CCNOutputStream extends CCNAbstractOutputStream {
 		}
 	}
 
+	/**
+	 * Write the remaining bytes of a buffer, advancing its position to its limit. Full segments
+	 * of a direct or memory-mapped buffer are built straight from the buffer, without first
+	 * being copied into this stream's block buffers.
+	 * @param buffer the content to write
+	 * @throws IOException on network errors
+	 */
+	public void write(ByteBuffer buffer) throws IOException {
+		if (buffer.hasArray()) {
+			write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return;
+		}
+		try {
+			writeToNetwork(buffer);
+		} catch (InvalidKeyException e) {
+			throw new IOException("Cannot sign content -- invalid key!: " + e.getMessage());
+		} catch (SignatureException e) {
+			throw new IOException("Cannot sign content -- signature failure!: " + e.getMessage());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Cannot sign content -- unknown algorithm!: " + e.getMessage());
+		} catch (InvalidAlgorithmParameterException e) {
+			throw new IOException("Cannot sign content -- Invalid algorithm parameter!: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the rest of a file, from the channel's current position to its end, by memory-mapping
+	 * it a region at a time rather than reading it. Each byte is copied only once on its way into
+	 * a segment, instead of being read into a buffer and then copied into the stream.
+	 * @param channel the file to write, for instance from FileInputStream#getChannel()
+	 * @return the number of bytes written
+	 * @throws IOException if the file can't be mapped, or on network errors
+	 */
+	public long writeMapped(FileChannel channel) throws IOException {
+		long regionSize = Math.max(1, MAP_REGION_SIZE / getBlockSize()) * (long)getBlockSize();
+		long start = channel.position();
+		long size = channel.size();
+		long position = start;
+		while (position < size) {
+			long length = Math.min(regionSize, size - position);
+			write(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+			position += length;
+		}
+		channel.position(position);
+		if (Log.isLoggable(Log.FAC_IO, Level.FINE))
+			Log.fine(Log.FAC_IO, "writeMapped: wrote {0} mapped bytes to {1}", position - start, _baseName);
+		return position - start;
+	}
+
 	/**
 	 * Actually write bytes to the network.
 	 * @param buf as in write(byte[], int, int)
@@ -365,6 +422,7 @@ public class CCNOutputStream extends CCNAbstractOutputStream {
 			offset += copySize;
 			_blockOffset = blockSize;
 			bytesToWrite -= copySize;
+			_totalLength += copySize;
 		}
 
 		if (_blockOffset % blockSize == 0 && bytesToWrite > 0) {
@@ -438,6 +496,77 @@ public class CCNOutputStream extends CCNAbstractOutputStream {
 		}
 	}
 
+	/**
+	 * Write the remaining bytes of a buffer to the network. As writeToNetwork(byte[], long, long),
+	 * but full blocks are handed to the segmenter as slices of the buffer, and only a leading or
+	 * trailing partial block is copied into the block buffers.
+	 * @param buf the content to write; its position is advanced to its limit
+	 * @throws IOException on network errors
+	 * @throws InvalidKeyException if we cannot encrypt content as specified
+	 * @throws SignatureException if we cannot sign content
+	 * @throws NoSuchAlgorithmException if encryption requests invalid algorithm
+	 * @throws InvalidAlgorithmParameterException
+	 */
+	protected synchronized void writeToNetwork(ByteBuffer buf) throws IOException, InvalidKeyException, SignatureException, NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+		int bytesToWrite = buf.remaining();
+		int blockSize = getBlockSize();
+
+		// Fill up to a buffer if we can to align the writes
+		if (_blockOffset % blockSize != 0 && (_blockOffset + bytesToWrite) > blockSize) {
+			int copySize = blockSize - _blockOffset;
+			buf.get(_buffers[_blockIndex], _blockOffset, copySize);
+			_dh.update(_buffers[_blockIndex], _blockOffset, copySize); // add to running digest of data
+			_blockOffset = blockSize;
+			bytesToWrite -= copySize;
+			_totalLength += copySize;
+		}
+
+		if (_blockOffset % blockSize == 0 && bytesToWrite > 0) {
+			// Flush all complete blocks we have to the segmenter
+			if (_blockIndex > 0 || _blockOffset > 0) {
+				_baseNameIndex =
+			        _segmenter.fragmentedPut(_baseName, _baseNameIndex, _buffers, _blockIndex+1,
+			                                 0, blockSize,
+			                                 _type, _timestamp, _freshnessSeconds, null,
+			                                 _locator, _publisher, _keys);
+				_blockOffset = _blockIndex = 0;
+			}
+
+			// Hand all the full blocks to the segmenter as one slice of the buffer
+			if (bytesToWrite >= blockSize) {
+				int contiguousBytesToWrite = (bytesToWrite / blockSize) * blockSize;
+				bytesToWrite -= contiguousBytesToWrite;
+				ByteBuffer blocks = buf.duplicate();
+				blocks.limit(blocks.position() + contiguousBytesToWrite);
+				_dh.update(blocks.duplicate()); // add to running digest of data
+
+				if (!_nameSpaceAdded) {
+					if( Log.isLoggable(Level.INFO))
+						Log.info("Adding namespace in writeToNetwork. Namespace: {0}", _baseName);
+					_segmenter.getFlowControl().addNameSpace(_baseName);
+					_nameSpaceAdded = true;
+				}
+
+				_baseNameIndex = _segmenter.fragmentedPut(_baseName, _baseNameIndex,
+						blocks, blockSize, _type, null,
+						_freshnessSeconds, null, _locator, _publisher, _keys);
+				buf.position(buf.position() + contiguousBytesToWrite);
+				_totalLength += contiguousBytesToWrite;
+			}
+		}
+
+		// Anything left is less than a block, and fits in the current block buffer
+		if (bytesToWrite > 0) {
+			if (null == _buffers[_blockIndex]) {
+				_buffers[_blockIndex] = new byte[blockSize];
+			}
+			buf.get(_buffers[_blockIndex], _blockOffset, bytesToWrite);
+			_dh.update(_buffers[_blockIndex], _blockOffset, bytesToWrite); // add to running digest of data
+			_blockOffset += bytesToWrite;
+			_totalLength += bytesToWrite;
+		}
+	}
+
 	/**
 	 * Flush partial hanging block if we have one.
 	 * @throws InvalidKeyException
@@ -0,0 +1,629 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
+import org.ccnx.ccn.impl.QueuedContentHandler;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo.ContentType;
+
+/**
+ * Reads byte ranges from one version of segmented content for any number of threads at once.
+ * Unlike the input streams there is no cursor: each read says where it starts, so a server
+ * answering many range requests for the same object can share one reader, and with it one set of
+ * retrieved and verified segments, rather than open a stream, with its own pipeline and first
+ * segment retrieval, for each request.
+ *
+ * Segments are fetched on demand and kept in a bounded cache. A thread asking for a segment someone
+ * else has already asked for waits for that answer rather than asking again. When a read follows on
+ * from a segment we have just retrieved we also ask for the next few segments ahead of it.
+ *
+ * A segment may be shorter than the others, for instance where the writer flushed, so in general
+ * we only know where a segment starts once we have seen every segment before it. We keep the start
+ * of each segment as we learn it and a read beyond what we know reads forward to it. If the caller
+ * knows every segment but the last is the same length, say from the header, it can tell us with
+ * setFixedSegmentLength and positions are then mapped to segments directly. The content is returned
+ * as stored, so encrypted content and links must be read with a CCNInputStream.
+ */
+public class CCNRandomAccessReader implements CCNStatistics {
+
+	public static final int DEFAULT_CACHE_SEGMENTS = 128;
+
+	/**
+	 * A segment someone has asked for and not yet received.
+	 */
+	protected class SegmentRequest implements CCNContentHandler {
+		protected final long _number;
+		protected final Interest _interest;
+		protected ContentObject _arrived;
+		protected ContentObject _segment;
+		protected boolean _done;
+
+		protected SegmentRequest(long number) {
+			_number = number;
+			_interest = SegmentationProfile.segmentInterest(_baseName, number, _publisher);
+		}
+
+		/**
+		 * Verification may need to retrieve a key, which needs the thread delivering this,
+		 * so it is done by _verifier.
+		 */
+		public Interest handleContent(ContentObject data, Interest interest) {
+			_arrived = data;
+			_verifier.add(this);
+			return null;
+		}
+	}
+
+	/**
+	 * Verifies arrived segments off the network manager's thread, as the input streams do.
+	 */
+	protected class SegmentVerifier extends QueuedContentHandler<SegmentRequest> {
+
+		@Override
+		protected void process(SegmentRequest request) {
+			ContentObject data = request._arrived;
+			boolean verified = _handle.defaultVerifier().verify(data);
+			if (!verified) {
+				_stats.increment(StatsEnum.VerifyFailures);
+				if (Log.isLoggable(Log.FAC_IO, Level.WARNING))
+					Log.warning(Log.FAC_IO, "CCNRandomAccessReader: segment {0} failed to verify", data.fullName());
+			}
+			segmentArrived(request, verified ? data : null);
+		}
+	}
+
+	protected final CCNHandle _handle;
+	protected final PublisherPublicKeyDigest _publisher;
+	protected final ContentName _baseName;
+	protected final ContentObject _firstSegment;
+	protected final long _firstSegmentNumber;
+	protected final int _segmentLength;
+	protected final int _prefetch;
+	protected long _timeout = SystemConfiguration.getDefaultTimeout();
+	protected final SegmentVerifier _verifier = new SegmentVerifier();
+
+	// Guarded by this
+	protected long _lastSegmentNumber = -1;
+	protected boolean _closed = false;
+	protected boolean _fixedSegmentLength = false;
+
+	/**
+	 * Where each segment starts, from the first as far as we have seen every segment. The last entry
+	 * is where the first segment we haven't seen starts, or the length once we have seen them all.
+	 */
+	protected final ArrayList<Long> _segmentStarts = new ArrayList<Long>();
+
+	/**
+	 * The lengths of segments we have seen beyond those, until we know where they start
+	 */
+	protected final HashMap<Long, Integer> _segmentLengths = new HashMap<Long, Integer>();
+	protected final LinkedHashMap<Long, ContentObject> _segments;
+	protected final HashMap<Long, SegmentRequest> _requests = new HashMap<Long, SegmentRequest>();
+
+	/**
+	 * Open the latest version of some content, caching DEFAULT_CACHE_SEGMENTS segments and looking
+	 * ahead as far as the input stream pipeline does.
+	 * @param name the name of the content, or of a particular version of it
+	 * @param publisher the publisher we want or null for any
+	 * @param handle
+	 * @throws IOException if the content can't be found or can't be read this way
+	 */
+	public CCNRandomAccessReader(ContentName name, PublisherPublicKeyDigest publisher, CCNHandle handle) throws IOException {
+		this(name, publisher, DEFAULT_CACHE_SEGMENTS, SystemConfiguration.PIPELINE_SIZE, handle);
+	}
+
+	/**
+	 * @param name the name of the content, or of a particular version of it
+	 * @param publisher the publisher we want or null for any
+	 * @param cacheSegments how many segments to keep
+	 * @param prefetch how many segments to ask for ahead of sequential reads, 0 for none
+	 * @param handle
+	 * @throws IOException if the content can't be found or can't be read this way
+	 */
+	public CCNRandomAccessReader(ContentName name, PublisherPublicKeyDigest publisher, final int cacheSegments,
+			int prefetch, CCNHandle handle) throws IOException {
+		_handle = handle;
+		_publisher = publisher;
+		_prefetch = prefetch;
+		_segments = new LinkedHashMap<Long, ContentObject>(16, 0.75f, true) {
+			private static final long serialVersionUID = 4962018412624107749L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, ContentObject> eldest) {
+				return size() > cacheSegments;
+			}
+		};
+
+		if (SegmentationProfile.isSegment(name))
+			name = SegmentationProfile.segmentRoot(name);
+		ContentObject firstSegment;
+		if (VersioningProfile.hasTerminalVersion(name)) {
+			firstSegment = _handle.get(SegmentationProfile.firstSegmentInterest(name, publisher), _timeout);
+			if (null != firstSegment && !_handle.defaultVerifier().verify(firstSegment))
+				throw new IOException("First segment of " + name + " failed to verify");
+		} else {
+			firstSegment = VersioningProfile.getFirstBlockOfLatestVersion(name, null, publisher, _timeout,
+					_handle.defaultVerifier(), _handle);
+		}
+		if (null == firstSegment)
+			throw new NoMatchingContentFoundException("Cannot find first segment of " + name);
+		if (!firstSegment.isType(ContentType.DATA) && !firstSegment.isType(ContentType.GONE))
+			throw new IOException("Cannot read " + firstSegment.name() + " of type " + firstSegment.signedInfo().getTypeName()
+					+ " directly, use an input stream");
+		_firstSegment = firstSegment;
+
+		if (SegmentationProfile.isSegment(firstSegment.name())) {
+			_baseName = SegmentationProfile.segmentRoot(firstSegment.name());
+			_firstSegmentNumber = SegmentationProfile.getSegmentNumber(firstSegment.name());
+		} else {
+			_baseName = firstSegment.name();
+			_firstSegmentNumber = SegmentationProfile.baseSegment();
+		}
+		_segmentLength = firstSegment.contentLength();
+		if (isGone() || _segmentLength == 0 || !SegmentationProfile.isSegment(firstSegment.name())
+				|| SegmentationProfile.isLastSegment(firstSegment)) {
+			_lastSegmentNumber = _firstSegmentNumber;
+		} else if (!firstSegment.signedInfo().emptyFinalBlockID()) {
+			_lastSegmentNumber = SegmentationProfile.getSegmentNumber(firstSegment.signedInfo().getFinalBlockID());
+		}
+		_segments.put(_firstSegmentNumber, firstSegment);
+		_segmentStarts.add(0L);
+		segmentSeen(_firstSegmentNumber, firstSegment);
+		if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+			Log.info(Log.FAC_IO, "CCNRandomAccessReader: opened {0}, segments of {1} bytes, last segment {2}",
+					_baseName, _segmentLength, _lastSegmentNumber);
+	}
+
+	/**
+	 * @return the name of the version we are reading
+	 */
+	public ContentName getBaseName() {
+		return _baseName;
+	}
+
+	/**
+	 * @return the first segment, which tells who published this version and when
+	 */
+	public ContentObject getFirstSegment() {
+		return _firstSegment;
+	}
+
+	/**
+	 * @return true if this version has been marked as deleted, in which case it has no content
+	 */
+	public boolean isGone() {
+		return _firstSegment.isType(ContentType.GONE);
+	}
+
+	/**
+	 * @param timeout how long in ms to wait for each segment
+	 */
+	public void setTimeout(long timeout) {
+		_timeout = timeout;
+	}
+
+	/**
+	 * Tell the reader that every segment but the last holds exactly this many bytes, as when
+	 * the content has a header giving that block size, so that reads can go straight to the
+	 * segment holding a position rather than first reading every segment before it. Reads
+	 * still fail if a segment they use turns out to be short. Ignored if the first segment is
+	 * not this length.
+	 * @param segmentLength
+	 */
+	public synchronized void setFixedSegmentLength(long segmentLength) {
+		_fixedSegmentLength = (segmentLength > 0 && segmentLength == _segmentLength);
+		if (!_fixedSegmentLength && Log.isLoggable(Log.FAC_IO, Level.INFO))
+			Log.info(Log.FAC_IO, "CCNRandomAccessReader: segments of {0} are {1} bytes long, not {2}", _baseName, _segmentLength, segmentLength);
+	}
+
+	/**
+	 * Read bytes starting at a position into a buffer. This does not change the buffer's limit,
+	 * and advances its position by the number of bytes read. May be called from any number of
+	 * threads at once.
+	 * @param position offset from the start of the content
+	 * @param dst where to put them; we read until it is full or we reach the end
+	 * @return the number of bytes read, or -1 if position is at or past the end
+	 * @throws IOException if a segment we need doesn't arrive, or is short when we were told it wasn't
+	 */
+	public int read(long position, ByteBuffer dst) throws IOException {
+		if (position < 0)
+			throw new IllegalArgumentException("Negative position " + position);
+		_stats.increment(StatsEnum.Reads);
+		if (isGone() || _segmentLength == 0)
+			return -1;
+		int count = 0;
+		while (dst.hasRemaining()) {
+			long [] location = positionToSegmentLocation(position);
+			if (null == location)
+				break;
+			long number = location[0];
+			int offset = (int)location[1];
+			ContentObject segment = getSegment(number);
+			if (null == segment)
+				break;
+			boolean last = isLastSegment(number);
+			if (!last && segment.contentLength() != _segmentLength && hasFixedSegmentLength())
+				throw new IOException("Segment " + number + " of " + _baseName + " is " + segment.contentLength()
+						+ " bytes long rather than " + _segmentLength + ", cannot read it by position");
+			if (offset >= segment.contentLength())
+				break;
+			int length = Math.min(dst.remaining(), segment.contentLength() - offset);
+			dst.put(segment.content(), offset, length);
+			count += length;
+			position += length;
+			if (last)
+				break;
+		}
+		_stats.increment(StatsEnum.BytesRead, count);
+		return (count == 0 && dst.hasRemaining()) ? -1 : count;
+	}
+
+	/**
+	 * Read bytes starting at a position into an array.
+	 * @return the number of bytes read, or -1 if position is at or past the end
+	 * @throws IOException
+	 */
+	public int read(long position, byte [] buf, int offset, int length) throws IOException {
+		return read(position, ByteBuffer.wrap(buf, offset, length));
+	}
+
+	/**
+	 * Get the length of the content. This may have to find the last segment.
+	 * @return the length in bytes, or -1 if we can't find the last segment
+	 * @throws IOException
+	 */
+	public long length() throws IOException {
+		if (isGone())
+			return 0;
+		if (!hasFixedSegmentLength()) {
+			// Read forward until we know where every segment starts
+			positionToSegmentLocation(Long.MAX_VALUE);
+			synchronized (this) {
+				return _segmentStarts.get(_segmentStarts.size() - 1);
+			}
+		}
+		long last = findLastSegmentNumber();
+		if (last < 0)
+			return -1;
+		ContentObject segment = getSegment(last);
+		if (null == segment)
+			return -1;
+		return (last - _firstSegmentNumber) * _segmentLength + segment.contentLength();
+	}
+
+	/**
+	 * Stop retrieving segments and forget the ones we have. Reads after this fail.
+	 */
+	public void close() {
+		ArrayList<SegmentRequest> requests;
+		synchronized (this) {
+			_closed = true;
+			requests = new ArrayList<SegmentRequest>(_requests.values());
+			_requests.clear();
+			_segments.clear();
+			notifyAll();
+		}
+		for (SegmentRequest request : requests)
+			_handle.cancelInterest(request._interest, request);
+	}
+
+	protected synchronized boolean isLastSegment(long number) {
+		return number == _lastSegmentNumber;
+	}
+
+	protected synchronized boolean hasFixedSegmentLength() {
+		return _fixedSegmentLength;
+	}
+
+	/**
+	 * Find the segment holding a position. Unless we have been told the segments are all the same
+	 * length, this gets every segment before it we haven't yet seen.
+	 * @param position
+	 * @return the segment number and the offset of the position in it, or null if the position
+	 * 	is past the end
+	 * @throws IOException if a segment we need doesn't arrive
+	 */
+	protected long [] positionToSegmentLocation(long position) throws IOException {
+		if (hasFixedSegmentLength())
+			return new long[]{_firstSegmentNumber + (position / _segmentLength), position % _segmentLength};
+		while (true) {
+			long next;
+			synchronized (this) {
+				int seen = _segmentStarts.size() - 1;
+				if (position < _segmentStarts.get(seen)) {
+					int index = Collections.binarySearch(_segmentStarts, position);
+					if (index < 0) {
+						index = -index - 2;
+					} else {
+						// Skip empty segments
+						while (index < seen - 1 && _segmentStarts.get(index + 1) == position)
+							index++;
+					}
+					return new long[]{_firstSegmentNumber + index, position - _segmentStarts.get(index)};
+				}
+				next = _firstSegmentNumber + seen;
+			}
+			ContentObject segment = getSegment(next);
+			if (null == segment)
+				return null;
+			segmentSeen(next, segment);
+		}
+	}
+
+	/**
+	 * Record the length of a segment, and so where the segments after it start if we
+	 * know where it does.
+	 */
+	protected synchronized void segmentSeen(long number, ContentObject segment) {
+		int seen = _segmentStarts.size() - 1;
+		long next = _firstSegmentNumber + seen;
+		if (number < next)
+			return;
+		if (number > next) {
+			_segmentLengths.put(number, segment.contentLength());
+			return;
+		}
+		long start = _segmentStarts.get(seen) + segment.contentLength();
+		_segmentStarts.add(start);
+		Integer length;
+		while (null != (length = _segmentLengths.remove(++next))) {
+			start += length;
+			_segmentStarts.add(start);
+		}
+	}
+
+	/**
+	 * Get a segment from the cache or the network, asking for the ones after it too if it
+	 * follows on from one we have.
+	 * @param number
+	 * @return the verified segment, or null if it's past the end
+	 * @throws IOException if it doesn't arrive in time
+	 */
+	protected ContentObject getSegment(long number) throws IOException {
+		ArrayList<SegmentRequest> toExpress = new ArrayList<SegmentRequest>();
+		SegmentRequest request;
+		ContentObject segment;
+		synchronized (this) {
+			if (_closed)
+				throw new IOException("Reader for " + _baseName + " is closed");
+			if (_lastSegmentNumber >= 0 && number > _lastSegmentNumber)
+				return null;
+			segment = _segments.get(number);
+			boolean sequential = (number == _firstSegmentNumber) || _segments.containsKey(number - 1)
+					|| _requests.containsKey(number - 1);
+			if (null != segment) {
+				_stats.increment(StatsEnum.SegmentHits);
+				request = null;
+			} else {
+				_stats.increment(StatsEnum.SegmentMisses);
+				request = request(number, toExpress);
+			}
+			if (sequential) {
+				for (long next = number + 1; next <= number + _prefetch; next++) {
+					if (_lastSegmentNumber >= 0 && next > _lastSegmentNumber)
+						break;
+					if (!_segments.containsKey(next) && null == _requests.get(next)) {
+						request(next, toExpress);
+						_stats.increment(StatsEnum.Prefetches);
+					}
+				}
+			}
+		}
+		expressAll(toExpress);
+		if (null == request)
+			return segment;
+		segment = waitFor(request);
+		if (null != segment)
+			return segment;
+
+		// It didn't come. If we don't know where the end is that might be because it's past it.
+		long last;
+		synchronized (this) {
+			last = _lastSegmentNumber;
+		}
+		if (last < 0)
+			last = findLastSegmentNumber();
+		if (last >= 0 && number > last)
+			return null;
+		_stats.increment(StatsEnum.Timeouts);
+		throw new IOException("Cannot get segment " + number + " of " + _baseName);
+	}
+
+	/**
+	 * Must be called with the lock held. The caller must express the new requests once it is released.
+	 */
+	protected SegmentRequest request(long number, ArrayList<SegmentRequest> toExpress) {
+		SegmentRequest request = _requests.get(number);
+		if (null == request) {
+			request = new SegmentRequest(number);
+			_requests.put(number, request);
+			toExpress.add(request);
+		}
+		return request;
+	}
+
+	/**
+	 * Express interests without holding our lock, as content may be delivered to us on another
+	 * thread before expressInterest returns.
+	 */
+	protected void expressAll(ArrayList<SegmentRequest> requests) throws IOException {
+		for (SegmentRequest request : requests) {
+			if (Log.isLoggable(Log.FAC_IO, Level.FINER))
+				Log.finer(Log.FAC_IO, "CCNRandomAccessReader: expressing {0}", request._interest);
+			try {
+				_handle.expressInterest(request._interest, request);
+			} catch (IOException e) {
+				segmentArrived(request, null);
+				throw e;
+			}
+		}
+	}
+
+	protected ContentObject waitFor(SegmentRequest request) throws IOException {
+		long start = System.currentTimeMillis();
+		synchronized (this) {
+			while (!request._done && !_closed) {
+				long remaining = _timeout;
+				if (_timeout != SystemConfiguration.NO_TIMEOUT) {
+					remaining = _timeout - (System.currentTimeMillis() - start);
+					if (remaining <= 0)
+						break;
+				}
+				try {
+					if (_timeout == SystemConfiguration.NO_TIMEOUT)
+						wait();
+					else
+						wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (request._done)
+				return request._segment;
+			if (_requests.get(request._number) != request)
+				return null;
+			_requests.remove(request._number);
+		}
+		_handle.cancelInterest(request._interest, request);
+		return null;
+	}
+
+	protected void segmentArrived(SegmentRequest request, ContentObject segment) {
+		synchronized (this) {
+			request._segment = segment;
+			request._done = true;
+			if (_requests.get(request._number) == request)
+				_requests.remove(request._number);
+			if (null != segment && !_closed) {
+				_segments.put(request._number, segment);
+				if (_lastSegmentNumber < 0 && SegmentationProfile.isLastSegment(segment))
+					_lastSegmentNumber = request._number;
+				segmentSeen(request._number, segment);
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * @return the number of the last segment, finding it if we don't know it yet, or -1 if we can't
+	 * @throws IOException
+	 */
+	protected long findLastSegmentNumber() throws IOException {
+		synchronized (this) {
+			if (_lastSegmentNumber >= 0)
+				return _lastSegmentNumber;
+		}
+		ContentObject last = SegmentationProfile.getLastSegment(_baseName, _publisher, _timeout, _handle.defaultVerifier(), _handle);
+		if (null == last || !SegmentationProfile.isSegment(last.name()))
+			return -1;
+		long number = SegmentationProfile.getSegmentNumber(last.name());
+		synchronized (this) {
+			if (_lastSegmentNumber < 0 && SegmentationProfile.isLastSegment(last))
+				_lastSegmentNumber = number;
+			if (!_closed) {
+				_segments.put(number, last);
+				segmentSeen(number, last);
+			}
+			return _lastSegmentNumber;
+		}
+	}
+
+	// Statistics
+	protected CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.Reads);
+
+	public CCNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Reads ("count", "Number of read calls"),
+		BytesRead ("bytes", "Bytes returned by reads"),
+		SegmentHits ("count", "Segments found in the cache"),
+		SegmentMisses ("count", "Segments which had to be waited for"),
+		Prefetches ("count", "Segments asked for ahead of sequential reads"),
+		Timeouts ("count", "Segments which did not arrive"),
+		VerifyFailures ("count", "Segments which failed to verify"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
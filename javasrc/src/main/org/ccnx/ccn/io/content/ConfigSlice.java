@@ -29,6 +29,7 @@ import java.util.LinkedList;
 
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -78,6 +79,12 @@ public final class ConfigSlice extends GenericXMLEncodable implements Comparable
 			encoder.writeElement(ConfigSliceOp, 0);
 			super.encode(encoder);
 		}
+		
+		@Override
+		public int encodedLength() throws ContentEncodingException {
+			// The op is written as the 1 character string "0", which is the same length as a 1 byte blob
+			return BinaryXMLCodec.encodedBinaryElementLength(ConfigSliceOp, 1) + super.encodedLength();
+		}
 	}
 	
 	public ConfigSlice() {}
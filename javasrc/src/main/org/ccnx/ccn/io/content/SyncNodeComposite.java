@@ -19,10 +19,14 @@ package org.ccnx.ccn.io.content;
 
 import static org.ccnx.ccn.impl.encoding.CCNProtocolDTags.SyncVersion;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.ccnx.ccn.CCNSync;
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -91,6 +95,38 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 				throw new ContentEncodingException("Link failed to validate!");
 
 			encoder.writeStartElement(getElementLabel());
+			encodeValue(encoder);
+			encoder.writeEndElement();   		
+		}
+		
+		@Override
+		public int encodedLength() throws ContentEncodingException {
+			return BinaryXMLCodec.encodedDTagLength(getElementLabel()) + encodedValueLength() + 1;
+		}
+		
+		/**
+		 * @return the length of encodeValue's output
+		 */
+		protected int encodedValueLength() throws ContentEncodingException {
+			switch (_type) {
+			case LEAF:
+				return _name.encodedLength();
+			case HASH:
+				return BinaryXMLCodec.encodedBinaryElementLength(CCNProtocolDTags.SyncContentHash, _data.length);
+			case COMPONENT:
+				return BinaryXMLCodec.encodedBinaryElementLength(CCNProtocolDTags.Component, _data.length);
+			case BINARY:
+				return BinaryXMLCodec.encodedBinaryElementLength(CCNProtocolDTags.BinaryValue, _data.length);
+			default:
+				return 0;
+			}
+		}
+		
+		/**
+		 * Encode just the value of the element without the surrounding SyncNodeElement
+		 * as it appears within a node.
+		 */
+		protected void encodeValue(XMLEncoder encoder) throws ContentEncodingException {
 			switch (_type) {
 			case LEAF:
 				_name.encode(encoder);
@@ -107,7 +143,6 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 			default:
 				break;
 			}	
-			encoder.writeEndElement();   		
 		}
 
 		@Override
@@ -147,6 +182,49 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 		}
 	}
 	
+	/**
+	 * Reads the refs of an encoded node one at a time, for callers which only need to look
+	 * at each ref once and don't want the whole _refs list built.
+	 */
+	public static class ElementReader implements Iterator<SyncNodeElement> {
+		protected XMLDecoder _decoder;
+		protected SyncNodeElement _next = null;
+		protected boolean _done = false;
+
+		/**
+		 * @param decoder positioned just after the start of the SyncNodeElements
+		 */
+		protected ElementReader(XMLDecoder decoder) {
+			_decoder = decoder;
+		}
+
+		public boolean hasNext() {
+			if (null == _next && !_done) {
+				try {
+					SyncNodeElement ref = new SyncNodeElement();
+					ref.decode(_decoder);
+					_next = ref;
+				} catch (ContentDecodingException cde) {
+					// As in decode, the elements end at the first thing which isn't one
+					_done = true;
+				}
+			}
+			return null != _next;
+		}
+
+		public SyncNodeElement next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			SyncNodeElement ref = _next;
+			_next = null;
+			return ref;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	public int _version;
 	public ArrayList<SyncNodeElement> _refs = new ArrayList<SyncNodeElement>();
 	public byte[] _longhash = null;
@@ -162,11 +240,25 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 	public SyncNodeComposite() {}
 	
 	public SyncNodeComposite(ArrayList<SyncNodeElement> refs, SyncNodeElement minName, SyncNodeElement maxName, int leafCount, int depth) {
+		this(refs, minName, maxName, leafCount, depth, null);
+	}
+	
+	/**
+	 * Create a node whose hash has already been accumulated from its elements
+	 * 
+	 * @param hash the accumulated hash - see newHashAccumulator and accumulateHash. If null the hash
+	 * 		is computed from refs.
+	 */
+	public SyncNodeComposite(ArrayList<SyncNodeElement> refs, SyncNodeElement minName, SyncNodeElement maxName, int leafCount, int depth,
+				byte[] hash) {
 		_refs = refs;
 		_minName = minName;
 		_maxName = maxName;
 		_leafCount = leafCount;
-		computeHash();
+		if (null == hash)
+			computeHash();
+		else
+			_longhash = finishHash(hash);
 		
 		_version = Sync.SYNC_VERSION;
 		
@@ -195,15 +287,9 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 			throw new ContentDecodingException("Sync version mismatch: " + _version);
 		if (decoder.peekStartElement(CCNProtocolDTags.SyncNodeElements)) {
 			decoder.readStartElement(CCNProtocolDTags.SyncNodeElements);
-			while (true) {
-				try {
-					SyncNodeElement ref = new SyncNodeElement();
-					ref.decode(decoder);
-					_refs.add(ref);
-				} catch (ContentDecodingException cde) {
-					break;
-				}
-			}
+			ElementReader reader = new ElementReader(decoder);
+			while (reader.hasNext())
+				_refs.add(reader.next());
 			decoder.readEndElement();
 		}
 		if (decoder.peekStartElement(CCNProtocolDTags.SyncContentHash)) {
@@ -222,8 +308,50 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 		decoder.readEndElement();
 	}
 
+	/**
+	 * Iterate over the refs of an encoded node without decoding the rest of it.
+	 * @param content the encoded node
+	 * @param decoder a decoder, which may be set up to handle nodes with many elements
+	 * @return the refs, in order
+	 * @throws ContentDecodingException if content isn't a node
+	 */
+	public static ElementReader elements(byte [] content, XMLDecoder decoder) throws ContentDecodingException {
+		decoder.beginDecoding(new ByteArrayInputStream(content));
+		decoder.readStartElement(CCNProtocolDTags.SyncNode);
+		int version = decoder.readIntegerElement(SyncVersion);
+		if (version != Sync.SYNC_VERSION)
+			throw new ContentDecodingException("Sync version mismatch: " + version);
+		if (!decoder.peekStartElement(CCNProtocolDTags.SyncNodeElements)) {
+			ElementReader reader = new ElementReader(decoder);
+			reader._done = true;
+			return reader;
+		}
+		decoder.readStartElement(CCNProtocolDTags.SyncNodeElements);
+		return new ElementReader(decoder);
+	}
+
+	/**
+	 * Encode in the same form as decode expects. We don't normally transmit nodes but
+	 * this allows us to act as (or simulate) a node source.
+	 */
 	public void encode(XMLEncoder encoder) throws ContentEncodingException {
-		// No current need to encode this - will add if needed
+		if (!validate())
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		encoder.writeStartElement(getElementLabel());
+		encoder.writeElement(SyncVersion, _version);
+		encoder.writeStartElement(CCNProtocolDTags.SyncNodeElements);
+		for (SyncNodeElement sne : _refs)
+			sne.encodeValue(encoder);
+		encoder.writeEndElement();
+		if (null != _longhash)
+			encoder.writeElement(CCNProtocolDTags.SyncContentHash, _longhash);
+		_minName.encodeValue(encoder);
+		_maxName.encodeValue(encoder);
+		encoder.writeElement(CCNProtocolDTags.SyncNodeKind, _kind);
+		encoder.writeElement(CCNProtocolDTags.SyncLeafCount, _leafCount);
+		encoder.writeElement(CCNProtocolDTags.SyncTreeDepth, _treeDepth);
+		encoder.writeElement(CCNProtocolDTags.SyncByteCount, _byteCount);
+		encoder.writeEndElement();
 	}
 	
 	/**
@@ -329,23 +457,47 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 	 * believe that digests are always 32 bytes, I'm not worrying about that for now...
 	 */
 	private void computeHash() {
-		byte[] tmpHash = new byte[CCNSync.SYNC_HASH_MAX_LENGTH];
-		for (SyncNodeElement sne : _refs) {
-			switch (sne.getType()) {
-			case LEAF:
-				ContentName name = sne.getName();
-				byte[] nc = name.lastComponent();
-				if (null != nc) { // Should always be true
-					accumHash(nc, tmpHash);
-				}
-				break;
-			case HASH:
-				accumHash(sne.getData(), tmpHash);
-				break;
-			default:
-				break;
+		byte[] tmpHash = newHashAccumulator();
+		for (SyncNodeElement sne : _refs)
+			accumulateHash(sne, tmpHash);
+		_longhash = finishHash(tmpHash);
+	}
+	
+	/**
+	 * Allows a node's hash to be built up as its elements are chosen rather than in a
+	 * separate pass over them afterwards.
+	 * @return an empty hash accumulator
+	 */
+	public static byte[] newHashAccumulator() {
+		return new byte[CCNSync.SYNC_HASH_MAX_LENGTH];
+	}
+	
+	/**
+	 * Add an element's contribution to a hash accumulator
+	 * @param sne the element
+	 * @param hash accumulator from newHashAccumulator
+	 */
+	public static void accumulateHash(SyncNodeElement sne, byte[] hash) {
+		switch (sne.getType()) {
+		case LEAF:
+			ContentName name = sne.getName();
+			byte[] nc = name.lastComponent();
+			if (null != nc) { // Should always be true
+				accumHash(nc, hash);
 			}
+			break;
+		case HASH:
+			accumHash(sne.getData(), hash);
+			break;
+		default:
+			break;
 		}
+	}
+	
+	/**
+	 * Strip leading zeros from an accumulated hash
+	 */
+	private static byte[] finishHash(byte[] tmpHash) {
 		int hashLength = CCNSync.SYNC_HASH_MAX_LENGTH;
 		for (int i = 0; i < tmpHash.length; i++) {
 			if (tmpHash[i] == 0)
@@ -353,11 +505,12 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 			else
 				break;
 		}
-		_longhash = new byte[hashLength];
-		System.arraycopy(tmpHash, CCNSync.SYNC_HASH_MAX_LENGTH - hashLength, _longhash, 0, hashLength);
+		byte[] longhash = new byte[hashLength];
+		System.arraycopy(tmpHash, CCNSync.SYNC_HASH_MAX_LENGTH - hashLength, longhash, 0, hashLength);
+		return longhash;
 	}
 	
-	private void accumHash(byte[] toAdd, byte[] hash) {
+	private static void accumHash(byte[] toAdd, byte[] hash) {
 		int c = 0;
 		int as = hash.length;
 		int xs = toAdd.length;
@@ -375,7 +528,7 @@ public class SyncNodeComposite extends GenericXMLEncodable implements XMLEncodab
 		// Now propagate the carry (if any)
 		while (c > 0 && as > 0) {
 			as--;
-			c += hash[as];
+			c += hash[as] & 255;
 			hash[as] = (byte)(c & 255);
 			c = (c >> 8) & 255;
 		}
@@ -116,6 +116,14 @@ public class CommandMarker implements ContentName.ComponentProvider {
 	public static final CommandMarker COMMAND_MARKER_BASIC_ENUMERATION = 
 					commandMarker(ENUMERATION_NAMESPACE, "be");
 
+	/**
+	 * Paged enumeration command. Takes an optional text argument giving the
+	 * binary time (as a decimal long) since which changed children are wanted,
+	 * and is followed in the name by the component to resume the listing after.
+	 */
+	public static final CommandMarker COMMAND_MARKER_PAGED_ENUMERATION =
+					commandMarker(ENUMERATION_NAMESPACE, "pe");
+
 	/**
 	 * Repository "marker"
 	 */
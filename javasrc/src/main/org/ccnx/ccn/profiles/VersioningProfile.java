@@ -28,6 +28,8 @@ import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.impl.support.Tuple;
+import org.ccnx.ccn.profiles.versioning.LatestVersionDiscovery;
+import org.ccnx.ccn.profiles.versioning.VersionNumber;
 import org.ccnx.ccn.protocol.CCNTime;
 import org.ccnx.ccn.protocol.Component;
 import org.ccnx.ccn.protocol.ContentName;
@@ -579,6 +581,39 @@ public class VersioningProfile implements CCNProfile {
 		}
 
 		long startTime = System.currentTimeMillis();
+		if (SystemConfiguration.GLV_RANGES > 1) {
+			ContentName versioned = null;
+			ContentName unversioned = startingVersion;
+			if (hasTerminalVersion(startingVersion)) {
+				versioned = SegmentationProfile.segmentRoot(startingVersion);
+				unversioned = versioned.parent();
+			}
+			Interest template = findASegment ? firstBlockLatestVersionInterest(startingVersion, publisher)
+												: latestVersionInterest(startingVersion, null, publisher);
+			ContentObject result = new LatestVersionDiscovery(handle, unversioned, 
+							(null == versioned ? null : new VersionNumber(versioned.lastComponent())),
+							template, SystemConfiguration.GLV_RANGES, verifier).discover(timeout);
+			if (null == result || !findASegment || isVersionedFirstSegment(unversioned, result, startingSegmentNumber))
+				return result;
+			
+			// Same as below - we know the version now but need to get the right segment
+			long remaining = (timeout == SystemConfiguration.NO_TIMEOUT || timeout == 0) ? timeout 
+					: timeout - (System.currentTimeMillis() - startTime);
+			if (remaining > 0 || remaining == SystemConfiguration.NO_TIMEOUT) {
+				ContentObject segment = SegmentationProfile.getSegment(result.name().cut(unversioned.count() + 1), 
+						startingSegmentNumber, null, remaining, verifier, handle);
+				if (null != segment)
+					return segment;
+			}
+			if (Log.isLoggable(Log.FAC_IO, Level.INFO))
+				Log.info(Log.FAC_IO, "gLV couldn't get first segment of {0}, searching serially", result.name());
+			if (timeout != SystemConfiguration.NO_TIMEOUT && timeout != 0) {
+				timeout = timeout - (System.currentTimeMillis() - startTime);
+				if (timeout <= 0)
+					return null;
+			}
+		}
+		
 		long interestTime = 0;
 		long elapsedTime = 0;
 		long respondTime;
@@ -20,7 +20,11 @@ package	org.ccnx.ccn.profiles.ccnd;
 import static org.ccnx.ccn.protocol.ContentName.ROOT;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
+import org.ccnx.ccn.CCNContentHandler;
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.ContentVerifier;
 import org.ccnx.ccn.KeyManager;
@@ -45,6 +49,11 @@ import org.ccnx.ccn.protocol.SignedInfo;
  */
 public class CCNDaemonHandle {
 	
+	/**
+	 * The most requests sendAll has outstanding at once
+	 */
+	public static final int SEND_WINDOW = 100;
+
 	protected CCNNetworkManager _manager;
 	
 	public CCNDaemonHandle() { }
@@ -75,6 +84,93 @@ public class CCNDaemonHandle {
 	 * @throws CCNDaemonException
 	 */
 	protected byte[] sendIt(ContentName interestNamePrefix, GenericXMLEncodable encodeMe, RegisteredPrefix prefix, boolean wait) throws CCNDaemonException {
+		Interest interested = buildRequest(interestNamePrefix, encodeMe);
+		ContentObject contentIn = null;
+
+		try {
+			if (wait) {
+				contentIn = _manager.get(interested, SystemConfiguration.CCND_OP_TIMEOUT);
+			} else {
+				if (null != prefix) {
+					_manager.expressInterest(interested, prefix);
+				} else
+					_manager.write(interested);
+			}
+		} catch (IOException e) {
+			String msg = ("Unexpected IOException in call getting CCNDaemonHandle.sendIt return value, reason: " + e.getMessage());
+			Log.info(msg);
+			throw new CCNDaemonException(msg);
+		} catch (InterruptedException e) {
+			String msg = ("Unexpected InterruptedException in call getting CCNDaemonHandle.sendIt return value, reason: " + e.getMessage());
+			Log.info(msg);
+			throw new CCNDaemonException(msg);
+		}
+		
+		if (wait) {
+			if (null == contentIn) {
+				String msg = ("Fetch of content from face or prefix registration call failed due to timeout.");
+				Log.info(msg);
+				throw new CCNDaemonException(msg);
+			}
+			return checkReply(contentIn);
+		}
+		return null;
+	} /* protected byte[] sendIt(ContentName interestNamePrefix, byte[] payloadIn) throws CCNDaemonException */
+
+	/**
+	 * Send a batch of requests to ccnd and wait for all the replies. Up to SEND_WINDOW requests are
+	 * outstanding at once, so a large batch costs a few round trips rather than one per request.
+	 * 
+	 * @param interestNamePrefix
+	 * @param encodeUs the requests
+	 * @return the data returned from ccnd for each request, in order. An entry is null if its
+	 * 	request timed out, was NACKed or its reply failed to verify.
+	 * @throws CCNDaemonException
+	 */
+	protected byte[][] sendAll(ContentName interestNamePrefix, List<? extends GenericXMLEncodable> encodeUs) throws CCNDaemonException {
+		byte[][] payloads = new byte[encodeUs.size()][];
+		for (int start = 0; start < encodeUs.size(); start += SEND_WINDOW) {
+			int end = Math.min(encodeUs.size(), start + SEND_WINDOW);
+			ArrayList<Interest> interests = new ArrayList<Interest>(end - start);
+			for (int i = start; i < end; i++)
+				interests.add(buildRequest(interestNamePrefix, encodeUs.get(i)));
+
+			ReplyCollector replies = new ReplyCollector(interests);
+			try {
+				_manager.expressInterests(interests, replies);
+				replies.waitForReplies(SystemConfiguration.CCND_OP_TIMEOUT);
+			} catch (IOException e) {
+				String msg = ("Unexpected IOException in call getting CCNDaemonHandle.sendAll return values, reason: " + e.getMessage());
+				Log.info(msg);
+				throw new CCNDaemonException(msg);
+			} catch (InterruptedException e) {
+				String msg = ("Unexpected InterruptedException in call getting CCNDaemonHandle.sendAll return values, reason: " + e.getMessage());
+				Log.info(msg);
+				throw new CCNDaemonException(msg);
+			} finally {
+				_manager.cancelInterests(interests, replies);
+			}
+
+			for (int i = start; i < end; i++) {
+				ContentObject contentIn = replies.reply(i - start);
+				if (null == contentIn) {
+					Log.info("Fetch of content from prefix registration call failed due to timeout: {0}", encodeUs.get(i));
+					continue;
+				}
+				try {
+					payloads[i] = checkReply(contentIn);
+				} catch (CCNDaemonException e) {
+					Log.info("Request {0} failed: {1}", encodeUs.get(i), e.getMessage());
+				}
+			}
+		}
+		return payloads;
+	}
+
+	/**
+	 * Wrap a request to ccnd as signed content in the name of an interest
+	 */
+	protected Interest buildRequest(ContentName interestNamePrefix, GenericXMLEncodable encodeMe) throws CCNDaemonException {
 		byte[] encoded;
 		try {
 			encoded = encodeMe.encode(BinaryXMLCodec.CODEC_NAME);
@@ -101,55 +197,71 @@ public class CCNDaemonHandle {
 		/*
 		 * Add the contentOut bits to the name that's passed in.
 		 */
-		interestNamePrefix = new ContentName(interestNamePrefix, contentOutBits);
-		Interest interested = new Interest(interestNamePrefix);
+		Interest interested = new Interest(new ContentName(interestNamePrefix, contentOutBits));
 		interested.scope(1);
-		ContentObject contentIn = null;
+		return interested;
+	}
 
-		try {
-			if (wait) {
-				contentIn = _manager.get(interested, SystemConfiguration.CCND_OP_TIMEOUT);
-			} else {
-				if (null != prefix) {
-					_manager.expressInterest(interested, prefix);
-				} else
-					_manager.write(interested);
-			}
-		} catch (IOException e) {
-			String msg = ("Unexpected IOException in call getting CCNDaemonHandle.sendIt return value, reason: " + e.getMessage());
-			Log.info(msg);
-			throw new CCNDaemonException(msg);
-		} catch (InterruptedException e) {
-			String msg = ("Unexpected InterruptedException in call getting CCNDaemonHandle.sendIt return value, reason: " + e.getMessage());
-			Log.info(msg);
+	/**
+	 * Verify a reply from ccnd
+	 * @return the payload of the reply
+	 * @throws CCNDaemonException if the reply doesn't verify or is a NACK
+	 */
+	protected byte[] checkReply(ContentObject contentIn) throws CCNDaemonException {
+		PublisherPublicKeyDigest sentID = contentIn.signedInfo().getPublisherKeyID();
+		ContentVerifier verifyer = new ContentObject.SimpleVerifier(sentID, _manager.getKeyManager());
+		if (!verifyer.verify(contentIn)) {
+			String msg = ("CCNDIdGetter: Fetch of content reply failed to verify.");
+			Log.severe(msg);
 			throw new CCNDaemonException(msg);
 		}
 		
-		if (wait) {
-			if (null == contentIn) {
-				String msg = ("Fetch of content from face or prefix registration call failed due to timeout.");
-				Log.info(msg);
-				throw new CCNDaemonException(msg);
-			}
-			
-			PublisherPublicKeyDigest sentID = contentIn.signedInfo().getPublisherKeyID();
-			ContentVerifier verifyer = new ContentObject.SimpleVerifier(sentID, _manager.getKeyManager());
-			if (!verifyer.verify(contentIn)) {
-				String msg = ("CCNDIdGetter: Fetch of content reply failed to verify.");
-				Log.severe(msg);
-				throw new CCNDaemonException(msg);
+		if (contentIn.isNACK()) {
+			String msg = ("Received NACK in response to registration/unregistration request");
+			Log.fine(msg);
+			throw new CCNDaemonException(msg);  // FIX THIS TO GET THE CODE/MESSAGE from the StatusResponse
+		}
+
+		return contentIn.content();
+	}
+
+	/**
+	 * Collects the replies to a batch of requests sent by sendAll
+	 */
+	protected static class ReplyCollector implements CCNContentHandler {
+		protected final HashMap<Interest, Integer> _index = new HashMap<Interest, Integer>();
+		protected final ContentObject[] _replies;
+		protected int _outstanding;
+
+		public ReplyCollector(List<Interest> interests) {
+			for (int i = 0; i < interests.size(); i++)
+				_index.put(interests.get(i), i);
+			_replies = new ContentObject[interests.size()];
+			_outstanding = _index.size();
+		}
+
+		public synchronized Interest handleContent(ContentObject data, Interest interest) {
+			Integer i = _index.get(interest);
+			if (null != i && null == _replies[i]) {
+				_replies[i] = data;
+				if (--_outstanding == 0)
+					notifyAll();
 			}
-			
-			if (contentIn.isNACK()) {
-				String msg = ("Received NACK in response to registration/unregistration request");
-				Log.fine(msg);
-				throw new CCNDaemonException(msg);  // FIX THIS TO GET THE CODE/MESSAGE from the StatusResponse
+			return null;
+		}
+
+		public synchronized void waitForReplies(long timeout) throws InterruptedException {
+			long end = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (_outstanding > 0 && remaining > 0) {
+				wait(remaining);
+				remaining = end - System.currentTimeMillis();
 			}
+		}
 
-			byte[] payloadOut = contentIn.content();
-			return payloadOut;
+		public synchronized ContentObject reply(int i) {
+			return _replies[i];
 		}
-		return null;
-	} /* protected byte[] sendIt(ContentName interestNamePrefix, byte[] payloadIn) throws CCNDaemonException */
+	}
 
 }
@@ -21,6 +21,8 @@ import static org.ccnx.ccn.profiles.ccnd.FaceManager.CCNX;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.impl.CCNNetworkManager;
@@ -422,6 +424,40 @@ public class PrefixRegistrationManager extends CCNDaemonHandle {
 		return entryBack; 
 	}
 	
+	/**
+	 * Self register a batch of prefixes with ccnd, pipelining the requests rather than waiting
+	 * for each reply before sending the next one
+	 * 
+	 * @param prefixesToRegister
+	 * @param flags
+	 * @return the entry ccnd returned for each prefix, in order, or null for a prefix whose
+	 * 	registration failed
+	 * @throws CCNDaemonException
+	 */
+	public ForwardingEntry[] selfRegisterPrefixes(List<ContentName> prefixesToRegister, Integer flags) throws CCNDaemonException {
+		PublisherPublicKeyDigest ccndId;
+		try {
+			ccndId = _manager.getCCNDId();
+		} catch (IOException e1) {
+			Log.warningStackTrace(e1);
+			throw new CCNDaemonException(e1.getMessage());
+		}
+		ContentName interestName = new ContentName(CCNX, ccndId.digest(), ActionType.SelfRegister.value());
+		ArrayList<ForwardingEntry> forwards = new ArrayList<ForwardingEntry>(prefixesToRegister.size());
+		for (ContentName prefixToRegister : prefixesToRegister)
+			forwards.add(new ForwardingEntry(ActionType.SelfRegister, prefixToRegister, ccndId, null, flags, Integer.MAX_VALUE));
+
+		byte[][] payloadsBack = super.sendAll(interestName, forwards);
+		ForwardingEntry[] entriesBack = new ForwardingEntry[payloadsBack.length];
+		for (int i = 0; i < payloadsBack.length; i++) {
+			if (null != payloadsBack[i]) {
+				entriesBack[i] = new ForwardingEntry(payloadsBack[i]);
+				Log.fine(Log.FAC_NETMANAGER, "registerPrefixes: returned {0}", entriesBack[i]);
+			}
+		}
+		return entriesBack;
+	}
+	
 	public void unRegisterPrefix(ContentName prefixName, Integer faceID) throws CCNDaemonException {
 		unRegisterPrefix(prefixName, null, faceID);
 	}
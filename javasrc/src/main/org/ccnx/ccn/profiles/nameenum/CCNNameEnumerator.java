@@ -21,6 +21,7 @@ import static org.ccnx.ccn.profiles.CommandMarker.COMMAND_MARKER_BASIC_ENUMERATI
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.logging.Level;
 
@@ -39,6 +40,7 @@ import org.ccnx.ccn.profiles.VersioningProfile;
 import org.ccnx.ccn.profiles.nameenum.NameEnumerationResponse.NameEnumerationResponseMessage;
 import org.ccnx.ccn.profiles.nameenum.NameEnumerationResponse.NameEnumerationResponseMessage.NameEnumerationResponseMessageObject;
 import org.ccnx.ccn.profiles.security.KeyProfile;
+import org.ccnx.ccn.protocol.CCNTime;
 import org.ccnx.ccn.protocol.ContentName;
 import org.ccnx.ccn.protocol.ContentObject;
 import org.ccnx.ccn.protocol.Exclude;
@@ -60,6 +62,12 @@ import org.ccnx.ccn.protocol.Interest;
  * may not be available at this time (for example, /a.com/b/c.txt might have
  * been enumerated but a.com content may not be available).
  *
+ * Prefixes registered with registerPagedPrefix use paged enumeration instead. Each
+ * page is handed to the application as soon as it arrives, the next page is requested
+ * from the same responder using the continuation point in the response, and once a
+ * responder's listing is complete we ask it only for children changed since the
+ * listing started.
+ *
  * @see CCNInterestHandler
  * @see CCNContentHandler
  * @see BasicNameEnumeratorListener
@@ -84,6 +92,8 @@ public class CCNNameEnumerator implements CCNInterestHandler, CCNContentHandler
 	private class NERequest{
 		ContentName prefix = null;
 		ArrayList<Interest> ongoingInterests = new ArrayList<Interest>();
+		// For paged enumeration, the version of the first page of the listing in progress, by responder
+		HashMap<ContentName, CCNTime> passStart = new HashMap<ContentName, CCNTime>();
 
 		public NERequest(ContentName n) {
 			prefix = n;
@@ -166,6 +176,11 @@ public class CCNNameEnumerator implements CCNInterestHandler, CCNContentHandler
 		public void process(CCNContentInterest ci) {
 			ContentObject c = ci.getContent();
 			Interest interest = ci.getInterest();
+			int pagedMarker = NameEnumerationResponse.pagedMarkerIndex(interest.name());
+			if (pagedMarker >= 0) {
+				processPage(c, interest, pagedMarker);
+				return;
+			}
 			ContentName prefix = interest.name().cut(CommandMarker.COMMAND_MARKER_BASIC_ENUMERATION.getBytes());
 			NERequest ner = getCurrentRequest(prefix);
 
@@ -268,6 +283,86 @@ public class CCNNameEnumerator implements CCNInterestHandler, CCNContentHandler
 				}
 			}
 		}
+
+		/**
+		 * Handle one page of a paged enumeration response. Hands the names on to the callback
+		 * and asks the same responder for the next page, or for changes since the start of the
+		 * listing if this was the last page.
+		 */
+		protected void processPage(ContentObject c, Interest interest, int markerIndex) {
+			ContentName prefix = interest.name().cut(markerIndex);
+			NERequest ner = getCurrentRequest(prefix);
+			if (ner == null)
+				return;
+			ner.removeInterest(interest);
+			if (c == null)
+				return;
+
+			if (c.name().count() <= markerIndex + 2) {
+				Log.warning(Log.FAC_SEARCH, "CCNNameEnumerator received a paged response without a responseID: {0} matching interest {1}", c.name(), interest.name());
+				return;
+			}
+			byte [] responder = c.name().component(markerIndex + 2);
+			ContentName responderName = new ContentName(responder);
+			Long since = NameEnumerationResponse.pagedSince(interest.name());
+			byte [] startAfter = NameEnumerationResponse.pagedStartAfter(interest.name());
+			boolean firstPage = (startAfter.length == 0);
+			ArrayList<Interest> newInterests = new ArrayList<Interest>();
+
+			if (interest.name().count() == markerIndex + 2) {
+				// Not addressed to a particular responder - look for more responders
+				Exclude excludes = interest.exclude();
+				if (excludes == null)
+					excludes = new Exclude();
+				excludes.add(new byte[][]{responder});
+				Interest newInterest = Interest.constructInterest(interest.name(), excludes, null, null, 4, null);
+				if (!ner.containsInterest(newInterest))
+					newInterests.add(newInterest);
+			}
+
+			try {
+				NameEnumerationResponseMessageObject neResponse;
+				if (SegmentationProfile.isFirstSegment(c.getContentName())) {
+					neResponse = new NameEnumerationResponseMessageObject(c, _handle);
+				} else {
+					neResponse = new NameEnumerationResponseMessageObject(SegmentationProfile.segmentRoot(c.getContentName()), _handle);
+				}
+				NameEnumerationResponseMessage nem = neResponse.responseMessage();
+				CCNTime version = neResponse.getVersion();
+				byte [] continuation = nem.continuation();
+				ContentName nextName;
+				synchronized (_currentRequests) {
+					if (firstPage)
+						ner.passStart.put(responderName, version);
+					if (null != continuation) {
+						nextName = NameEnumerationResponse.pagedEnumerationName(prefix,
+									(null == since) ? null : CCNTime.fromBinaryTimeAsLong(since), continuation);
+					} else {
+						CCNTime start = ner.passStart.remove(responderName);
+						nextName = NameEnumerationResponse.pagedEnumerationName(prefix,
+									(null == start) ? version : start, NameEnumerationResponse.FIRST_PAGE);
+					}
+				}
+				// the responder id plus version, segment and digest
+				newInterests.add(Interest.constructInterest(new ContentName(nextName, responder), null, null, null, 3, null));
+
+				for (Interest i : newInterests) {
+					_handle.expressInterest(i, _handler);
+					ner.addInterest(i);
+					if (Log.isLoggable(Log.FAC_SEARCH, Level.FINEST))
+						Log.finest(Log.FAC_SEARCH, "expressed: {0}", i);
+				}
+
+				//Note: we must not hold any locks here
+				callback.handleNameEnumerator(prefix, nem.names());
+			} catch(ContentDecodingException e) {
+				Log.warning(Log.FAC_SEARCH, "Error parsing Collection from ContentObject in CCNNameEnumerator");
+				Log.warningStackTrace(Log.FAC_SEARCH, e);
+			} catch(IOException e) {
+				Log.warning(Log.FAC_SEARCH, "error getting paged response from ContentObject in CCNNameEnumerator.processPage");
+				Log.warningStackTrace(Log.FAC_SEARCH, e);
+			}
+		}
 	}
 
 	protected ArrayList<NEResponse> _handledResponses = new ArrayList<NEResponse>();
@@ -344,6 +439,37 @@ public class CCNNameEnumerator implements CCNInterestHandler, CCNContentHandler
 		}
 	}
 
+	/**
+	 * Method to register a prefix for paged name enumeration. Responders hand back the children
+	 * in pages which are passed to the callback as they arrive, and after the first complete listing
+	 * only children that have changed are returned. Prefixes that are already registered return and do
+	 * not impact the already active registration.
+	 *
+	 * @param prefix ContentName to enumerate
+	 * @throws IOException
+	 */
+	public void registerPagedPrefix(ContentName prefix) throws IOException {
+		synchronized (_currentRequests) {
+			NERequest r = getCurrentRequest(prefix);
+			if (r != null) {
+				if (Log.isLoggable(Log.FAC_SEARCH, Level.FINE))
+					Log.fine(Log.FAC_SEARCH, "prefix {0} is already registered...  returning", prefix);
+				return;
+			}
+			r = new NERequest(prefix);
+			_currentRequests.add(r);
+
+			if (Log.isLoggable(Log.FAC_SEARCH, Level.INFO))
+				Log.info(Log.FAC_SEARCH, "Registered Paged Prefix: {0}", prefix);
+
+			//we have minSuffixComponents to account for responder id, version, seg and digest
+			Interest pi = Interest.constructInterest(
+					NameEnumerationResponse.pagedEnumerationName(prefix, null, NameEnumerationResponse.FIRST_PAGE), null, null, null, 4, null);
+			r.addInterest(pi);
+			_handle.expressInterest(pi, this);
+		}
+	}
+
 	/**
 	 * Method to cancel active enumerations.  The active interests are retrieved from the corresponding
 	 * NERequest object for the prefix.  Each interest is canceled and the NERequest object is removed
@@ -398,7 +524,8 @@ public class CCNNameEnumerator implements CCNInterestHandler, CCNContentHandler
 
 	public Interest handleContent(ContentObject c, Interest interest) {
 
-		if (interest.name().contains(COMMAND_MARKER_BASIC_ENUMERATION)) {
+		if (interest.name().contains(COMMAND_MARKER_BASIC_ENUMERATION)
+				|| NameEnumerationResponse.pagedMarkerIndex(interest.name()) >= 0) {
 			//the NEMarker is in the name...  good!
 		} else {
 			//COMMAND_MARKER_BASIC_ENUMERATION missing...  we have a problem
@@ -60,6 +60,7 @@ public class EnumeratedNameList implements BasicNameEnumeratorListener, ContentN
 	protected CCNTime _lastUpdate = null;
 	protected boolean _enumerating = false;
 	protected boolean _shutdown = false;
+	protected boolean _paged = false;
 
 	private class NewChildrenByThread implements Comparable<NewChildrenByThread> {
 		private final Long _id;		// If 0 this is in thread pool mode
@@ -97,6 +98,20 @@ public class EnumeratedNameList implements BasicNameEnumeratorListener, ContentN
 	}
 
 	public EnumeratedNameList(ContentName namePrefix, boolean startEnumerating, CCNHandle handle) throws IOException {
+		this(namePrefix, startEnumerating, false, handle);
+	}
+
+	/**
+	 * Creates an EnumeratedNameList object, optionally using paged enumeration. With paged
+	 * enumeration children are added to the list a page at a time as responders send them, 
+	 * which is preferable for prefixes with very many children.
+	 *
+	 * @param  namePrefix the ContentName whose children we wish to list.
+	 * @param  startEnumerating true to start enumerating immediately
+	 * @param  paged true to use paged enumeration
+	 * @param  handle the CCNHandle object for sending interests and receiving content object responses.
+	 */
+	public EnumeratedNameList(ContentName namePrefix, boolean startEnumerating, boolean paged, CCNHandle handle) throws IOException {
 		if (null == namePrefix) {
 			throw new IllegalArgumentException("namePrefix cannot be null!");
 		}
@@ -108,12 +123,10 @@ public class EnumeratedNameList implements BasicNameEnumeratorListener, ContentN
 			}
 		}
 		_namePrefix = namePrefix;
+		_paged = paged;
+		_enumerator = new CCNNameEnumerator(handle, this);
 		if (startEnumerating) {
-			_enumerating = true;
-			_hasEnumerated = true;
-			_enumerator = new CCNNameEnumerator(namePrefix, handle, this);
-		} else {
-			_enumerator = new CCNNameEnumerator(handle, this);
+			startEnumerating();
 		}
 	}
 
@@ -147,7 +160,10 @@ public class EnumeratedNameList implements BasicNameEnumeratorListener, ContentN
 	 */
 	public synchronized void startEnumerating() throws IOException {
 		_enumerating = true;
-		_enumerator.registerPrefix(_namePrefix);
+		if (_paged)
+			_enumerator.registerPagedPrefix(_namePrefix);
+		else
+			_enumerator.registerPrefix(_namePrefix);
 		_hasEnumerated = true;
 	}
 
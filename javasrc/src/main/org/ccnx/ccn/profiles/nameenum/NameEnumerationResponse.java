@@ -30,6 +30,7 @@ import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentGoneException;
 import org.ccnx.ccn.io.content.ContentNotReadyException;
 import org.ccnx.ccn.io.content.Link;
+import org.ccnx.ccn.profiles.CommandMarker;
 import org.ccnx.ccn.protocol.CCNTime;
 import org.ccnx.ccn.protocol.ContentName;
 import org.ccnx.ccn.protocol.ContentObject;
@@ -43,12 +44,33 @@ import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
  * where there is new information to return, and where a previous interest was not
  * satisfied (set the interest flag), but a later save occurs directly under the namespace.
  *
+ * Responders may also answer paged enumeration requests (COMMAND_MARKER_PAGED_ENUMERATION).
+ * A paged request names the component to resume after and optionally a time since which
+ * only changed children are wanted:
+ * 
+ * <prefix>/%C1.E.pe[~<since>]/<start after>[/<responder id>]
+ * 
+ * Each response carries at most SystemConfiguration.NE_PAGE_SIZE names. If there are
+ * more children to list, the response ends with a continuation Link (labeled
+ * CONTINUATION_LABEL) whose target is the component to start the next page after.
+ *
  */
 public class NameEnumerationResponse {
 	
+	/**
+	 * Label of the Link used to mark the continuation point of a paged response.
+	 */
+	public static final String CONTINUATION_LABEL = "NEContinuation";
+	
+	/**
+	 * Start component for the first page of a paged enumeration.
+	 */
+	public static final byte [] FIRST_PAGE = new byte[0];
+	
 	private ContentName _prefix;
 	private ArrayList<ContentName> _names;
 	private CCNTime _version;
+	private byte [] _continuation;
 	
 	/**
 	 * Inner class to slightly modify the collection type used to respond to NE
@@ -114,6 +136,31 @@ public class NameEnumerationResponse {
 			}
 		}
 		
+		/**
+		 * Get the names in this response, leaving out any continuation marker.
+		 * @return the single-component names listed in this message
+		 */
+		public ArrayList<ContentName> names() {
+			ArrayList<ContentName> names = new ArrayList<ContentName>(size());
+			for (Link l : contents()) {
+				if (!CONTINUATION_LABEL.equals(l.targetLabel()))
+					names.add(l.targetName());
+			}
+			return names;
+		}
+		
+		/**
+		 * Get the continuation point of a paged response.
+		 * @return the component to resume the enumeration after, or null if this
+		 * 	was the last page
+		 */
+		public byte [] continuation() {
+			Link l = get(CONTINUATION_LABEL);
+			if (null == l || l.targetName().count() == 0)
+				return null;
+			return l.targetName().component(0);
+		}
+		
 		/*
 		 * Not used yet.
 		 */
@@ -265,13 +312,41 @@ public class NameEnumerationResponse {
 		return _version;
 	}
 	
+	/**
+	 * Method to set the continuation point for a paged response.
+	 * @param continuation the last component considered for this page, or null
+	 * 	if there are no more children to list
+	 */
+	public void setContinuation(byte [] continuation) {
+		_continuation = continuation;
+	}
+	
+	/**
+	 * Method to get the continuation point for a paged response.
+	 * @return the component to resume after, or null if the listing is complete
+	 */
+	public byte [] getContinuation() {
+		return _continuation;
+	}
+	
+	/**
+	 * Method to check whether this is a page of a longer listing.
+	 * @return true if the requester needs to ask for another page
+	 */
+	public boolean hasContinuation() {
+		return null != _continuation;
+	}
+	
 	/**
 	 * Method to return a Collection object for the names in the response
 	 * 
 	 * @return Collection A collection of the names (as Link objects) to return.
 	 */
 	public NameEnumerationResponseMessage getNamesForResponse() {
-		return new NameEnumerationResponseMessage(_names);
+		NameEnumerationResponseMessage nem = new NameEnumerationResponseMessage(_names);
+		if (null != _continuation)
+			nem.add(CONTINUATION_LABEL, new ContentName(_continuation));
+		return nem;
 	}
 	
 	/**
@@ -287,4 +362,57 @@ public class NameEnumerationResponse {
 			return false;
 	}
 	
+	/**
+	 * Build the name for a paged enumeration request.
+	 * 
+	 * @param prefix the prefix to enumerate under
+	 * @param since if non-null only children changed after this time are listed
+	 * @param startAfter the component to resume the listing after, FIRST_PAGE (or null) for
+	 * 	the first page
+	 * @return the request name, to which a responder id may be appended
+	 */
+	public static ContentName pagedEnumerationName(ContentName prefix, CCNTime since, byte [] startAfter) {
+		byte [] marker = (null == since) ? CommandMarker.COMMAND_MARKER_PAGED_ENUMERATION.getBytes()
+				: CommandMarker.COMMAND_MARKER_PAGED_ENUMERATION.addArgument(Long.toString(since.toBinaryTimeAsLong()));
+		return new ContentName(prefix, marker, (null == startAfter) ? FIRST_PAGE : startAfter);
+	}
+	
+	/**
+	 * Find the paged enumeration marker in a name.
+	 * @return the index of the marker component or -1 if this is not a paged request
+	 */
+	public static int pagedMarkerIndex(ContentName name) {
+		return CommandMarker.COMMAND_MARKER_PAGED_ENUMERATION.findMarker(name);
+	}
+	
+	/**
+	 * Get the time argument of a paged enumeration request, as a binary time.
+	 * @param name the request name
+	 * @return the binary time or null if all children are wanted
+	 */
+	public static Long pagedSince(ContentName name) {
+		int index = pagedMarkerIndex(name);
+		if (index < 0)
+			return null;
+		String [] args = CommandMarker.getArguments(name.component(index));
+		if (null == args || args.length == 0)
+			return null;
+		try {
+			return Long.valueOf(args[0]);
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Get the component a paged enumeration request wants to resume after.
+	 * @param name the request name
+	 * @return the component, FIRST_PAGE if the listing should start at the beginning
+	 */
+	public static byte [] pagedStartAfter(ContentName name) {
+		int index = pagedMarkerIndex(name);
+		if (index < 0 || index + 1 >= name.count())
+			return FIRST_PAGE;
+		return name.component(index + 1);
+	}
 }
@@ -32,7 +32,11 @@ public class RepositoryOperations {
 	}
 
 	public static boolean isNameEnumerationOperation(Interest interest) {
-		return interest.name().contains(COMMAND_MARKER_BASIC_ENUMERATION);
+		return interest.name().contains(COMMAND_MARKER_BASIC_ENUMERATION) || isPagedNameEnumerationOperation(interest);
+	}
+
+	public static boolean isPagedNameEnumerationOperation(Interest interest) {
+		return COMMAND_MARKER_PAGED_ENUMERATION.findMarker(interest.name()) >= 0;
 	}
 
 	public static boolean isCheckedWriteOperation(Interest interest) {
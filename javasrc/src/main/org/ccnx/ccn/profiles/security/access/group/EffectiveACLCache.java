@@ -0,0 +1,352 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.profiles.security.access.group;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.CCNNetworkObject;
+import org.ccnx.ccn.io.content.UpdateListener;
+import org.ccnx.ccn.profiles.security.access.AccessControlProfile;
+import org.ccnx.ccn.profiles.security.access.group.ACL.ACLObject;
+import org.ccnx.ccn.protocol.ContentName;
+
+/**
+ * Remembers, for one access control namespace, which node holds the ACL in force at each node
+ * we have asked about, the ACL objects at those nodes and the latest stored node key at each
+ * of them, so that operating on many nodes under the same ACL doesn't repeat the same
+ * ancestor search and version lookups for each one.
+ *
+ * Cached ACL objects are kept up to date by updating them continuously in the background rather
+ * than by asking for the latest version on each access. When a new version of an ACL arrives the
+ * node key cached for it is dropped, as changing an ACL generally makes a new node key. When an
+ * ACL goes away, everything which was found to be governed by it is dropped.
+ *
+ * Monitoring an ACL can't tell us that a new ACL has been put on a node between a node and the ACL
+ * we found for it, so which node holds the effective ACL is only remembered for a limited time.
+ * Changes made through our own GroupAccessControlManager are dropped at once with invalidate().
+ */
+public class EffectiveACLCache implements UpdateListener, CCNStatistics {
+
+	protected static class EffectiveEntry {
+		ContentName _aclNode;
+		long _expires;
+
+		EffectiveEntry(ContentName aclNode, long expires) {
+			_aclNode = aclNode;
+			_expires = expires;
+		}
+	}
+
+	protected final long _lifetime;
+	protected final int _maxEntries;
+
+	protected final LinkedHashMap<ContentName, EffectiveEntry> _effective;
+	protected final LinkedHashMap<ContentName, ACLObject> _acls;
+	protected final LinkedHashMap<ContentName, NodeKey> _nodeKeys;
+
+	// ACLs we have dropped but not yet stopped monitoring. We stop them without holding our lock
+	// as the objects call us back holding theirs.
+	protected final ArrayList<ACLObject> _dropped = new ArrayList<ACLObject>();
+
+	/**
+	 * @param lifetime how long in ms to remember which node holds the ACL in force at a node. 0
+	 * 		or less disables the cache.
+	 * @param maxEntries maximum number of nodes to remember. The least recently used are forgotten first.
+	 */
+	public EffectiveACLCache(long lifetime, final int maxEntries) {
+		_lifetime = lifetime;
+		_maxEntries = maxEntries;
+		_effective = new LinkedHashMap<ContentName, EffectiveEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = -3203581429475226826L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ContentName, EffectiveEntry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		_acls = new LinkedHashMap<ContentName, ACLObject>(16, 0.75f, true) {
+			private static final long serialVersionUID = 7710985373613447317L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ContentName, ACLObject> eldest) {
+				if (size() > maxEntries) {
+					_dropped.add(eldest.getValue());
+					_nodeKeys.remove(eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+		_nodeKeys = new LinkedHashMap<ContentName, NodeKey>(16, 0.75f, true) {
+			private static final long serialVersionUID = -1419400596497954117L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ContentName, NodeKey> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public boolean isEnabled() {
+		return _lifetime > 0 && _maxEntries > 0;
+	}
+
+	/**
+	 * Get the ACL in force at a node if we know it
+	 * @param nodeName
+	 * @return the ACL object, kept up to date in the background, or null if we don't know it
+	 */
+	public synchronized ACLObject getEffectiveACL(ContentName nodeName) {
+		if (!isEnabled())
+			return null;
+		EffectiveEntry entry = _effective.get(nodeName);
+		if (null != entry && entry._expires <= System.currentTimeMillis()) {
+			_effective.remove(nodeName);
+			_stats.increment(StatsEnum.Expired);
+			entry = null;
+		}
+		ACLObject aclo = (null == entry) ? null : _acls.get(entry._aclNode);
+		if (null == aclo) {
+			_stats.increment(StatsEnum.ACLMisses);
+			return null;
+		}
+		_stats.increment(StatsEnum.ACLHits);
+		return aclo;
+	}
+
+	/**
+	 * Remember the ACL in force at a node, and start keeping it up to date if we aren't already.
+	 * @param nodeName
+	 * @param aclo the effective ACL, which must have data
+	 */
+	public void putEffectiveACL(ContentName nodeName, ACLObject aclo) {
+		if (!isEnabled() || null == aclo || !aclo.available() || aclo.isGone())
+			return;
+		ContentName aclNode = AccessControlProfile.accessRoot(aclo.getBaseName());
+		boolean monitor = false;
+		synchronized (this) {
+			ACLObject current = _acls.get(aclNode);
+			if (null == current) {
+				_acls.put(aclNode, aclo);
+				monitor = true;
+			} else {
+				// Use the object we are already monitoring
+				aclo = current;
+			}
+			_effective.put(nodeName, new EffectiveEntry(aclNode, System.currentTimeMillis() + _lifetime));
+		}
+		if (monitor) {
+			try {
+				aclo.updateInBackground(true, this);
+			} catch (IOException e) {
+				if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.WARNING)) {
+					Log.warning(Log.FAC_ACCESSCONTROL, "EffectiveACLCache: cannot monitor ACL {0}: {1}", aclo.getBaseName(), e.getMessage());
+				}
+				synchronized (this) {
+					remove(aclNode);
+				}
+			}
+		}
+		stopDropped();
+	}
+
+	/**
+	 * Get the latest stored node key at a node holding an ACL, if we know it
+	 * @param aclNode
+	 * @return the node key or null
+	 */
+	public synchronized NodeKey getNodeKey(ContentName aclNode) {
+		if (!isEnabled())
+			return null;
+		NodeKey nk = _nodeKeys.get(aclNode);
+		_stats.increment((null == nk) ? StatsEnum.NodeKeyMisses : StatsEnum.NodeKeyHits);
+		return nk;
+	}
+
+	/**
+	 * Remember the latest stored node key at a node. This is only kept while we are monitoring
+	 * the ACL at that node, so we notice when it is likely to change.
+	 * @param aclNode
+	 * @param nk
+	 */
+	public synchronized void putNodeKey(ContentName aclNode, NodeKey nk) {
+		if (!isEnabled() || null == nk || !_acls.containsKey(aclNode))
+			return;
+		_nodeKeys.put(aclNode, nk);
+	}
+
+	/**
+	 * Forget everything we know about a node and the nodes below it, because we have
+	 * changed or removed the ACL there.
+	 * @param nodeName
+	 */
+	public void invalidate(ContentName nodeName) {
+		synchronized (this) {
+			_stats.increment(StatsEnum.Invalidations);
+			Iterator<ContentName> it = _effective.keySet().iterator();
+			while (it.hasNext()) {
+				if (nodeName.isPrefixOf(it.next()))
+					it.remove();
+			}
+			remove(nodeName);
+		}
+		stopDropped();
+	}
+
+	/**
+	 * Forget everything and stop monitoring ACLs
+	 */
+	public void clear() {
+		synchronized (this) {
+			_dropped.addAll(_acls.values());
+			_acls.clear();
+			_effective.clear();
+			_nodeKeys.clear();
+		}
+		stopDropped();
+	}
+
+	/**
+	 * Called when a monitored ACL changes.
+	 */
+	public void newVersionAvailable(CCNNetworkObject<?> newVersion, boolean wasSave) {
+		ContentName aclNode = AccessControlProfile.accessRoot(newVersion.getBaseName());
+		synchronized (this) {
+			if (_acls.get(aclNode) != newVersion)
+				return;
+			if (newVersion.isGone()) {
+				if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
+					Log.info(Log.FAC_ACCESSCONTROL, "EffectiveACLCache: ACL at {0} is gone, dropping nodes governed by it", aclNode);
+				}
+				_stats.increment(StatsEnum.ACLGone);
+				Iterator<EffectiveEntry> it = _effective.values().iterator();
+				while (it.hasNext()) {
+					if (aclNode.equals(it.next()._aclNode))
+						it.remove();
+				}
+				remove(aclNode);
+			} else {
+				if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE)) {
+					Log.fine(Log.FAC_ACCESSCONTROL, "EffectiveACLCache: new version {0} of ACL", newVersion.getVersionedName());
+				}
+				_stats.increment(StatsEnum.ACLRefreshes);
+				_nodeKeys.remove(aclNode);
+			}
+		}
+		stopDropped();
+	}
+
+	/**
+	 * Must be called with the lock held. The caller must call stopDropped() once it is released.
+	 */
+	protected void remove(ContentName aclNode) {
+		ACLObject aclo = _acls.remove(aclNode);
+		if (null != aclo)
+			_dropped.add(aclo);
+		_nodeKeys.remove(aclNode);
+	}
+
+	/**
+	 * Stop monitoring the ACLs we have dropped. Must be called without the lock held.
+	 */
+	protected void stopDropped() {
+		ArrayList<ACLObject> dropped;
+		synchronized (this) {
+			if (_dropped.isEmpty())
+				return;
+			dropped = new ArrayList<ACLObject>(_dropped);
+			_dropped.clear();
+		}
+		for (ACLObject aclo : dropped) {
+			aclo.removeListener(this);
+			aclo.cancelInterest();
+		}
+	}
+
+	// Statistics
+	protected CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.ACLHits);
+
+	public CCNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		ACLHits ("count", "Effective ACLs found in the cache"),
+		ACLMisses ("count", "Effective ACLs which had to be searched for"),
+		Expired ("count", "Effective ACL nodes forgotten because they were too old"),
+		ACLRefreshes ("count", "New versions of cached ACLs seen by monitoring"),
+		ACLGone ("count", "Cached ACLs which were deleted"),
+		NodeKeyHits ("count", "Node keys found in the cache"),
+		NodeKeyMisses ("count", "Node keys which had to be retrieved"),
+		Invalidations ("count", "Nodes dropped because we changed their ACL"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
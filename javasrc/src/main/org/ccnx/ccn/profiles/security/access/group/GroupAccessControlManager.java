@@ -37,6 +37,7 @@ import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.KeyManager;
 import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.CCNFlowControl.SaveType;
+import org.ccnx.ccn.impl.CCNStats;
 import org.ccnx.ccn.impl.support.ByteArrayCompare;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
@@ -235,6 +236,8 @@ public class GroupAccessControlManager extends AccessControlManager {
 	private TreeMap<byte[], GroupManager> hashToGroupManagerMap = new TreeMap<byte[], GroupManager>(byteArrayComparator);
 	private HashMap<ContentName, GroupManager> prefixToGroupManagerMap = new HashMap<ContentName, GroupManager>();
 	private HashSet<ContentName> _myIdentities = new HashSet<ContentName>();
+	protected EffectiveACLCache _aclCache = 
+		new EffectiveACLCache(SystemConfiguration.ACL_CACHE_LIFETIME, SystemConfiguration.ACL_CACHE_SIZE);
 
 	public GroupAccessControlManager() {
 		// must call initialize
@@ -607,12 +610,14 @@ public class GroupAccessControlManager extends AccessControlManager {
 		// write the root ACL
 		ACLObject aclo = new ACLObject(GroupAccessControlProfile.aclName(_namespace), rootACL, handle());
 		aclo.save();
+		_aclCache.invalidate(_namespace);
 		return aclo;
 	}
 
 	/**
 	 * Retrieves the latest version of an ACL effective at this node, either stored
-	 * here or at one of its ancestors.
+	 * here or at one of its ancestors. ACLs we have found before are cached and kept
+	 * up to date in the background, see EffectiveACLCache.
 	 * @param nodeName the name of the node
 	 * @return the ACL object
 	 * @throws IOException 
@@ -620,8 +625,16 @@ public class GroupAccessControlManager extends AccessControlManager {
 	 */
 	public ACLObject getEffectiveACLObject(ContentName nodeName) throws ContentDecodingException, IOException {
 
+		ACLObject aclo = _aclCache.getEffectiveACL(nodeName);
+		if (null != aclo) {
+			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.FINE)) {
+				Log.fine(Log.FAC_ACCESSCONTROL, "getEffectiveACLObject: using cached ACL {0} for {1}", aclo.getVersionedName(), nodeName);
+			}
+			return aclo;
+		}
+
 		// Find the closest node that has a non-gone ACL
-		ACLObject aclo = findAncestorWithACL(nodeName, null);
+		aclo = findAncestorWithACL(nodeName, null);
 		if (null != aclo) {
 			// parallel find doesn't get us the latest version. Serial does,
 			// but it's kind of an artifact.
@@ -631,11 +644,19 @@ public class GroupAccessControlManager extends AccessControlManager {
 				Log.info(Log.FAC_ACCESSCONTROL, "No ACL found between node {0} and namespace root {1}. Returning root ACL.",
 						nodeName, getNamespaceRoot());
 			}
-			return getACLObjectForNode(getNamespaceRoot());
+			aclo = getACLObjectForNode(getNamespaceRoot());
 		}
+		_aclCache.putEffectiveACL(nodeName, aclo);
 		return aclo;
 	}
 
+	/**
+	 * Get the effective ACL and node key cache statistics
+	 */
+	public CCNStats getEffectiveACLCacheStats() {
+		return _aclCache.getStats();
+	}
+
 	private ACLObject findAncestorWithACL(ContentName dataNodeName, ContentName stopPoint) throws ContentDecodingException, IOException {
 		// selector method, remove when pick faster one.
 		return findAncestorWithACLInParallel(dataNodeName, stopPoint);
@@ -866,6 +887,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 		// write the acl
 		ACLObject aclo = new ACLObject(GroupAccessControlProfile.aclName(nodeName), newACL, handle());
 		aclo.save();
+		_aclCache.invalidate(nodeName);
 		return aclo.acl();
 	}
 	
@@ -893,6 +915,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 		// write the acl
 		ACLObject aclo = new ACLObject(GroupAccessControlProfile.aclName(nodeName), newACL, handle());
 		aclo.save();
+		_aclCache.invalidate(nodeName);
 		return aclo.acl();
 	}
 
@@ -959,6 +982,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 
 		// Then mark the ACL as gone.
 		thisNodeACL.saveAsGone();
+		_aclCache.invalidate(nodeName);
 	}
 
 	/**
@@ -1047,6 +1071,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 		// If we got here, we got the node key we were updating, so we are allowed
 		// to at least read this stuff (though maybe not write it). Save the acl.
 		currentACL.save(newACL);
+		_aclCache.invalidate(nodeName);
 		return newACL;
 
 	}
@@ -1186,7 +1211,11 @@ public class GroupAccessControlManager extends AccessControlManager {
 	ContentDecodingException, IOException, NoSuchAlgorithmException {
 		// climb up looking for node keys, then make sure that one isn't GONE
 		// if it isn't, call read-side routine to figure out how to decrypt it
-		ACLObject effectiveACL = findAncestorWithACL(nodeName, null);
+		ACLObject effectiveACL = _aclCache.getEffectiveACL(nodeName);
+		if (null != effectiveACL) {
+			return getCachedLatestNodeKeyForNode(AccessControlProfile.accessRoot(effectiveACL.getBaseName()));
+		}
+		effectiveACL = findAncestorWithACL(nodeName, null);
 
 		if (null != effectiveACL) {
 			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
@@ -1202,10 +1231,28 @@ public class GroupAccessControlManager extends AccessControlManager {
 						nodeName, getNamespaceRoot());
 			}
 		}
-		return getLatestNodeKeyForNode(
+		// Parallel find doesn't get us the latest version of the ACL, but the cache
+		// will bring it up to date in the background.
+		_aclCache.putEffectiveACL(nodeName, effectiveACL);
+		return getCachedLatestNodeKeyForNode(
 				(null != effectiveACL) ? AccessControlProfile.accessRoot(effectiveACL.getBaseName()) : getNamespaceRoot());
 	}
 
+	/**
+	 * Get the latest node key for a node whose ACL we have cached, remembering it
+	 * until the ACL changes.
+	 */
+	protected NodeKey getCachedLatestNodeKeyForNode(ContentName aclNodeName) 
+	throws InvalidKeyException, AccessDeniedException, 
+	ContentDecodingException, IOException, NoSuchAlgorithmException {
+		NodeKey nodeKey = _aclCache.getNodeKey(aclNodeName);
+		if (null == nodeKey) {
+			nodeKey = getLatestNodeKeyForNode(aclNodeName);
+			_aclCache.putNodeKey(aclNodeName, nodeKey);
+		}
+		return nodeKey;
+	}
+
 	/**
 	 * Write path: get the latest node key for a node.
 	 * @param nodeName the name of the node
@@ -1372,7 +1419,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 	throws AccessDeniedException, InvalidKeyException, ContentEncodingException, 
 	ContentDecodingException, IOException, NoSuchAlgorithmException {
 		// Get the ancestor node key in force at this node.
-		NodeKey nodeKey = getLatestNodeKeyForNode(
+		NodeKey nodeKey = getCachedLatestNodeKeyForNode(
 				AccessControlProfile.accessRoot(effectiveACL.getBaseName()));
 		if (null == nodeKey) {
 			throw new AccessDeniedException("Cannot retrieve node key for node: " + nodeName + ".");
@@ -1419,6 +1466,7 @@ public class GroupAccessControlManager extends AccessControlManager {
 			ContentName nodeKeyNodeName = GroupAccessControlProfile.accessRoot(nodeKey.storedNodeKeyName());
 			ACLObject acl = getACLObjectForNode(nodeKeyNodeName);
 			nodeKey = generateNewNodeKey(nodeKeyNodeName, nodeKey, acl.acl());
+			_aclCache.putNodeKey(nodeKeyNodeName, nodeKey);
 		} else {
 			if (Log.isLoggable(Log.FAC_ACCESSCONTROL, Level.INFO)) {
 				Log.info(Log.FAC_ACCESSCONTROL, "getFreshEffectiveNodeKey: Found node key at {0}", nodeKey.storedNodeKeyName());
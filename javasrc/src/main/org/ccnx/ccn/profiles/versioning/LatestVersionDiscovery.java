@@ -0,0 +1,419 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.ccnx.ccn.profiles.versioning;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.ContentVerifier;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.CCNStats;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.CCNStatistics;
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats.IStatsEnum;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+
+/**
+ * Finds the latest version of a name by asking for several disjoint version ranges at
+ * once rather than asking for the latest version, excluding it and asking again one responder
+ * at a time.
+ *
+ * The versions after the starting version are split evenly into ranges up to now plus one for
+ * anything after now, and each range is kept as an InterestData so its interest is built the same way
+ * as those of VersioningInterestManager. When a range returns a version later than any we have seen,
+ * we drop all ranges entirely before it and split the rest of that range into as many ranges as we
+ * have free, so the search narrows in on where versions actually are without disturbing the ranges
+ * after it, which may already be being answered.
+ *
+ * The result is the latest version once every range which could hold a later one has gone
+ * unanswered for SystemConfiguration.GLV_ATTEMPT_TIMEOUT - the same evidence the serial search
+ * uses - or when the timeout expires. Like the serial search, we wait for the whole timeout
+ * for a first answer.
+ *
+ * Objects are only used for one search.
+ */
+public class LatestVersionDiscovery implements CCNContentHandler, CCNStatistics {
+
+	/**
+	 * @param handle
+	 * @param prefix the unversioned name
+	 * @param after find versions later than this. If null find any version.
+	 * @param template the interest we would use for a serial search. Its suffix component limits and
+	 * 		publisher are used for each range.
+	 * @param ranges number of ranges to search at once
+	 * @param verifier used to verify responses
+	 */
+	public LatestVersionDiscovery(CCNHandle handle, ContentName prefix, VersionNumber after, Interest template,
+				int ranges, ContentVerifier verifier) {
+		_handle = handle;
+		_prefix = prefix;
+		_template = template;
+		_verifier = verifier;
+
+		_start = (null == after) ? VersionNumber.getMinimumVersion() : after.addAndReturn(1);
+		_maxRanges = Math.max(1, ranges);
+		_ranges.addAll(split(_start, VersionNumber.getMaximumVersion(), _maxRanges));
+	}
+
+	/**
+	 * Run the search
+	 * @param timeout how long to wait for any answer. SystemConfiguration.NO_TIMEOUT waits until we get
+	 * 		one and 0 waits for and returns the first answer we get.
+	 * @return the verified object with the latest version found or null if none
+	 * @throws IOException
+	 */
+	public ContentObject discover(long timeout) throws IOException {
+		long startTime = System.currentTimeMillis();
+		long deadline = (timeout == SystemConfiguration.NO_TIMEOUT || timeout == 0) ? Long.MAX_VALUE : startTime + timeout;
+		long attemptTimeout = SystemConfiguration.GLV_ATTEMPT_TIMEOUT;
+		int attempts = 0;
+		ContentObject best = null;
+		VersionNumber bestVersion = null;
+
+		_stats.increment(StatsEnum.Discoveries);
+		try {
+			for (Range range : _ranges) {
+				express(range);
+				attempts++;
+			}
+
+			while (true) {
+				long now = System.currentTimeMillis();
+				long wait = deadline - now;
+				if (null != best) {
+					if (timeout == 0)
+						break;
+
+					// Ranges which have gone unanswered for long enough are done. If that's all of them
+					// we have the latest.
+					long nextExpiry = Long.MAX_VALUE;
+					for (Range range : _ranges) {
+						if (range._done)
+							continue;
+						long expiry = range._expressed + attemptTimeout;
+						if (expiry <= now) {
+							finish(range);
+							_stats.increment(StatsEnum.RangesExhausted);
+						} else if (expiry < nextExpiry)
+							nextExpiry = expiry;
+					}
+					if (nextExpiry == Long.MAX_VALUE)
+						break;
+					wait = Math.min(wait, nextExpiry - now);
+				} else {
+					boolean active = false;
+					for (Range range : _ranges)
+						active |= !range._done;
+					if (!active)
+						break;
+				}
+				if (wait <= 0) {
+					_stats.increment(StatsEnum.DeadlineExpired);
+					break;
+				}
+
+				Response response;
+				try {
+					response = _responses.poll(wait, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (null == response)
+					continue;
+				Range range = null;
+				for (Range r : _ranges) {
+					if (!r._done && r._interest == response._interest) {
+						range = r;
+						break;
+					}
+				}
+
+				ContentObject data = response._data;
+				VersionNumber version = null;
+				if (data.name().count() > _prefix.count()) {
+					byte [] component = data.name().component(_prefix.count());
+					if (VersioningProfile.isVersionComponent(component))
+						version = new VersionNumber(component);
+				}
+				if (null != range && (null == version || !range._data.contains(version))) {
+					// We can't exclude this so give up on the range
+					Log.warning(Log.FAC_IO, "LatestVersionDiscovery: unexpected response {0} to {1}", data.name(), range._data);
+					finish(range);
+					continue;
+				}
+				
+				// Answers to ranges we've dropped are still useful if they're later than anything we have
+				if (null == version || version.before(_start) || (null != best && !version.after(bestVersion)))
+					continue;
+				if (!_verifier.verify(data)) {
+					if (Log.isLoggable(Log.FAC_IO, Level.FINE))
+						Log.fine(Log.FAC_IO, "LatestVersionDiscovery: {0} did not verify", data.name());
+					_stats.increment(StatsEnum.Unverified);
+					if (null != range) {
+						range._data.addExcludeUnbounded(version);
+						express(range);
+						attempts++;
+					}
+					continue;
+				}
+				
+				_stats.increment(StatsEnum.Responses);
+				if (Log.isLoggable(Log.FAC_IO, Level.FINE))
+					Log.fine(Log.FAC_IO, "LatestVersionDiscovery: latest version so far is {0}", data.name());
+				best = data;
+				bestVersion = version;
+				if (timeout == 0)
+					break;
+				attempts += narrow(bestVersion);
+			}
+		} finally {
+			for (Range range : _ranges)
+				finish(range);
+		}
+
+		long elapsed = System.currentTimeMillis() - startTime;
+		_stats.addSample(StatsEnum.AttemptsPerDiscovery, attempts);
+		if (null != best) {
+			_stats.addSample(StatsEnum.DiscoveryTime, elapsed);
+			if (elapsed < 10)
+				_stats.increment(StatsEnum.DiscoveryUnder10ms);
+			else if (elapsed < 100)
+				_stats.increment(StatsEnum.DiscoveryUnder100ms);
+			else if (elapsed < 1000)
+				_stats.increment(StatsEnum.DiscoveryUnder1s);
+			else
+				_stats.increment(StatsEnum.DiscoveryOver1s);
+		} else
+			_stats.increment(StatsEnum.NotFound);
+		if (Log.isLoggable(Log.FAC_IO, Level.FINE))
+			Log.fine(Log.FAC_IO, "LatestVersionDiscovery: found {0} in {1}ms with {2} interests over {3} ranges",
+					(null == best ? "nothing" : best.name()), elapsed, attempts, _ranges.size());
+		return best;
+	}
+
+	/**
+	 * Drop the ranges which can't contain anything later than version and split what's left of
+	 * the range containing it into the ranges we have free.
+	 * @return the number of interests sent
+	 */
+	private int narrow(VersionNumber version) throws IOException {
+		Range containing = null;
+		int live = 0;
+		for (Range range : _ranges) {
+			if (range._done)
+				continue;
+			if (range._data.getStopVersion().compareTo(version) <= 0)
+				finish(range);
+			else if (range._data.contains(version))
+				containing = range;
+			else
+				live++;
+		}
+		for (Iterator<Range> it = _ranges.iterator(); it.hasNext(); ) {
+			if (it.next()._done)
+				it.remove();
+		}
+		if (null == containing)
+			return 0;
+		finish(containing);
+		int index = _ranges.indexOf(containing);
+		_ranges.remove(index);
+		ArrayList<Range> newRanges = split(version.addAndReturn(1), containing._data.getStopVersion(), _maxRanges - live);
+		_ranges.addAll(index, newRanges);
+		for (Range range : newRanges)
+			express(range);
+		return newRanges.size();
+	}
+	
+	/**
+	 * Split [start, stop] into count ranges of roughly equal width. If stop is the maximum version
+	 * we split up to now and use the last range for everything after that.
+	 */
+	private ArrayList<Range> split(VersionNumber start, VersionNumber stop, int count) {
+		ArrayList<Range> ranges = new ArrayList<Range>();
+		ArrayList<VersionNumber> boundaries = new ArrayList<VersionNumber>();
+		boundaries.add(start);
+		long low = start.getAsMillis();
+		long high;
+		int pieces = count;
+		if (stop.equals(VersionNumber.getMaximumVersion())) {
+			high = System.currentTimeMillis();
+			pieces--;
+		} else
+			high = stop.getAsMillis();
+		if (pieces > 0 && low < high) {
+			long width = (high - low) / pieces;
+			for (int i = 1; i <= pieces; i++) {
+				VersionNumber boundary = new VersionNumber(i == pieces ? high : low + (width * i));
+				if (boundary.after(boundaries.get(boundaries.size() - 1)) && boundary.before(stop))
+					boundaries.add(boundary);
+			}
+		}
+		for (int i = 0; i < boundaries.size(); i++) {
+			VersionNumber rangeStop = (i == boundaries.size() - 1) ? stop : boundaries.get(i + 1).addAndReturn(-1);
+			ranges.add(new Range(new InterestData(_prefix, boundaries.get(i), rangeStop)));
+		}
+		return ranges;
+	}
+	
+	public Interest handleContent(ContentObject data, Interest interest) {
+		_responses.add(new Response(data, interest));
+		return null;
+	}
+
+	/**
+	 * Replace any outstanding interest for this range with one for its current state
+	 */
+	private void express(Range range) throws IOException {
+		if (null != range._interest)
+			_handle.cancelInterest(range._interest, this);
+		Interest interest = range._data.buildInterest();
+		interest.maxSuffixComponents(_template.maxSuffixComponents());
+		interest.minSuffixComponents(_template.minSuffixComponents());
+		interest.publisherID(_template.publisherID());
+		range._interest = interest;
+		range._expressed = System.currentTimeMillis();
+		_stats.increment(StatsEnum.SendInterest);
+		_handle.expressInterest(interest, this);
+	}
+
+	private void finish(Range range) {
+		if (range._done)
+			return;
+		range._done = true;
+		if (null != range._interest)
+			_handle.cancelInterest(range._interest, this);
+	}
+
+	/**
+	 * For testing
+	 */
+	public int getRangeCount() {
+		return _ranges.size();
+	}
+
+	// ==============================================================
+
+	private final CCNHandle _handle;
+	private final ContentName _prefix;
+	private final Interest _template;
+	private final ContentVerifier _verifier;
+	private final VersionNumber _start;
+	private final int _maxRanges;
+	private final ArrayList<Range> _ranges = new ArrayList<Range>();
+	private final LinkedBlockingQueue<Response> _responses = new LinkedBlockingQueue<Response>();
+
+	private static class Range {
+		final InterestData _data;
+		Interest _interest = null;
+		long _expressed = 0;
+		boolean _done = false;
+
+		Range(InterestData data) {
+			_data = data;
+		}
+	}
+
+	private static class Response {
+		final ContentObject _data;
+		final Interest _interest;
+
+		Response(ContentObject data, Interest interest) {
+			_data = data;
+			_interest = interest;
+		}
+	}
+
+	// ==============================================================
+	// Statistics
+
+	protected static CCNEnumStats<StatsEnum> _stats = new CCNEnumStats<StatsEnum>(StatsEnum.Discoveries);
+
+	public CCNStats getStats() {
+		return _stats;
+	}
+
+	public enum StatsEnum implements IStatsEnum {
+		// ====================================
+		// Just edit this list, dont need to change anything else
+
+		Discoveries ("count", "Searches for a latest version"),
+		NotFound ("count", "Searches which found nothing"),
+		DeadlineExpired ("count", "Searches ended by their timeout"),
+		SendInterest ("interests", "Interests sent"),
+		AttemptsPerDiscovery ("interests", "Interests sent per search"),
+		Responses ("ContentObjects", "Verified responses in range"),
+		Unverified ("ContentObjects", "Responses which did not verify"),
+		RangesExhausted ("count", "Ranges which went unanswered for the attempt timeout"),
+		DiscoveryTime ("ms", "Time to find the latest version"),
+		DiscoveryUnder10ms ("count", "Searches which found a version in under 10ms"),
+		DiscoveryUnder100ms ("count", "Searches which found a version in 10ms to 100ms"),
+		DiscoveryUnder1s ("count", "Searches which found a version in 100ms to 1s"),
+		DiscoveryOver1s ("count", "Searches which found a version in 1s or more"),
+		;
+
+		// ====================================
+		// This is the same for every user of IStatsEnum
+
+		protected final String _units;
+		protected final String _description;
+		protected final static String [] _names;
+
+		static {
+			_names = new String[StatsEnum.values().length];
+			for(StatsEnum stat : StatsEnum.values() )
+				_names[stat.ordinal()] = stat.toString();
+
+		}
+
+		StatsEnum(String units, String description) {
+			_units = units;
+			_description = description;
+		}
+
+		public String getDescription(int index) {
+			return StatsEnum.values()[index]._description;
+		}
+
+		public int getIndex(String name) {
+			StatsEnum x = StatsEnum.valueOf(name);
+			return x.ordinal();
+		}
+
+		public String getName(int index) {
+			return StatsEnum.values()[index].toString();
+		}
+
+		public String getUnits(int index) {
+			return StatsEnum.values()[index]._units;
+		}
+
+		public String [] getNames() {
+			return _names;
+		}
+	}
+}
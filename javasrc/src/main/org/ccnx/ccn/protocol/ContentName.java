@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -1231,6 +1233,30 @@ public class ContentName extends GenericXMLEncodable implements XMLEncodable, Co
 		encoder.writeEndElement();
 	}
 
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeStartElement(getElementLabel());
+		for (int i=0; i < _components.length; ++i) {
+			buffer.writeElement(CCNProtocolDTags.Component, _components[i]);
+		}
+		buffer.writeEndElement();
+	}
+	
+	@Override
+	public int encodedLength() throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		int length = BinaryXMLCodec.encodedDTagLength(getElementLabel()) + 1;
+		for (int i=0; i < _components.length; ++i) {
+			length += BinaryXMLCodec.encodedBinaryElementLength(CCNProtocolDTags.Component, _components[i].length);
+		}
+		return length;
+	}
+
 	@Override
 	public boolean validate() {
 		return (null != _components);
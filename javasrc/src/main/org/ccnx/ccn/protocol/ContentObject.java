@@ -20,6 +20,7 @@ package org.ccnx.ccn.protocol;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.DigestOutputStream;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -33,9 +34,11 @@ import java.util.logging.Level;
 import org.ccnx.ccn.ContentVerifier;
 import org.ccnx.ccn.KeyManager;
 import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
+import org.ccnx.ccn.impl.encoding.LazyBlob;
 import org.ccnx.ccn.impl.encoding.XMLCodecFactory;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
 import org.ccnx.ccn.impl.encoding.XMLEncodable;
@@ -44,6 +47,7 @@ import org.ccnx.ccn.impl.security.crypto.CCNDigestHelper;
 import org.ccnx.ccn.impl.security.crypto.CCNSignatureHelper;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.impl.support.Tracer;
 import org.ccnx.ccn.io.NullOutputStream;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
@@ -64,6 +68,12 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	protected ContentName _name;
 	protected SignedInfo _signedInfo;
 	protected byte [] _content;
+	/**
+	 * Content left unread by the decoder, read into _content the first time it's asked for.
+	 * Volatile so that a reader which sees it cleared also sees the _content written before
+	 * it was cleared; always read this before _content.
+	 */
+	protected volatile LazyBlob _lazyContent = null;
 	
 	/**
 	 * Cache of the complete ContentObject's digest. Set when first calculated.
@@ -114,6 +124,18 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		 * @see com.parc.ccn.data.security.ContentVerifier#verifyBlock(com.parc.ccn.data.ContentObject)
 		 */
 		public boolean verify(ContentObject object) {
+			long trace = Tracer.current();
+			if (0 == trace)
+				return verifyContent(object);
+			long start = System.nanoTime();
+			try {
+				return verifyContent(object);
+			} finally {
+				Tracer.span(trace, Tracer.Stage.Verify, start, (null == object) ? null : object.name());
+			}
+		}
+
+		protected boolean verifyContent(ContentObject object) {
 			if (null == object)
 				return false;
 			if (null != _requiredPublisher) {
@@ -220,6 +242,23 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		this(CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM, name, signedInfo, contentStream, length);
 	}
 	
+	/**
+	 * Minimum-copy constructor for content in a buffer, which may be direct or memory-mapped.
+	 * The remaining bytes of the buffer are copied once, into the content of this object,
+	 * and the buffer's position is advanced to its limit.
+	 * 
+	 * Set signature with setSignature or sign once it's constructed.
+	 * @param name
+	 * @param signedInfo
+	 * @param content
+	 */
+	public ContentObject(ContentName name, SignedInfo signedInfo, ByteBuffer content) {
+		_name = name;
+		_signedInfo = signedInfo;
+		_content = new byte[content.remaining()];
+		content.get(_content);
+	}
+
 	public ContentObject(ContentName name, SignedInfo signedInfo, byte [] content,
 			Signature signature) {
 		this(CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM, name, signedInfo, content, signature);
@@ -313,7 +352,7 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 
 	public ContentObject clone() {
 		// Constructor will clone the _content, signedInfo and signature are immutable types.
-		return new ContentObject(_name, _signedInfo, _content, _signature);
+		return new ContentObject(_name, _signedInfo, content(), _signature);
 	}
 
 	/**
@@ -345,14 +384,40 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	 * proposals to clone() the content on return, but many places use this
 	 * and it would be expensive.
 	 * @return
+	 * @throws LazyBlob.UnreadableBlobException if the content was left where it was stored
+	 * 	when decoding and can't be read from there
 	 */
-	public final byte [] content() { return _content; }
-	
+	public final byte [] content() {
+		if (null != _lazyContent)
+			readLazyContent();
+		return _content;
+	}
+
 	/**
 	 * Avoid problems where content().length might be expensive.
 	 * @return content length in bytes
 	 */
-	public final int contentLength() { return ((null == _content) ? 0 : _content.length); }
+	public final int contentLength() {
+		LazyBlob lazy = _lazyContent;
+		if (null != lazy)
+			return lazy.length();
+		return ((null == _content) ? 0 : _content.length);
+	}
+
+	/**
+	 * If reading fails we keep the lazy blob, so a later call can try again.
+	 * _content must be set before _lazyContent is cleared, see content().
+	 */
+	protected synchronized void readLazyContent() {
+		if (null == _lazyContent)
+			return;
+		try {
+			_content = _lazyContent.read();
+			_lazyContent = null;
+		} catch (IOException e) {
+			throw new LazyBlob.UnreadableBlobException("Cannot read content of " + _name + ": " + e.getMessage(), e);
+		}
+	}
 
 	public final Signature signature() { return _signature; }
 
@@ -372,7 +437,10 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		_signedInfo = new SignedInfo();
 		_signedInfo.decode(decoder);
 
-		_content = decoder.readBinaryElement(CCNProtocolDTags.Content);
+		_content = null;
+		_lazyContent = decoder.readLazyBinaryElement(CCNProtocolDTags.Content);
+		if (null == _lazyContent)
+			_content = decoder.readBinaryElement(CCNProtocolDTags.Content);
 
 		decoder.readEndElement();
 	}
@@ -391,11 +459,30 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		name().encode(encoder);
 		signedInfo().encode(encoder);
 
-		encoder.writeElement(CCNProtocolDTags.Content, _content);
+		encoder.writeElement(CCNProtocolDTags.Content, content());
 
 		encoder.writeEndElement();   		
 	}
 
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeStartElement(getElementLabel());
+		buffer.writeEncodable(signature());
+		buffer.writeEncodable(name());
+		buffer.writeEncodable(signedInfo());
+		LazyBlob lazy = _lazyContent;
+		if (null != lazy) {
+			// Copy it from where it's stored straight into the encoding
+			buffer.writeElement(CCNProtocolDTags.Content, lazy);
+		} else {
+			buffer.writeElement(CCNProtocolDTags.Content, _content);
+		}
+		buffer.writeEndElement();
+	}
+
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.ContentObject; }
 
@@ -413,7 +500,7 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 		result = PRIME * result + ((_name == null) ? 0 : _name.hashCode());
 		result = PRIME * result + ((_signedInfo == null) ? 0 : _signedInfo.hashCode());
 		result = PRIME * result + ((_signature == null) ? 0 : _signature.hashCode());
-		result = PRIME * result + Arrays.hashCode(_content);
+		result = PRIME * result + Arrays.hashCode(content());
 		return result;
 	}
 
@@ -441,7 +528,7 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 				return false;
 		} else if (!_signature.equals(other.signature()))
 			return false;
-		if (!Arrays.equals(_content, other._content))
+		if (!Arrays.equals(content(), other.content()))
 			return false;
 		return true;
 	}
@@ -465,12 +552,13 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	}
 
 	public void sign(Key signingKey) throws InvalidKeyException, SignatureException {
-		// Use _content to avoid case where content() might want to clone.
-		setSignature(sign(this.name(), this.signedInfo(), this._content, 0, this._content.length, signingKey));
+		byte [] content = content();
+		setSignature(sign(this.name(), this.signedInfo(), content, 0, content.length, signingKey));
 	}
 	
 	public void sign(String digestAlgorithm, Key signingKey) throws InvalidKeyException, SignatureException, NoSuchAlgorithmException {
-		setSignature(sign(this.name(), this.signedInfo(), this._content, 0, this._content.length, 
+		byte [] content = content();
+		setSignature(sign(this.name(), this.signedInfo(), content, 0, content.length,
 						digestAlgorithm, signingKey));
 	}
 
@@ -745,6 +833,14 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 			throw new ContentEncodingException("prepareContent: name, signedInfo must not be null.");
 		}
 
+		if (XMLCodecFactory.useDirectBinaryEncoding(BinaryXMLCodec.CODEC_NAME)) {
+			BinaryXMLBuffer buffer = new BinaryXMLBuffer(length + BinaryXMLBuffer.DEFAULT_SIZE);
+			buffer.writeEncodable(name);
+			buffer.writeEncodable(signedInfo);
+			buffer.writeElement(CCNProtocolDTags.Content, content, start, length);
+			return buffer.toByteArray();
+		}
+
 		// Do setup. Binary codec doesn't write a preamble or anything.
 		// If allow to pick, text encoder would sometimes write random stuff...
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -834,11 +930,12 @@ public class ContentObject extends GenericXMLEncodable implements XMLEncodable,
 	public String toString() {
 		StringBuffer s = new StringBuffer();
 		s.append(String.format("CObj: name=%s, digest=%s, SI:%s len=%d, data=", _name,
-				DataUtils.printHexBytes(digest()), _signedInfo, _content.length));
-		int len = _content.length;
+				DataUtils.printHexBytes(digest()), _signedInfo, contentLength()));
+		byte [] content = content();
+		int len = (null == content) ? 0 : content.length;
 		if (len > 16)
 			len = 16;
-		s.append(Component.printURI(_content, 0, len));
+		s.append(Component.printURI(content, 0, len));
 		return s.toString();
 	}
 }
@@ -14,13 +14,14 @@
  * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
  * Fifth Floor, Boston, MA 02110-1301 USA.
  */
-
 package org.ccnx.ccn.protocol;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -45,6 +46,11 @@ import org.ccnx.ccn.io.content.ContentEncodingException;
  * 2. An any element or a bloom filter element must not be followed by an any element or bloom filter.
  * @see Filler
  * I.E. Any elements or bloom filters must be separated by at least one name component element.
+ * 
+ * The elements are held in an immutable sorted array which is replaced whenever the filter is
+ * changed, so match() needs no locking and finds the component's place with a binary search.
+ * The filters on long running interests (versioning, hole filling in pipelined streams) get
+ * large and are matched against many candidates.
  */
 public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		Comparable<Exclude> {
@@ -70,7 +76,50 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		public abstract boolean match(byte [] component);
 	}
 
-	protected ArrayList<Element> _values = new ArrayList<Element>();
+	/**
+	 * The elements of a filter, with the components and the filler in each gap between them
+	 * pulled out for matching. Never changed once made.
+	 */
+	protected static final class Elements {
+		protected static final Elements EMPTY = new Elements(new ArrayList<Element>());
+
+		protected final Element [] _all;
+		protected final ExcludeComponent [] _components;
+		// _fillers[i] is the filler before _components[i], or null. The last one is after all the components.
+		protected final Filler [] _fillers;
+		// Only filters read from the network can be out of order; those are matched the slow way.
+		protected final boolean _sorted;
+
+		protected Elements(List<Element> elements) {
+			_all = elements.toArray(new Element[elements.size()]);
+			int count = 0;
+			for (Element ee : _all) {
+				if (ee instanceof ExcludeComponent)
+					count++;
+			}
+			_components = new ExcludeComponent[count];
+			_fillers = new Filler[count + 1];
+			boolean sorted = true;
+			int c = 0;
+			for (Element ee : _all) {
+				if (ee instanceof ExcludeComponent) {
+					_components[c] = (ExcludeComponent) ee;
+					if (c > 0 && _components[c - 1].compareTo(_components[c]) >= 0)
+						sorted = false;
+					c++;
+				} else {
+					_fillers[c] = (Filler) ee;
+				}
+			}
+			_sorted = sorted;
+		}
+
+		protected ArrayList<Element> toList() {
+			return new ArrayList<Element>(Arrays.asList(_all));
+		}
+	}
+
+	protected volatile Elements _elements = Elements.EMPTY;
 	
 	/**
 	 * @param values Must be a list of ExcludeElements - Components must be in increasing order
@@ -96,7 +145,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 				throw new InvalidParameterException("bloom filters or anys are not allowed to follow each other");
 			last = ee;
 		}			
-		_values.addAll(values);
+		_elements = new Elements(values);
 	}
 
 	/**
@@ -109,9 +158,11 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (omissions == null || omissions.length == 0)
 			throw new IllegalArgumentException("No omissions");
 		Arrays.sort(omissions, new ByteArrayCompare());
+		ArrayList<Element> values = new ArrayList<Element>(omissions.length);
 		for (byte[] omission : omissions) {
-			_values.add(new ExcludeComponent(omission));
+			values.add(new ExcludeComponent(omission));
 		}
+		_elements = new Elements(values);
 	}
 
 	public Exclude() {} // for use by decoders
@@ -124,11 +175,11 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	public static Exclude uptoFactory(byte [] component) {
 		if ( component == null)
 			return null;
+		ArrayList<Element> values = new ArrayList<Element>(2);
+		values.add(new ExcludeAny());
+		values.add(new ExcludeComponent(component));
 		Exclude ef = new Exclude();
-		synchronized (ef._values) {
-			ef._values.add(new ExcludeAny());
-			ef._values.add(new ExcludeComponent(component));
-		}
+		ef._elements = new Elements(values);
 		return ef;
 	}
 
@@ -148,92 +199,169 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return true if this component would be excluded by the exclude filter
 	 */
 	public boolean match(byte [] component) {
+		Elements elements = _elements;
+		if (!elements._sorted)
+			return matchUnsorted(elements, component);
+		ExcludeComponent [] components = elements._components;
+		int low = 0;
+		int high = components.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int res = components[mid].compareTo(component);
+			if (res < 0)
+				low = mid + 1;
+			else if (res > 0)
+				high = mid - 1;
+			else
+				return true; // we exactly matched a component in the filter
+		}
+		// low is the first component after the one we're looking for, so check the
+		// filler (if any) between it and the one before
+		Filler filler = elements._fillers[low];
+		return filler != null && filler.match(component);
+	}
+
+	/**
+	 * A run of components all excluded by the filter. Both ends are excluded too; a null end
+	 * means the range carries on to the first or last possible component.
+	 */
+	public static final class Range {
+		protected final byte [] _low;
+		protected final byte [] _high;
+
+		protected Range(byte [] low, byte [] high) {
+			_low = low;
+			_high = high;
+		}
+
+		public byte [] low() { return _low; }
+
+		public byte [] high() { return _high; }
+	}
+
+	/**
+	 * Find the range of components excluded by Any elements around a component, so that
+	 * someone walking sorted candidates can jump over the whole range at once.
+	 * @param component - A name component
+	 * @return the range, or null if the component is not inside or at the end of a range
+	 * 	excluded by an Any, or the filter is out of order. Components excluded on their own or
+	 * 	by a bloom filter must still be checked with match().
+	 */
+	public Range excludedRange(byte [] component) {
+		Elements elements = _elements;
+		if (!elements._sorted)
+			return null;
+		ExcludeComponent [] components = elements._components;
+		Filler [] fillers = elements._fillers;
+		int low = 0;
+		int high = components.length - 1;
+		int first = -1;
+		int last = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int res = components[mid].compareTo(component);
+			if (res < 0)
+				low = mid + 1;
+			else if (res > 0)
+				high = mid - 1;
+			else {
+				// an excluded component ends the anys either side of it
+				first = (fillers[mid] instanceof ExcludeAny) ? mid : mid + 1;
+				last = (fillers[mid + 1] instanceof ExcludeAny) ? mid + 1 : mid;
+				if (first > last)
+					return null;
+				break;
+			}
+		}
+		if (first < 0) {
+			if (!(fillers[low] instanceof ExcludeAny))
+				return null;
+			first = last = low;
+		}
+		// Anys can be separated by single components, which are excluded too
+		while (first > 0 && fillers[first - 1] instanceof ExcludeAny)
+			first--;
+		while (last < components.length && fillers[last + 1] instanceof ExcludeAny)
+			last++;
+		return new Range((first == 0) ? null : components[first - 1].getComponent(),
+				(last == components.length) ? null : components[last].getComponent());
+	}
+
+	protected static boolean matchUnsorted(Elements elements, byte [] component) {
 		Filler lastFiller = null;
-		synchronized (_values) {
-			for (Element ee : _values) {
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					int res = ec.compareTo(component);
-					if (res == 0) {
-						// we exactly matched a component in the filter
-						return true;
-					} else if (res > 0) {
-						// we reached a component in the filter that is lexicographically after than the one
-						// we're looking for so check if there was a filler between the last component
-						// we saw and this one.
-						return lastFiller != null && lastFiller.match(component);
-					}
-					lastFiller = null;
-				} else {
-					// The element is not a component - so track what filler it was.
-					lastFiller = (Filler) ee;
+		for (Element ee : elements._all) {
+			if (ee instanceof ExcludeComponent) {
+				ExcludeComponent ec = (ExcludeComponent) ee;
+				int res = ec.compareTo(component);
+				if (res == 0) {
+					// we exactly matched a component in the filter
+					return true;
+				} else if (res > 0) {
+					// we reached a component in the filter that is lexicographically after than the one
+					// we're looking for so check if there was a filler between the last component
+					// we saw and this one.
+					return lastFiller != null && lastFiller.match(component);
 				}
+				lastFiller = null;
+			} else {
+				// The element is not a component - so track what filler it was.
+				lastFiller = (Filler) ee;
 			}
 		}
 		return lastFiller != null && lastFiller.match(component);
 	}
 
 	/**
-	 * Return a new Exclude filter that is a copy of this one with 
-	 * the supplied omissions added.
+	 * Add the supplied omissions to this Exclude filter. Omissions already excluded by a
+	 * filler are left out; others which fall in the range of a filler get a copy of the
+	 * filler after them so that the same values stay excluded.
 	 * @param omissions name components to be excluded.
-	 * @return new Exclude filter object or null in case of error
 	 */
-	public void add(byte omissions[][] ) {
+	public synchronized void add(byte omissions[][] ) {
 		if (omissions == null || omissions.length == 0)
 			return;
 
 		Arrays.sort(omissions, new ByteArrayCompare());
 
-		/*
-		 * i is an outer loop on the omissions list
-		 * j is an inner loop on the ExcludeEntries
-		 */
-		int i = 0, j = 0;
-		byte [] omission;
-		Element ee;
+		// Merge the sorted omissions into the elements in one pass
+		Element [] current = _elements._all;
+		ArrayList<Element> values = new ArrayList<Element>(current.length + omissions.length);
 		Filler lastFiller = null;
-		synchronized (_values) {
-			for(;i<omissions.length && j<_values.size();) {
-				omission = omissions[i];
-				ee = _values.get(j);
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					int res = ec.compareTo(omission);
-					if (res > 0) {
-						// we reached a component in the filter that is lexigraphically after than the one
-						// we're looking for.
-						if (lastFiller != null && lastFiller.match(omission)) {
-							// the filler already matches the component, no need to add it!
-							i++;
-							continue;
-						}
-						// no bloom or the bloom does not match - so add the component explicitly
-						_values.add(j, new ExcludeComponent(omission));
-						j++; // skip the component we just added
-						if (lastFiller != null) {
-							// there was a non matching bloom, so copy it to ensure same values get excluded
-							// TODO: should this be a clone()?
-							_values.add(j, lastFiller);
-							j++; // skip the bloom we just added
-						}
-						i++;
-						continue;
-					} else if (res == 0) {
-						// we matched a component already in the filter, so no need to add one in, just skip it.
-						i++;
-						continue;
-					}
-					lastFiller = null;
-				} else
-					lastFiller = (Filler) ee;
-				j++;
-			}
-			// if we have values still to add, then add them to the end of the list
-			for(;i<omissions.length;i++) {
-				omission = omissions[i];
-				_values.add(new ExcludeComponent(omission));
-			}
+		int i = 0;
+		for (Element ee : current) {
+			if (ee instanceof ExcludeComponent) {
+				ExcludeComponent ec = (ExcludeComponent) ee;
+				for (; i < omissions.length; i++) {
+					int res = ec.compareTo(omissions[i]);
+					if (res < 0)
+						break;
+					// res == 0: we matched a component already in the filter, so no need to add one in.
+					if (res > 0)
+						addOmission(values, omissions, i, lastFiller);
+				}
+				lastFiller = null;
+			} else
+				lastFiller = (Filler) ee;
+			values.add(ee);
+		}
+		// the rest go after the last component
+		for (; i < omissions.length; i++)
+			addOmission(values, omissions, i, lastFiller);
+		_elements = new Elements(values);
+	}
+
+	private static void addOmission(ArrayList<Element> values, byte [][] omissions, int i, Filler lastFiller) {
+		if (i > 0 && Arrays.equals(omissions[i - 1], omissions[i]))
+			return;
+		if (lastFiller != null && lastFiller.match(omissions[i])) {
+			// the filler already matches the component, no need to add it!
+			return;
+		}
+		// no bloom or the bloom does not match - so add the component explicitly
+		values.add(new ExcludeComponent(omissions[i]));
+		if (lastFiller != null) {
+			// there was a non matching bloom, so copy it to ensure same values get excluded
+			values.add(lastFiller);
 		}
 	}
 	
@@ -243,51 +371,41 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * number components.
 	 * @param component if null then the Exclude filter is left unchanged.
 	 */
-	public void excludeUpto(byte [] component) {
+	public synchronized void excludeUpto(byte [] component) {
 		if (component == null)
 			return;
 
+		Element [] current = _elements._all;
 		Filler lastFiller = null;
-		synchronized (_values) {
-			int res = -2;
-			int removes = 0;
-			for (Element ee : _values) {
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					res = ec.compareTo(component);
-					if (res >= 0)
-						break;
-					lastFiller = null;
-				} else {
-					// The element is not a component - so track what filler it was.
-					lastFiller = (Filler) ee;
-				}
-				removes++;
-			}
-			for (int i = 0; i < removes; i++)
-				_values.remove(0);
-			if (res == 0) {
-				// we exactly matched a component already in the filter
-				// prefix it with an Any element, and we're done.
-				_values.add(0, new ExcludeAny());
+		int res = -2;
+		int removes = 0;
+		for (Element ee : current) {
+			if (ee instanceof ExcludeComponent) {
+				ExcludeComponent ec = (ExcludeComponent) ee;
+				res = ec.compareTo(component);
+				if (res >= 0)
+					break;
+				lastFiller = null;
 			} else {
-	
-				if (lastFiller == null) {
-					// there was no filler, so prefix the list with an Any and the component, and we're done
-					_values.add(0, new ExcludeAny());
-					_values.add(1, new ExcludeComponent(component));
-					return;
-				}
-				if (lastFiller instanceof ExcludeAny) {
-					_values.add(0, new ExcludeAny());
-					return;
-				}
-				_values.add(0, new ExcludeAny());
-				_values.add(1, new ExcludeComponent(component));
-				_values.add(2, lastFiller);
+				// The element is not a component - so track what filler it was.
+				lastFiller = (Filler) ee;
 			}
+			removes++;
 		}
-		return;		
+		ArrayList<Element> values = new ArrayList<Element>(current.length - removes + 3);
+		values.add(new ExcludeAny());
+		if (res != 0) {
+			// If we exactly matched a component already in the filter prefixing it with an Any
+			// element is enough. Otherwise the component ends the Any, and if it was in the
+			// range of a bloom filter the bloom has to carry on after it.
+			if (!(lastFiller instanceof ExcludeAny)) {
+				values.add(new ExcludeComponent(component));
+				if (lastFiller != null)
+					values.add(lastFiller);
+			}
+		}
+		values.addAll(Arrays.asList(current).subList(removes, current.length));
+		_elements = new Elements(values);
 	}
 
 	/**
@@ -295,45 +413,54 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return true if exclude has no elements
 	 */
 	public boolean empty() {
-		synchronized (_values) {
-			return _values.isEmpty();
-		}
+		return _elements._all.length == 0;
 	}
 
 	public void decode(XMLDecoder decoder) throws ContentDecodingException {
 		decoder.readStartElement(getElementLabel());
 		
-		synchronized (_values) {
-			boolean component;
-			boolean any = false;
-			while ((component = decoder.peekStartElement(CCNProtocolDTags.Component)) || 
-					(any = decoder.peekStartElement(CCNProtocolDTags.Any)) ||
-						decoder.peekStartElement(CCNProtocolDTags.Bloom)) {
-				@SuppressWarnings("deprecation")
-				Element ee = component?new ExcludeComponent(): any ? new ExcludeAny() : new BloomFilter();
-				ee.decode(decoder);
-				_values.add(ee);
-			}
-			decoder.readEndElement();
+		ArrayList<Element> values = _elements.toList();
+		boolean component;
+		boolean any = false;
+		while ((component = decoder.peekStartElement(CCNProtocolDTags.Component)) || 
+				(any = decoder.peekStartElement(CCNProtocolDTags.Any)) ||
+					decoder.peekStartElement(CCNProtocolDTags.Bloom)) {
+			@SuppressWarnings("deprecation")
+			Element ee = component?new ExcludeComponent(): any ? new ExcludeAny() : new BloomFilter();
+			ee.decode(decoder);
+			values.add(ee);
 		}
+		decoder.readEndElement();
+		_elements = new Elements(values);
 	}
 
 	public void encode(XMLEncoder encoder) throws ContentEncodingException {
 		if (!validate()) {
 			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
 		}
+		Element [] values = _elements._all;
 		// if everything is null, output nothing
-		if (empty())
+		if (values.length == 0)
 			return;
 		
 		encoder.writeStartElement(getElementLabel());
+		for (Element element : values)
+			element.encode(encoder);
+		encoder.writeEndElement();
+	}
 
-		synchronized (_values) {
-			for (Element element : _values)
-				element.encode(encoder);
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
 		}
-
-		encoder.writeEndElement();
+		Element [] values = _elements._all;
+		if (values.length == 0)
+			return;
+		buffer.writeStartElement(getElementLabel());
+		for (Element element : values)
+			buffer.writeEncodable(element);
+		buffer.writeEndElement();
 	}
 
 	@Override
@@ -352,9 +479,7 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (!empty()) {
 			if (o.empty())
 				return 1;
-			synchronized (_values) {
-				result = _values.size() - o._values.size();
-			}
+			result = size() - o.size();
 			// TODO: need a better definition of ordering between exclude filters
 			// it's definitely an error to report they are the same just based on length
 			// but first - is this ever used?
@@ -372,13 +497,11 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 		if (getClass() != obj.getClass())
 			return false;
 		Exclude other = (Exclude) obj;
-		synchronized (_values) {
-			return _values.equals(other._values);
-		}
+		return Arrays.equals(_elements._all, other._elements._all);
 	}
 	
 	public int hashCode() {
-		return _values.hashCode();
+		return Arrays.hashCode(_elements._all);
 	}
 
 	/**
@@ -386,35 +509,29 @@ public class Exclude extends GenericXMLEncodable implements XMLEncodable,
 	 * @return number of elements
 	 */
 	public int size() {
-		synchronized (_values) {
-			return _values.size();
-		}
+		return _elements._all.length;
 	}
 	
 	/**
 	 * DEBUGGING ONLY -- may need to be removed.
 	 */
 	public Element value(int i) {
-		synchronized(_values) {
-			return _values.get(i);
-		}
+		return _elements._all[i];
 	}
 
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		boolean first = true;
-		synchronized (_values) {
-			for (Element ee : _values) {
-				if (first)
-					first = false;
-				else
-					sb.append(",");
-				if (ee instanceof ExcludeComponent) {
-					ExcludeComponent ec = (ExcludeComponent) ee;
-					sb.append(Component.printURI(ec.body));
-				} else {
-					sb.append("B");
-				}
+		for (Element ee : _elements._all) {
+			if (first)
+				first = false;
+			else
+				sb.append(",");
+			if (ee instanceof ExcludeComponent) {
+				ExcludeComponent ec = (ExcludeComponent) ee;
+				sb.append(Component.printURI(ec.body));
+			} else {
+				sb.append("B");
 			}
 		}
 		return sb.toString();
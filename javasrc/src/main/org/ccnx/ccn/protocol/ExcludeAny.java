@@ -17,6 +17,7 @@
 
 package org.ccnx.ccn.protocol;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
 import org.ccnx.ccn.impl.encoding.XMLEncoder;
@@ -44,6 +45,12 @@ public class ExcludeAny extends Exclude.Filler implements Comparable<ExcludeAny>
 		encoder.writeStartElement(getElementLabel());
 		encoder.writeEndElement();
 	}
+
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		buffer.writeStartElement(getElementLabel());
+		buffer.writeEndElement();
+	}
 	
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.Any; }
@@ -19,6 +19,7 @@ package org.ccnx.ccn.protocol;
 
 import java.util.Arrays;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
 import org.ccnx.ccn.impl.encoding.XMLEncoder;
@@ -50,6 +51,11 @@ public class ExcludeComponent extends Exclude.Element implements Comparable<Excl
 	public void encode(XMLEncoder encoder) throws ContentEncodingException {
 		encoder.writeElement(getElementLabel(), body);
 	}
+
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		buffer.writeElement(getElementLabel(), body);
+	}
 	
 	public int compareTo(ExcludeComponent component) {
 		return DataUtils.compare(body, component.body);
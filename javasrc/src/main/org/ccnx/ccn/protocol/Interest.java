@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.TrustManager;
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -76,6 +77,7 @@ public class Interest extends GenericXMLEncodable implements XMLEncodable, Compa
 	protected byte[] _nonce;
 
 	public long userTime;
+	protected long _traceId = 0;	// Not encoded, see Tracer
 	
 	/**
 	 * TODO: DKS figure out how to handle encoding faster,
@@ -151,6 +153,13 @@ public class Interest extends GenericXMLEncodable implements XMLEncodable, Compa
 	public Integer scope() { return _scope; }
 	public void scope(int scope) { _scope = scope; }
 	
+	/**
+	 * The id of the trace timing this interest, 0 if it isn't traced. Local to this
+	 * process, never encoded and not part of equality.
+	 */
+	public long traceId() { return _traceId; }
+	public void traceId(long traceId) { _traceId = traceId; }
+	
 	/**
 	 * XXX - This isn't user settable and is only useful for ccnd internal functionality. 
 	 * Do we ever need to return it?
@@ -541,6 +550,32 @@ public class Interest extends GenericXMLEncodable implements XMLEncodable, Compa
 		
 		encoder.writeEndElement();   		
 	}
+
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeStartElement(getElementLabel());
+		buffer.writeEncodable(name());
+		if (null != minSuffixComponents())
+			buffer.writeElement(CCNProtocolDTags.MinSuffixComponents, minSuffixComponents());
+		if (null != maxSuffixComponents())
+			buffer.writeElement(CCNProtocolDTags.MaxSuffixComponents, maxSuffixComponents());
+		if (null != publisherID())
+			buffer.writeEncodable(publisherID());
+		if (null != exclude())
+			buffer.writeEncodable(exclude());
+		if (null != childSelector())
+			buffer.writeElement(CCNProtocolDTags.ChildSelector, childSelector());
+		if (DEFAULT_ANSWER_ORIGIN_KIND != answerOriginKind())
+			buffer.writeElement(CCNProtocolDTags.AnswerOriginKind, answerOriginKind());
+		if (null != scope())
+			buffer.writeElement(CCNProtocolDTags.Scope, scope());
+		if (null != nonce())
+			buffer.writeElement(CCNProtocolDTags.Nonce, nonce());
+		buffer.writeEndElement();
+	}
 	
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.Interest; }
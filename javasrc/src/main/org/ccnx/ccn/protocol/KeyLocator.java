@@ -28,6 +28,7 @@ import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.util.logging.Level;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -277,6 +278,21 @@ public class KeyLocator extends GenericXMLEncodable implements XMLEncodable, Ser
 		}
 		encoder.writeEndElement();   		
 	}
+
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (type() != KeyLocatorType.NAME) {
+			// Keys and certificates are rarely sent, and need their own exception handling
+			super.encodeBinary(buffer);
+			return;
+		}
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeStartElement(getElementLabel());
+		buffer.writeEncodable(name());
+		buffer.writeEndElement();
+	}
 	
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.KeyLocator; }
@@ -19,6 +19,7 @@ package org.ccnx.ccn.protocol;
 
 import java.io.Serializable;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -123,6 +124,18 @@ public class KeyName extends GenericXMLEncodable implements XMLEncodable, Serial
 
 		encoder.writeEndElement();   		
 	}
+
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeStartElement(getElementLabel());
+		buffer.writeEncodable(name());
+		if (null != publisher())
+			buffer.writeEncodable(publisher());
+		buffer.writeEndElement();
+	}
 	
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.KeyName; }
@@ -26,6 +26,7 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.logging.Level;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -188,6 +189,14 @@ public class PublisherPublicKeyDigest extends GenericXMLEncodable
 		}
 		encoder.writeElement(getElementLabel(), digest());
 	}
+
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeElement(getElementLabel(), digest());
+	}
 	
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.PublisherPublicKeyDigest; }
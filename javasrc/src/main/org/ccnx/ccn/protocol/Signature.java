@@ -21,6 +21,7 @@ import java.security.cert.CertificateEncodingException;
 import java.util.Arrays;
 
 import org.bouncycastle.asn1.x509.DigestInfo;
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -155,6 +156,21 @@ public class Signature extends GenericXMLEncodable implements XMLEncodable,
 		encoder.writeEndElement();   		
 	}
 
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeStartElement(getElementLabel());
+		if ((null != digestAlgorithm()) && (!digestAlgorithm().equals(CCNDigestHelper.DEFAULT_DIGEST_ALGORITHM))) {
+			buffer.writeElement(CCNProtocolDTags.DigestAlgorithm, OIDLookup.getDigestOID(digestAlgorithm()));
+		}
+		if (null != witness())
+			buffer.writeElement(CCNProtocolDTags.Witness, _witness);
+		buffer.writeElement(CCNProtocolDTags.SignatureBits, _signature);
+		buffer.writeEndElement();
+	}
+
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.Signature; }
 
@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map.Entry;
 
+import org.ccnx.ccn.impl.encoding.BinaryXMLBuffer;
 import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
 import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
 import org.ccnx.ccn.impl.encoding.XMLDecoder;
@@ -525,6 +526,29 @@ public class SignedInfo extends GenericXMLEncodable implements XMLEncodable {
 
 		encoder.writeEndElement();   		
 	}
+
+	@Override
+	public void encodeBinary(BinaryXMLBuffer buffer) throws ContentEncodingException {
+		if (!validate()) {
+			throw new ContentEncodingException("Cannot encode " + this.getClass().getName() + ": field values missing.");
+		}
+		buffer.writeStartElement(getElementLabel());
+		if (!emptyPublisher())
+			buffer.writeEncodable(getPublisherKeyID());
+		if (!emptyTimestamp())
+			buffer.writeElement(CCNProtocolDTags.Timestamp, getTimestamp().toBinaryTime());
+		if (!defaultContentType())
+			buffer.writeElement(CCNProtocolDTags.Type, getTypeValue());
+		if (!emptyFreshnessSeconds())
+			buffer.writeElement(CCNProtocolDTags.FreshnessSeconds, getFreshnessSeconds());
+		if (!emptyFinalBlockID())
+			buffer.writeElement(CCNProtocolDTags.FinalBlockID, getFinalBlockID());
+		if (!emptyKeyLocator())
+			buffer.writeEncodable(getKeyLocator());
+		if (!emptyExtOpt())
+			buffer.writeElement(CCNProtocolDTags.ExtOpt, getExtOpt());
+		buffer.writeEndElement();
+	}
 	
 	@Override
 	public long getElementLabel() { return CCNProtocolDTags.SignedInfo; }
@@ -77,7 +77,10 @@ public abstract class CommonOutput {
 		}
 		if (CommonParameters.timeout != null)
 			ostream.setTimeout(CommonParameters.timeout);
-		do_write(ostream, is);
+		if (CommonParameters.mmap && is instanceof FileInputStream)
+			do_write_mapped(ostream, (FileInputStream)is);
+		else
+			do_write(ostream, is);
 
 		return ostream.getVersion();
 	}
@@ -103,5 +106,18 @@ public abstract class CommonOutput {
 		Log.fine("finished write: {0}", System.currentTimeMillis() - time);
 	}
 
+	private void do_write_mapped(CCNOutputStream ostream, FileInputStream is) throws IOException {
+		long time = System.currentTimeMillis();
+		try {
+			long length = ostream.writeMapped(is.getChannel());
+			if (Log.isLoggable(Level.FINER))
+				Log.finer("do_write_mapped: wrote " + length + " bytes.");
+		} finally {
+			is.close();
+		}
+		ostream.close();
+		Log.fine("finished write: {0}", System.currentTimeMillis() - time);
+	}
+
 	protected abstract void usage(String extraUsage);
 }
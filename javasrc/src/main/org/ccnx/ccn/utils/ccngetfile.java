@@ -25,6 +25,7 @@ import java.util.logging.Level;
 import org.ccnx.ccn.CCNHandle;
 import org.ccnx.ccn.config.ConfigurationException;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.CCNFileDownloader;
 import org.ccnx.ccn.io.CCNFileInputStream;
 import org.ccnx.ccn.io.CCNInputStream;
 import org.ccnx.ccn.protocol.ContentName;
@@ -37,6 +38,7 @@ import org.ccnx.ccn.protocol.MalformedContentNameStringException;
 public class ccngetfile implements Usage {
 	static Usage u = new ccngetfile();
 	static String[] okArgs = {"-unversioned", "-timeout", "-log", "-v", "-as", "-ac"};
+	static int pipelines = 0;
 
 	/**
 	 * @param args
@@ -45,6 +47,18 @@ public class ccngetfile implements Usage {
 		Log.setDefaultLevel(Level.WARNING);
 
 		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-parallel")) {
+				if (args.length < (i + 2)) {
+					u.usage(CommonArguments.getExtraUsage());
+				}
+				try {
+					pipelines = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException nfe) {
+					u.usage(CommonArguments.getExtraUsage());
+				}
+				CommonParameters.startArg = i;
+				continue;
+			}
 			if (!CommonArguments.parseArguments(args, i, u, okArgs)) {
 				if (i >= args.length - 3) {
 					CommonParameters.startArg = i;
@@ -70,12 +84,27 @@ public class ccngetfile implements Usage {
 			CCNHandle handle = CCNHandle.open();
 
 			File theFile = new File(args[CommonParameters.startArg + 1]);
+			long starttime = System.currentTimeMillis();
+			if (pipelines > 0 && !CommonParameters.unversioned) {
+				// Write the segments straight into the file, resuming an interrupted download
+				CCNFileDownloader downloader = new CCNFileDownloader(argName, null, pipelines, handle);
+				if (CommonParameters.timeout != null) {
+					downloader.setTimeout(CommonParameters.timeout);
+				}
+				long length = downloader.download(theFile);
+				long elapsed = System.currentTimeMillis() - starttime;
+				if (CommonParameters.verbose)
+					System.out.println("ccngetfile took: " + elapsed + "ms, fetched " + downloader.getBytesFetched()
+							+ " bytes at " + rate(downloader.getBytesFetched(), elapsed) + " MB/s");
+				System.out.println("Retrieved content " + args[CommonParameters.startArg + 1] + " got " + length + " bytes.");
+				System.exit(0);
+			}
+
 			if (theFile.exists()) {
 				System.out.println("Overwriting file: " + args[CommonParameters.startArg + 1]);
 			}
 			FileOutputStream output = new FileOutputStream(theFile);
 
-			long starttime = System.currentTimeMillis();
 			CCNInputStream input;
 			if (CommonParameters.unversioned)
 				input = new CCNInputStream(argName, handle);
@@ -95,8 +124,10 @@ public class ccngetfile implements Usage {
 				output.write(buffer, 0, readcount);
 				output.flush();
 			}
-			if (CommonParameters.verbose)
-				System.out.println("ccngetfile took: "+(System.currentTimeMillis() - starttime)+"ms");
+			if (CommonParameters.verbose) {
+				long elapsed = System.currentTimeMillis() - starttime;
+				System.out.println("ccngetfile took: " + elapsed + "ms, " + rate(readtotal, elapsed) + " MB/s");
+			}
 			System.out.println("Retrieved content " + args[CommonParameters.startArg + 1] + " got " + readtotal + " bytes.");
 			System.exit(0);
 
@@ -113,8 +144,14 @@ public class ccngetfile implements Usage {
 		System.exit(1);
 	}
 
+	protected static String rate(long bytes, long millis) {
+		return String.format("%.2f", (bytes / (1024.0 * 1024.0)) / (Math.max(1, millis) / 1000.0));
+	}
+
 	public void usage(String extraUsage) {
-		System.out.println("usage: ccngetfile " + extraUsage + "[-unversioned] [-timeout millis] [-as pathToKeystore] [-ac (access control)] <ccnname> <filename>");
+		System.out.println("usage: ccngetfile " + extraUsage + "[-unversioned] [-timeout millis] [-parallel pipelines] [-as pathToKeystore] [-ac (access control)] <ccnname> <filename>");
+		System.out.println("  -parallel fetches ranges of segments over several pipelines straight into the file,");
+		System.out.println("            resuming an earlier interrupted download; it can't read encrypted content");
 		System.exit(1);
 	}
 
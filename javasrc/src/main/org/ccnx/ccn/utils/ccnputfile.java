@@ -55,6 +55,8 @@ import org.ccnx.ccn.protocol.MalformedContentNameStringException;
 				CommonParameters.local = false;
 			} else if (args[i].equals(("-raw"))) {
 				CommonParameters.rawMode = true;
+			} else if (args[i].equals(("-mmap"))) {
+				CommonParameters.mmap = true;
 			} else
 				usage(CommonArguments.getExtraUsage());
 		}
@@ -115,7 +117,8 @@ import org.ccnx.ccn.protocol.MalformedContentNameStringException;
 
 	@Override
 	public void usage(String extraUsage) {
-		System.out.println("usage: ccnputfile " + extraUsage + "[-v (verbose)] [-raw] [-unversioned] [-local | -allownonlocal] [-timeout millis] [-log level] [-as pathToKeystore] [-ac (access control)] <ccnname> (<filename>|<url>)*");
+		System.out.println("usage: ccnputfile " + extraUsage + "[-v (verbose)] [-raw] [-mmap] [-unversioned] [-local | -allownonlocal] [-timeout millis] [-log level] [-as pathToKeystore] [-ac (access control)] <ccnname> (<filename>|<url>)*");
+		System.out.println("  -mmap publishes local files by memory-mapping them rather than reading them through a stream");
 		System.exit(1);
 	}
 
@@ -21,6 +21,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
 import java.util.logging.Level;
 
 import org.ccnx.ccn.CCNHandle;
@@ -31,7 +33,7 @@ import org.ccnx.ccn.profiles.repo.RepositoryBulkImport;
 
 /**
  * A command-line utility for bulk importing a file into the repo.  It copies the file, so the original
- * file is not changed.
+ * file is not changed, unless asked to move it into the repo instead.
  * Note class name needs to match command name to work with ccn_run
  */
 public class ccnrepoimport implements Usage {
@@ -41,19 +43,30 @@ public class ccnrepoimport implements Usage {
 	public static String importFileName = "myImport";
 	static String[] okArgs = {"-unversioned", "-timeout", "-log", "-v", "-as", "-ac"};
 
+	/**
+	 * How often to report progress with -v, in ms
+	 */
+	public static final long PROGRESS_INTERVAL = 5000;
+
+	public static boolean move = false;
+
 	/**
 	 * @param args
 	 */
 	public void doimport(String[] args) {
 		Log.setDefaultLevel(Level.WARNING);
+		CommonParameters.timeout = timeout.longValue();
 
 		for (int i = 0; i < args.length; i++) {
 			if (!CommonArguments.parseArguments(args, i, ccnrepoimport, okArgs)) {
-				if (i >= args.length - 2) {
+				if (args[i].equals("-move") && i < args.length - 2) {
+					move = true;
+					CommonParameters.startArg = i;
+				} else if (i >= args.length - 2) {
 					CommonParameters.startArg = i;
 					break;
-				}
-				usage(CommonArguments.getExtraUsage());
+				} else
+					usage(CommonArguments.getExtraUsage());
 			}
 			i = CommonParameters.startArg;
 		}
@@ -90,23 +103,31 @@ public class ccnrepoimport implements Usage {
 					break;
 				}
 			}
-			FileInputStream fis = new FileInputStream(theFile);
-			FileOutputStream fos = new FileOutputStream(importFile);
-			byte[] buf = new byte[8192];
-			while (fis.available() > 0) {
-				int len = fis.available() > buf.length ? buf.length : fis.available();
-				fis.read(buf, 0, len);
-				fos.write(buf, 0, len);
+			// The repo takes the file over by renaming it, so if we can move it into the
+			// import directory it is never copied at all
+			boolean moved = move && theFile.renameTo(importFile);
+			if (!moved) {
+				if (move && CommonParameters.verbose)
+					System.out.println("Cannot move " + theFile + " into " + repoImportDir + ", copying it");
+				copy(theFile, importFile);
 			}
-			fis.close();
-			fos.close();
 
 			CCNHandle handle = CCNHandle.open();
 
 			long starttime = System.currentTimeMillis();
 
-			boolean result = RepositoryBulkImport.bulkImport(handle, importName, timeout);
+			Thread reporter = null;
+			if (CommonParameters.verbose) {
+				reporter = new ProgressReporter(new File(new File(new File(repoDir, LogStructRepoStoreProfile.META_DIR),
+						LogStructRepoStoreProfile.IMPORT_PROGRESS_DIR), importName));
+				reporter.start();
+			}
+			boolean result = RepositoryBulkImport.bulkImport(handle, importName, CommonParameters.timeout);
+			if (null != reporter)
+				reporter.interrupt();
 			System.out.println("Bulk import of " + theFile + (result ? " succeeded" : " failed"));
+			if (!result && moved && importFile.exists() && importFile.renameTo(theFile))
+				System.out.println("Moved " + theFile + " back");
 			System.out.println("ccnrepoimport took: "+(System.currentTimeMillis() - starttime)+" ms");
 			System.exit(0);
 
@@ -120,8 +141,70 @@ public class ccnrepoimport implements Usage {
 		System.exit(1);
 	}
 
+	protected static void copy(File from, File to) throws IOException {
+		FileInputStream fis = new FileInputStream(from);
+		try {
+			FileOutputStream fos = new FileOutputStream(to);
+			try {
+				FileChannel in = fis.getChannel();
+				FileChannel out = fos.getChannel();
+				long length = in.size();
+				long position = 0;
+				while (position < length)
+					position += in.transferTo(position, length - position, out);
+			} finally {
+				fos.close();
+			}
+		} finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Reports how much of the file the repo has indexed, from the progress it keeps while importing
+	 */
+	protected static class ProgressReporter extends Thread {
+		protected final File _progressFile;
+
+		protected ProgressReporter(File progressFile) {
+			super("ccnrepoimport progress");
+			setDaemon(true);
+			_progressFile = progressFile;
+		}
+
+		@Override
+		public void run() {
+			String last = null;
+			try {
+				while (true) {
+					Thread.sleep(PROGRESS_INTERVAL);
+					Properties progress = new Properties();
+					try {
+						FileInputStream fis = new FileInputStream(_progressFile);
+						try {
+							progress.load(fis);
+						} finally {
+							fis.close();
+						}
+						long length = Long.parseLong(progress.getProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_LENGTH));
+						long indexed = Long.parseLong(progress.getProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_INDEXED));
+						String report = String.format("Indexed %d of %d bytes (%d%%)", indexed, length,
+								(0 == length) ? 100 : (100 * indexed) / length);
+						if (!report.equals(last))
+							System.out.println(report);
+						last = report;
+					} catch (IOException e) {
+						// Not started yet, or finished
+					} catch (NumberFormatException e) {
+					}
+				}
+			} catch (InterruptedException e) {}
+		}
+	}
+
 	public void usage(String extraUsage) {
-		System.out.println("usage: ccnrepoimport " + extraUsage + "[-timeout millis] [-log level] <repodir> <filename>");
+		System.out.println("usage: ccnrepoimport " + extraUsage + "[-v] [-move] [-timeout millis] [-log level] <repodir> <filename>");
+		System.out.println("  -move moves the file into the repo rather than copying it, if it is on the same file system");
 		System.exit(1);
 	}
 
@@ -0,0 +1,193 @@
+/*
+ * Part of the CCNx Java Library.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version 2.1
+ * as published by the Free Software Foundation.
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. You should have received
+ * a copy of the GNU Lesser General Public License along with this library;
+ * if not, write to the Free Software Foundation, Inc., 51 Franklin Street,
+ * Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package org.ccnx.ccn.utils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.ccnx.ccn.impl.CCNStats.Histogram;
+import org.ccnx.ccn.impl.support.Tracer.Span;
+import org.ccnx.ccn.impl.support.Tracer.Stage;
+
+/**
+ * Summarises the spans written by Tracer, to show where the time goes when fetching content.
+ * For each stage it prints how often it happened and how long it took, and then it lists the
+ * slowest traces with the time spent in each stage.
+ *
+ * Traces are written by running an application with -Dorg.ccnx.ccn.TraceFile=<file> or with
+ * CCN_TRACE_FILE set.
+ */
+public class ccntracesummary {
+
+	public static final int DEFAULT_SLOWEST = 10;
+
+	/**
+	 * The spans of one trace
+	 */
+	protected static class Trace {
+		final long _id;
+		String _name = null;
+		long _start = Long.MAX_VALUE;
+		long _end = Long.MIN_VALUE;
+		final long [] _stageTimes = new long[Stage.values().length];
+
+		Trace(long id) {
+			_id = id;
+		}
+
+		void add(Span span) {
+			if (null == _name || span._stage == Stage.Get)
+				_name = span._name;
+			_start = Math.min(_start, span._start);
+			_end = Math.max(_end, span._start + span._duration);
+			_stageTimes[span._stage.ordinal()] += span._duration;
+		}
+
+		long elapsed() {
+			return _end - _start;
+		}
+	}
+
+	protected final Histogram [] _stages = new Histogram[Stage.values().length];
+	protected final HashMap<Long, Trace> _traces = new HashMap<Long, Trace>();
+	protected int _badLines = 0;
+
+	public ccntracesummary() {
+		for (int i = 0; i < _stages.length; i++)
+			_stages[i] = new Histogram();
+	}
+
+	public void add(Span span) {
+		_stages[span._stage.ordinal()].record(span._duration);
+		Trace trace = _traces.get(span._trace);
+		if (null == trace) {
+			trace = new Trace(span._trace);
+			_traces.put(span._trace, trace);
+		}
+		trace.add(span);
+	}
+
+	public void read(String fileName) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			while (null != (line = reader.readLine())) {
+				if (line.length() == 0)
+					continue;
+				try {
+					add(Span.parse(line));
+				} catch (IllegalArgumentException e) {
+					_badLines++;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	protected static String micros(long nanos) {
+		return String.format("%.1f", nanos / 1000.0);
+	}
+
+	public void print(PrintStream out, int slowest) {
+		out.println(String.format("%d traces", _traces.size()));
+		if (_badLines > 0)
+			out.println(String.format("%d lines were not trace spans", _badLines));
+		out.println();
+		out.println(String.format("%-13s %9s %12s %12s %12s %12s %12s",
+				"Stage", "Count", "Avg (us)", "p50 (us)", "p99 (us)", "p999 (us)", "Max (us)"));
+		for (Stage stage : Stage.values()) {
+			Histogram histogram = _stages[stage.ordinal()];
+			long count = histogram.getCount();
+			if (count == 0)
+				continue;
+			long total = 0;
+			for (Trace trace : _traces.values())
+				total += trace._stageTimes[stage.ordinal()];
+			out.println(String.format("%-13s %9d %12s %12s %12s %12s %12s", stage, count,
+					micros(total / count), micros(histogram.getValueAtPercentile(50.0)),
+					micros(histogram.getValueAtPercentile(99.0)), micros(histogram.getValueAtPercentile(99.9)),
+					micros(histogram.getMax())));
+		}
+
+		if (slowest <= 0 || _traces.isEmpty())
+			return;
+		List<Trace> traces = new ArrayList<Trace>(_traces.values());
+		Collections.sort(traces, new Comparator<Trace>() {
+			public int compare(Trace t1, Trace t2) {
+				return t1.elapsed() < t2.elapsed() ? 1 : (t1.elapsed() > t2.elapsed() ? -1 : 0);
+			}
+		});
+		out.println();
+		out.println("Slowest traces, time in each stage (us):");
+		for (Trace trace : traces.subList(0, Math.min(slowest, traces.size()))) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("%8d %12s ", trace._id, micros(trace.elapsed())));
+			for (Stage stage : Stage.values()) {
+				long time = trace._stageTimes[stage.ordinal()];
+				if (time > 0)
+					sb.append(' ').append(stage).append('=').append(micros(time));
+			}
+			sb.append("  ").append(trace._name);
+			out.println(sb.toString());
+		}
+	}
+
+	public static void usage(String extraUsage) {
+		System.err.println("usage: ccntracesummary " + extraUsage + "[-n <slowest traces to list>] <trace file> [<trace file> ...]");
+		System.exit(1);
+	}
+
+	public static void main(String[] args) {
+		String extraUsage = "";
+		int offset = 0;
+		if (args.length > 0 && args[0].startsWith("[")) {
+			extraUsage = args[0];
+			offset++;
+		}
+		int slowest = DEFAULT_SLOWEST;
+		if (args.length > offset + 1 && args[offset].equals("-n")) {
+			try {
+				slowest = Integer.parseInt(args[offset + 1]);
+			} catch (NumberFormatException e) {
+				usage(extraUsage);
+			}
+			offset += 2;
+		}
+		if (args.length <= offset || args[offset].equals("-h"))
+			usage(extraUsage);
+
+		ccntracesummary summary = new ccntracesummary();
+		for (int i = offset; i < args.length; i++) {
+			try {
+				summary.read(args[i]);
+			} catch (IOException e) {
+				System.err.println("Cannot read " + args[i] + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		summary.print(System.out, slowest);
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times content deliveries and interest cancellations made at the same
+ * time by many streams sharing one network manager, as pipelined input streams do.
+ *
+ * Note - this test requires ccnd to be running, although nothing is sent to it
+ */
+public class DeliveryContentionBenchmarkTest {
+
+	public static final int STREAMS = 64;
+	public static final int NAMES = 16;
+	public static final int NUM_ITER = 5000;
+
+	static class CountingHandler implements CCNContentHandler {
+		long _count = 0;
+
+		public Interest handleContent(ContentObject data, Interest interest) {
+			_count++;
+			return null;
+		}
+	}
+
+	@Test
+	public void testDeliverAndCancel() throws Exception {
+		final CCNNetworkManager manager = new CCNNetworkManager(null);
+		try {
+			PublisherPublicKeyDigest publisher = new PublisherPublicKeyDigest(new byte[32]);
+			SignedInfo signedInfo = new SignedInfo(publisher, CCNTime.now(), SignedInfo.ContentType.DATA, 
+					new KeyLocator(new ContentName("test", "key")));
+			Signature signature = new Signature(new byte[128]);
+			final AtomicLong operations = new AtomicLong();
+			final CountDownLatch start = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(STREAMS);
+			final CountingHandler [] handlers = new CountingHandler[STREAMS];
+			for (int s = 0; s < STREAMS; s++) {
+				final ContentObject [] objects = new ContentObject[NAMES];
+				final Interest [] interests = new Interest[NAMES];
+				for (int i = 0; i < NAMES; i++) {
+					ContentName name = new ContentName("test", "contention", Integer.toString(s), Integer.toString(i));
+					objects[i] = new ContentObject(name, signedInfo, new byte[10], signature);
+					interests[i] = new Interest(name);
+				}
+				final CountingHandler handler = new CountingHandler();
+				handlers[s] = handler;
+				new Thread("stream " + s) {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							for (int iter = 0; iter < NUM_ITER; iter++) {
+								// Express two, get data for one and cancel the other
+								int i = iter % NAMES;
+								Interest cancelled = interests[(i + 1) % NAMES];
+								manager._myInterests.add(interests[i], manager.new InterestRegistration(interests[i], handler));
+								manager._myInterests.add(cancelled, manager.new InterestRegistration(cancelled, handler));
+								manager.deliverContent(objects[i]);
+								manager.cancelInterest(cancelled, handler);
+							}
+							operations.addAndGet(2 * NUM_ITER);
+						} catch (InterruptedException e) {
+						} finally {
+							done.countDown();
+						}
+					}
+				}.start();
+			}
+			long startTime = System.nanoTime();
+			start.countDown();
+			done.await();
+			long time = System.nanoTime() - startTime;
+			long delivered = 0;
+			for (CountingHandler handler : handlers)
+				delivered += handler._count;
+			Assert.assertEquals((long)STREAMS * NUM_ITER, delivered);
+			Assert.assertEquals(0, manager._myInterests.size());
+			System.out.println(String.format("%d streams: %d deliveries and cancellations in %d ms, %d ns each", 
+					STREAMS, operations.get(), time / 1000000, time / operations.get()));
+		} finally {
+			manager.shutdown();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.NullOutputStream;
+import org.ccnx.ccn.protocol.ContentName;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times the cost to the calling thread of logging a message at each level,
+ * with the message turned off, written directly and queued for the background writer. The
+ * messages are formatted and written to a null stream.
+ */
+public class LogBenchmarkTest {
+
+	public static final int WARMUP = 20000;
+	public static final int NUM_ITER = 200000;
+
+	public static final Level [] LEVELS = new Level[]{Level.FINEST, Level.FINE, Level.INFO, Level.WARNING};
+
+	protected long time(Level level, int count, ContentName name) {
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++)
+			Log.log(Log.FAC_PIPELINE, level, "PIPELINE: segment {0} of {1} arrived after {2} ms", i, name, 12);
+		return System.nanoTime() - start;
+	}
+
+	@Test
+	public void testLogOverhead() throws Exception {
+		Logger logger = Logger.getLogger(Log.getApplicationClass());
+		StreamHandler handler = new StreamHandler(new NullOutputStream(), new SimpleFormatter());
+		handler.setLevel(Level.ALL);
+		boolean useParent = logger.getUseParentHandlers();
+		Level [] levels = Log.getLevels();
+		boolean wasAsync = Log.isAsync();
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+		ContentName name = new ContentName("test", "benchmark", "log");
+		try {
+			// Only INFO and above are logged
+			Log.setLevel(Log.FAC_PIPELINE, Level.INFO);
+			for (boolean async : new boolean[]{false, true}) {
+				Log.setAsync(async);
+				System.out.println("==== " + (async ? "Asynchronous" : "Synchronous") + " logging, FAC_PIPELINE at INFO");
+				for (Level level : LEVELS) {
+					time(level, WARMUP, name);
+					Log.flush();
+					long start = System.nanoTime();
+					long dur = time(level, NUM_ITER, name);
+					Log.flush();
+					long written = System.nanoTime() - start;
+					System.out.println("Avg. to log at " + level + " = " + (dur / NUM_ITER) + " ns per call, "
+							+ (written / NUM_ITER) + " ns per message until written");
+				}
+			}
+		} finally {
+			Log.setAsync(wasAsync);
+			Log.setLevels(levels);
+			logger.removeHandler(handler);
+			logger.setUseParentHandlers(useParent);
+		}
+	}
+}
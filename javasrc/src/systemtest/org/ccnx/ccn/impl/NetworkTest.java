@@ -20,6 +20,7 @@ package org.ccnx.ccn.impl;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -29,9 +30,14 @@ import org.ccnx.ccn.config.SystemConfiguration;
 import org.ccnx.ccn.impl.CCNNetworkManager.NetworkProtocol;
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.CCNWriter;
+import org.ccnx.ccn.protocol.CCNTime;
 import org.ccnx.ccn.protocol.ContentName;
 import org.ccnx.ccn.protocol.ContentObject;
 import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
 import org.ccnx.ccn.CCNTestBase;
 import org.ccnx.ccn.CCNTestHelper;
 import org.junit.AfterClass;
@@ -173,6 +179,44 @@ public class NetworkTest extends CCNTestBase {
 		Log.info(Log.FAC_TEST, "Completed testRegisteredPrefix");
 	}
 
+	@Test
+	public void testRegisterFilters() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testRegisterFilters");
+
+		TestInterestHandler tfl = new TestInterestHandler();
+		TestContentHandler tl = new TestContentHandler();
+
+		// Enough new prefixes that they don't all fit in one window, plus a few
+		// which are covered by others in the batch
+		ContentName batchPrefix = new ContentName(testPrefix, "filters");
+		ArrayList<ContentName> filters = new ArrayList<ContentName>();
+		for (int i = 0; i < 150; i++)
+			filters.add(new ContentName(batchPrefix, Integer.toString(i)));
+		for (int i = 0; i < 10; i++)
+			filters.add(new ContentName(batchPrefix, Integer.toString(i), "child"));
+		putHandle.registerFilters(filters, tfl);
+
+		ArrayList<ContentName> prefixes = putHandle.getNetworkManager().getRegisteredPrefixes();
+		for (int i = 0; i < 150; i++)
+			Assert.assertTrue(prefixes.contains(filters.get(i)));
+		for (int i = 150; i < filters.size(); i++)
+			Assert.assertFalse(prefixes.contains(filters.get(i)));
+
+		Interest interest = new Interest(new ContentName(filters.get(155), "data"));
+		gotInterest = false;
+		filterSema.drainPermits();
+		getHandle.expressInterest(interest, tl);
+		Assert.assertTrue("Couldn't acquire semaphore", filterSema.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+		getHandle.checkError(TEST_TIMEOUT);
+		Assert.assertTrue(gotInterest);
+		getHandle.cancelInterest(interest, tl);
+
+		for (ContentName filter : filters)
+			putHandle.unregisterFilter(filter, tfl);
+
+		Log.info(Log.FAC_TEST, "Completed testRegisterFilters");
+	}
+
 	@Test
 	public void testNetworkManager() throws Exception {
 		Log.info(Log.FAC_TEST, "Starting testNetworkManager");
@@ -195,6 +239,31 @@ public class NetworkTest extends CCNTestBase {
 		Log.info(Log.FAC_TEST, "Completed testNetworkManager");
 	}
 
+	@Test
+	public void testExpressInterests() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testExpressInterests");
+
+		// Enough interests that they don't all fit in one write
+		CCNWriter writer = new CCNWriter(testPrefix, putHandle);
+		ArrayList<Interest> interests = new ArrayList<Interest>();
+		for (int i = 0; i < 200; i++)
+			interests.add(new Interest(new ContentName(testPrefix, "batch", Integer.toString(i))));
+		TestContentHandler tl = new TestContentHandler();
+		sema.drainPermits();
+		getHandle.expressInterests(interests, tl);
+		for (int i = 0; i < 100; i++)
+			writer.put(interests.get(i).name(), "batch");
+		Assert.assertTrue("Couldn't acquire semaphore", sema.tryAcquire(100, WAIT_MILLIS, TimeUnit.MILLISECONDS));
+		getHandle.checkError(0);
+		getHandle.cancelInterests(interests.subList(100, 200), tl);
+		for (int i = 100; i < 200; i++)
+			writer.put(interests.get(i).name(), "batch");
+		Assert.assertFalse(sema.tryAcquire(CANCEL_TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+		writer.close();
+
+		Log.info(Log.FAC_TEST, "Completed testExpressInterests");
+	}
+
 	@Test
 	public void testNetworkManagerFixedPrefix() throws Exception {
 		Log.info(Log.FAC_TEST, "Starting testNetworkManagerFixedPrefix");
@@ -330,6 +399,70 @@ public class NetworkTest extends CCNTestBase {
 		Assert.assertFalse("Interest was totally cancelled", gotData);
 	}
 
+	/**
+	 * Test that cancelInterest doesn't wait for content being delivered to the handler on
+	 * another thread, that waitForDeliveries does, and that the interest the handler returns
+	 * isn't expressed.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWaitForDeliveries() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testWaitForDeliveries");
+
+		final CCNNetworkManager manager = new CCNNetworkManager(null);
+		try {
+			ContentName name = new ContentName(testPrefix, "cancelWait");
+			SignedInfo signedInfo = new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), CCNTime.now(),
+					SignedInfo.ContentType.DATA, new KeyLocator(new ContentName("test", "key")));
+			final ContentObject co = new ContentObject(name, signedInfo, new byte[10], new Signature(new byte[128]));
+			final Interest interest = new Interest(name);
+			final CountDownLatch inHandler = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch handled = new CountDownLatch(1);
+			final CCNContentHandler handler = new CCNContentHandler() {
+				public Interest handleContent(ContentObject data, Interest i) {
+					inHandler.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						return null;
+					}
+					handled.countDown();
+					return i;
+				}
+			};
+			manager._myInterests.add(interest, manager.new InterestRegistration(interest, handler));
+			new Thread() {
+				@Override
+				public void run() {
+					manager.deliverContent(co);
+				}
+			}.start();
+			Assert.assertTrue(inHandler.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+			manager.cancelInterest(interest, handler);
+			Thread waiter = new Thread() {
+				@Override
+				public void run() {
+					manager.waitForDeliveries(handler);
+				}
+			};
+			waiter.start();
+			waiter.join(CANCEL_TEST_TIMEOUT);
+			Assert.assertTrue("Wait returned during delivery", waiter.isAlive());
+			release.countDown();
+			waiter.join(TEST_TIMEOUT);
+			Assert.assertFalse("Wait didn't return", waiter.isAlive());
+			Assert.assertEquals(0, handled.getCount());
+			Assert.assertEquals(0, manager._myInterests.size());
+		} finally {
+			manager.shutdown();
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testWaitForDeliveries");
+	}
+
 	class TestInterestHandler implements CCNInterestHandler {
 
 		public boolean handleInterest(Interest interest) {
@@ -0,0 +1,119 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.QueuedContentHandler.HandlerStatsEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times 1000 concurrent "streams", each with its own QueuedContentHandler,
+ * fed by a few threads standing in for network managers, run on the shared cached pool and on
+ * a small fixed pool. It reports throughput, the number of threads the handlers ran on and the delay
+ * between a handler being scheduled and starting to run.
+ */
+public class QueuedContentHandlerBenchmarkTest {
+
+	public static final int STREAMS = 1000;
+	public static final int ITEMS = 200;
+	public static final int PRODUCERS = 4;
+	public static final int WORK = 2000;
+
+	public static volatile long sink;
+
+	protected static class StreamHandler extends QueuedContentHandler<Integer> {
+		protected final CountDownLatch _done;
+		protected final ConcurrentHashMap<Thread, Boolean> _threads;
+
+		public StreamHandler(Executor executor, CountDownLatch done, ConcurrentHashMap<Thread, Boolean> threads) {
+			super(executor);
+			_done = done;
+			_threads = threads;
+		}
+
+		@Override
+		protected void process(Integer i) {
+			// Stand in for verifying and buffering a segment
+			long x = i;
+			for (int j = 0; j < WORK; j++)
+				x = x * 31 + j;
+			sink += x;
+			_threads.put(Thread.currentThread(), Boolean.TRUE);
+			_done.countDown();
+		}
+	}
+
+	protected void run(String what, Executor executor) throws Exception {
+		CCNStats stats = QueuedContentHandler.getStats();
+		stats.clearCounters();
+		ConcurrentHashMap<Thread, Boolean> threads = new ConcurrentHashMap<Thread, Boolean>();
+
+		final CountDownLatch done = new CountDownLatch(STREAMS * ITEMS);
+		final StreamHandler [] handlers = new StreamHandler[STREAMS];
+		for (int i = 0; i < STREAMS; i++)
+			handlers[i] = new StreamHandler(executor, done, threads);
+
+		long start = System.nanoTime();
+		Thread [] producers = new Thread[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			producers[p] = new Thread() {
+				@Override
+				public void run() {
+					for (int item = 0; item < ITEMS; item++)
+						for (int h = producer; h < STREAMS; h += PRODUCERS)
+							handlers[h].add(item);
+				}
+			};
+			producers[p].start();
+		}
+		for (Thread producer : producers)
+			producer.join();
+		Assert.assertTrue(done.await(300, TimeUnit.SECONDS));
+		long elapsed = System.nanoTime() - start;
+
+		String delay = HandlerStatsEnum.SchedulingDelay.toString();
+		System.out.println(String.format("%-12s %8.0f items/s, %4d threads, %6d schedules, scheduling delay avg %10.0f ns p99 %10.0f ns",
+				what, (1e9 * STREAMS * ITEMS) / elapsed, threads.size(),
+				stats.getCounter(HandlerStatsEnum.Scheduled.toString()),
+				stats.getAverageAndStdev(delay)[0], stats.get99thPercentile(delay)));
+	}
+
+	@Test
+	public void testManyStreams() throws Exception {
+		int poolSize = 2 * Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+		try {
+			for (int i = 0; i < 2; i++) {
+				run("cached", SystemConfiguration._systemThreadpool);
+				run("fixed/" + poolSize, pool);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.io.CCNOutputStreamMappedTest.Collector;
+import org.ccnx.ccn.io.CCNOutputStreamMappedTest.SigningHandle;
+import org.ccnx.ccn.protocol.ContentName;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times publishing a large file through a CCNOutputStream, reading it
+ * through a stream as ccnputfile does by default and memory-mapping it as ccnputfile -mmap does.
+ * Segments are built and signed as usual, but then thrown away rather than sent, so the
+ * times are for the copying, digesting and signing alone.
+ */
+public class CCNOutputStreamMappedBenchmarkTest {
+
+	public static final int LENGTH = 256 * 1024 * 1024;
+	public static final int RUNS = 3;
+
+	protected void run(String what, boolean mapped, File file, CCNHandle handle) throws Exception {
+		Collector collector = new Collector(handle, false);
+		ContentName name = new ContentName("test", "mappedbenchmark", what, Long.toString(System.nanoTime()));
+		CCNOutputStream ostream = new CCNOutputStream(name, null, handle.keyManager().getDefaultKeyID(), null, null, collector);
+		long start = System.nanoTime();
+		if (mapped)
+			CCNOutputStreamMappedTest.writeMapped(ostream, file, 0);
+		else
+			CCNOutputStreamMappedTest.writeStream(ostream, file, 0);
+		ostream.close();
+		long elapsed = System.nanoTime() - start;
+		Assert.assertEquals(LENGTH, collector._bytes);
+		System.out.println(String.format("%-8s %8.1f MB/s (%d ms)", what,
+				(LENGTH / (1024.0 * 1024.0)) / (elapsed / 1e9), elapsed / 1000000));
+	}
+
+	@Test
+	public void testPublishFile() throws Exception {
+		File file = File.createTempFile("mappedbenchmark", ".bin");
+		try {
+			byte [] buffer = new byte[1024 * 1024];
+			for (int i = 0; i < buffer.length; i++)
+				buffer[i] = (byte)(i % 251);
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				for (int i = 0; i < LENGTH / buffer.length; i++)
+					out.write(buffer);
+			} finally {
+				out.close();
+			}
+
+			CCNHandle handle = new SigningHandle();
+			for (int i = 0; i < RUNS; i++) {
+				run("stream", false, file, handle);
+				run("mmap", true, file, handle);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -55,6 +55,7 @@ public class ACPerformanceTestRepo {
 	static CreateUserData cua;
 	static final int blockSize = 8096;
 	static final int contentSizeInBlocks = 100;
+	static final int smallFileCount = 50;
 	static Random rnd;
 	static CCNHandle _AliceHandle;
 	static GroupAccessControlManager _AliceACM;
@@ -121,6 +122,7 @@ public class ACPerformanceTestRepo {
 
 		createBaseDirectoryACL();
 		writeContentInDirectory();
+		writeSmallFilesInDirectory();
 
 		// Alice and Bob have permission to read the file
 		readFileAs(userNames[0]);
@@ -183,6 +185,26 @@ public class ACPerformanceTestRepo {
 		System.out.println("writeContent: " + (System.currentTimeMillis() - startTime));		
 	}
 	
+	/**
+	 * Write many small files in the baseDirectory. After the first, the effective
+	 * ACL and node key should come from the cache.
+	 */
+	public void writeSmallFilesInDirectory() throws Exception {
+		long startTime = System.currentTimeMillis();
+
+		byte [] buffer = new byte[blockSize];
+		for (int i=0; i<smallFileCount; i++) {
+			CCNOutputStream ostream = new RepositoryFileOutputStream(new ContentName(baseDirectory, "smallFile" + i), _AliceHandle);
+			ostream.setTimeout(SystemConfiguration.MAX_TIMEOUT);
+			rnd.nextBytes(buffer);
+			ostream.write(buffer, 0, blockSize);
+			ostream.close();
+		}
+
+		System.out.println("write " + smallFileCount + " small files: " + (System.currentTimeMillis() - startTime));
+		System.out.println(_AliceACM.getEffectiveACLCacheStats().toString());
+	}
+
 	/**
 	 * Read the file as the specified user
 	 * @param userName the name of the user
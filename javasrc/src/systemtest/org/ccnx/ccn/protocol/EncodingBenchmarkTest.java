@@ -0,0 +1,82 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.protocol;
+
+import java.util.Arrays;
+
+import org.ccnx.ccn.impl.encoding.XMLCodecFactory;
+import org.ccnx.ccn.impl.encoding.XMLEncodable;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.SignedInfo.ContentType;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times encoding typical interests and content objects with the binary
+ * codec, written directly into a buffer and through BinaryXMLEncoder.
+ */
+public class EncodingBenchmarkTest {
+
+	public static final int WARMUP = 20000;
+	public static final int NUM_ITER = 200000;
+
+	protected long time(XMLEncodable encodable, int count) throws Exception {
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++)
+			encodable.encode();
+		return System.nanoTime() - start;
+	}
+
+	protected void run(String what, XMLEncodable encodable) throws Exception {
+		long [] times = new long[2];
+		for (int i = 0; i < 2; i++) {
+			XMLCodecFactory.setDirectBinaryEncoding(i == 0);
+			time(encodable, WARMUP);
+			times[i] = time(encodable, NUM_ITER);
+		}
+		XMLCodecFactory.setDirectBinaryEncoding(true);
+		System.out.println(String.format("%-16s %5d bytes: direct %6d ns, encoder %6d ns, %.1f MB/s vs %.1f MB/s",
+				what, encodable.encode().length, times[0] / NUM_ITER, times[1] / NUM_ITER,
+				(1000.0 * NUM_ITER * encodable.encode().length) / times[0],
+				(1000.0 * NUM_ITER * encodable.encode().length) / times[1]));
+	}
+
+	@Test
+	public void testEncodingThroughput() throws Exception {
+		ContentName name = SegmentationProfile.segmentName(
+				VersioningProfile.addVersion(new ContentName("parc", "benchmark", "encoding", "file.txt")), 42);
+		PublisherPublicKeyDigest publisher = new PublisherPublicKeyDigest(new byte[32]);
+
+		Interest interest = Interest.next(name, 4, publisher);
+		interest.exclude(Exclude.uptoFactory(name.component(name.count() - 1)));
+		run("Interest", interest);
+		run("ContentName", name);
+
+		byte [] bits = new byte[128];
+		Arrays.fill(bits, (byte)0x5a);
+		SignedInfo signedInfo = new SignedInfo(publisher, CCNTime.now(), ContentType.DATA,
+				new KeyLocator(new ContentName("parc", "keys", "benchmark"), publisher),
+				3600, name.lastComponent());
+		run("SignedInfo", signedInfo);
+		for (int size : new int[]{0, 1024, 4096}) {
+			ContentObject co = new ContentObject(name, signedInfo, new byte[size], new Signature(bits));
+			run("ContentObject/" + size, co);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.protocol;
+
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times matching candidate components against exclude filters
+ * of increasing size, with the binary search and with a linear scan of the elements.
+ */
+public class ExcludeBenchmarkTest {
+
+	public static final int NUM_CANDIDATES = 1000;
+	public static final int NUM_ITER = 200;
+
+	@Test
+	public void testMatchCost() throws Exception {
+		for (int size : new int[]{1, 10, 100, 1000, 10000}) {
+			// Every other segment, as hole filling or versioning interests build them up
+			byte [][] omissions = new byte[size][];
+			for (int i = 0; i < size; i++)
+				omissions[i] = SegmentationProfile.getSegmentNumberNameComponent(i * 2);
+			Exclude exclude = new Exclude(omissions);
+			byte [][] candidates = new byte[NUM_CANDIDATES][];
+			for (int i = 0; i < NUM_CANDIDATES; i++)
+				candidates[i] = SegmentationProfile.getSegmentNumberNameComponent((i * 7919L) % (size * 2 + 1));
+
+			long [] times = new long[2];
+			int matched = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				for (int m = 0; m < 2; m++) {
+					long start = System.nanoTime();
+					for (int iter = 0; iter < NUM_ITER; iter++) {
+						for (byte [] candidate : candidates) {
+							boolean match = (m == 0) ? exclude.match(candidate)
+									: Exclude.matchUnsorted(exclude._elements, candidate);
+							if (match)
+								matched++;
+						}
+					}
+					times[m] = System.nanoTime() - start;
+				}
+			}
+			long matches = (long)NUM_ITER * NUM_CANDIDATES;
+			System.out.println(String.format("%6d components: binary search %6d ns/match, linear scan %8d ns/match (%d)",
+					size, times[0] / matches, times[1] / matches, matched));
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.repo;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.repo.ContentRef;
+import org.ccnx.ccn.impl.repo.ContentTree;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times finding the next version after a given one in the repository's
+ * index, for a name with many versions, starting from older and newer versions.
+ */
+public class ContentTreeBenchmarkTest {
+
+	public static final int NUM_VERSIONS = 100000;
+	public static final int NUM_ITER = 1000;
+
+	static class Ref extends ContentRef {
+		ContentObject co;
+		Ref(ContentObject co) {
+			this.co = co;
+		}
+	}
+
+	static class Getter implements ContentTree.ContentGetter {
+		public ContentObject get(ContentRef ref) {
+			return ((Ref)ref).co;
+		}
+	}
+
+	@Test
+	public void testNextVersion() throws Exception {
+		byte [] publisher = new byte[32];
+		new Random().nextBytes(publisher);
+		PublisherPublicKeyDigest pub = new PublisherPublicKeyDigest(publisher);
+		KeyLocator locator = new KeyLocator(ContentName.fromNative("/test/key"));
+		Signature signature = new Signature(new byte[128]);
+		Getter getter = new Getter();
+
+		ContentTree tree = new ContentTree();
+		ContentName prefix = ContentName.fromNative("/test/benchmark/versions");
+		for (int i = 1; i <= NUM_VERSIONS; i++) {
+			ContentName name = SegmentationProfile.segmentName(VersioningProfile.addVersion(prefix, i), 0);
+			SignedInfo si = new SignedInfo(pub, new CCNTime(i), SignedInfo.ContentType.DATA, locator);
+			ContentObject co = new ContentObject(name, si, "data".getBytes(), signature);
+			tree.insert(co, new Ref(co), i, getter, null);
+		}
+
+		for (int pass = 0; pass < 2; pass++) {
+			for (int after : new int[]{1, NUM_VERSIONS / 10, NUM_VERSIONS / 2, NUM_VERSIONS - 1}) {
+				Interest next = new Interest(prefix);
+				next.exclude(VersioningProfile.acceptVersions(
+						VersioningProfile.addVersion(prefix, after).lastComponent()));
+				long start = System.nanoTime();
+				ContentObject result = null;
+				for (int iter = 0; iter < NUM_ITER; iter++)
+					result = tree.get(next, getter);
+				long time = System.nanoTime() - start;
+				Assert.assertEquals(after + 1, VersioningProfile.getLastVersionAsLong(
+						SegmentationProfile.segmentRoot(result.name())));
+				if (pass > 0)
+					System.out.println(String.format("next version after %6d of %d: %8d ns", 
+							after, NUM_VERSIONS, time / NUM_ITER));
+			}
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.repo;
+
+import java.io.File;
+
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.repo.LogStructRepoStore;
+import org.ccnx.ccn.impl.repo.LogStructRepoStore.LogStructRepoStoreProfile;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.repo.LogStructRepoStoreImportTest.NoNetworkHandle;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test times bulk importing a file of content objects into a LogStructRepoStore
+ * indexing it on 1 thread and on one thread per processor. It doesn't need ccnd.
+ * The number of objects can be set with the property ccn.test.repo.importobjects.
+ */
+public class RepoImportBenchmarkTest {
+
+	public static final String OBJECTS_PROPERTY = "ccn.test.repo.importobjects";
+	static final int DEFAULT_OBJECTS = 200000;
+
+	protected void time(int threads, int objects) throws Exception {
+		int savedThreads = SystemConfiguration.REPO_IMPORT_THREADS;
+		SystemConfiguration.REPO_IMPORT_THREADS = threads;
+		File root = File.createTempFile("repoimportbenchmark", "");
+		root.delete();
+		LogStructRepoStore store = new LogStructRepoStore();
+		try {
+			store.initialize(root.getPath(), null, null, null, null, new NoNetworkHandle());
+			File importDir = new File(root, LogStructRepoStoreProfile.REPO_IMPORT_DIR);
+			importDir.mkdirs();
+			File file = new File(importDir, "data");
+			LogStructRepoStoreImportTest.makeImportFile(file, "benchmark", objects);
+			double mb = file.length() / (1024.0 * 1024.0);
+
+			long start = System.nanoTime();
+			Assert.assertTrue(store.bulkImport("data"));
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("%3d threads: %d objects, %.1f MB in %d ms, %.0f objects/s", threads, objects, mb,
+					elapsed / 1000000, objects / (elapsed / 1e9)));
+		} finally {
+			SystemConfiguration.REPO_IMPORT_THREADS = savedThreads;
+			store.shutDown();
+			for (File dir : new File[]{new File(root, LogStructRepoStoreProfile.REPO_IMPORT_DIR),
+					new File(root, LogStructRepoStoreProfile.META_DIR), root}) {
+				File [] children = dir.listFiles();
+				if (null != children) {
+					for (File child : children)
+						child.delete();
+				}
+				dir.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testImport() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testImport");
+
+		int objects = Integer.getInteger(OBJECTS_PROPERTY, DEFAULT_OBJECTS);
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < 2; i++) {
+			time(1, objects);
+			if (processors > 1)
+				time(processors, objects);
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testImport");
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.repo;
+
+import java.util.Random;
+
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.CCNTestHelper;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.RepositoryFileOutputStream;
+import org.ccnx.ccn.protocol.ContentName;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * This is not a unit test designed to verify functionality.
+ * Instead, this test measures aggregate repository ingest with 1, 10 and 100 writers
+ * storing files at once, as with concurrent ccnputfile -local. Needs ccnd and a repository.
+ * The size of each file can be set with the property ccn.test.repo.ingestsize.
+ */
+public class RepoIngestBenchmarkTest extends RepoTestBase {
+
+	public static final String SIZE_PROPERTY = "ccn.test.repo.ingestsize";
+	static final int DEFAULT_SIZE = 256 * 1024;
+
+	static CCNTestHelper testHelper = new CCNTestHelper(RepoIngestBenchmarkTest.class);
+
+	protected void ingest(int writers, final int size) throws Exception {
+		final ContentName prefix = testHelper.getTestChildName("testIngest", writers + "-" + System.currentTimeMillis());
+		final byte [] data = new byte[size];
+		new Random().nextBytes(data);
+		final Throwable [] errors = new Throwable[writers];
+		Thread [] threads = new Thread[writers];
+		for (int i = 0; i < writers; i++) {
+			final int writer = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					CCNHandle handle = null;
+					try {
+						handle = CCNHandle.open();
+						RepositoryFileOutputStream ros = new RepositoryFileOutputStream(
+								new ContentName(prefix, "file-" + writer), handle, true);
+						ros.write(data, 0, data.length);
+						ros.close();
+					} catch (Throwable t) {
+						errors[writer] = t;
+					} finally {
+						if (null != handle)
+							handle.close();
+					}
+				}
+			}, "RepoIngestWriter-" + i);
+		}
+		long start = System.nanoTime();
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		long elapsed = System.nanoTime() - start;
+		for (Throwable error : errors) {
+			if (null != error)
+				Assert.fail("Writer failed: " + error);
+		}
+		double mb = ((double)writers * size) / (1024 * 1024);
+		System.out.println(String.format("%3d writers: %.1f MB in %d ms, %.2f MB/s", writers, mb,
+				elapsed / 1000000, mb / (elapsed / 1000000000.0)));
+	}
+
+	@Test
+	public void testIngest() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testIngest");
+
+		int size = Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE);
+		for (int writers : new int[]{1, 10, 100})
+			ingest(writers, size);
+
+		Log.info(Log.FAC_TEST, "Completed testIngest");
+	}
+}
@@ -22,9 +22,11 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({
-	InterestTableTest.class, LogTest.class,
+	CCNStatsHistogramTest.class, ContentCacheTest.class, InterestTableTest.class, LogTest.class,
+	QueuedContentHandlerTest.class,
 	org.ccnx.ccn.impl.security.keys.AllTests.class,
-	org.ccnx.ccn.impl.support.AllTests.class
+	org.ccnx.ccn.impl.support.AllTests.class,
+	org.ccnx.ccn.impl.sync.AllTests.class
 	})
 public class AllTests {
 
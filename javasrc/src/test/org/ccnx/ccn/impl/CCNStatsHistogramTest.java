@@ -0,0 +1,163 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.CCNStats.CCNEnumStats;
+import org.ccnx.ccn.impl.CCNStats.ExampleClassWithStatistics.MyStats;
+import org.ccnx.ccn.impl.CCNStats.Histogram;
+import org.ccnx.ccn.impl.CCNStats.StripedCounter;
+import org.ccnx.ccn.impl.support.Log;
+import org.junit.Test;
+
+/**
+ * Tests the lock free counters and histograms behind averaging counters, and exporting
+ * stats over JMX.
+ */
+public class CCNStatsHistogramTest {
+
+	static final int THREADS = 8;
+	static final int SAMPLES = 100000;
+
+	@Test
+	public void testHistogram() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testHistogram");
+
+		Histogram histogram = new Histogram();
+		Assert.assertEquals(0, histogram.getValueAtPercentile(50.0));
+		for (long i = 1; i <= 10000; i++)
+			histogram.record(i);
+		Assert.assertEquals(10000, histogram.getCount());
+		Assert.assertEquals(10000, histogram.getMax());
+		checkClose(5000, histogram.getValueAtPercentile(50.0));
+		checkClose(9900, histogram.getValueAtPercentile(99.0));
+		checkClose(9990, histogram.getValueAtPercentile(99.9));
+		Assert.assertEquals(10000, histogram.getValueAtPercentile(100.0));
+		Assert.assertEquals(1, histogram.getValueAtPercentile(0.0));
+
+		// Small values are exact, huge ones don't overflow
+		histogram.clear();
+		histogram.record(3);
+		Assert.assertEquals(3, histogram.getValueAtPercentile(50.0));
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(-5);
+		Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100.0));
+		Assert.assertEquals(0, histogram.getValueAtPercentile(10.0));
+
+		// A long tail shows up in the high percentiles but not the median
+		histogram.clear();
+		for (int i = 0; i < 999; i++)
+			histogram.record(1000);
+		histogram.record(1000000);
+		checkClose(1000, histogram.getValueAtPercentile(50.0));
+		checkClose(1000, histogram.getValueAtPercentile(99.0));
+		checkClose(1000000, histogram.getValueAtPercentile(99.95));
+
+		Log.info(Log.FAC_TEST, "Completed testHistogram");
+	}
+
+	private void checkClose(long expected, long value) {
+		Assert.assertTrue("expected about " + expected + " was " + value,
+				value >= expected && value <= expected + expected / 16);
+	}
+
+	@Test
+	public void testConcurrentSamples() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testConcurrentSamples");
+
+		final StripedCounter counter = new StripedCounter(2);
+		final CCNEnumStats<MyStats> stats = new CCNEnumStats<MyStats>(MyStats.SendRequests);
+		Thread [] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < SAMPLES; i++) {
+						counter.add(0, 1);
+						counter.add(1, 2);
+						stats.addSample(MyStats.BytesPerPacket, i % 100);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		Assert.assertEquals(THREADS * SAMPLES, counter.get());
+		Assert.assertEquals(2L * THREADS * SAMPLES, counter.get(1));
+		Assert.assertTrue(stats.isAveragingCounter("BytesPerPacket"));
+		Assert.assertFalse(stats.isAveragingCounter("SendRate"));
+		double [] avgstd = stats.getAverageAndStdev("BytesPerPacket");
+		Assert.assertEquals(49.5, avgstd[0], 0.001);
+		Assert.assertEquals(28.87, avgstd[1], 0.01);
+		Assert.assertEquals(49.0, stats.getMedian("BytesPerPacket"));
+		Assert.assertEquals(99.0, stats.get99thPercentile("BytesPerPacket"));
+		Assert.assertEquals(99.0, stats.get999thPercentile("BytesPerPacket"));
+		Assert.assertTrue(Double.isNaN(stats.getMedian("SendRate")));
+		Assert.assertTrue(stats.toString().contains("p50 49.0 p99 99.0"));
+
+		stats.clearCounters();
+		Assert.assertFalse(stats.isAveragingCounter("BytesPerPacket"));
+		Assert.assertTrue(Double.isNaN(stats.get99thPercentile("BytesPerPacket")));
+
+		Log.info(Log.FAC_TEST, "Completed testConcurrentSamples");
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMBean");
+
+		CCNEnumStats<MyStats> stats = new CCNEnumStats<MyStats>(MyStats.SendRequests);
+		stats.increment(MyStats.SendRequests, 7);
+		for (int i = 1; i <= 100; i++)
+			stats.addSample(MyStats.SendRate, i);
+		ObjectName name = CCNStatsMBean.register("CCNStatsHistogramTest", "test", stats);
+		Assert.assertNotNull(name);
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			Assert.assertEquals(7L, server.getAttribute(name, "SendRequests"));
+			Assert.assertEquals(50.5, server.getAttribute(name, "SendRate.avg"));
+			Assert.assertEquals(50.0, server.getAttribute(name, "SendRate.p50"));
+			Assert.assertEquals(99.0, server.getAttribute(name, "SendRate.p99"));
+			Assert.assertEquals(100.0, server.getAttribute(name, "SendRate.p999"));
+
+			boolean found = false;
+			for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes()) {
+				Assert.assertFalse(info.getName().equals("SendRate"));
+				found |= info.getName().equals("SendRate.p99");
+			}
+			Assert.assertTrue(found);
+
+			server.invoke(name, "clearCounters", null, null);
+			Assert.assertEquals(0L, server.getAttribute(name, "SendRequests"));
+		} finally {
+			CCNStatsMBean.unregister(name);
+		}
+		Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+		Log.info(Log.FAC_TEST, "Completed testMBean");
+	}
+}
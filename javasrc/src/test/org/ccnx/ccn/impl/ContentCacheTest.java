@@ -0,0 +1,176 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.ContentVerifier;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Exclude;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Test;
+
+/**
+ * Tests the in process content cache on its own.
+ */
+public class ContentCacheTest {
+
+	static final PublisherPublicKeyDigest PUBLISHER = new PublisherPublicKeyDigest(new byte[32]);
+
+	ContentName _prefix = new ContentName("test", "cache", Long.toString(System.nanoTime()));
+
+	private ContentObject object(ContentName name, int length, Integer freshness) throws Exception {
+		SignedInfo si = new SignedInfo(PUBLISHER, CCNTime.now(), SignedInfo.ContentType.DATA,
+				new KeyLocator(new ContentName("test", "key")), freshness, null);
+		return new ContentObject(name, si, new byte[length], new Signature(new byte[128]));
+	}
+
+	@Test
+	public void testMatching() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMatching");
+
+		ContentCache cache = new ContentCache(100000, 60000);
+		ContentObject a = object(new ContentName(_prefix, "a"), 10, null);
+		ContentObject b1 = object(new ContentName(_prefix, "b", "1"), 10, null);
+		ContentObject b2 = object(new ContentName(_prefix, "b", "2"), 10, null);
+		ContentObject c = object(new ContentName(_prefix, "c"), 10, null);
+		cache.put(b2);
+		cache.put(c);
+		cache.put(a);
+		cache.put(b1);
+
+		Assert.assertNull(cache.get(new Interest(new ContentName("test", "other"))));
+		Assert.assertSame(a, cache.get(new Interest(_prefix)));
+		Assert.assertSame(b1, cache.get(new Interest(new ContentName(_prefix, "b"))));
+		Assert.assertSame(b2, cache.get(new Interest(new ContentName(_prefix, "b", "2"))));
+
+		// Rightmost is the greatest next component, then the leftmost under it
+		Interest right = new Interest(_prefix);
+		right.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		Assert.assertSame(c, cache.get(right));
+
+		// Excludes and suffix limits
+		Interest excluding = new Interest(_prefix);
+		excluding.exclude(new Exclude(new byte [][]{ "a".getBytes(), "b".getBytes() }));
+		Assert.assertSame(c, cache.get(excluding));
+		Interest shallow = new Interest(_prefix);
+		shallow.maxSuffixComponents(2);
+		right = new Interest(_prefix);
+		right.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		right.exclude(new Exclude(new byte [][]{ "c".getBytes() }));
+		Assert.assertSame(b1, cache.get(right));
+		Assert.assertSame(a, cache.get(shallow));
+		Interest deep = new Interest(_prefix);
+		deep.minSuffixComponents(3);
+		Assert.assertSame(b1, cache.get(deep));
+
+		// Publisher
+		Assert.assertNull(cache.get(new Interest(_prefix, new PublisherPublicKeyDigest(new byte[]{1, 2, 3}))));
+		Assert.assertSame(a, cache.get(new Interest(_prefix, PUBLISHER)));
+
+		// Interests which don't want answers from a content store
+		Interest noCache = new Interest(_prefix);
+		noCache.answerOriginKind(Interest.ANSWER_GENERATED);
+		Assert.assertNull(cache.get(noCache));
+
+		Assert.assertEquals(90, cache.getStats().getCounter("BytesSaved"));
+		Assert.assertEquals(2, cache.getStats().getCounter("Misses"));
+
+		Log.info(Log.FAC_TEST, "Completed testMatching");
+	}
+
+	@Test
+	public void testLimits() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testLimits");
+
+		ContentCache cache = new ContentCache(250, 60000);
+		ContentObject [] objects = new ContentObject[3];
+		for (int i = 0; i < objects.length; i++) {
+			objects[i] = object(new ContentName(_prefix, "o" + i), 100, null);
+			cache.put(objects[i]);
+			if (i == 1)
+				Assert.assertNotNull(cache.get(new Interest(objects[0].name())));
+		}
+		// 1 was least recently used
+		Assert.assertEquals(200, cache.size());
+		Assert.assertNull(cache.get(new Interest(objects[1].name())));
+		Assert.assertNotNull(cache.get(new Interest(objects[0].name())));
+		Assert.assertNotNull(cache.get(new Interest(objects[2].name())));
+
+		// Freshness is respected
+		ContentObject fresh = object(new ContentName(_prefix, "fresh"), 10, 1);
+		cache.put(fresh);
+		Assert.assertNotNull(cache.get(new Interest(fresh.name())));
+		Thread.sleep(1100);
+		Assert.assertNull(cache.get(new Interest(fresh.name())));
+		Assert.assertEquals(1, cache.getStats().getCounter("Expired"));
+
+		// Nothing is kept when disabled
+		cache = new ContentCache(0, 60000);
+		cache.put(fresh);
+		Assert.assertNull(cache.get(new Interest(fresh.name())));
+
+		Log.info(Log.FAC_TEST, "Completed testLimits");
+	}
+
+	@Test
+	public void testOfferAndDeliver() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testOfferAndDeliver");
+
+		final ContentCache cache = new ContentCache(100000, 60000);
+		final ContentObject good = object(new ContentName(_prefix, "good"), 10, null);
+		ContentObject bad = object(new ContentName(_prefix, "bad"), 10, null);
+		ContentVerifier verifier = new ContentVerifier() {
+			public boolean verify(ContentObject content) {
+				return content == good;
+			}
+		};
+		cache.offer(good, verifier);
+		cache.offer(bad, verifier);
+		long start = System.currentTimeMillis();
+		while (cache.getStats().getCounter("Stored") + cache.getStats().getCounter("VerifyFailures") < 2
+				&& System.currentTimeMillis() - start < 5000)
+			Thread.sleep(10);
+		Assert.assertSame(good, cache.get(new Interest(good.name())));
+		Assert.assertNull(cache.get(new Interest(bad.name())));
+
+		final LinkedBlockingQueue<ContentObject> delivered = new LinkedBlockingQueue<ContentObject>();
+		CCNContentHandler handler = new CCNContentHandler() {
+			public Interest handleContent(ContentObject data, Interest interest) {
+				delivered.add(data);
+				return null;
+			}
+		};
+		Assert.assertFalse(cache.expressInterest(new Interest(bad.name()), handler, null));
+		Assert.assertTrue(cache.expressInterest(new Interest(good.name()), handler, null));
+		Assert.assertSame(good, delivered.poll(5000, TimeUnit.MILLISECONDS));
+
+		Log.info(Log.FAC_TEST, "Completed testOfferAndDeliver");
+	}
+}
@@ -24,6 +24,7 @@ import static org.junit.Assert.fail;
 import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
@@ -396,6 +397,36 @@ public class InterestTableTest {
 
 	}
 	
+	@Test
+	public void testBatch() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBatch");
+
+		InterestTable<Integer> table = new InterestTable<Integer>();
+		ArrayList<Interest> interests = new ArrayList<Interest>();
+		ArrayList<Integer> values = new ArrayList<Integer>();
+		for (int i = 0; i < 10; i++) {
+			interests.add(new Interest(ContentName.fromNative("/batch/" + i)));
+			values.add(i % 2);
+		}
+		table.add(interests, values);
+		assertEquals(10, table.size());
+		assertEquals(Integer.valueOf(1), table.getValue(ContentName.fromNative("/batch/3")));
+
+		// Only the entries with the value given go
+		List<InterestTable.Entry<Integer>> removed = table.remove(interests, 1);
+		assertEquals(5, removed.size());
+		assertEquals(5, table.size());
+		assertNull(table.getValue(ContentName.fromNative("/batch/3")));
+		assertEquals(Integer.valueOf(0), table.getValue(ContentName.fromNative("/batch/4")));
+
+		try {
+			table.add(interests, values.subList(0, 5));
+			fail("added interests without values");
+		} catch (IllegalArgumentException e) {}
+
+		Log.info(Log.FAC_TEST, "Completed testBatch");
+	}
+
 	@Test
 	public void testMatchName() throws InvalidKeyException, MalformedContentNameStringException, SignatureException, ConfigurationException {
 		Log.info(Log.FAC_TEST, "Starting testMatchName");
@@ -133,6 +133,78 @@ public class LogTest {
 		doTest(Log.FAC_NETMANAGER, Level.SEVERE);
 	}
 
+	@Test
+	public void testFormat() {
+		synchronized (_testLock) {
+			Log.setLevel(Log.FAC_NETMANAGER, Level.INFO);
+			String output = logged(Log.FAC_NETMANAGER, "format {0} and {1}, {0} again, {2} {10}", "zero", null);
+			Assert.assertTrue(output, output.contains("format zero and (null), zero again, {2} {10}"));
+		}
+	}
+
+	@Test
+	public void testAsync() {
+		synchronized (_testLock) {
+			boolean wasAsync = Log.setAsync(true);
+			try {
+				Assert.assertTrue(Log.isAsync());
+				Log.setLevel(Log.FAC_NETMANAGER, Level.INFO);
+				String output = logged(Log.FAC_NETMANAGER, "async {0} {1}", 1, 2);
+				Assert.assertTrue(output, output.contains("async 1 2"));
+
+				// Messages from many threads all arrive
+				final int count = 1000;
+				Thread [] threads = new Thread[4];
+				for (int t = 0; t < threads.length; t++) {
+					final int thread = t;
+					threads[t] = new Thread() {
+						@Override
+						public void run() {
+							for (int i = 0; i < count; i++)
+								Log.info(Log.FAC_NETMANAGER, "thread {0} message {1}.", thread, i);
+						}
+					};
+					threads[t].start();
+				}
+				for (Thread thread : threads) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+						Assert.fail("Interrupted");
+					}
+				}
+				Log.flush();
+				_sh.flush();
+				output = new String(_baos.toByteArray());
+				for (int t = 0; t < threads.length; t++)
+					Assert.assertTrue(output.contains("thread " + t + " message " + (count - 1) + "."));
+
+				// Turning it off writes what's queued
+				Log.info(Log.FAC_NETMANAGER, "last async message");
+				Log.setAsync(false);
+				Assert.assertFalse(Log.isAsync());
+				_sh.flush();
+				output = new String(_baos.toByteArray());
+				Assert.assertTrue(output.contains("last async message"));
+			} finally {
+				Log.setAsync(wasAsync);
+			}
+		}
+	}
+
+	/**
+	 * Log a message and return what shows up in the log
+	 */
+	protected String logged(int facility, String msg, Object... params) {
+		_sh.flush();
+		int start = _baos.toByteArray().length;
+		Log.info(facility, msg, params);
+		Log.flush();
+		_sh.flush();
+		byte [] contents = _baos.toByteArray();
+		return new String(contents, start, contents.length - start);
+	}
+
 	@Test
 	public void testGetLevelInt() {
 		synchronized (_testLock) {
@@ -0,0 +1,110 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.ccnx.ccn.impl.QueuedContentHandler.HandlerStatsEnum;
+import org.ccnx.ccn.impl.support.Log;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test QueuedContentHandlers sharing a small pool
+ */
+public class QueuedContentHandlerTest {
+
+	public static final int HANDLERS = 50;
+	public static final int ITEMS = 500;
+	public static final int PRODUCERS = 4;
+
+	protected class OrderedHandler extends QueuedContentHandler<Integer> {
+		protected final CountDownLatch _done;
+		protected int _next = 0;
+		protected volatile boolean _inOrder = true;
+		protected volatile boolean _overlapped = false;
+		protected boolean _running = false;
+
+		public OrderedHandler(ExecutorService executor, CountDownLatch done) {
+			super(executor);
+			_done = done;
+		}
+
+		@Override
+		protected void process(Integer i) {
+			synchronized (this) {
+				if (_running)
+					_overlapped = true;
+				_running = true;
+			}
+			if (i != _next++)
+				_inOrder = false;
+			synchronized (this) {
+				_running = false;
+			}
+			_done.countDown();
+		}
+	}
+
+	@Test
+	public void testOrderingOnBoundedPool() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testOrderingOnBoundedPool");
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			long added = QueuedContentHandler.getStats().getCounter(HandlerStatsEnum.Added.toString());
+			final CountDownLatch done = new CountDownLatch(HANDLERS * ITEMS);
+			final OrderedHandler [] handlers = new OrderedHandler[HANDLERS];
+			for (int i = 0; i < HANDLERS; i++)
+				handlers[i] = new OrderedHandler(pool, done);
+
+			// Each producer feeds its own handlers, so each handler's items are added in order
+			Thread [] producers = new Thread[PRODUCERS];
+			for (int p = 0; p < PRODUCERS; p++) {
+				final int producer = p;
+				producers[p] = new Thread() {
+					@Override
+					public void run() {
+						for (int item = 0; item < ITEMS; item++)
+							for (int h = producer; h < HANDLERS; h += PRODUCERS)
+								handlers[h].add(item);
+					}
+				};
+				producers[p].start();
+			}
+			for (Thread producer : producers)
+				producer.join();
+			Assert.assertTrue("Items not all processed", done.await(30, TimeUnit.SECONDS));
+
+			for (OrderedHandler handler : handlers) {
+				Assert.assertTrue(handler._inOrder);
+				Assert.assertFalse(handler._overlapped);
+				Assert.assertEquals(ITEMS, handler._next);
+				Assert.assertEquals(0, handler.queueDepth());
+			}
+			Assert.assertTrue(QueuedContentHandler.getStats().getCounter(HandlerStatsEnum.Added.toString()) - added >= HANDLERS * ITEMS);
+		} finally {
+			pool.shutdown();
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testOrderingOnBoundedPool");
+	}
+}
@@ -22,7 +22,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ DataUtilsTest.class })
+@SuiteClasses({ DataUtilsTest.class, TracerTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,130 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.support.Tracer.Span;
+import org.ccnx.ccn.impl.support.Tracer.Stage;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.utils.ccntracesummary;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests recording trace spans and summarising them.
+ */
+public class TracerTest {
+
+	@After
+	public void tearDown() throws Exception {
+		Tracer.setFile(null);
+		Tracer.setEnabled(false);
+		Tracer.clear();
+	}
+
+	@Test
+	public void testSpans() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSpans");
+
+		ContentName name = new ContentName("test", "trace");
+		Tracer.setEnabled(false);
+		Interest untraced = new Interest(name);
+		Assert.assertEquals(0, Tracer.begin(untraced));
+		Assert.assertEquals(0, untraced.traceId());
+
+		Tracer.setEnabled(true);
+		Tracer.clear();
+		Interest interest = new Interest(name);
+		long trace = Tracer.begin(interest);
+		Assert.assertTrue(trace != 0);
+		Assert.assertEquals(trace, Tracer.begin(interest));
+		Assert.assertTrue(Tracer.begin(new Interest(name)) != trace);
+		// Trace ids aren't part of the interest
+		Assert.assertEquals(untraced, interest);
+
+		long start = System.nanoTime();
+		Tracer.span(trace, Stage.Express, start, name);
+		Tracer.span(0, Stage.Wait, start, name);
+		long previous = Tracer.setCurrent(trace);
+		Assert.assertEquals(trace, Tracer.current());
+		Tracer.span(Tracer.current(), Stage.Verify, start, name);
+		Tracer.setCurrent(previous);
+		Assert.assertEquals(previous, Tracer.current());
+
+		ArrayList<Span> spans = Tracer.getSpans(trace);
+		Assert.assertEquals(2, spans.size());
+		Assert.assertEquals(Stage.Express, spans.get(0)._stage);
+		Assert.assertEquals(Stage.Verify, spans.get(1)._stage);
+		Assert.assertEquals(name.toString(), spans.get(0)._name);
+		Assert.assertTrue(spans.get(0)._duration >= 0);
+
+		Span parsed = Span.parse(spans.get(1).toString());
+		Assert.assertEquals(trace, parsed._trace);
+		Assert.assertEquals(Stage.Verify, parsed._stage);
+		Assert.assertEquals(spans.get(1)._duration, parsed._duration);
+		Assert.assertEquals(name.toString(), parsed._name);
+
+		Tracer.setEnabled(false);
+		Tracer.span(trace, Stage.Deliver, start, name);
+		Assert.assertEquals(2, Tracer.getSpans(trace).size());
+
+		Log.info(Log.FAC_TEST, "Completed testSpans");
+	}
+
+	@Test
+	public void testSummary() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSummary");
+
+		File file = File.createTempFile("trace", ".txt");
+		file.deleteOnExit();
+		Tracer.setFile(file.getPath());
+		Assert.assertTrue(Tracer.isEnabled());
+		for (int i = 0; i < 100; i++) {
+			ContentName name = new ContentName("test", "summary", Integer.toString(i));
+			long trace = Tracer.begin(new Interest(name));
+			long start = System.nanoTime();
+			Tracer.span(trace, Stage.Express, start, name);
+			Tracer.span(trace, Stage.Wait, start - 1000000 * (i + 1), name);
+			Tracer.span(trace, Stage.Get, start - 2000000 * (i + 1), name);
+		}
+		Tracer.setFile(null);
+
+		ccntracesummary summary = new ccntracesummary();
+		summary.read(file.getPath());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		summary.print(new PrintStream(bytes), 3);
+		String out = bytes.toString();
+		Log.info(Log.FAC_TEST, "Summary:\n{0}", out);
+		Assert.assertTrue(out.startsWith("100 traces"));
+		Assert.assertTrue(out.contains("Express"));
+		Assert.assertTrue(out.contains("Wait"));
+		Assert.assertFalse(out.contains("KeyFetch"));
+		// The slowest is the last one
+		Assert.assertTrue(out.contains("/test/summary/99\n"));
+		Assert.assertFalse(out.contains("/test/summary/96\n"));
+
+		Log.info(Log.FAC_TEST, "Completed testSummary");
+	}
+}
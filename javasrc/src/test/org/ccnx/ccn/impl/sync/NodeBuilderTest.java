@@ -0,0 +1,217 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl.sync;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
+import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
+import org.ccnx.ccn.impl.security.crypto.CCNDigestHelper;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.SyncNodeComposite;
+import org.ccnx.ccn.io.content.SyncNodeComposite.SyncNodeElement;
+import org.ccnx.ccn.io.content.SyncNodeComposite.SyncNodeType;
+import org.ccnx.ccn.protocol.ContentName;
+import org.junit.Test;
+
+/**
+ * Tests building local sync trees
+ */
+public class NodeBuilderTest {
+
+	public static final String NAMES_PROPERTY = "ccn.test.sync.buildnames";
+	static final int DEFAULT_NAMES = 100000;
+	
+	private ContentName _prefix = new ContentName("test", "buildTree");
+
+	@Test
+	public void testElementEncodedLength() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testElementEncodedLength");
+
+		ContentName name = new ContentName("test", "encodedLength", CCNDigestHelper.digest("test".getBytes()));
+		checkEncodedLength(new SyncNodeElement(name));
+		checkEncodedLength(new SyncNodeElement(CCNDigestHelper.digest("hash".getBytes())));
+		SyncNodeElement sne = new SyncNodeElement(new byte[300]);
+		sne._type = SyncNodeType.COMPONENT;
+		checkEncodedLength(sne);
+		sne._type = SyncNodeType.BINARY;
+		checkEncodedLength(sne);
+
+		Log.info(Log.FAC_TEST, "Completed testElementEncodedLength");
+	}
+
+	private void checkEncodedLength(SyncNodeElement sne) throws Exception {
+		Assert.assertEquals(sne.encode(BinaryXMLCodec.codecName()).length, sne.encodedLength());
+	}
+
+	/**
+	 * Build a tree and check that every name is in it once, in order, and that the hashes accumulated
+	 * while building match those computed from the finished nodes. The collection size can be set with
+	 * the property ccn.test.sync.buildnames.
+	 */
+	@Test
+	public void testBuildTree() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBuildTree");
+
+		int count = Integer.getInteger(NAMES_PROPERTY, DEFAULT_NAMES);
+		TreeSet<ContentName> names = new TreeSet<ContentName>();
+		for (int i = 0; i < count; i++)
+			names.add(name(i));
+		TreeSet<ContentName> expected = new TreeSet<ContentName>(names);
+
+		SyncHashCache shc = new SyncHashCache();
+		SyncNodeCache cache = new SyncNodeCache(Long.MAX_VALUE);
+		long start = System.currentTimeMillis();
+		SyncTreeEntry root = new NodeBuilder().newNode(names, shc, cache);
+		long elapsed = System.currentTimeMillis() - start;
+		Assert.assertEquals(0, names.size());
+
+		int nodes = checkTree(root, cache, expected);
+		Log.info(Log.FAC_TEST, "Built tree of {0} names in {1} nodes in {2}ms", count, nodes, elapsed);
+
+		Log.info(Log.FAC_TEST, "Completed testBuildTree");
+	}
+	
+	/**
+	 * Add names to trees a few at a time and check that the result contains everything and
+	 * has the same root hash as a tree built from scratch from the same names.
+	 */
+	@Test
+	public void testInsertNames() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testInsertNames");
+		
+		int count = Integer.getInteger(NAMES_PROPERTY, DEFAULT_NAMES);
+		for (int initial : new int[]{1, 20, count}) {
+			TreeSet<ContentName> expected = new TreeSet<ContentName>();
+			for (int i = 0; i < initial; i++)
+				expected.add(name(i * 2));
+			SyncHashCache shc = new SyncHashCache();
+			SyncNodeCache cache = new SyncNodeCache(Long.MAX_VALUE);
+			SyncTreeEntry root = new NodeBuilder().newNode(new TreeSet<ContentName>(expected), shc, cache);
+			
+			// Interleave new names with the old ones and add some at both ends. Also try to add
+			// some names which are already there.
+			long elapsed = 0;
+			int updates = 0;
+			for (int batch = 0; batch < 50; batch++) {
+				TreeSet<ContentName> names = new TreeSet<ContentName>();
+				names.add(name(((batch * 7919) % (initial * 2)) | 1));
+				names.add(name(-1 - batch));
+				names.add(name(initial * 2 + batch));
+				names.add(name((batch * 104729) % (initial * 2)));
+				expected.addAll(names);
+				long start = System.nanoTime();
+				SyncTreeEntry newRoot = new NodeBuilder().insertNames(root, names, shc, cache, null);
+				elapsed += System.nanoTime() - start;
+				updates++;
+				Assert.assertNotNull(newRoot);
+				root = newRoot;
+				if (batch % 10 == 0)
+					checkTree(root, cache, expected);
+			}
+			checkTree(root, cache, expected);
+			long start = System.nanoTime();
+			SyncTreeEntry rebuilt = new NodeBuilder().newNode(new TreeSet<ContentName>(expected), new SyncHashCache(), 
+					new SyncNodeCache(Long.MAX_VALUE));
+			long rebuild = System.nanoTime() - start;
+			Assert.assertTrue(Arrays.equals(rebuilt.getHash(), root.getHash()));
+			Assert.assertEquals(expected.size(), root.getNode().getLeafCount());
+			Log.info(Log.FAC_TEST, "Average update of tree of {0} names took {1}us, full rebuild took {2}us", 
+					initial, elapsed / updates / 1000, rebuild / 1000);
+		}
+		
+		Log.info(Log.FAC_TEST, "Completed testInsertNames");
+	}
+	
+	@Test
+	public void testElementReader() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testElementReader");
+
+		TreeSet<ContentName> names = new TreeSet<ContentName>();
+		for (int i = 0; i < 50; i++)
+			names.add(name(i));
+		SyncTreeEntry root = new NodeBuilder().newNode(names, new SyncHashCache(), new SyncNodeCache(Long.MAX_VALUE));
+		SyncNodeComposite node = root.getNode();
+		byte [] encoded = node.encode(BinaryXMLCodec.codecName());
+
+		SyncNodeComposite.ElementReader reader = SyncNodeComposite.elements(encoded, new BinaryXMLDecoder());
+		for (SyncNodeElement sne : node.getRefs()) {
+			Assert.assertTrue(reader.hasNext());
+			Assert.assertEquals(sne, reader.next());
+		}
+		Assert.assertFalse(reader.hasNext());
+
+		SyncNodeComposite decoded = new SyncNodeComposite();
+		decoded.decode(encoded);
+		Assert.assertEquals(node, decoded);
+
+		Log.info(Log.FAC_TEST, "Completed testElementReader");
+	}
+
+	private ContentName name(int i) {
+		return new ContentName(_prefix, "name-" + i, CCNDigestHelper.digest(Integer.toString(i).getBytes()));
+	}
+	
+	/**
+	 * Check that a tree contains exactly the expected names in order and that all of its node
+	 * hashes are correct.
+	 * @return the number of nodes in the tree
+	 */
+	private int checkTree(SyncTreeEntry root, SyncNodeCache cache, TreeSet<ContentName> expected) {
+		int nodes = 0;
+		ContentName last = null;
+		int seen = 0;
+		Deque<SyncNodeComposite> stack = new ArrayDeque<SyncNodeComposite>();
+		stack.push(root.getNode());
+		while (!stack.isEmpty()) {
+			SyncNodeComposite node = stack.pop();
+			nodes++;
+			int leaves = 0;
+			SyncNodeComposite check = new SyncNodeComposite(node.getRefs(), node.getMinName(), node.getMaxName(),
+					node.getLeafCount(), node.getDepth());
+			Assert.assertTrue(Arrays.equals(check.getHash(), node.getHash()));
+			for (int i = node.getRefs().size() - 1; i >= 0; i--) {
+				SyncNodeElement sne = node.getRefs().get(i);
+				if (sne.getType() == SyncNodeType.HASH) {
+					SyncNodeComposite child = cache.getNode(sne.getData());
+					Assert.assertNotNull(child);
+					stack.push(child);
+					leaves += child.getLeafCount();
+				} else
+					leaves++;
+			}
+			Assert.assertEquals(leaves, node.getLeafCount());
+			for (SyncNodeElement sne : node.getRefs()) {
+				if (sne.getType() == SyncNodeType.LEAF) {
+					if (null != last)
+						Assert.assertTrue(last.compareTo(sne.getName()) < 0);
+					last = sne.getName();
+					Assert.assertTrue(expected.contains(last));
+					seen++;
+				}
+			}
+		}
+		Assert.assertEquals(expected.size(), seen);
+		return nodes;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl.sync;
+
+import java.io.IOException;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.CCNSyncHandler;
+import org.ccnx.ccn.CCNTestBaseNoCcnd;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.security.crypto.CCNDigestHelper;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.ConfigSlice;
+import org.ccnx.ccn.io.content.ContentEncodingException;
+import org.ccnx.ccn.io.content.SyncNodeComposite;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.Test;
+
+/**
+ * Measures how long a comparator takes to catch up with a collection it has never seen against
+ * an in process stand-in for the sync responder which answers node fetches after a fixed latency.
+ *
+ * The collection size can be set with the property ccn.test.sync.names (i.e. 1000000 to measure
+ * catch up for a large collection) and the simulated latency with ccn.test.sync.latency. The defaults
+ * are kept small so this can run with the unit tests.
+ */
+public class SyncCatchupTest {
+
+	public static final String NAMES_PROPERTY = "ccn.test.sync.names";
+	public static final String LATENCY_PROPERTY = "ccn.test.sync.latency";
+	static final int DEFAULT_NAMES = 10000;
+	static final long LATENCY = Long.getLong(LATENCY_PROPERTY, 10); // ms
+	static final long MAX_WAIT = 300000; // ms
+
+	/**
+	 * Answers node fetch interests from a node cache after a simulated network delay
+	 */
+	static class NodeResponder extends CCNHandle {
+		final SyncNodeCache _nodes;
+		final long _latency;
+		final ScheduledExecutorService _net = Executors.newScheduledThreadPool(4);
+		final AtomicInteger _requests = new AtomicInteger(0);
+		final SignedInfo _signedInfo;
+
+		NodeResponder(SyncNodeCache nodes, long latency) {
+			super(false);
+			_nodes = nodes;
+			_latency = latency;
+			_signedInfo = new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), CCNTime.now(),
+					SignedInfo.ContentType.DATA, new KeyLocator(new ContentName("test", "key")));
+		}
+
+		@Override
+		public void expressInterest(final Interest interest, final CCNContentHandler handler) throws IOException {
+			_requests.incrementAndGet();
+			_net.schedule(new Runnable() {
+				public void run() {
+					SyncNodeComposite node = _nodes.getNode(interest.name().lastComponent());
+					if (null == node)
+						return;
+					try {
+						ContentObject co = new ContentObject(interest.name(), _signedInfo, node.encode(),
+								CCNTestBaseNoCcnd.fakeSignature);
+						handler.handleContent(co, interest);
+					} catch (ContentEncodingException e) {
+						Log.warning(Log.FAC_TEST, "Couldn't encode node: {0}", e.getMessage());
+					}
+				}
+			}, _latency, TimeUnit.MILLISECONDS);
+		}
+
+		void shutdown() {
+			_net.shutdownNow();
+		}
+	}
+
+	static class NameCounter implements CCNSyncHandler {
+		final AtomicInteger _count = new AtomicInteger(0);
+
+		public void handleContentName(ConfigSlice syncSlice, ContentName syncedContent) {
+			_count.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testCatchup() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testCatchup");
+
+		int count = Integer.getInteger(NAMES_PROPERTY, DEFAULT_NAMES);
+		ContentName prefix = new ContentName("test", "catchup");
+		TreeSet<ContentName> names = new TreeSet<ContentName>();
+		for (int i = 0; i < count; i++) {
+			byte[] digest = CCNDigestHelper.digest(Integer.toString(i).getBytes());
+			names.add(new ContentName(prefix, "name-" + i, digest));
+		}
+		SyncNodeCache responderCache = new SyncNodeCache(Long.MAX_VALUE);
+		SyncTreeEntry root = new NodeBuilder().newNode(names, new SyncHashCache(), responderCache);
+		Log.info(Log.FAC_TEST, "Built tree of {0} names", count);
+
+		int savedWindow = SystemConfiguration.SYNC_PREFETCH_WINDOW;
+		try {
+			SystemConfiguration.SYNC_PREFETCH_WINDOW = 0;
+			long serial = catchup(root, responderCache, count);
+			SystemConfiguration.SYNC_PREFETCH_WINDOW = SystemConfiguration.SYNC_PREFETCH_WINDOW_DEFAULT;
+			long prefetched = catchup(root, responderCache, count);
+			Log.info(Log.FAC_TEST, "Catch up for {0} names with {1}ms latency: {2}ms without prefetch, {3}ms with window of {4}",
+					count, LATENCY, serial, prefetched, SystemConfiguration.SYNC_PREFETCH_WINDOW_DEFAULT);
+		} finally {
+			SystemConfiguration.SYNC_PREFETCH_WINDOW = savedWindow;
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testCatchup");
+	}
+
+	/**
+	 * @return ms until all names were reported
+	 */
+	private long catchup(SyncTreeEntry root, SyncNodeCache responderCache, int count) throws Exception {
+		NodeResponder responder = new NodeResponder(responderCache, LATENCY);
+		NameCounter counter = new NameCounter();
+		ConfigSlice slice = new ConfigSlice(new ContentName("test", "topo"), new ContentName("test", "catchup"), null);
+		SliceComparator sc = new SliceComparator(null, new SyncNodeCache(), counter, slice, null, null, responder);
+		try {
+			long start = System.currentTimeMillis();
+			sc.addPending(sc.getHashCache().addHash(root.getHash(), sc.getNodeCache()));
+			sc.kickCompare();
+			long end = start + MAX_WAIT;
+			while (counter._count.get() < count && System.currentTimeMillis() < end)
+				Thread.sleep(5);
+			long elapsed = System.currentTimeMillis() - start;
+			Assert.assertEquals(count, counter._count.get());
+			Log.info(Log.FAC_TEST, "Caught up in {0}ms with {1} node requests", elapsed, responder._requests.get());
+			return elapsed;
+		} finally {
+			sc.removeCallback(counter);
+			sc.shutdownIfUseless();
+			responder.shutdown();
+		}
+	}
+}
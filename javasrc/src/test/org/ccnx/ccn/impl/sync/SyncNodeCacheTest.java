@@ -0,0 +1,124 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.impl.sync;
+
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.SyncNodeComposite;
+import org.ccnx.ccn.io.content.SyncNodeComposite.SyncNodeElement;
+import org.ccnx.ccn.protocol.ContentName;
+import org.junit.Test;
+
+/**
+ * Tests the byte bounded LRU used to hold sync nodes
+ */
+public class SyncNodeCacheTest {
+	
+	static final int NAMES_PER_NODE = 10;
+	
+	private SyncNodeComposite makeNode(int which) {
+		ArrayList<SyncNodeElement> refs = new ArrayList<SyncNodeElement>();
+		for (int i = 0; i < NAMES_PER_NODE; i++)
+			refs.add(new SyncNodeElement(new ContentName("test", "name" + i, "node" + which + "digest" + i)));
+		return new SyncNodeComposite(refs, refs.get(0), refs.get(refs.size() - 1), refs.size(), 1);
+	}
+
+	@Test
+	public void testByteBudget() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testByteBudget");
+		
+		long nodeSize = SyncNodeCache.estimateSize(makeNode(0));
+		SyncNodeCache cache = new SyncNodeCache(nodeSize * 3);
+		ArrayList<SyncNodeComposite> nodes = new ArrayList<SyncNodeComposite>();
+		for (int i = 0; i < 6; i++) {
+			SyncNodeComposite node = makeNode(i);
+			nodes.add(node);
+			cache.putNode(node);
+			Assert.assertTrue(cache.getCachedBytes() <= nodeSize * 3);
+		}
+		Assert.assertEquals(3, cache.getCachedNodeCount());
+		Assert.assertEquals(3, cache.getStats().getCounter("Evictions"));
+		
+		// Evicted nodes are still found while someone else holds them and move back into the LRU
+		Assert.assertSame(nodes.get(0), cache.getNode(nodes.get(0).getHash()));
+		Assert.assertEquals(3, cache.getCachedNodeCount());
+		Assert.assertSame(nodes.get(5), cache.getNode(nodes.get(5).getHash()));
+		
+		// Recently used nodes are kept in preference to older ones
+		cache.putNode(makeNode(6));
+		Assert.assertEquals(3, cache.getCachedNodeCount());
+		Assert.assertSame(nodes.get(0), cache.getNode(nodes.get(0).getHash()));
+		Assert.assertEquals(0, cache.getStats().getCounter("Misses"));
+		
+		Assert.assertNull(cache.getNode(new byte[]{1, 2, 3}));
+		Assert.assertEquals(1, cache.getStats().getCounter("Misses"));
+		
+		Log.info(Log.FAC_TEST, "Completed testByteBudget");
+	}
+	
+	@Test
+	public void testOversizedNode() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testOversizedNode");
+		
+		SyncNodeCache cache = new SyncNodeCache(1);
+		SyncNodeComposite node = makeNode(0);
+		cache.putNode(node);
+		Assert.assertEquals(1, cache.getCachedNodeCount());
+		Assert.assertSame(node, cache.getNode(node.getHash()));
+		
+		Log.info(Log.FAC_TEST, "Completed testOversizedNode");
+	}
+
+	@Test
+	public void testWaiters() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testWaiters");
+		
+		SyncNodeCache cache = new SyncNodeCache();
+		SyncNodeComposite node = makeNode(0);
+		final int [] runs = new int[1];
+		Runnable waiter = new Runnable() {
+			public void run() {
+				runs[0]++;
+			}
+		};
+		
+		// A waiter is run once when the node arrives, however many times it was left
+		SyncNodeCache.Pending pending = cache.pending(node.getHash());
+		synchronized (pending) {
+			pending.setPending(true);
+			pending.addWaiter(waiter);
+			pending.addWaiter(waiter);
+		}
+		cache.wakeupPending(node.getHash());
+		Assert.assertEquals(1, runs[0]);
+		Assert.assertTrue(pending.getPending());
+		synchronized (pending) {
+			pending.addWaiter(waiter);
+		}
+		cache.putNode(node);
+		Assert.assertEquals(2, runs[0]);
+		Assert.assertFalse(pending.getPending());
+		cache.clearPending(node.getHash());
+		Assert.assertEquals(2, runs[0]);
+		
+		Log.info(Log.FAC_TEST, "Completed testWaiters");
+	}
+}
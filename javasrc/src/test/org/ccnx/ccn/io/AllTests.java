@@ -23,6 +23,10 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 
 @SuiteClasses({    
+	CCNInputStreamSeekTest.class,
+	CCNRandomAccessReaderTest.class,
+	CCNFileDownloaderTest.class,
+	CCNOutputStreamMappedTest.class,
 	org.ccnx.ccn.io.content.AllTests.class
 })
 public class AllTests {
@@ -0,0 +1,175 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.CCNInputStreamSeekTest.Segments;
+import org.ccnx.ccn.io.content.Header;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.profiles.metadata.MetadataProfile;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests downloading over several pipelines, and resuming, using the in process stand-in
+ * for the network from CCNInputStreamSeekTest.
+ */
+public class CCNFileDownloaderTest {
+
+	static final int PIPELINES = 4;
+
+	ContentName _name;
+	Segments _segments;
+	File _file;
+
+	@Before
+	public void setUp() throws Exception {
+		_segments = new Segments();
+		_name = VersioningProfile.addVersion(new ContentName("test", "downloader", Long.toString(System.nanoTime())));
+		_file = File.createTempFile("download", ".bin");
+	}
+
+	@After
+	public void tearDown() {
+		_segments._net.shutdownNow();
+		_file.delete();
+		new File(_file.getPath() + CCNFileDownloader.PROGRESS_SUFFIX).delete();
+	}
+
+	/**
+	 * Publish a header for the segments, as CCNFileOutputStream does
+	 */
+	private void makeHeader() throws Exception {
+		Header header = new Header(CCNInputStreamSeekTest.LENGTH, null, null, CCNInputStreamSeekTest.SEGMENT_LENGTH);
+		ContentName name = SegmentationProfile.segmentName(VersioningProfile.addVersion(MetadataProfile.headerName(_name)),
+				SegmentationProfile.baseSegment());
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), CCNTime.now(), SignedInfo.ContentType.DATA,
+				new KeyLocator(new ContentName("test", "key")), null, SegmentationProfile.getSegmentNumberNameComponent(SegmentationProfile.baseSegment()));
+		_segments._segments.add(new ContentObject(name, si, header.encode(), new Signature(new byte[128])));
+	}
+
+	private void checkFile() throws IOException {
+		checkFile(CCNInputStreamSeekTest.LENGTH);
+	}
+
+	private void checkFile(long length) throws IOException {
+		Assert.assertEquals(length, _file.length());
+		FileInputStream in = new FileInputStream(_file);
+		try {
+			byte [] buf = new byte[4096];
+			long position = 0;
+			int count;
+			while ((count = in.read(buf)) > 0) {
+				for (int i = 0; i < count; i++, position++)
+					Assert.assertEquals("byte " + position, (byte)(position % 251), buf[i]);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testDownload() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testDownload");
+
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, true, false);
+		CCNFileDownloader downloader = new CCNFileDownloader(_name, null, PIPELINES, _segments);
+		downloader.setTimeout(5000);
+		Assert.assertEquals(CCNInputStreamSeekTest.LENGTH, downloader.download(_file));
+		Assert.assertEquals(CCNInputStreamSeekTest.LENGTH, downloader.getBytesFetched());
+		Assert.assertFalse(new File(_file.getPath() + CCNFileDownloader.PROGRESS_SUFFIX).exists());
+		checkFile();
+
+		Log.info(Log.FAC_TEST, "Completed testDownload");
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testResume");
+
+		// Take away some segments in the middle so the first download fails partway. Without
+		// a header we would have to read through them before starting.
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, true, false);
+		makeHeader();
+		int missing = CCNInputStreamSeekTest.SEGMENTS / 2;
+		ArrayList<ContentObject> all = new ArrayList<ContentObject>(_segments._segments);
+		_segments._segments.subList(missing, missing + 10).clear();
+
+		CCNFileDownloader downloader = new CCNFileDownloader(_name, null, PIPELINES, _segments);
+		downloader.setTimeout(500);
+		try {
+			downloader.download(_file);
+			Assert.fail("Download with missing segments succeeded");
+		} catch (IOException e) {
+			// expected
+		}
+		Assert.assertTrue(new File(_file.getPath() + CCNFileDownloader.PROGRESS_SUFFIX).exists());
+		long fetched = downloader.getBytesFetched();
+		Assert.assertTrue(fetched > 0);
+
+		// Put them back, once the stand-in network has answered everything already asked,
+		// and the second download only fetches what the first didn't
+		_segments._net.submit(new Runnable() {
+			public void run() {
+			}
+		}).get();
+		_segments._segments.clear();
+		_segments._segments.addAll(all);
+		downloader = new CCNFileDownloader(_name, null, PIPELINES, _segments);
+		downloader.setTimeout(5000);
+		Assert.assertEquals(CCNInputStreamSeekTest.LENGTH, downloader.download(_file));
+		Assert.assertEquals(CCNInputStreamSeekTest.LENGTH - fetched, downloader.getBytesFetched());
+		Assert.assertFalse(new File(_file.getPath() + CCNFileDownloader.PROGRESS_SUFFIX).exists());
+		checkFile();
+
+		Log.info(Log.FAC_TEST, "Completed testResume");
+	}
+
+	@Test
+	public void testShortSegment() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testShortSegment");
+
+		// With a short segment in the middle, and no header, later bytes are not where the
+		// first segment's length says
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, true, true);
+		long length = CCNInputStreamSeekTest.LENGTH - CCNInputStreamSeekTest.SEGMENT_LENGTH / 2;
+		CCNFileDownloader downloader = new CCNFileDownloader(_name, null, PIPELINES, _segments);
+		downloader.setTimeout(5000);
+		Assert.assertEquals(length, downloader.download(_file));
+		Assert.assertFalse(new File(_file.getPath() + CCNFileDownloader.PROGRESS_SUFFIX).exists());
+		checkFile(length);
+
+		Log.info(Log.FAC_TEST, "Completed testShortSegment");
+	}
+}
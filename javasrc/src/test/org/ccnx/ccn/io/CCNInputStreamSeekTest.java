@@ -0,0 +1,289 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.ContentVerifier;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests seeking in streams without headers using an in process stand-in for the network
+ * which remembers which segments were asked for.
+ */
+public class CCNInputStreamSeekTest {
+
+	static final int SEGMENT_LENGTH = 100;
+	static final int SEGMENTS = 1000;
+	static final int LAST_LENGTH = 37;
+	static final long LENGTH = (long)(SEGMENTS - 1) * SEGMENT_LENGTH + LAST_LENGTH;
+
+	/**
+	 * Answers each interest with the leftmost matching segment
+	 */
+	static class Segments extends CCNHandle {
+		final ExecutorService _net = Executors.newSingleThreadExecutor();
+		final ArrayList<ContentObject> _segments = new ArrayList<ContentObject>();
+		final HashSet<Long> _requested = new HashSet<Long>();
+		int _interests = 0;
+
+		Segments() {
+			super(false);
+		}
+
+		@Override
+		public ContentVerifier defaultVerifier() {
+			return new ContentVerifier() {
+				public boolean verify(ContentObject content) {
+					return true;
+				}
+			};
+		}
+
+		@Override
+		public void expressInterest(final Interest interest, final CCNContentHandler handler) throws IOException {
+			synchronized (_requested) {
+				_interests++;
+			}
+			_net.execute(new Runnable() {
+				public void run() {
+					for (ContentObject co : _segments) {
+						if (interest.matches(co)) {
+							synchronized (_requested) {
+								_requested.add(SegmentationProfile.getSegmentNumber(co.name()));
+							}
+							handler.handleContent(co, interest);
+							return;
+						}
+					}
+				}
+			});
+		}
+
+		@Override
+		public void cancelInterest(Interest interest, CCNContentHandler handler) {
+		}
+
+		@Override
+		public ContentObject get(Interest interest, long timeout) throws IOException {
+			boolean rightmost = null != interest.childSelector() && interest.childSelector() == Interest.CHILD_SELECTOR_RIGHT;
+			for (int i = 0; i < _segments.size(); i++) {
+				ContentObject co = _segments.get(rightmost ? _segments.size() - 1 - i : i);
+				if (interest.matches(co))
+					return co;
+			}
+			return null;
+		}
+
+		boolean requested(long segment) {
+			synchronized (_requested) {
+				return _requested.contains(segment);
+			}
+		}
+
+		int requestedCount() {
+			synchronized (_requested) {
+				return _requested.size();
+			}
+		}
+
+		int interestCount() {
+			synchronized (_requested) {
+				return _interests;
+			}
+		}
+	}
+
+	ContentName _name;
+	Segments _segments;
+
+	@Before
+	public void setUp() throws Exception {
+		_segments = new Segments();
+		_name = VersioningProfile.addVersion(new ContentName("test", "seek", Long.toString(System.nanoTime())));
+	}
+
+	@After
+	public void tearDown() {
+		_segments._net.shutdownNow();
+	}
+
+	private void makeSegments(boolean markFirst, boolean uneven) throws Exception {
+		makeSegments(_segments, _name, markFirst, uneven);
+	}
+
+	/**
+	 * Make the segments of a stream whose byte i is i % 251
+	 * @param markFirst whether the first segment says which is the last
+	 * @param uneven make a segment in the middle shorter, as a flush might
+	 */
+	static void makeSegments(Segments segments, ContentName name, boolean markFirst, boolean uneven) throws Exception {
+		PublisherPublicKeyDigest publisher = new PublisherPublicKeyDigest(new byte[32]);
+		KeyLocator locator = new KeyLocator(new ContentName("test", "key"));
+		byte [] finalBlockID = SegmentationProfile.getSegmentNumberNameComponent(SEGMENTS - 1);
+		Signature signature = new Signature(new byte[128]);
+		long position = 0;
+		for (int i = 0; i < SEGMENTS; i++) {
+			int length = (i == SEGMENTS - 1) ? LAST_LENGTH : ((uneven && i == SEGMENTS / 2) ? SEGMENT_LENGTH / 2 : SEGMENT_LENGTH);
+			byte [] content = new byte[length];
+			for (int j = 0; j < length; j++)
+				content[j] = (byte)((position++) % 251);
+			boolean isFinal = (i == SEGMENTS - 1) || (i == 0 && markFirst);
+			SignedInfo si = new SignedInfo(publisher, CCNTime.now(), SignedInfo.ContentType.DATA, locator,
+					null, isFinal ? finalBlockID : null);
+			segments._segments.add(new ContentObject(SegmentationProfile.segmentName(name, i), si, content, signature));
+		}
+	}
+
+	private void checkRead(CCNInputStream in, long position) throws Exception {
+		int b = in.read();
+		Assert.assertEquals((int)(position % 251), b);
+	}
+
+	@Test
+	public void testSeek() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSeek");
+
+		makeSegments(false, false);
+		CCNInputStream in = new CCNInputStream(_name, _segments);
+		in.setTimeout(1000);
+		checkRead(in, 0);
+
+		long [] positions = new long[]{ 75012, 75099, 75100, 150, 99, 0, LENGTH - 1, 31337 };
+		for (long position : positions) {
+			in.seek(position);
+			checkRead(in, position);
+		}
+		Assert.assertFalse(_segments.requested(500));
+		Assert.assertTrue("Asked for " + _segments.requestedCount() + " segments", _segments.requestedCount() < SEGMENTS / 10);
+
+		// Only the last segment knows it's last, so seeking past it takes a stream timeout
+		// to find out and then reads to the end
+		in.seek(LENGTH + 10);
+		Assert.assertEquals(-1, in.read());
+
+		Log.info(Log.FAC_TEST, "Completed testSeek");
+	}
+
+	@Test
+	public void testSeekFetches() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSeekFetches");
+
+		// Only the segments the pipeline asked for from the start before we seeked, and those
+		// from the one we land on, are asked for
+		makeSegments(false, false);
+		CCNInputStream in = new CCNInputStream(_name, _segments);
+		in.setTimeout(1000);
+		long position = 750 * SEGMENT_LENGTH + 12;
+		in.seek(position);
+		checkRead(in, position);
+		Assert.assertTrue(_segments.requested(0));
+		Assert.assertTrue(_segments.requested(750));
+		for (int i = SEGMENTS / 10; i < 750; i++)
+			Assert.assertFalse("Asked for segment " + i, _segments.requested(i));
+		Assert.assertTrue("Asked for " + _segments.requestedCount() + " segments", _segments.requestedCount() < SEGMENTS / 10);
+
+		// Seeking back goes straight there too
+		int count = _segments.requestedCount();
+		in.seek(300 * SEGMENT_LENGTH + 99);
+		checkRead(in, 300 * SEGMENT_LENGTH + 99);
+		Assert.assertTrue(_segments.requested(300));
+		Assert.assertFalse(_segments.requested(299));
+		Assert.assertTrue("Asked for " + (_segments.requestedCount() - count) + " more segments",
+				_segments.requestedCount() - count < SEGMENTS / 10);
+
+		Log.info(Log.FAC_TEST, "Completed testSeekFetches");
+	}
+
+	@Test
+	public void testSeekPastEnd() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSeekPastEnd");
+
+		makeSegments(true, false);
+		CCNInputStream in = new CCNInputStream(_name, _segments);
+		in.setTimeout(1000);
+		long start = System.currentTimeMillis();
+		in.seek(LENGTH + 10);
+		Assert.assertEquals(-1, in.read());
+		Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+		Assert.assertTrue("Asked for " + _segments.requestedCount() + " segments", _segments.requestedCount() < SEGMENTS / 10);
+
+		in.seek(LENGTH - 1);
+		checkRead(in, LENGTH - 1);
+		Assert.assertEquals(-1, in.read());
+
+		Log.info(Log.FAC_TEST, "Completed testSeekPastEnd");
+	}
+
+	@Test
+	public void testUnevenSegments() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testUnevenSegments");
+
+		// Landing on a short segment means we can't trust the arithmetic, so we read from the start
+		makeSegments(false, true);
+		CCNInputStream in = new CCNInputStream(_name, _segments);
+		in.setTimeout(1000);
+		long position = (SEGMENTS / 2) * SEGMENT_LENGTH + 10;
+		in.seek(position);
+		checkRead(in, position);
+		Assert.assertTrue(_segments.requested(SEGMENTS / 4));
+
+		Log.info(Log.FAC_TEST, "Completed testUnevenSegments");
+	}
+
+	@Test
+	public void testShortMiddleSegment() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testShortMiddleSegment");
+
+		// Past a short segment every later segment starts earlier than the arithmetic says,
+		// so told the segments may differ we must read from the start
+		makeSegments(false, true);
+		CCNInputStream in = new CCNInputStream(_name, _segments);
+		in.setTimeout(1000);
+		in.setFixedSegmentLength(0);
+		long [] positions = new long[]{ 75012, (SEGMENTS / 2) * SEGMENT_LENGTH + 60, 150, LENGTH - SEGMENT_LENGTH / 2 - 1 };
+		for (long position : positions) {
+			in.seek(position);
+			checkRead(in, position);
+		}
+		Assert.assertTrue(_segments.requested(SEGMENTS / 4));
+
+		Log.info(Log.FAC_TEST, "Completed testShortMiddleSegment");
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.KeyManager;
+import org.ccnx.ccn.KeyManagerScaffold;
+import org.ccnx.ccn.impl.CCNFlowControl;
+import org.ccnx.ccn.impl.support.DataUtils;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that writing a memory-mapped file to a CCNOutputStream makes the same segments
+ * as writing it through a stream.
+ */
+public class CCNOutputStreamMappedTest {
+
+	static final int LENGTH = 1000003;
+	static final int CHUNK = 8192;
+
+	/**
+	 * A handle which can sign but has no network
+	 */
+	static class SigningHandle extends CCNHandle {
+		final KeyManager _keyManager = new KeyManagerScaffold();
+
+		SigningHandle() {
+			super(false);
+		}
+
+		@Override
+		public KeyManager keyManager() {
+			return _keyManager;
+		}
+	}
+
+	/**
+	 * Keeps what is put, instead of waiting for interests
+	 */
+	static class Collector extends CCNFlowControl {
+		final ArrayList<ContentObject> _content = new ArrayList<ContentObject>();
+		final boolean _keep;
+		long _bytes = 0;
+
+		Collector(CCNHandle handle, boolean keep) throws IOException {
+			super(handle);
+			_keep = keep;
+		}
+
+		@Override
+		public void addNameSpace(ContentName name) {
+		}
+
+		@Override
+		public ContentObject put(ContentObject co) {
+			_bytes += co.contentLength();
+			if (_keep)
+				_content.add(co);
+			return co;
+		}
+	}
+
+	ContentName _name;
+	File _file;
+	CCNHandle _handle;
+
+	@Before
+	public void setUp() throws Exception {
+		_name = new ContentName("test", "mapped", Long.toString(System.nanoTime()));
+		_file = File.createTempFile("mapped", ".bin");
+		byte [] content = new byte[LENGTH];
+		for (int i = 0; i < LENGTH; i++)
+			content[i] = (byte)(i % 251);
+		FileOutputStream out = new FileOutputStream(_file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		_handle = new SigningHandle();
+	}
+
+	@After
+	public void tearDown() {
+		_file.delete();
+	}
+
+	/**
+	 * Publish the file through a stream, as ccnputfile does, writing the first lead bytes
+	 * a byte at a time and then CHUNK bytes at a time.
+	 */
+	static void writeStream(CCNOutputStream ostream, File file, int lead) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			for (int i = 0; i < lead; i++)
+				ostream.write(in.read());
+			byte [] buffer = new byte[CHUNK];
+			int count;
+			while ((count = in.read(buffer)) > 0)
+				ostream.write(buffer, 0, count);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Publish the file by mapping it, writing the first lead bytes a byte at a time
+	 */
+	static void writeMapped(CCNOutputStream ostream, File file, int lead) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			for (int i = 0; i < lead; i++)
+				ostream.write(in.read());
+			Assert.assertEquals(file.length() - lead, ostream.writeMapped(in.getChannel()));
+		} finally {
+			in.close();
+		}
+	}
+
+	private Collector publish(boolean mapped, int lead, byte [][] digest) throws IOException {
+		Collector collector = new Collector(_handle, true);
+		CCNOutputStream ostream = new CCNOutputStream(_name, null, _handle.keyManager().getDefaultKeyID(), null, null, collector);
+		if (mapped)
+			writeMapped(ostream, _file, lead);
+		else
+			writeStream(ostream, _file, lead);
+		Assert.assertEquals(LENGTH, ostream.lengthWritten());
+		digest[0] = ostream._dh.digest();
+		ostream.close();
+		return collector;
+	}
+
+	private void compare(int lead) throws IOException {
+		byte [][] streamDigest = new byte[1][];
+		byte [][] mappedDigest = new byte[1][];
+		Collector stream = publish(false, lead, streamDigest);
+		Collector mapped = publish(true, lead, mappedDigest);
+
+		Assert.assertTrue(DataUtils.arrayEquals(streamDigest[0], mappedDigest[0]));
+		Assert.assertEquals(LENGTH, mapped._bytes);
+		Assert.assertEquals(stream._content.size(), mapped._content.size());
+		for (int i = 0; i < stream._content.size(); i++) {
+			ContentObject expected = stream._content.get(i);
+			ContentObject actual = mapped._content.get(i);
+			Assert.assertEquals(expected.name(), actual.name());
+			Assert.assertTrue("Content of " + actual.name(), DataUtils.arrayEquals(expected.content(), actual.content()));
+			Assert.assertTrue(DataUtils.arrayEquals(expected.signedInfo().getFinalBlockID(), actual.signedInfo().getFinalBlockID()));
+			Assert.assertNotNull(actual.signature());
+		}
+	}
+
+	@Test
+	public void testMappedMatchesStream() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMappedMatchesStream");
+
+		compare(0);
+
+		Log.info(Log.FAC_TEST, "Completed testMappedMatchesStream");
+	}
+
+	@Test
+	public void testMappedAfterPartialBlock() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMappedAfterPartialBlock");
+
+		// Start part way through a block, so the mapped write has to fill it before slicing
+		compare(1000);
+
+		Log.info(Log.FAC_TEST, "Completed testMappedAfterPartialBlock");
+	}
+}
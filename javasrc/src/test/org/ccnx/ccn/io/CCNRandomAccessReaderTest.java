@@ -0,0 +1,233 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.ContentVerifier;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.CCNInputStreamSeekTest.Segments;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading ranges from many threads at once, using the in process stand-in for the
+ * network from CCNInputStreamSeekTest.
+ */
+public class CCNRandomAccessReaderTest {
+
+	static final int THREADS = 8;
+	static final int READS = 200;
+
+	/**
+	 * Verifying needs the network, as retrieving a key would
+	 */
+	static class KeyRetrievingSegments extends Segments {
+		@Override
+		public ContentVerifier defaultVerifier() {
+			return new ContentVerifier() {
+				public boolean verify(ContentObject content) {
+					Future<?> key = _net.submit(new Runnable() {
+						public void run() {
+						}
+					});
+					try {
+						key.get(1000, TimeUnit.MILLISECONDS);
+						return true;
+					} catch (Exception e) {
+						return false;
+					}
+				}
+			};
+		}
+	}
+
+	ContentName _name;
+	Segments _segments;
+
+	@Before
+	public void setUp() throws Exception {
+		_segments = new Segments();
+		_name = VersioningProfile.addVersion(new ContentName("test", "reader", Long.toString(System.nanoTime())));
+	}
+
+	@After
+	public void tearDown() {
+		_segments._net.shutdownNow();
+	}
+
+	private void checkRange(long position, ByteBuffer buf, int count) {
+		Assert.assertEquals(count, buf.position());
+		for (int i = 0; i < count; i++)
+			Assert.assertEquals("byte " + (position + i), (byte)((position + i) % 251), buf.get(i));
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testConcurrentReads");
+
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, false, false);
+		final CCNRandomAccessReader reader = new CCNRandomAccessReader(_name, null,
+				CCNInputStreamSeekTest.SEGMENTS, 0, _segments);
+		reader.setTimeout(5000);
+		reader.setFixedSegmentLength(CCNInputStreamSeekTest.SEGMENT_LENGTH);
+		final ArrayList<Throwable> failures = new ArrayList<Throwable>();
+		Thread [] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < READS; i++) {
+							long position = (long)(random.nextDouble() * CCNInputStreamSeekTest.LENGTH);
+							ByteBuffer buf = ByteBuffer.allocate(1 + random.nextInt(1000));
+							int count = reader.read(position, buf);
+							checkRange(position, buf, count);
+							Assert.assertEquals(Math.min(buf.capacity(), CCNInputStreamSeekTest.LENGTH - position), count);
+						}
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		if (!failures.isEmpty())
+			throw new Exception(failures.get(0));
+
+		// Everything fits in the cache so nothing should be asked for twice
+		Assert.assertEquals(_segments.requestedCount(), _segments.interestCount());
+		Assert.assertEquals(THREADS * READS, reader.getStats().getCounter("Reads"));
+		Assert.assertEquals(CCNInputStreamSeekTest.LENGTH, reader.length());
+
+		Log.info(Log.FAC_TEST, "Completed testConcurrentReads");
+	}
+
+	@Test
+	public void testSequentialReads() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSequentialReads");
+
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, false, false);
+		CCNRandomAccessReader reader = new CCNRandomAccessReader(_name, null, 16, 4, _segments);
+		reader.setTimeout(5000);
+		byte [] buf = new byte[CCNInputStreamSeekTest.SEGMENT_LENGTH];
+		long position = 0;
+		int count;
+		while ((count = reader.read(position, buf, 0, buf.length)) > 0) {
+			checkRange(position, ByteBuffer.wrap(buf, count, 0), count);
+			position += count;
+		}
+		Assert.assertEquals(CCNInputStreamSeekTest.LENGTH, position);
+		Assert.assertTrue(reader.getStats().getCounter("Prefetches") > 0);
+		Assert.assertTrue(reader.getStats().getCounter("SegmentHits") > reader.getStats().getCounter("SegmentMisses"));
+
+		// Past the end
+		Assert.assertEquals(-1, reader.read(position + 1000, ByteBuffer.allocate(10)));
+		Assert.assertEquals(0, reader.read(0, ByteBuffer.allocate(0)));
+
+		Log.info(Log.FAC_TEST, "Completed testSequentialReads");
+	}
+
+	@Test
+	public void testUnknownEnd() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testUnknownEnd");
+
+		// The first segment doesn't say which is last, so reading past the end has to find it
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, false, false);
+		CCNRandomAccessReader reader = new CCNRandomAccessReader(_name, null, _segments);
+		reader.setTimeout(500);
+		Assert.assertEquals(-1, reader.read(CCNInputStreamSeekTest.LENGTH + 10, ByteBuffer.allocate(10)));
+		ByteBuffer buf = ByteBuffer.allocate(100);
+		long position = CCNInputStreamSeekTest.LENGTH - 5;
+		Assert.assertEquals(5, reader.read(position, buf));
+		checkRange(position, buf, 5);
+		reader.close();
+
+		// Told the segments are all the same length, a short one is an error
+		_segments._segments.clear();
+		_name = VersioningProfile.addVersion(new ContentName("test", "reader", "uneven"));
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, true, true);
+		reader = new CCNRandomAccessReader(_name, null, _segments);
+		reader.setFixedSegmentLength(CCNInputStreamSeekTest.SEGMENT_LENGTH);
+		try {
+			reader.read(CCNInputStreamSeekTest.SEGMENTS / 2 * CCNInputStreamSeekTest.SEGMENT_LENGTH, ByteBuffer.allocate(10));
+			Assert.fail("Read from a short segment");
+		} catch (IOException e) {
+		}
+
+		Log.info(Log.FAC_TEST, "Completed testUnknownEnd");
+	}
+
+	@Test
+	public void testUnevenSegments() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testUnevenSegments");
+
+		// Segments of 100, 100, ... 50, 100, ... 37 bytes
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, false, true);
+		CCNRandomAccessReader reader = new CCNRandomAccessReader(_name, null, _segments);
+		reader.setTimeout(5000);
+		long length = CCNInputStreamSeekTest.LENGTH - CCNInputStreamSeekTest.SEGMENT_LENGTH / 2;
+		long shortSegment = CCNInputStreamSeekTest.SEGMENTS / 2 * CCNInputStreamSeekTest.SEGMENT_LENGTH;
+		long [] positions = new long[]{ 75012, shortSegment + 40, shortSegment - 10, 150, length - 20 };
+		for (long position : positions) {
+			ByteBuffer buf = ByteBuffer.allocate(100);
+			int count = reader.read(position, buf);
+			Assert.assertEquals(Math.min(100, length - position), count);
+			checkRange(position, buf, count);
+		}
+		Assert.assertEquals(length, reader.length());
+		Assert.assertEquals(-1, reader.read(length, ByteBuffer.allocate(10)));
+
+		Log.info(Log.FAC_TEST, "Completed testUnevenSegments");
+	}
+
+	@Test
+	public void testVerifyOffDeliveryThread() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testVerifyOffDeliveryThread");
+
+		// Verifying on the thread delivering segments would wait for itself
+		_segments._net.shutdownNow();
+		_segments = new KeyRetrievingSegments();
+		CCNInputStreamSeekTest.makeSegments(_segments, _name, true, false);
+		CCNRandomAccessReader reader = new CCNRandomAccessReader(_name, null, _segments);
+		reader.setTimeout(5000);
+		ByteBuffer buf = ByteBuffer.allocate(1000);
+		long position = 31337;
+		Assert.assertEquals(1000, reader.read(position, buf));
+		checkRange(position, buf, 1000);
+		Assert.assertEquals(0, reader.getStats().getCounter("VerifyFailures"));
+
+		Log.info(Log.FAC_TEST, "Completed testVerifyOffDeliveryThread");
+	}
+}
@@ -22,7 +22,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ ACLTest.class, NodeKeyTest.class })
+@SuiteClasses({ ACLTest.class, EffectiveACLCacheTest.class, NodeKeyTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,232 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.profiles.security.access.group;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.ContentVerifier;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.profiles.security.access.group.ACL.ACLObject;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.junit.Test;
+
+/**
+ * Tests the effective ACL and node key cache without a network. ACL monitoring is
+ * driven by calling the cache's update listener directly.
+ */
+public class EffectiveACLCacheTest {
+
+	/**
+	 * Keeps track of which interests are outstanding but never answers them
+	 */
+	static class SilentHandle extends CCNHandle {
+		final IdentityHashMap<CCNContentHandler, Interest> _pending = new IdentityHashMap<CCNContentHandler, Interest>();
+
+		SilentHandle() {
+			super(false);
+		}
+
+		@Override
+		public ContentVerifier defaultVerifier() {
+			return new ContentVerifier() {
+				public boolean verify(ContentObject content) {
+					return true;
+				}
+			};
+		}
+
+		@Override
+		public synchronized void expressInterest(Interest interest, CCNContentHandler handler) throws IOException {
+			_pending.put(handler, interest);
+		}
+
+		@Override
+		public synchronized void cancelInterest(Interest interest, CCNContentHandler handler) {
+			_pending.remove(handler);
+		}
+
+		synchronized boolean monitoring(ACLObject aclo) {
+			return _pending.containsKey(aclo);
+		}
+	}
+
+	static class TestACLObject extends ACLObject {
+		TestACLObject(ContentName nodeName, CCNHandle handle) throws IOException {
+			super(GroupAccessControlProfile.aclName(nodeName), new ACL(), handle);
+		}
+
+		void markGone() {
+			_isGone = true;
+		}
+	}
+
+	ContentName _root = new ContentName("test", "aclCache");
+	ContentName _a = new ContentName(_root, "a");
+	ContentName _b = new ContentName(_root, "b");
+	SilentHandle _handle = new SilentHandle();
+
+	@Test
+	public void testEffectiveACL() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testEffectiveACL");
+
+		EffectiveACLCache cache = new EffectiveACLCache(60000, 100);
+		ContentName file1 = new ContentName(_a, "file1");
+		ContentName file2 = new ContentName(_a, "dir", "file2");
+		Assert.assertNull(cache.getEffectiveACL(file1));
+
+		TestACLObject acl = new TestACLObject(_a, _handle);
+		cache.putEffectiveACL(file1, acl);
+		Assert.assertTrue(_handle.monitoring(acl));
+		Assert.assertSame(acl, cache.getEffectiveACL(file1));
+		Assert.assertNull(cache.getEffectiveACL(file2));
+
+		// A second copy of the same ACL should share the monitored object
+		TestACLObject copy = new TestACLObject(_a, _handle);
+		cache.putEffectiveACL(file2, copy);
+		Assert.assertFalse(_handle.monitoring(copy));
+		Assert.assertSame(acl, cache.getEffectiveACL(file2));
+
+		// Gone ACLs aren't cached
+		TestACLObject gone = new TestACLObject(_b, _handle);
+		gone.markGone();
+		cache.putEffectiveACL(new ContentName(_b, "file3"), gone);
+		Assert.assertNull(cache.getEffectiveACL(new ContentName(_b, "file3")));
+
+		Assert.assertEquals(2, cache.getStats().getCounter("ACLHits"));
+		Assert.assertEquals(3, cache.getStats().getCounter("ACLMisses"));
+
+		// Nothing is cached when disabled
+		cache = new EffectiveACLCache(0, 100);
+		cache.putEffectiveACL(file1, new TestACLObject(_a, _handle));
+		Assert.assertNull(cache.getEffectiveACL(file1));
+
+		Log.info(Log.FAC_TEST, "Completed testEffectiveACL");
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testExpiry");
+
+		EffectiveACLCache cache = new EffectiveACLCache(50, 100);
+		ContentName file1 = new ContentName(_a, "file1");
+		cache.putEffectiveACL(file1, new TestACLObject(_a, _handle));
+		Assert.assertNotNull(cache.getEffectiveACL(file1));
+		Thread.sleep(100);
+		Assert.assertNull(cache.getEffectiveACL(file1));
+		Assert.assertEquals(1, cache.getStats().getCounter("Expired"));
+
+		Log.info(Log.FAC_TEST, "Completed testExpiry");
+	}
+
+	@Test
+	public void testNewVersions() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testNewVersions");
+
+		EffectiveACLCache cache = new EffectiveACLCache(60000, 100);
+		ContentName file1 = new ContentName(_a, "file1");
+		NodeKey nk = nodeKey(_a);
+
+		// Node keys are only kept for monitored ACLs
+		cache.putNodeKey(_a, nk);
+		Assert.assertNull(cache.getNodeKey(_a));
+		TestACLObject acl = new TestACLObject(_a, _handle);
+		cache.putEffectiveACL(file1, acl);
+		cache.putNodeKey(_a, nk);
+		Assert.assertSame(nk, cache.getNodeKey(_a));
+
+		// A new version of the ACL keeps it but drops its node key
+		cache.newVersionAvailable(acl, false);
+		Assert.assertSame(acl, cache.getEffectiveACL(file1));
+		Assert.assertNull(cache.getNodeKey(_a));
+		Assert.assertEquals(1, cache.getStats().getCounter("ACLRefreshes"));
+
+		// When it goes away everything under it is dropped
+		cache.putNodeKey(_a, nk);
+		acl.markGone();
+		cache.newVersionAvailable(acl, false);
+		Assert.assertNull(cache.getEffectiveACL(file1));
+		Assert.assertNull(cache.getNodeKey(_a));
+		Assert.assertFalse(_handle.monitoring(acl));
+
+		Log.info(Log.FAC_TEST, "Completed testNewVersions");
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testInvalidate");
+
+		EffectiveACLCache cache = new EffectiveACLCache(60000, 100);
+		TestACLObject rootACL = new TestACLObject(_root, _handle);
+		ContentName aFile = new ContentName(_a, "file1");
+		ContentName bFile = new ContentName(_b, "file2");
+		cache.putEffectiveACL(aFile, rootACL);
+		cache.putEffectiveACL(bFile, rootACL);
+		cache.putNodeKey(_root, nodeKey(_root));
+
+		// Putting an ACL on a only affects what's under a
+		cache.invalidate(_a);
+		Assert.assertNull(cache.getEffectiveACL(aFile));
+		Assert.assertSame(rootACL, cache.getEffectiveACL(bFile));
+		Assert.assertNotNull(cache.getNodeKey(_root));
+		Assert.assertTrue(_handle.monitoring(rootACL));
+
+		// Changing the root ACL affects everything
+		cache.invalidate(_root);
+		Assert.assertNull(cache.getEffectiveACL(bFile));
+		Assert.assertNull(cache.getNodeKey(_root));
+		Assert.assertFalse(_handle.monitoring(rootACL));
+
+		Log.info(Log.FAC_TEST, "Completed testInvalidate");
+	}
+
+	@Test
+	public void testLimit() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testLimit");
+
+		EffectiveACLCache cache = new EffectiveACLCache(60000, 2);
+		TestACLObject [] acls = new TestACLObject[3];
+		for (int i = 0; i < acls.length; i++) {
+			ContentName node = new ContentName(_root, "n" + i);
+			acls[i] = new TestACLObject(node, _handle);
+			cache.putEffectiveACL(new ContentName(node, "file"), acls[i]);
+		}
+		Assert.assertFalse(_handle.monitoring(acls[0]));
+		Assert.assertTrue(_handle.monitoring(acls[1]));
+		Assert.assertTrue(_handle.monitoring(acls[2]));
+		Assert.assertNull(cache.getEffectiveACL(new ContentName(_root, "n0", "file")));
+
+		cache.clear();
+		Assert.assertFalse(_handle.monitoring(acls[1]));
+		Assert.assertFalse(_handle.monitoring(acls[2]));
+
+		Log.info(Log.FAC_TEST, "Completed testLimit");
+	}
+
+	private NodeKey nodeKey(ContentName node) throws Exception {
+		return new NodeKey(VersioningProfile.addVersion(GroupAccessControlProfile.nodeKeyName(node)),
+				new byte[NodeKey.DEFAULT_NODE_KEY_LENGTH]);
+	}
+}
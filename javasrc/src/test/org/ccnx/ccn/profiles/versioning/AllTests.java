@@ -23,7 +23,7 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ InterestDataTest.class, TreeSet6Test.class,
-		VersionNumberTest.class })
+		VersionNumberTest.class, LatestVersionDiscoveryTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,267 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.profiles.versioning;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNContentHandler;
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.ContentVerifier;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests finding the latest version from several responders which each know of different versions
+ * using an in process stand-in for the network.
+ */
+public class LatestVersionDiscoveryTest {
+
+	static final long LATENCY = 20; // ms to the nearest responder
+	static final long HOUR = 3600 * 1000;
+	static final int RESPONDERS = 4;
+
+	/**
+	 * Each responder answers an interest with the latest matching object it has after its latency.
+	 * As on the network only the first answer to an interest is delivered. The responders which know
+	 * about later versions are further away, like caches in front of a repository.
+	 */
+	static class Responders extends CCNHandle {
+		final ScheduledExecutorService _net = Executors.newScheduledThreadPool(RESPONDERS);
+		final ArrayList<ArrayList<ContentObject>> _content = new ArrayList<ArrayList<ContentObject>>();
+		final IdentityHashMap<Interest, CCNContentHandler> _pending = new IdentityHashMap<Interest, CCNContentHandler>();
+		int _interests = 0;
+
+		Responders() {
+			super(false);
+		}
+
+		void addResponder(ArrayList<ContentObject> content) {
+			Collections.sort(content);
+			_content.add(content);
+		}
+
+		@Override
+		public void expressInterest(final Interest interest, final CCNContentHandler handler) throws IOException {
+			synchronized (_pending) {
+				_pending.put(interest, handler);
+				_interests++;
+			}
+			for (int r = 0; r < _content.size(); r++) {
+				final ArrayList<ContentObject> content = _content.get(r);
+				_net.schedule(new Runnable() {
+					public void run() {
+						for (int i = content.size() - 1; i >= 0; i--) {
+							ContentObject co = content.get(i);
+							if (interest.matches(co)) {
+								CCNContentHandler h;
+								synchronized (_pending) {
+									h = _pending.remove(interest);
+								}
+								if (null != h)
+									h.handleContent(co, interest);
+								return;
+							}
+						}
+					}
+				}, LATENCY * (r + 1), TimeUnit.MILLISECONDS);
+			}
+		}
+
+		@Override
+		public void cancelInterest(Interest interest, CCNContentHandler handler) {
+			synchronized (_pending) {
+				_pending.remove(interest);
+			}
+		}
+
+		@Override
+		public ContentObject get(Interest interest, long timeout) throws IOException {
+			final LinkedBlockingQueue<ContentObject> result = new LinkedBlockingQueue<ContentObject>();
+			CCNContentHandler handler = new CCNContentHandler() {
+				public Interest handleContent(ContentObject data, Interest interest) {
+					result.add(data);
+					return null;
+				}
+			};
+			expressInterest(interest, handler);
+			try {
+				return result.poll(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return null;
+			} finally {
+				cancelInterest(interest, handler);
+			}
+		}
+
+		void shutdown() {
+			_net.shutdownNow();
+		}
+	}
+
+	/**
+	 * Accepts everything except the versions it's told to reject
+	 */
+	static class TestVerifier implements ContentVerifier {
+		final ArrayList<ContentName> _reject = new ArrayList<ContentName>();
+
+		public boolean verify(ContentObject content) {
+			return !_reject.contains(content.name().cut(content.name().count() - 1));
+		}
+	}
+
+	ContentName _prefix;
+	ContentName [] _versions = new ContentName[RESPONDERS];
+	Responders _responders;
+	TestVerifier _verifier = new TestVerifier();
+	long _savedAttemptTimeout;
+	int _savedRanges;
+
+	@Before
+	public void setUp() throws Exception {
+		_savedAttemptTimeout = SystemConfiguration.GLV_ATTEMPT_TIMEOUT;
+		_savedRanges = SystemConfiguration.GLV_RANGES;
+		SystemConfiguration.GLV_ATTEMPT_TIMEOUT = 200;
+
+		// Responder i knows about the versions up to i which are spread out over the last few hours
+		_prefix = new ContentName("test", "discovery", Long.toString(System.nanoTime()));
+		long now = System.currentTimeMillis();
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), CCNTime.now(),
+				SignedInfo.ContentType.DATA, new KeyLocator(new ContentName("test", "key")));
+		Signature signature = new Signature(new byte[128]);
+		ContentObject [] objects = new ContentObject[RESPONDERS];
+		for (int i = 0; i < RESPONDERS; i++) {
+			_versions[i] = new ContentName(_prefix, new CCNTime(now - (RESPONDERS - i) * HOUR));
+			objects[i] = new ContentObject(SegmentationProfile.segmentName(_versions[i], SegmentationProfile.baseSegment()),
+					si, ("version " + i).getBytes(), signature);
+		}
+		_responders = new Responders();
+		for (int i = 0; i < RESPONDERS; i++) {
+			ArrayList<ContentObject> content = new ArrayList<ContentObject>();
+			for (int j = 0; j <= i; j++)
+				content.add(objects[j]);
+			_responders.addResponder(content);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		SystemConfiguration.GLV_ATTEMPT_TIMEOUT = _savedAttemptTimeout;
+		SystemConfiguration.GLV_RANGES = _savedRanges;
+		_responders.shutdown();
+	}
+
+	@Test
+	public void testFindLatest() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testFindLatest");
+
+		long [] times = new long[2];
+		int [] interests = new int[2];
+		int [] ranges = new int[]{1, RESPONDERS};
+		for (int i = 0; i < ranges.length; i++) {
+			SystemConfiguration.GLV_RANGES = ranges[i];
+			int startInterests = _responders._interests;
+			long start = System.currentTimeMillis();
+			ContentObject result = VersioningProfile.getLatestVersion(_prefix, null, 5000, _verifier, _responders);
+			times[i] = System.currentTimeMillis() - start;
+			interests[i] = _responders._interests - startInterests;
+			Assert.assertNotNull(result);
+			Assert.assertEquals(_versions[RESPONDERS - 1], result.name().cut(_prefix.count() + 1));
+
+			result = VersioningProfile.getFirstBlockOfLatestVersion(_prefix, null, null, 5000, _verifier, _responders);
+			Assert.assertNotNull(result);
+			Assert.assertEquals(_versions[RESPONDERS - 1], result.name().cut(_prefix.count() + 1));
+		}
+		Log.info(Log.FAC_TEST, "Found latest of {0} versions with {1}ms latency: serial {2}ms ({3} interests), {4} ranges {5}ms ({6} interests)",
+				RESPONDERS, LATENCY, times[0], interests[0], RESPONDERS, times[1], interests[1]);
+
+		Log.info(Log.FAC_TEST, "Completed testFindLatest");
+	}
+
+	@Test
+	public void testStartingVersion() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testStartingVersion");
+
+		SystemConfiguration.GLV_RANGES = RESPONDERS;
+		ContentObject result = VersioningProfile.getLatestVersion(_versions[1], null, 5000, _verifier, _responders);
+		Assert.assertNotNull(result);
+		Assert.assertEquals(_versions[RESPONDERS - 1], result.name().cut(_prefix.count() + 1));
+
+		// Nothing later than the latest so we should time out
+		long start = System.currentTimeMillis();
+		result = VersioningProfile.getLatestVersion(_versions[RESPONDERS - 1], null, 500, _verifier, _responders);
+		Assert.assertNull(result);
+		Assert.assertTrue(System.currentTimeMillis() - start >= 500);
+
+		// With a timeout of 0 we want the first thing we can get
+		result = VersioningProfile.getLatestVersion(_prefix, null, 0, _verifier, _responders);
+		Assert.assertNotNull(result);
+
+		Log.info(Log.FAC_TEST, "Completed testStartingVersion");
+	}
+
+	@Test
+	public void testUnverified() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testUnverified");
+
+		SystemConfiguration.GLV_RANGES = RESPONDERS;
+		_verifier._reject.add(_versions[RESPONDERS - 1]);
+		ContentObject result = VersioningProfile.getLatestVersion(_prefix, null, 5000, _verifier, _responders);
+		Assert.assertNotNull(result);
+		Assert.assertEquals(_versions[RESPONDERS - 2], result.name().cut(_prefix.count() + 1));
+
+		Log.info(Log.FAC_TEST, "Completed testUnverified");
+	}
+
+	@Test
+	public void testRanges() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testRanges");
+
+		LatestVersionDiscovery lvd = new LatestVersionDiscovery(_responders, _prefix, null,
+				VersioningProfile.latestVersionInterest(_prefix, null, null), RESPONDERS, _verifier);
+		Assert.assertEquals(RESPONDERS, lvd.getRangeCount());
+
+		// Starting in the future there's nothing to split
+		lvd = new LatestVersionDiscovery(_responders, _prefix, new VersionNumber(System.currentTimeMillis() + HOUR),
+				VersioningProfile.latestVersionInterest(_prefix, null, null), RESPONDERS, _verifier);
+		Assert.assertEquals(1, lvd.getRangeCount());
+
+		Log.info(Log.FAC_TEST, "Completed testRanges");
+	}
+}
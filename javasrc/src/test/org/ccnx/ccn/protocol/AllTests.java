@@ -23,6 +23,7 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({ CCNTimeTest.class, ComponentTest.class, ContentNameTest.class,
 		ContentObjectTest.class, ExcludeTest.class, InterestTest.class,
-		KeyLocatorTest.class, PublisherIDTest.class, SignedInfoTest.class })
+		KeyLocatorTest.class, PublisherIDTest.class, SignedInfoTest.class,
+		BinaryEncodingTest.class, LazyContentTest.class })
 public class AllTests {
 }
\ No newline at end of file
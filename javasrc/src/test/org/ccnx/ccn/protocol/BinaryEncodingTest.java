@@ -0,0 +1,164 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
+import org.ccnx.ccn.impl.encoding.BinaryXMLEncoder;
+import org.ccnx.ccn.impl.encoding.GenericXMLEncodable;
+import org.ccnx.ccn.impl.encoding.TextXMLCodec;
+import org.ccnx.ccn.impl.encoding.XMLCodecFactory;
+import org.ccnx.ccn.impl.support.DataUtils;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.ConfigSlice;
+import org.ccnx.ccn.io.content.WrappingKeyName;
+import org.ccnx.ccn.protocol.PublisherID.PublisherType;
+import org.ccnx.ccn.protocol.SignedInfo.ContentType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the objects which encode themselves straight into a BinaryXMLBuffer produce
+ * exactly the bytes BinaryXMLEncoder does.
+ */
+public class BinaryEncodingTest {
+
+	static KeyPair pair;
+	static PublisherPublicKeyDigest publisher;
+	static ContentName name;
+	static byte [] content;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(512);
+		pair = kpg.generateKeyPair();
+		publisher = new PublisherPublicKeyDigest(pair.getPublic());
+		byte [] big = new byte[300];
+		Arrays.fill(big, (byte)0x7f);
+		name = new ContentName(new byte[][]{"test".getBytes(), new byte[0], big, new byte[]{0, (byte)0xff}});
+		content = new byte[5000];
+		for (int i = 0; i < content.length; i++)
+			content[i] = (byte)i;
+	}
+
+	protected static byte [] generic(GenericXMLEncodable encodable) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		BinaryXMLEncoder encoder = new BinaryXMLEncoder();
+		encoder.beginEncoding(baos);
+		encodable.encode(encoder);
+		encoder.endEncoding();
+		return baos.toByteArray();
+	}
+
+	protected static void check(String what, GenericXMLEncodable encodable) throws Exception {
+		byte [] expected = generic(encodable);
+		byte [] direct = encodable.encode(BinaryXMLCodec.codecName());
+		if (!Arrays.equals(expected, direct))
+			Assert.fail(what + ": expected " + DataUtils.printHexBytes(expected) + " got " + DataUtils.printHexBytes(direct));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		encodable.encode(baos, BinaryXMLCodec.codecName());
+		Assert.assertTrue(what, Arrays.equals(expected, baos.toByteArray()));
+		Assert.assertEquals(what, expected.length, encodable.encodedLength());
+	}
+
+	@Test
+	public void testNamesAndInterests() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testNamesAndInterests");
+
+		check("empty name", new ContentName());
+		check("name", name);
+		check("plain interest", new Interest(name));
+		check("publisher interest", new Interest(name, publisher));
+		// A subclass which changes encode(XMLEncoder) doesn't use ContentName's direct writer
+		Assert.assertFalse(GenericXMLEncodable.encodesBinaryDirectly(ConfigSlice.Filter.class));
+		Assert.assertTrue(GenericXMLEncodable.encodesBinaryDirectly(WrappingKeyName.class));
+		check("filter", new ConfigSlice.Filter(name));
+
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		elements.add(new ExcludeAny());
+		elements.add(new ExcludeComponent("a".getBytes()));
+		elements.add(new ExcludeComponent("b".getBytes()));
+		elements.add(new ExcludeAny());
+		elements.add(new ExcludeComponent("c".getBytes()));
+		Exclude exclude = new Exclude(elements);
+		check("exclude", exclude);
+		check("empty exclude", new Exclude());
+
+		Interest interest = new Interest(name);
+		interest.minSuffixComponents(1);
+		interest.maxSuffixComponents(300);
+		interest.publisherID(new PublisherID(publisher.digest(), PublisherType.ISSUER_KEY));
+		interest.exclude(exclude);
+		interest.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		interest.answerOriginKind(Interest.ANSWER_GENERATED);
+		interest.scope(2);
+		interest._nonce = Component.NONCE.getComponent();
+		check("full interest", interest);
+
+		Interest decoded = new Interest();
+		decoded.decode(interest.encode());
+		Assert.assertEquals(interest, decoded);
+
+		Log.info(Log.FAC_TEST, "Completed testNamesAndInterests");
+	}
+
+	@Test
+	public void testContentObjects() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testContentObjects");
+
+		byte [] bits = new byte[128];
+		Arrays.fill(bits, (byte)0xa5);
+		SignedInfo [] infos = new SignedInfo[]{
+				new SignedInfo(publisher, CCNTime.now(), ContentType.DATA, new KeyLocator(new ContentName("test", "key"))),
+				new SignedInfo(publisher, CCNTime.now(), ContentType.KEY, new KeyLocator(pair.getPublic()), 10, new byte[]{0, 3}),
+				new SignedInfo(publisher, CCNTime.now(), ContentType.LINK,
+						new KeyLocator(new ContentName("test", "key"), publisher), 0, new byte[0], new byte[]{9, 9}),
+		};
+		for (int i = 0; i < infos.length; i++) {
+			check("signed info " + i, infos[i]);
+			check("key locator " + i, infos[i].getKeyLocator());
+			ContentObject co = new ContentObject(name, infos[i], content, new Signature(bits));
+			check("content object " + i, co);
+			check("empty content object " + i, new ContentObject(name, infos[i], new byte[0], new Signature(new byte[]{1}, bits)));
+			check("signature " + i, co.signature());
+
+			byte [] prepared = ContentObject.prepareContent(name, infos[i], content, 10, 1000);
+			XMLCodecFactory.setDirectBinaryEncoding(false);
+			try {
+				Assert.assertTrue(Arrays.equals(ContentObject.prepareContent(name, infos[i], content, 10, 1000), prepared));
+				Assert.assertTrue(Arrays.equals(generic(co), co.encode()));
+			} finally {
+				XMLCodecFactory.setDirectBinaryEncoding(true);
+			}
+		}
+
+		// Other codecs still go through their encoders
+		Assert.assertFalse(XMLCodecFactory.useDirectBinaryEncoding(TextXMLCodec.codecName()));
+		Assert.assertTrue(new String(name.encode(TextXMLCodec.codecName())).startsWith("<?xml"));
+
+		Log.info(Log.FAC_TEST, "Completed testContentObjects");
+	}
+}
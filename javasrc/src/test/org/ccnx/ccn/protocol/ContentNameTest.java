@@ -32,10 +32,13 @@ import java.net.URISyntaxException;
 import java.util.Arrays;
 
 import org.ccnx.ccn.encoding.XMLEncodableTester;
+import org.ccnx.ccn.impl.encoding.BinaryXMLCodec;
 import org.ccnx.ccn.impl.support.DataUtils;
 import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.io.content.ConfigSlice;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
+import org.ccnx.ccn.profiles.namespace.ParameterizedName;
 import org.ccnx.ccn.profiles.versioning.VersionNumber;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -675,4 +678,27 @@ public class ContentNameTest {
 
 		Log.info(Log.FAC_TEST, "Completed testNameManipulation");
 	}
+
+	@Test
+	public void testEncodedLength() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testEncodedLength");
+
+		// Cover the boundaries where the length of a blob header grows
+		int [] sizes = {0, 1, 15, 16, 2047, 2048, 262143, 262144};
+		checkEncodedLength(new ContentName());
+		for (int size : sizes) {
+			byte [] component = new byte[size];
+			checkEncodedLength(new ContentName(component));
+			checkEncodedLength(new ContentName(ContentName.fromNative("/a/b"), component));
+		}
+		ContentName name = ContentName.fromNative("/contentNameTest/encodedLength/test");
+		checkEncodedLength(new ConfigSlice.Filter(name));
+		checkEncodedLength(new ParameterizedName.PrefixName(name));
+
+		Log.info(Log.FAC_TEST, "Completed testEncodedLength");
+	}
+	
+	private void checkEncodedLength(ContentName name) throws ContentEncodingException {
+		assertEquals(name.encode(BinaryXMLCodec.codecName()).length, name.encodedLength());
+	}
 }
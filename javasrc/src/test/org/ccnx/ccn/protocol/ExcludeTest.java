@@ -20,10 +20,12 @@ package org.ccnx.ccn.protocol;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 
 import org.ccnx.ccn.impl.support.Log;
 import org.ccnx.ccn.io.content.ContentDecodingException;
 import org.ccnx.ccn.io.content.ContentEncodingException;
+import org.ccnx.ccn.profiles.SegmentationProfile;
 import org.ccnx.ccn.protocol.BloomFilter;
 import org.ccnx.ccn.protocol.ExcludeAny;
 import org.ccnx.ccn.protocol.ExcludeComponent;
@@ -185,6 +187,116 @@ public class ExcludeTest {
 		Log.info(Log.FAC_TEST, "Completed testAdd");
 	}
 
+	@Test
+	public void testAddAfterFiller() {
+		Log.info(Log.FAC_TEST, "Starting testAddAfterFiller");
+
+		// Omissions past the last component keep the trailing filler in force
+		al.add(c1);
+		al.add(any);
+		ef = new Exclude(al);
+		ef.add(new byte[][]{b06, b3});
+		assertEquals(2, ef.size());
+		assertTrue(ef.match(b06));
+		assertTrue(ef.match(b000));
+
+		al.clear();
+		al.add(new ExcludeComponent(b0));
+		al.add(bloom);
+		ef = new Exclude(al);
+		ef.add(new byte[][]{b06, b3, b06});
+		assertEquals(4, ef.size());
+		assertTrue(ef.value(2) instanceof ExcludeComponent);
+		assertTrue(ef.match(b3));
+		assertTrue(ef.match(b06));
+		assertTrue(ef.match(b0));
+		assertFalse(ef.match(b000));
+
+		Log.info(Log.FAC_TEST, "Completed testAddAfterFiller");
+	}
+
+	@Test
+	public void testMatchLarge() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testMatchLarge");
+
+		// Exclude every third segment, and everything from 3000 up with an any. Also
+		// decode a copy with its components out of order, which is matched the slow way.
+		ef = new Exclude();
+		for (int i = 0; i < 3000; i += 3)
+			ef.add(new byte[][]{SegmentationProfile.getSegmentNumberNameComponent(i)});
+		ef.excludeUpto(SegmentationProfile.getSegmentNumberNameComponent(0));
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		for (int i = 0; i < ef.size(); i++)
+			elements.add(ef.value(i));
+		elements.add(any);
+		ef = new Exclude(elements);
+		Exclude added = new Exclude();
+		added.decode(ef.encode());
+		added.add(new byte[][]{SegmentationProfile.getSegmentNumberNameComponent(1)});
+		Exclude decoded = new Exclude();
+		Collections.swap(elements, 2, 3);
+		decoded._elements = new Exclude.Elements(elements);
+		assertFalse(decoded._elements._sorted);
+
+		for (int i = 0; i < 3500; i++) {
+			byte [] component = SegmentationProfile.getSegmentNumberNameComponent(i);
+			boolean expected = (i % 3 == 0) || i > 2997;
+			assertEquals("segment " + i, expected, ef.match(component));
+			if (i > 10)
+				assertEquals("segment " + i, expected, decoded.match(component));
+		}
+		assertTrue(added.match(SegmentationProfile.getSegmentNumberNameComponent(1)));
+		assertFalse(ef.match(SegmentationProfile.getSegmentNumberNameComponent(1)));
+
+		Log.info(Log.FAC_TEST, "Completed testMatchLarge");
+	}
+
+	@Test
+	public void testExcludedRange() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testExcludedRange");
+
+		// any 1 any 3 06 bloom 000 any
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		elements.add(any);
+		elements.add(c1);
+		elements.add(any);
+		elements.add(c3);
+		elements.add(c06);
+		elements.add(bloom);
+		elements.add(new ExcludeComponent(b000));
+		elements.add(any);
+		ef = new Exclude(elements);
+
+		Exclude.Range range = ef.excludedRange(b0);
+		assertNotNull(range);
+		assertNull(range.low());
+		assertArrayEquals(b3, range.high());
+		range = ef.excludedRange(b3);
+		assertNotNull(range);
+		assertNull(range.low());
+		assertArrayEquals(b3, range.high());
+		range = ef.excludedRange("2".getBytes());
+		assertArrayEquals(b3, range.high());
+		// 06 is excluded on its own, and bloom ranges aren't skipped
+		assertNull(ef.excludedRange(b06));
+		assertNull(ef.excludedRange("4".getBytes()));
+		assertNull(ef.excludedRange("07".getBytes()));
+		range = ef.excludedRange(b000);
+		assertArrayEquals(b000, range.low());
+		assertNull(range.high());
+		range = ef.excludedRange("0000".getBytes());
+		assertArrayEquals(b000, range.low());
+
+		ef = new Exclude(array);
+		assertNull(ef.excludedRange(b1));
+		assertNull(ef.excludedRange(b0));
+		ef = Exclude.uptoFactory(b1);
+		assertNull(ef.excludedRange(b06));
+		assertArrayEquals(b1, ef.excludedRange(b1).high());
+
+		Log.info(Log.FAC_TEST, "Completed testExcludedRange");
+	}
+
 	@Test
 	public void testEmpty() {
 		Log.info(Log.FAC_TEST, "Starting testEmpty");
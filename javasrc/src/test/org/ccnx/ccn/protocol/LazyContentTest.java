@@ -0,0 +1,159 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.encoding.BinaryXMLDecoder;
+import org.ccnx.ccn.impl.encoding.CCNProtocolDTags;
+import org.ccnx.ccn.impl.encoding.LazyBlob;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.SignedInfo.ContentType;
+import org.junit.Test;
+
+/**
+ * Tests decoding content objects with their content left unread.
+ */
+public class LazyContentTest {
+
+	/**
+	 * Reads blobs from an array, counting the reads
+	 */
+	static class ArraySource implements LazyBlob.Source {
+		final byte [] _encoded;
+		int _reads = 0;
+		boolean _fail = false;
+
+		ArraySource(byte [] encoded) {
+			_encoded = encoded;
+		}
+
+		public LazyBlob blob(final long offset, int length) {
+			return new LazyBlob(length) {
+				@Override
+				public void read(byte [] buffer, int bufferOffset) throws IOException {
+					_reads++;
+					if (_fail)
+						throw new IOException("Gone away");
+					System.arraycopy(_encoded, (int)offset, buffer, bufferOffset, _length);
+				}
+			};
+		}
+	}
+
+	protected ContentObject decode(byte [] encoded, int threshold, LazyBlob.Source source) throws Exception {
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.setLazyBlobs(threshold, source);
+		decoder.beginDecoding(new ByteArrayInputStream(encoded));
+		ContentObject co = new ContentObject();
+		co.decode(decoder);
+		decoder.endDecoding();
+		return co;
+	}
+
+	protected static byte [] makeContent() {
+		byte [] content = new byte[5000];
+		for (int i = 0; i < content.length; i++)
+			content[i] = (byte)(i * 7);
+		return content;
+	}
+
+	protected static ContentObject makeObject(ContentName name, SignedInfo signedInfo, byte [] content) {
+		byte [] bits = new byte[128];
+		Arrays.fill(bits, (byte)0x3c);
+		return new ContentObject(name, signedInfo, content, new Signature(bits));
+	}
+
+	@Test
+	public void testLazyContent() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testLazyContent");
+
+		byte [] content = makeContent();
+		ContentName name = new ContentName("test", "lazy", "content");
+		PublisherPublicKeyDigest publisher = new PublisherPublicKeyDigest(new byte[32]);
+		SignedInfo signedInfo = new SignedInfo(publisher, CCNTime.now(), ContentType.DATA,
+				new KeyLocator(new ContentName("test", "key")));
+		ContentObject co = makeObject(name, signedInfo, content);
+		byte [] encoded = co.encode();
+
+		// Content under the threshold is read as usual
+		ArraySource source = new ArraySource(encoded);
+		ContentObject small = decode(encoded, content.length + 1, source);
+		Assert.assertEquals(co, small);
+		Assert.assertEquals(0, source._reads);
+
+		ContentObject lazy = decode(encoded, 1024, source);
+		Assert.assertEquals(0, source._reads);
+		Assert.assertEquals(name, lazy.name());
+		Assert.assertEquals(signedInfo, lazy.signedInfo());
+		Assert.assertEquals(content.length, lazy.contentLength());
+		// Encoding copies the content from the source without keeping it
+		Assert.assertTrue(Arrays.equals(encoded, lazy.encode()));
+		Assert.assertEquals(1, source._reads);
+		Assert.assertTrue(Arrays.equals(content, lazy.content()));
+		Assert.assertEquals(2, source._reads);
+		Assert.assertTrue(Arrays.equals(content, lazy.content()));
+		Assert.assertEquals(2, source._reads);
+		Assert.assertEquals(co, lazy);
+
+		// Callers which don't ask for lazy blobs get the bytes
+		BinaryXMLDecoder decoder = new BinaryXMLDecoder();
+		decoder.setLazyBlobs(1024, source);
+		decoder.beginDecoding(new ByteArrayInputStream(encoded));
+		decoder.readStartElement(CCNProtocolDTags.ContentObject);
+		new Signature().decode(decoder);
+		new ContentName().decode(decoder);
+		new SignedInfo().decode(decoder);
+		Assert.assertNull(decoder.readLazyBinaryElement(CCNProtocolDTags.Name));
+		Assert.assertTrue(Arrays.equals(content, decoder.readBinaryElement(CCNProtocolDTags.Content)));
+		decoder.readEndElement();
+		decoder.endDecoding();
+
+		Log.info(Log.FAC_TEST, "Completed testLazyContent");
+	}
+
+	@Test
+	public void testUnreadableContent() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testUnreadableContent");
+
+		byte [] content = makeContent();
+		SignedInfo signedInfo = new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), CCNTime.now(), ContentType.DATA,
+				new KeyLocator(new ContentName("test", "key")));
+		byte [] encoded = makeObject(new ContentName("test", "lazy", "unreadable"), signedInfo, content).encode();
+		ArraySource source = new ArraySource(encoded);
+		ContentObject lazy = decode(encoded, 1024, source);
+
+		// A failed read is reported, not turned into missing content, and can be tried again
+		source._fail = true;
+		try {
+			lazy.content();
+			Assert.fail("Read content which couldn't be read");
+		} catch (LazyBlob.UnreadableBlobException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertEquals(content.length, lazy.contentLength());
+		source._fail = false;
+		Assert.assertTrue(Arrays.equals(content, lazy.content()));
+
+		Log.info(Log.FAC_TEST, "Completed testUnreadableContent");
+	}
+}
@@ -22,7 +22,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ RepositoryInfoTest.class })
+@SuiteClasses({ ContentTreeTest.class, LogStructRepoStoreImportTest.class, RepositoryInfoTest.class, RepositoryIngestSchedulerTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,246 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation. 
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNTestBaseNoCcnd;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.repo.ContentRef;
+import org.ccnx.ccn.impl.repo.ContentTree;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.profiles.CommandMarker;
+import org.ccnx.ccn.profiles.SegmentationProfile;
+import org.ccnx.ccn.profiles.VersioningProfile;
+import org.ccnx.ccn.profiles.nameenum.NameEnumerationResponse;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Exclude;
+import org.ccnx.ccn.protocol.ExcludeAny;
+import org.ccnx.ccn.protocol.ExcludeComponent;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the index used by the repository without a repository or ccnd.
+ */
+public class ContentTreeTest {
+	
+	static class TestRef extends ContentRef {
+		ContentObject co;
+		TestRef(ContentObject co) {
+			this.co = co;
+		}
+	}
+	
+	static class TestGetter implements ContentTree.ContentGetter {
+		public ContentObject get(ContentRef ref) {
+			return ((TestRef)ref).co;
+		}
+	}
+	
+	static PublisherPublicKeyDigest pub;
+	static KeyLocator locator;
+	static ContentName responseName = new ContentName("TestRepo");
+	static int savedPageSize;
+	
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		byte [] publisher = new byte[32];
+		new Random().nextBytes(publisher);
+		pub = new PublisherPublicKeyDigest(publisher);
+		locator = new KeyLocator(ContentName.fromNative("/test/key"));
+		savedPageSize = SystemConfiguration.NE_PAGE_SIZE;
+		SystemConfiguration.NE_PAGE_SIZE = 10;
+	}
+	
+	@AfterClass
+	public static void tearDownAfterClass() {
+		SystemConfiguration.NE_PAGE_SIZE = savedPageSize;
+	}
+	
+	static void insert(ContentTree tree, ContentName name, long ts) {
+		SignedInfo si = new SignedInfo(pub, new CCNTime(ts), SignedInfo.ContentType.DATA, locator);
+		ContentObject co = new ContentObject(name, si, "data".getBytes(), CCNTestBaseNoCcnd.fakeSignature);
+		tree.insert(co, new TestRef(co), ts, new TestGetter(), null);
+	}
+	
+	static ContentName child(ContentName prefix, int i) {
+		return new ContentName(prefix, String.format("child%05d", i));
+	}
+	
+	/**
+	 * Read all pages of a paged enumeration starting from the first
+	 * @return the names listed, or null if the first request got no response
+	 */
+	static TreeSet<ContentName> readPages(ContentTree tree, ContentName prefix, CCNTime since, int [] pageCount) {
+		TreeSet<ContentName> names = new TreeSet<ContentName>();
+		byte [] start = NameEnumerationResponse.FIRST_PAGE;
+		pageCount[0] = 0;
+		while (true) {
+			Interest interest = new Interest(NameEnumerationResponse.pagedEnumerationName(prefix, since, start));
+			NameEnumerationResponse ner = tree.getNamesWithPrefix(interest, responseName);
+			if (null == ner)
+				return (pageCount[0] == 0) ? null : names;
+			pageCount[0]++;
+			Assert.assertTrue(ner.getNames().size() <= SystemConfiguration.NE_PAGE_SIZE);
+			for (ContentName n : ner.getNames())
+				Assert.assertTrue("duplicate name " + n, names.add(n));
+			if (!ner.hasContinuation())
+				return names;
+			start = ner.getContinuation();
+		}
+	}
+
+	@Test
+	public void testPagedEnumeration() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testPagedEnumeration");
+
+		ContentTree tree = new ContentTree();
+		ContentName prefix = ContentName.fromNative("/test/paged");
+		long ts = 1000000;
+		for (int i = 0; i < 25; i++)
+			insert(tree, new ContentName(child(prefix, i), "data"), ts++);
+		
+		int [] pages = new int[1];
+		TreeSet<ContentName> names = readPages(tree, prefix, null, pages);
+		Assert.assertNotNull(names);
+		Assert.assertEquals(25, names.size());
+		Assert.assertEquals(3, pages[0]);
+		
+		// Basic enumeration still returns everything at once
+		Interest basic = new Interest(new ContentName(prefix, 
+				CommandMarker.COMMAND_MARKER_BASIC_ENUMERATION));
+		NameEnumerationResponse ner = tree.getNamesWithPrefix(basic, responseName);
+		Assert.assertEquals(25, ner.getNames().size());
+		Assert.assertFalse(ner.hasContinuation());
+		Assert.assertEquals(ner.getNames().size(), ner.getNamesForResponse().size());
+		
+		// Nothing has changed since the last listing
+		CCNTime version = ner.getTimestamp();
+		Assert.assertNull(readPages(tree, prefix, version, pages));
+		
+		// Only new children, or children with new children, come back in a delta listing
+		insert(tree, new ContentName(child(prefix, 100), "data"), ts++);
+		insert(tree, new ContentName(child(prefix, 3), "more"), ts++);
+		insert(tree, new ContentName(child(prefix, 101), "data"), ts++);
+		names = readPages(tree, prefix, version, pages);
+		Assert.assertNotNull(names);
+		Assert.assertEquals(3, names.size());
+		Assert.assertTrue(names.contains(new ContentName(child(prefix, 3).lastComponent())));
+		Assert.assertTrue(names.contains(new ContentName(child(prefix, 100).lastComponent())));
+		Assert.assertTrue(names.contains(new ContentName(child(prefix, 101).lastComponent())));
+		
+		Log.info(Log.FAC_TEST, "Completed testPagedEnumeration");
+	}
+	
+	@Test
+	public void testContinuationEncoding() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testContinuationEncoding");
+		
+		ArrayList<ContentName> names = new ArrayList<ContentName>();
+		names.add(new ContentName("a"));
+		names.add(new ContentName("b"));
+		NameEnumerationResponse ner = new NameEnumerationResponse(ContentName.fromNative("/test"), names, CCNTime.now());
+		ner.setContinuation("b".getBytes());
+		NameEnumerationResponse.NameEnumerationResponseMessage nem = ner.getNamesForResponse();
+		NameEnumerationResponse.NameEnumerationResponseMessage decoded = new NameEnumerationResponse.NameEnumerationResponseMessage();
+		decoded.decode(nem.encode());
+		Assert.assertEquals(names, decoded.names());
+		Assert.assertTrue(Arrays.equals("b".getBytes(), decoded.continuation()));
+		
+		ContentName pageName = NameEnumerationResponse.pagedEnumerationName(ContentName.fromNative("/test"), 
+				CCNTime.fromBinaryTimeAsLong(12345), "b".getBytes());
+		Assert.assertEquals(1, NameEnumerationResponse.pagedMarkerIndex(pageName));
+		Assert.assertEquals(Long.valueOf(12345), NameEnumerationResponse.pagedSince(pageName));
+		Assert.assertTrue(Arrays.equals("b".getBytes(), NameEnumerationResponse.pagedStartAfter(pageName)));
+		
+		Log.info(Log.FAC_TEST, "Completed testContinuationEncoding");
+	}
+	
+	static byte [] version(int i) {
+		return VersioningProfile.addVersion(new ContentName(), i).lastComponent();
+	}
+	
+	static int getVersion(ContentTree tree, Interest interest) throws Exception {
+		ContentObject co = tree.get(interest, new TestGetter());
+		if (null == co)
+			return -1;
+		return (int)VersioningProfile.getLastVersionAsLong(SegmentationProfile.segmentRoot(co.name()));
+	}
+	
+	@Test
+	public void testExcludedVersions() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testExcludedVersions");
+
+		ContentTree tree = new ContentTree();
+		ContentName prefix = ContentName.fromNative("/test/versions");
+		long ts = 1000000;
+		for (int i = 1; i <= 1000; i++)
+			insert(tree, SegmentationProfile.segmentName(VersioningProfile.addVersion(prefix, i), 0), ts++);
+		
+		// Latest version after one we have, and the next version after it
+		Interest latest = VersioningProfile.latestVersionInterest(VersioningProfile.addVersion(prefix, 500), null, null);
+		Assert.assertEquals(1000, getVersion(tree, latest));
+		Interest next = new Interest(prefix);
+		next.exclude(VersioningProfile.acceptVersions(version(500)));
+		Assert.assertEquals(501, getVersion(tree, next));
+		next.exclude(Exclude.uptoFactory(version(1000)));
+		Assert.assertEquals(-1, getVersion(tree, next));
+		
+		// Anys joined by components, components on their own and a trailing any
+		ArrayList<Exclude.Element> elements = new ArrayList<Exclude.Element>();
+		elements.add(new ExcludeAny());
+		elements.add(new ExcludeComponent(version(100)));
+		elements.add(new ExcludeAny());
+		elements.add(new ExcludeComponent(version(200)));
+		elements.add(new ExcludeComponent(version(201)));
+		elements.add(new ExcludeComponent(version(202)));
+		elements.add(new ExcludeComponent(version(900)));
+		elements.add(new ExcludeAny());
+		Exclude exclude = new Exclude(elements);
+		Interest left = new Interest(prefix);
+		left.exclude(exclude);
+		Assert.assertEquals(203, getVersion(tree, left));
+		Interest right = new Interest(prefix);
+		right.exclude(exclude);
+		right.childSelector(Interest.CHILD_SELECTOR_RIGHT);
+		Assert.assertEquals(899, getVersion(tree, right));
+		
+		// Only one child
+		tree = new ContentTree();
+		insert(tree, SegmentationProfile.segmentName(VersioningProfile.addVersion(prefix, 7), 0), ts++);
+		right.exclude(Exclude.uptoFactory(version(6)));
+		Assert.assertEquals(7, getVersion(tree, right));
+		right.exclude(Exclude.uptoFactory(version(7)));
+		Assert.assertEquals(-1, getVersion(tree, right));
+		
+		Log.info(Log.FAC_TEST, "Completed testExcludedVersions");
+	}
+}
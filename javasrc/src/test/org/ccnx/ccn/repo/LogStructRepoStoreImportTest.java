@@ -0,0 +1,254 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.repo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.CCNHandle;
+import org.ccnx.ccn.config.SystemConfiguration;
+import org.ccnx.ccn.impl.repo.LogStructRepoStore;
+import org.ccnx.ccn.impl.repo.LogStructRepoStore.LogStructRepoStoreProfile;
+import org.ccnx.ccn.impl.repo.RepositoryException;
+import org.ccnx.ccn.impl.support.Log;
+import org.ccnx.ccn.protocol.CCNTime;
+import org.ccnx.ccn.protocol.ContentName;
+import org.ccnx.ccn.protocol.ContentObject;
+import org.ccnx.ccn.protocol.Interest;
+import org.ccnx.ccn.protocol.KeyLocator;
+import org.ccnx.ccn.protocol.PublisherPublicKeyDigest;
+import org.ccnx.ccn.protocol.Signature;
+import org.ccnx.ccn.protocol.SignedInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests bulk import into a LogStructRepoStore, without ccnd: importing on several threads,
+ * giving back a bad file, and finishing an import interrupted by the repository stopping.
+ */
+public class LogStructRepoStoreImportTest {
+
+	static final int OBJECTS = 1000;
+	static final int THREADS = 4;
+
+	/**
+	 * The store only needs a handle to close
+	 */
+	static class NoNetworkHandle extends CCNHandle {
+		NoNetworkHandle() {
+			super(false);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	File _root;
+	LogStructRepoStore _store;
+	int _savedThreads;
+
+	@Before
+	public void setUp() throws Exception {
+		_savedThreads = SystemConfiguration.REPO_IMPORT_THREADS;
+		SystemConfiguration.REPO_IMPORT_THREADS = THREADS;
+		_root = File.createTempFile("repoimport", "");
+		_root.delete();
+		_store = open();
+	}
+
+	@After
+	public void tearDown() {
+		SystemConfiguration.REPO_IMPORT_THREADS = _savedThreads;
+		if (null != _store)
+			_store.shutDown();
+		delete(_root);
+		SystemConfiguration.setAccessControlDisabled(false);
+	}
+
+	private static void delete(File file) {
+		File [] children = file.listFiles();
+		if (null != children) {
+			for (File child : children)
+				delete(child);
+		}
+		file.delete();
+	}
+
+	private LogStructRepoStore open() throws RepositoryException {
+		LogStructRepoStore store = new LogStructRepoStore();
+		store.initialize(_root.getPath(), null, null, null, null, new NoNetworkHandle());
+		return store;
+	}
+
+	private File importDir() {
+		File dir = new File(_root, LogStructRepoStoreProfile.REPO_IMPORT_DIR);
+		dir.mkdirs();
+		return dir;
+	}
+
+	private File progressFile(String name) {
+		return new File(new File(new File(_root, LogStructRepoStoreProfile.META_DIR), LogStructRepoStoreProfile.IMPORT_PROGRESS_DIR), name);
+	}
+
+	/**
+	 * Write a file of encoded content objects, as a repository file holds them
+	 */
+	static ArrayList<ContentObject> makeImportFile(File file, String prefix, int count) throws IOException {
+		ArrayList<ContentObject> objects = new ArrayList<ContentObject>();
+		SignedInfo si = new SignedInfo(new PublisherPublicKeyDigest(new byte[32]), CCNTime.now(),
+				SignedInfo.ContentType.DATA, new KeyLocator(new ContentName("test", "key")));
+		Signature signature = new Signature(new byte[128]);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			for (int i = 0; i < count; i++) {
+				ContentObject co = new ContentObject(new ContentName("test", "repoimport", prefix, Integer.toString(i)),
+						si, ("content " + i).getBytes(), signature);
+				co.encode(out);
+				objects.add(co);
+			}
+		} finally {
+			out.close();
+		}
+		return objects;
+	}
+
+	private void checkContent(ArrayList<ContentObject> objects) throws RepositoryException {
+		for (ContentObject co : objects) {
+			Assert.assertTrue("Missing " + co.name(), _store.hasContent(co.fullName()));
+			ContentObject got = _store.getContent(new Interest(co.name()));
+			Assert.assertNotNull(got);
+			Assert.assertEquals(co, got);
+		}
+	}
+
+	@Test
+	public void testImport() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testImport");
+
+		File file = new File(importDir(), "data");
+		ArrayList<ContentObject> objects = makeImportFile(file, "good", OBJECTS);
+		Assert.assertTrue(_store.bulkImport("data"));
+		Assert.assertFalse(file.exists());
+		Assert.assertFalse(progressFile("data").exists());
+		checkContent(objects);
+
+		// And it's all still there when we start again
+		_store.shutDown();
+		_store = open();
+		checkContent(objects);
+
+		Log.info(Log.FAC_TEST, "Completed testImport");
+	}
+
+	@Test
+	public void testBadImport() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBadImport");
+
+		File file = new File(importDir(), "bad");
+		makeImportFile(file, "bad", OBJECTS);
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(new byte[] {1, 2, 3, 4, 5});
+		} finally {
+			out.close();
+		}
+		long length = file.length();
+		try {
+			_store.bulkImport("bad");
+			Assert.fail("Imported a bad file");
+		} catch (RepositoryException e) {
+			// expected
+		}
+		Assert.assertTrue(file.exists());
+		Assert.assertEquals(length, file.length());
+		Assert.assertFalse(progressFile("bad").exists());
+
+		Log.info(Log.FAC_TEST, "Completed testBadImport");
+	}
+
+	/**
+	 * Leave things as they would be if the repository stopped after moving an import file into place
+	 */
+	private void interruptedImport(String name, File repoFile, int index) throws IOException {
+		File progress = progressFile(name);
+		progress.getParentFile().mkdirs();
+		Properties properties = new Properties();
+		properties.setProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_FILE, Integer.toString(index));
+		properties.setProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_LENGTH, Long.toString(repoFile.length()));
+		properties.setProperty(LogStructRepoStoreProfile.IMPORT_PROGRESS_INDEXED, "0");
+		FileOutputStream out = new FileOutputStream(progress);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testResume");
+
+		_store.shutDown();
+		_store = null;
+		File repoFile = new File(_root, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + 2);
+		ArrayList<ContentObject> objects = makeImportFile(repoFile, "resumed", OBJECTS);
+		interruptedImport("resumed", repoFile, 2);
+
+		_store = open();
+		Assert.assertFalse(progressFile("resumed").exists());
+		checkContent(objects);
+
+		Log.info(Log.FAC_TEST, "Completed testResume");
+	}
+
+	@Test
+	public void testResumeBad() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testResumeBad");
+
+		_store.shutDown();
+		_store = null;
+		File repoFile = new File(_root, LogStructRepoStoreProfile.CONTENT_FILE_PREFIX + 2);
+		makeImportFile(repoFile, "resumedbad", OBJECTS);
+		FileOutputStream out = new FileOutputStream(repoFile, true);
+		try {
+			out.write(new byte[] {1, 2, 3, 4, 5});
+		} finally {
+			out.close();
+		}
+		interruptedImport("resumedbad", repoFile, 2);
+
+		// The file goes back to be imported, and the repository carries on without it
+		_store = open();
+		Assert.assertFalse(progressFile("resumedbad").exists());
+		Assert.assertFalse(repoFile.exists());
+		Assert.assertTrue(new File(importDir(), "resumedbad").exists());
+		ArrayList<ContentObject> objects = makeImportFile(new File(importDir(), "more"), "more", 10);
+		for (ContentObject co : objects)
+			_store.saveContent(co);
+		checkContent(objects);
+
+		Log.info(Log.FAC_TEST, "Completed testResumeBad");
+	}
+}
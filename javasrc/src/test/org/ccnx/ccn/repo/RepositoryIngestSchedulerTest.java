@@ -0,0 +1,137 @@
+/*
+ * A CCNx library test.
+ *
+ * Copyright (C) 2013 Palo Alto Research Center, Inc.
+ *
+ * This work is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License version 2 as published by the
+ * Free Software Foundation.
+ * This work is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details. You should have received a copy of the GNU General Public
+ * License along with this program; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301, USA.
+ */
+
+package org.ccnx.ccn.repo;
+
+import junit.framework.Assert;
+
+import org.ccnx.ccn.impl.repo.RepositoryIngestScheduler;
+import org.ccnx.ccn.impl.repo.RepositoryIngestScheduler.Flow;
+import org.ccnx.ccn.impl.support.Log;
+import org.junit.Test;
+
+/**
+ * Tests sharing the repository's outstanding interests between the streams it reads.
+ */
+public class RepositoryIngestSchedulerTest {
+
+	static final long MS = 1000000L;
+
+	@Test
+	public void testWindowGrowth() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testWindowGrowth");
+
+		RepositoryIngestScheduler scheduler = new RepositoryIngestScheduler(256, 4, 200);
+		Flow flow = scheduler.addFlow();
+		Assert.assertEquals(4, scheduler.window(flow));
+
+		// One more per segment until the first loss
+		long now = 0;
+		for (int i = 0; i < 12; i++)
+			Assert.assertFalse(scheduler.received(flow, 10 * MS, now += MS));
+		Assert.assertEquals(16, scheduler.window(flow));
+		Assert.assertEquals(10 * MS, flow.getRTT());
+
+		// Data after the timeout is a loss, which halves the window once per round trip
+		Assert.assertTrue(scheduler.received(flow, 500 * MS, now += 20 * MS));
+		Assert.assertEquals(8, scheduler.window(flow));
+		Assert.assertTrue(scheduler.received(flow, 5000 * MS, now += MS));
+		Assert.assertEquals(8, scheduler.window(flow));
+
+		// Then one per window
+		for (int i = 0; i < 8; i++)
+			scheduler.received(flow, 10 * MS, now += MS);
+		Assert.assertEquals(8, flow.getWindow());
+		for (int i = 0; i < 8; i++)
+			scheduler.received(flow, 10 * MS, now += MS);
+		Assert.assertEquals(9, flow.getWindow());
+
+		// Never beyond the budget
+		RepositoryIngestScheduler small = new RepositoryIngestScheduler(6, 4, 200);
+		Flow smallFlow = small.addFlow();
+		for (int i = 0; i < 10; i++)
+			small.received(smallFlow, 10 * MS, i * MS);
+		Assert.assertEquals(6, small.window(smallFlow));
+
+		Log.info(Log.FAC_TEST, "Completed testWindowGrowth");
+	}
+
+	@Test
+	public void testSharing() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testSharing");
+
+		RepositoryIngestScheduler scheduler = new RepositoryIngestScheduler(100, 4, 200);
+		Flow [] flows = new Flow[10];
+		for (int i = 0; i < flows.length; i++)
+			flows[i] = scheduler.addFlow();
+		for (int i = 0; i < 200; i++)
+			scheduler.received(flows[0], 10 * MS, i * MS);
+		// Alone, a flow can use the whole budget
+		Assert.assertEquals(100, scheduler.window(flows[0]));
+		scheduler.setOutstanding(flows[0], 100);
+		Assert.assertEquals(100, scheduler.getOutstanding());
+
+		// Once the others are busy it gets its fair share
+		for (int i = 1; i < flows.length; i++) {
+			Assert.assertEquals(4, scheduler.window(flows[i]));
+			scheduler.setOutstanding(flows[i], 4);
+		}
+		Assert.assertEquals(10, scheduler.window(flows[0]));
+
+		// Finished and removed flows give their share back
+		for (int i = 1; i < flows.length; i++) {
+			if (i % 2 == 0)
+				scheduler.setOutstanding(flows[i], 0);
+			else
+				scheduler.removeFlow(flows[i]);
+		}
+		Assert.assertEquals(100, scheduler.getOutstanding());
+		Assert.assertEquals(100, scheduler.window(flows[0]));
+
+		Log.info(Log.FAC_TEST, "Completed testSharing");
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		Log.info(Log.FAC_TEST, "Starting testBackpressure");
+
+		RepositoryIngestScheduler scheduler = new RepositoryIngestScheduler(256, 4, 200);
+		Flow flow = scheduler.addFlow();
+		for (int i = 0; i < 28; i++)
+			scheduler.received(flow, 10 * MS, i * MS);
+		Assert.assertEquals(32, scheduler.window(flow));
+
+		// 100 objects at 1ms each drain well within the delay
+		scheduler.stored(MS, 100);
+		Assert.assertEquals(1.0, scheduler.getPressure());
+		Assert.assertEquals(32, scheduler.window(flow));
+
+		// 800 take 800ms, four times too long
+		scheduler.stored(MS, 800);
+		Assert.assertEquals(0.25, scheduler.getPressure(), 0.001);
+		Assert.assertEquals(8, scheduler.window(flow));
+
+		// Every flow can always have one interest out
+		scheduler.stored(MS, 100000);
+		Assert.assertEquals(1, scheduler.window(flow));
+
+		scheduler.stored(MS, 0);
+		Assert.assertEquals(32, scheduler.window(flow));
+
+		Log.info(Log.FAC_TEST, "Completed testBackpressure");
+	}
+}